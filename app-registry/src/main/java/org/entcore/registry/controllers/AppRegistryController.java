@@ -34,6 +34,7 @@ import fr.wseduc.webutils.http.BaseController;
 
 import fr.wseduc.webutils.http.Renders;
 import io.vertx.core.Vertx;
+import org.entcore.common.appregistry.ApplicationUtils;
 import org.entcore.common.http.filter.AdminFilter;
 import org.entcore.common.http.filter.AdmlOfStructure;
 import org.entcore.common.http.filter.ResourceFilter;
@@ -55,8 +56,6 @@ import org.vertx.java.core.http.RouteMatcher;
 
 import static fr.wseduc.webutils.Utils.handlerToAsyncHandler;
 import static fr.wseduc.webutils.request.RequestUtils.bodyToJson;
-import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_PUBLISH_ADDRESS;
-import static org.entcore.common.appregistry.AppRegistryEvents.PROFILE_GROUP_ACTIONS_UPDATED;
 import static org.entcore.common.bus.BusResponseHandler.busArrayHandler;
 import static org.entcore.common.bus.BusResponseHandler.busResponseHandler;
 import static org.entcore.common.http.response.DefaultResponseHandler.*;
@@ -189,7 +188,8 @@ public class AppRegistryController extends BaseController {
 					if (roleName != null && !roleName.trim().isEmpty()) {
 						role.put("name", roleName);
 					}
-					appRegistryService.updateRole(roleId, role, actions, notEmptyResponseHandler(request));
+					appRegistryService.updateRole(roleId, role, actions,
+							updatedProfileGroupActions(null, notEmptyResponseHandler(request)));
 				} else {
 					badRequest(request, "invalid.id");
 				}
@@ -204,7 +204,7 @@ public class AppRegistryController extends BaseController {
 	public void deleteRole(final HttpServerRequest request) {
 		String roleId = request.params().get("id");
 		if (roleId != null && !roleId.trim().isEmpty()) {
-			appRegistryService.deleteRole(roleId, defaultResponseHandler(request, 204));
+			appRegistryService.deleteRole(roleId, updatedProfileGroupActions(null, defaultResponseHandler(request, 204)));
 		} else {
 			badRequest(request, "invalid.id");
 		}
@@ -265,7 +265,7 @@ public class AppRegistryController extends BaseController {
 	public void addGroupLink(final HttpServerRequest request) {
 		final String groupId = request.params().get("groupId");
 		final String roleId = request.params().get("roleId");
-		appRegistryService.addGroupLink(groupId, roleId, defaultResponseHandler(request));
+		appRegistryService.addGroupLink(groupId, roleId, updatedProfileGroupActions(groupId, defaultResponseHandler(request)));
 	}
 
 	@Delete("/authorize/group/:groupId/role/:roleId")
@@ -275,7 +275,8 @@ public class AppRegistryController extends BaseController {
 	public void removeGroupLink(final HttpServerRequest request) {
 		final String groupId = request.params().get("groupId");
 		final String roleId = request.params().get("roleId");
-		appRegistryService.deleteGroupLink(groupId, roleId, defaultResponseHandler(request, 204));
+		appRegistryService.deleteGroupLink(groupId, roleId,
+				updatedProfileGroupActions(groupId, defaultResponseHandler(request, 204)));
 	}
 
 	@Get("/roles")
@@ -417,6 +418,7 @@ public class AppRegistryController extends BaseController {
 									Renders.renderJson(request, error, 400);
 									return;
 								}
+								updatedProfileGroupActions(null);
 								final String structureId = event.right().getValue().getString("structureId");
 								sendPatternToCasConfiguration(updateCas, body, addressURL, casType, structureId, inherits, statCasType);
 								Renders.renderJson(request, event.right().getValue());
@@ -439,7 +441,7 @@ public class AppRegistryController extends BaseController {
 	public void deleteApplication(final HttpServerRequest request) {
 		String id = request.params().get("id");
 		if (id != null && !id.trim().isEmpty()) {
-			appRegistryService.deleteApplication(id, defaultResponseHandler(request, 204));
+			appRegistryService.deleteApplication(id, updatedProfileGroupActions(null, defaultResponseHandler(request, 204)));
 		} else {
 			badRequest(request, "invalid.application.id");
 		}
@@ -541,7 +543,8 @@ public class AppRegistryController extends BaseController {
                     return;
                 }
 
-                appRegistryService.massAuthorize(structureId, profiles, roles, defaultResponseHandler(request));
+                appRegistryService.massAuthorize(structureId, profiles, roles,
+                        updatedProfileGroupActions(null, defaultResponseHandler(request)));
             }
         });
     }
@@ -562,7 +565,8 @@ public class AppRegistryController extends BaseController {
                     badRequest(request);
                     return;
                 }
-                appRegistryService.massUnauthorize(structureId, profiles, roles, defaultResponseHandler(request));
+                appRegistryService.massUnauthorize(structureId, profiles, roles,
+                        updatedProfileGroupActions(null, defaultResponseHandler(request)));
             }
         });
     }
@@ -686,7 +690,9 @@ public class AppRegistryController extends BaseController {
 				final JsonArray data = message.body().getJsonArray("data");
 				final Integer transactionId = message.body().getInteger("transactionId");
 				final Boolean commit = message.body().getBoolean("commit", true);
-				appRegistryService.massAuthorization(data, transactionId, commit, busResponseHandler(message));
+				// without commit, the transaction is committed by the caller, and Neo4j clears the result caches then
+				appRegistryService.massAuthorization(data, transactionId, commit, Boolean.TRUE.equals(commit) ?
+						updatedProfileGroupActions(null, busResponseHandler(message)) : busResponseHandler(message));
 				break;
 			case "apply-default-bookmarks" :
 				final String userId = message.body().getString("userId");
@@ -709,11 +715,18 @@ public class AppRegistryController extends BaseController {
 	}
 
 	private void updatedProfileGroupActions(String groupId) {
-		JsonObject message = new JsonObject().put("type", PROFILE_GROUP_ACTIONS_UPDATED);
-		if (groupId != null && !groupId.trim().isEmpty()) {
-			message.put("groups", new fr.wseduc.webutils.collections.JsonArray().add(groupId));
-		}
-		eb.publish(APP_REGISTRY_PUBLISH_ADDRESS, message);
+		ApplicationUtils.publishProfileGroupActionsUpdated(eb, groupId != null && !groupId.trim().isEmpty() ?
+				new fr.wseduc.webutils.collections.JsonArray().add(groupId) : null);
+	}
+
+	private <T> Handler<Either<String, T>> updatedProfileGroupActions(final String groupId,
+			final Handler<Either<String, T>> handler) {
+		return event -> {
+			if (event.isRight()) {
+				updatedProfileGroupActions(groupId);
+			}
+			handler.handle(event);
+		};
 	}
 
 }
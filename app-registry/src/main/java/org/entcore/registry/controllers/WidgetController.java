@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import fr.wseduc.webutils.I18n;
+import org.entcore.common.appregistry.ApplicationUtils;
 import org.entcore.common.http.filter.AdminFilter;
 import org.entcore.common.http.filter.ResourceFilter;
 import org.entcore.common.user.UserUtils;
@@ -110,7 +111,7 @@ public class WidgetController extends BaseController
 	@MfaProtected()
 	public void deleteWidget(final HttpServerRequest request){
 		final String widgetId = request.params().get("id");
-		service.deleteWidget(widgetId, defaultResponseHandler(request, 201));
+		service.deleteWidget(widgetId, updatedWidgets(null, defaultResponseHandler(request, 201)));
 	}
 
 	@Put("/widget/:id/lock")
@@ -130,7 +131,7 @@ public class WidgetController extends BaseController
 		final String widgetId = request.params().get("id");
 		final List<String> groupIds = new ArrayList<String>();
 		groupIds.add(request.params().get("groupId"));
-		service.linkWidget(widgetId, groupIds, defaultResponseHandler(request));
+		service.linkWidget(widgetId, groupIds, updatedWidgets(groupIds, defaultResponseHandler(request)));
 	}
 
 	@Delete("/widget/:id/link/:groupId")
@@ -141,7 +142,7 @@ public class WidgetController extends BaseController
 		final String widgetId = request.params().get("id");
 		final List<String> groupIds = new ArrayList<String>();
 		groupIds.add(request.params().get("groupId"));
-		service.unlinkWidget(widgetId, groupIds, defaultResponseHandler(request));
+		service.unlinkWidget(widgetId, groupIds, updatedWidgets(groupIds, defaultResponseHandler(request)));
 
 	}
 
@@ -153,7 +154,7 @@ public class WidgetController extends BaseController
 		final String widgetId = request.params().get("id");
 		final List<String> groupIds = new ArrayList<String>();
 		groupIds.add(request.params().get("groupId"));
-		service.setMandatory(widgetId, groupIds, defaultResponseHandler(request));
+		service.setMandatory(widgetId, groupIds, updatedWidgets(groupIds, defaultResponseHandler(request)));
 	}
 
 	@Delete("/widget/:id/mandatory/:groupId")
@@ -164,7 +165,7 @@ public class WidgetController extends BaseController
 		final String widgetId = request.params().get("id");
 		final List<String> groupIds = new ArrayList<String>();
 		groupIds.add(request.params().get("groupId"));
-		service.removeMandatory(widgetId, groupIds, defaultResponseHandler(request));
+		service.removeMandatory(widgetId, groupIds, updatedWidgets(groupIds, defaultResponseHandler(request)));
 	}
 
 	@Put("/widget/:id/authorize/:structureId")
@@ -175,7 +176,8 @@ public class WidgetController extends BaseController
 		final String structureId = request.params().get("structureId");
 		List<String> profiles = request.params().getAll("profile");
 
-		service.massAuthorize(widgetId, structureId, profiles, defaultResponseHandler(request));
+		service.massAuthorize(widgetId, structureId, profiles,
+				updatedWidgets(null, defaultResponseHandler(request)));
 	}
 
 	@Delete("/widget/:id/authorize/:structureId")
@@ -186,7 +188,8 @@ public class WidgetController extends BaseController
 		final String structureId = request.params().get("structureId");
 		List<String> profiles = request.params().getAll("profile");
 
-		service.massUnauthorize(widgetId, structureId, profiles, defaultResponseHandler(request));
+		service.massUnauthorize(widgetId, structureId, profiles,
+				updatedWidgets(null, defaultResponseHandler(request)));
 	}
 
 	@Put("/widget/:id/mandatory/:structureId/mass")
@@ -197,7 +200,8 @@ public class WidgetController extends BaseController
 		final String structureId = request.params().get("structureId");
 		List<String> profiles = request.params().getAll("profile");
 
-		service.massSetMandatory(widgetId, structureId, profiles, defaultResponseHandler(request));
+		service.massSetMandatory(widgetId, structureId, profiles,
+				updatedWidgets(null, defaultResponseHandler(request)));
 	}
 
 	@Delete("/widget/:id/mandatory/:structureId/mass")
@@ -208,7 +212,8 @@ public class WidgetController extends BaseController
 		final String structureId = request.params().get("structureId");
 		List<String> profiles = request.params().getAll("profile");
 
-		service.massRemoveMandatory(widgetId, structureId, profiles, defaultResponseHandler(request));
+		service.massRemoveMandatory(widgetId, structureId, profiles,
+				updatedWidgets(null, defaultResponseHandler(request)));
 	}
 
 	@Post("/widget")
@@ -311,4 +316,16 @@ public class WidgetController extends BaseController
 			}
 		});
 	}
+
+	private Handler<Either<String, JsonObject>> updatedWidgets(final List<String> groupIds,
+			final Handler<Either<String, JsonObject>> handler) {
+		return event -> {
+			if (event.isRight()) {
+				ApplicationUtils.publishProfileGroupActionsUpdated(eb,
+						groupIds != null ? new fr.wseduc.webutils.collections.JsonArray(groupIds) : null);
+			}
+			handler.handle(event);
+		};
+	}
+
 }
@@ -38,6 +38,7 @@ import org.entcore.auth.services.OpenIdConnectService;
 import org.entcore.auth.services.OpenIdDataHandler;
 import org.entcore.common.events.EventStore;
 import org.entcore.common.neo4j.Neo4j;
+import org.entcore.common.session.SessionNearCache;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
@@ -522,7 +523,7 @@ public class OAuthDataHandler extends DataHandler implements OpenIdDataHandler {
 								}
 							} else { // revoke existing token and code with same authId
 								final JsonObject setTTL = getSetTTL();
-								mongo.update(ACCESS_TOKEN_COLLECTION, query, setTTL, false, true);
+								revokeAccessTokens(query);
 								mongo.update(AUTH_INFO_COLLECTION, new JsonObject().put("_id", authInfo.getId()), setTTL, false, true);
 								handler.handle(null);
 							}
@@ -924,7 +925,7 @@ public class OAuthDataHandler extends DataHandler implements OpenIdDataHandler {
 	public void deleteTokensByAuthId(String authId) {
 		if (authId != null) {
 			JsonObject query = new JsonObject().put("authId", authId);
-			mongo.update(ACCESS_TOKEN_COLLECTION, query, getSetTTL(), false, true);
+			revokeAccessTokens(query);
 		} else {
 			log.error("Id Token not removed");
 		}
@@ -956,6 +957,23 @@ public class OAuthDataHandler extends DataHandler implements OpenIdDataHandler {
 		}
 	}
 
+	/**
+	 * Flags the access tokens matching the query for deletion and evicts them from the session near-caches.
+	 */
+	private void revokeAccessTokens(final JsonObject query) {
+		mongo.find(ACCESS_TOKEN_COLLECTION, query, res -> {
+			mongo.update(ACCESS_TOKEN_COLLECTION, query, getSetTTL(), false, true);
+			final JsonArray results = res.body() != null ? res.body().getJsonArray("results") : null;
+			if (results != null) {
+				for (Object o : results) {
+					if (o instanceof JsonObject && ((JsonObject) o).getString("token") != null) {
+						SessionNearCache.publishInvalidation(neo.getEventBus(), ((JsonObject) o).getString("token"), null);
+					}
+				}
+			}
+		});
+	}
+
 	private JsonObject getSetTTL() {
 		return new JsonObject().put("$set", new JsonObject()
 				.put("flagTTL", new JsonObject().put("$date", (System.currentTimeMillis() - EXPIRES_AFTER))));
@@ -47,6 +47,7 @@ import org.entcore.common.http.renders.TemplatedEmailRenders;
 import org.entcore.common.neo4j.Neo;
 import org.entcore.common.neo4j.Neo4j;
 import org.entcore.common.neo4j.Neo4jResult;
+import org.entcore.common.neo4j.Neo4jResultCache;
 import org.entcore.common.notification.NotificationUtils;
 import org.entcore.common.sms.SmsSender;
 import org.entcore.common.sms.SmsSenderFactory;
@@ -863,6 +864,7 @@ public class DefaultUserAuthAccount extends TemplatedEmailRenders implements Use
 		neo.execute(query, params, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> r) {
+				Neo4jResultCache.publishInvalidation(eb, Neo4jResultCache.TAG_USERS);
 				storeLockEvent(new JsonArray().add(id), block);
 				NotificationUtils.deleteFcmTokens(new JsonArray().add(id), ar -> {
 					if (ar.isLeft()) {
@@ -883,6 +885,7 @@ public class DefaultUserAuthAccount extends TemplatedEmailRenders implements Use
 		neo.execute(query, params, new Handler<Message<JsonObject>>() {
 			@Override
 			public void handle(Message<JsonObject> r) {
+				Neo4jResultCache.publishInvalidation(eb, Neo4jResultCache.TAG_USERS);
 				storeLockEvent(ids, block);
 				NotificationUtils.deleteFcmTokens(ids, ar -> {
 					if (ar.isLeft()) {
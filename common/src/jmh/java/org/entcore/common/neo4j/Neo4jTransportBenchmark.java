@@ -0,0 +1,157 @@
+/* Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ */
+
+package org.entcore.common.neo4j;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the REST and Bolt transports on the login and visible users query mixes, and on a committed transaction.
+ * <p>
+ *     It needs a running Neo4j 3.x server, set with {@code -Dneo4j.server-uri=http://localhost:7474/db/data/} and
+ *     {@code -Dneo4j.bolt-uri=bolt://localhost:7687}. The setup creates {@code usersNumber} users in
+ *     {@code groupsNumber} groups, labelled {@code BenchUser} and {@code BenchGroup}, and removes them on tear down.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class Neo4jTransportBenchmark {
+
+	private static final String LOGIN_QUERY =
+			"MATCH (n:BenchUser {login : {login}}) " +
+			"RETURN n.id as userId, n.login as login, n.displayName as displayName";
+	private static final String VISIBLE_USERS_QUERY =
+			"MATCH (:BenchUser {id : {userId}})-[:IN]->(:BenchGroup)<-[:IN]-(v:BenchUser) " +
+			"RETURN v.id as id, v.displayName as displayName LIMIT 100";
+	private static final String UPDATE_QUERY =
+			"MATCH (n:BenchUser {id : {userId}}) SET n.lastLogin = {now} RETURN n.id as id";
+
+	@Param({"rest", "bolt"})
+	public String transport;
+
+	@Param({"10000"})
+	public int usersNumber;
+
+	@Param({"100"})
+	public int groupsNumber;
+
+	private Vertx vertx;
+	private GraphDatabase database;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		vertx = Vertx.vertx();
+		final JsonObject config = new JsonObject();
+		final URI[] restUris = new URI[] { new URI(System.getProperty("neo4j.server-uri",
+				"http://localhost:7474/db/data/")) };
+		final GraphDatabase rest = new Neo4jRest(restUris, false, vertx, 3000L, 16, true, config);
+		if ("bolt".equals(transport)) {
+			final URI[] boltUris = new URI[] { new URI(System.getProperty("neo4j.bolt-uri", "bolt://localhost:7687")) };
+			database = new Neo4jBolt(boltUris, false, vertx, 16, config, rest);
+		} else {
+			database = rest;
+		}
+		await(new JsonArray()
+				.add(statement("CREATE INDEX ON :BenchUser(login)", new JsonObject()))
+				.add(statement("CREATE INDEX ON :BenchUser(id)", new JsonObject())), null);
+		await(new JsonArray().add(statement(
+				"UNWIND range(0, {groups} - 1) as i CREATE (:BenchGroup {id : 'group-' + i})",
+				new JsonObject().put("groups", groupsNumber))), null);
+		await(new JsonArray().add(statement(
+				"UNWIND range(0, {users} - 1) as i " +
+				"MATCH (g:BenchGroup {id : 'group-' + (i % {groups})}) " +
+				"CREATE (:BenchUser {id : 'user-' + i, login : 'login.' + i, displayName : 'User ' + i})-[:IN]->(g)",
+				new JsonObject().put("users", usersNumber).put("groups", groupsNumber))), null);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		await(new JsonArray()
+				.add(statement("MATCH (n:BenchUser) DETACH DELETE n", new JsonObject()))
+				.add(statement("MATCH (n:BenchGroup) DETACH DELETE n", new JsonObject())), null);
+		database.close();
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		vertx.close(ar -> future.complete(null));
+		future.get(60, TimeUnit.SECONDS);
+	}
+
+	private static JsonObject statement(String query, JsonObject params) {
+		return new JsonObject().put("statement", query).put("parameters", params);
+	}
+
+	private JsonObject await(JsonArray statements, Integer transactionId) throws Exception {
+		final CompletableFuture<JsonObject> future = new CompletableFuture<>();
+		database.executeTransaction(statements, transactionId, true, future::complete);
+		final JsonObject result = future.get(60, TimeUnit.SECONDS);
+		if (result.containsKey("message")) {
+			throw new IllegalStateException(result.getString("message"));
+		}
+		return result;
+	}
+
+	private JsonObject execute(String query, JsonObject params) throws Exception {
+		final CompletableFuture<JsonObject> future = new CompletableFuture<>();
+		database.execute(query, params, future::complete);
+		return future.get(60, TimeUnit.SECONDS);
+	}
+
+	@Benchmark
+	public JsonObject login() throws Exception {
+		final int i = ThreadLocalRandom.current().nextInt(usersNumber);
+		return execute(LOGIN_QUERY, new JsonObject().put("login", "login." + i));
+	}
+
+	@Benchmark
+	public JsonObject visibleUsers() throws Exception {
+		final int i = ThreadLocalRandom.current().nextInt(usersNumber);
+		return execute(VISIBLE_USERS_QUERY, new JsonObject().put("userId", "user-" + i));
+	}
+
+	@Benchmark
+	public JsonObject transaction() throws Exception {
+		final int i = ThreadLocalRandom.current().nextInt(usersNumber);
+		final JsonObject params = new JsonObject().put("userId", "user-" + i).put("login", "login." + i)
+				.put("now", System.currentTimeMillis());
+		return await(new JsonArray().add(statement(LOGIN_QUERY, params)).add(statement(UPDATE_QUERY, params)), null);
+	}
+
+}
@@ -0,0 +1,152 @@
+/* Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ */
+
+package org.entcore.common.neo4j;
+
+import io.vertx.core.Context;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.entcore.common.schema.Source;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Imports {@code usersNumber} users with a {@link TransactionHelper}, each one written by a node merge and a group
+ * link as in the feeder, sent either as one statement per user ({@code statements}) or as {@code UNWIND} rows
+ * ({@code rows}).
+ * <p>
+ *     It needs a running Neo4j 3.x server, set with {@code -Dneo4j.server-uri=http://localhost:7474/db/data/}. The
+ *     nodes are labelled {@code BenchUser} and {@code BenchGroup} and removed on tear down.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TransactionHelperBenchmark {
+
+	private static final String MERGE_USER =
+			"MERGE (u:BenchUser {externalId : {externalId}}) SET u.displayName = {displayName}";
+	private static final String LINK_GROUP =
+			"MATCH (u:BenchUser {externalId : {externalId}}), (g:BenchGroup {id : {groupId}}) MERGE u-[:IN]->g";
+
+	@Param({"statements", "rows"})
+	public String mode;
+
+	@Param({"5000"})
+	public int usersNumber;
+
+	@Param({"1000"})
+	public int statementNumber;
+
+	private Vertx vertx;
+	private Context context;
+	private GraphDatabase database;
+	private Neo4j neo4j;
+	private int run;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		vertx = Vertx.vertx();
+		context = vertx.getOrCreateContext();
+		final URI[] restUris = new URI[] { new URI(System.getProperty("neo4j.server-uri",
+				"http://localhost:7474/db/data/")) };
+		database = new Neo4jRest(restUris, false, vertx, 3000L, 16, true, new JsonObject());
+		neo4j = new Neo4j(vertx.eventBus(), database);
+		await(new JsonArray()
+				.add(statement("CREATE INDEX ON :BenchUser(externalId)"))
+				.add(statement("CREATE INDEX ON :BenchGroup(id)")));
+		await(new JsonArray().add(statement("UNWIND range(0, 99) as i CREATE (:BenchGroup {id : 'group-' + i})")));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		await(new JsonArray()
+				.add(statement("MATCH (n:BenchUser) DETACH DELETE n"))
+				.add(statement("MATCH (n:BenchGroup) DETACH DELETE n")));
+		database.close();
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		vertx.close(ar -> future.complete(null));
+		future.get(60, TimeUnit.SECONDS);
+	}
+
+	private static JsonObject statement(String query) {
+		return new JsonObject().put("statement", query).put("parameters", new JsonObject());
+	}
+
+	private void await(JsonArray statements) throws Exception {
+		final CompletableFuture<JsonObject> future = new CompletableFuture<>();
+		database.executeTransaction(statements, null, true, future::complete);
+		final JsonObject result = future.get(60, TimeUnit.SECONDS);
+		if (result.containsKey("message")) {
+			throw new IllegalStateException(result.getString("message"));
+		}
+	}
+
+	@Benchmark
+	public JsonArray importUsers() throws Exception {
+		final int r = run++;
+		final boolean rows = "rows".equals(mode);
+		final CompletableFuture<JsonArray> future = new CompletableFuture<>();
+		// the helper is not thread safe : it is filled on the context which handles its responses
+		context.runOnContext(v -> {
+			final TransactionHelper tx = new TransactionHelper(neo4j, Source.AAF, statementNumber);
+			for (int i = 0; i < usersNumber; i++) {
+				final String externalId = "bench-" + (i + r * usersNumber);
+				final JsonObject user = new JsonObject().put("externalId", externalId)
+						.put("displayName", "User " + i);
+				final JsonObject link = new JsonObject().put("externalId", externalId)
+						.put("groupId", "group-" + (i % 100));
+				if (rows) {
+					tx.addBatch(Neo4jUtils.toRowParameters(MERGE_USER), externalId, user);
+					tx.addBatch(Neo4jUtils.toRowParameters(LINK_GROUP), externalId, link);
+				} else {
+					tx.add(MERGE_USER, user);
+					tx.add(LINK_GROUP, link);
+				}
+			}
+			tx.commit().onComplete(ar -> {
+				if (ar.succeeded()) {
+					future.complete(ar.result());
+				} else {
+					future.completeExceptionally(ar.cause());
+				}
+			});
+		});
+		return future.get(600, TimeUnit.SECONDS);
+	}
+
+}
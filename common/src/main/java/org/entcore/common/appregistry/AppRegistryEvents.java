@@ -30,6 +30,8 @@ public final class AppRegistryEvents {
 
 	public static final String IMPORT_SUCCEEDED = "IMPORT_SUCCEEDED";
 
+	public static final String STRUCTURES_UPDATED = "STRUCTURES_UPDATED";
+
 	private AppRegistryEvents() {}
 
 }
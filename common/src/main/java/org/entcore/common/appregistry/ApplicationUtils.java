@@ -28,6 +28,8 @@ import io.vertx.core.json.JsonObject;
 
 import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_PUBLISH_ADDRESS;
 import static org.entcore.common.appregistry.AppRegistryEvents.IMPORT_SUCCEEDED;
+import static org.entcore.common.appregistry.AppRegistryEvents.PROFILE_GROUP_ACTIONS_UPDATED;
+import static org.entcore.common.appregistry.AppRegistryEvents.STRUCTURES_UPDATED;
 import static org.entcore.common.appregistry.AppRegistryEvents.USER_GROUP_UPDATED;
 
 public final class ApplicationUtils {
@@ -103,4 +105,23 @@ public final class ApplicationUtils {
 		);
 	}
 
+	/**
+	 * Notifies that the actions or widgets authorized to some groups changed.
+	 * @param groups the updated groups, or {@code null} when the change may concern any group
+	 */
+	public static void publishProfileGroupActionsUpdated(EventBus eb, JsonArray groups) {
+		final JsonObject message = new JsonObject().put("type", PROFILE_GROUP_ACTIONS_UPDATED);
+		if (groups != null && groups.size() > 0) {
+			message.put("groups", groups);
+		}
+		eb.publish(APP_REGISTRY_PUBLISH_ADDRESS, message);
+	}
+
+	public static void publishStructuresUpdated(EventBus eb, JsonArray structures) {
+		eb.publish(APP_REGISTRY_PUBLISH_ADDRESS,
+				new JsonObject().put("type", STRUCTURES_UPDATED)
+						.put("structures", structures)
+		);
+	}
+
 }
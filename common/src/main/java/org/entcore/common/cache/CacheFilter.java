@@ -14,6 +14,7 @@ import io.vertx.core.buffer.Buffer;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.json.DecodeException;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
@@ -27,7 +28,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.*;
-import java.util.regex.Matcher;
+
+import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_PUBLISH_ADDRESS;
+import static org.entcore.common.appregistry.AppRegistryEvents.USER_GROUP_UPDATED;
 
 public class CacheFilter implements Filter {
 
@@ -37,11 +40,50 @@ public class CacheFilter implements Filter {
     private final EventBus eb;
     private Map<String,JsonObject> cacheConfig;
     private final Set<Binding> cachedBindings=new HashSet<>();
+    private final CacheRouteMatcher<Binding> routeMatcher = new CacheRouteMatcher<>();
 
     public CacheFilter(EventBus eb, Set<Binding> bindings, CacheService cacheService) {
         this.eb = eb;
         this.bindings = bindings;
         this.cacheService = cacheService;
+        if (eb != null) {
+            eb.<JsonObject>consumer(APP_REGISTRY_PUBLISH_ADDRESS, message -> {
+                if (message.body() != null && USER_GROUP_UPDATED.equals(message.body().getString("type"))) {
+                    invalidateUsers(message.body().getJsonArray("users"));
+                }
+            });
+        }
+    }
+
+    /**
+     * Drops the USER scoped responses of users whose groups changed, with one DEL by cached route. The responses
+     * keyed by path or query parameters can't be listed and expire with their ttl.
+     */
+    private void invalidateUsers(JsonArray users) {
+        if (users == null || users.isEmpty()) {
+            return;
+        }
+        if (cacheConfig == null) {
+            loadCacheConfig();
+        }
+        final List<String> userIds = new ArrayList<>();
+        for (Object o : users) {
+            if (o instanceof String) {
+                userIds.add((String) o);
+            }
+        }
+        for (Map.Entry<String, JsonObject> e : cacheConfig.entrySet()) {
+            final JsonObject config = e.getValue();
+            if (CacheScope.USER.name().equals(config.getString("scope")) && !config.getBoolean("usePath", false) &&
+                    !config.getBoolean("useQueryParams", false)) {
+                final String key = config.getString("key", e.getKey());
+                cacheService.removeForUsers(userIds, key, res -> {
+                    if (res.failed()) {
+                        log.error("[CacheFilter.invalidateUsers] failed to remove user cache key=" + key, res.cause());
+                    }
+                });
+            }
+        }
     }
 
     private void loadCacheConfig() {
@@ -59,6 +101,7 @@ public class CacheFilter implements Filter {
                         for (Binding binding : bindings) {
                             if (binding != null && method.equals(binding.getServiceMethod())) {
                                 cachedBindings.add(binding);
+                                routeMatcher.add(binding.getMethod().name(), binding.getUriPattern(), binding);
                                 cacheConfig.put(method, cache);
                                 break;
                             }
@@ -80,19 +123,13 @@ public class CacheFilter implements Filter {
     }
 
     private Binding requestBinding(HttpServerRequest request) {
-        for (Binding binding: cachedBindings) {
-            if (!request.method().name().equals(binding.getMethod().name())) {
-                continue;
-            }
-            Matcher m = binding.getUriPattern().matcher(request.path());
-            if (m.matches()) {
-                return binding;
-            }
+        if (routeMatcher.isEmpty()) {
+            return null;
         }
-        return null;
+        return routeMatcher.match(request.method().name(), request.path());
     }
 
-    private void saveToCache(String key, String value, CacheScope cacheScope, Integer ttl, HttpServerRequest request){
+    private void saveToCache(String key, String value, CacheScope cacheScope, Integer ttl, UserInfos user, HttpServerRequest request){
         switch(cacheScope){
             case GLOBAL:
                 cacheService.upsert(key,value, ttl, res->{
@@ -104,62 +141,60 @@ public class CacheFilter implements Filter {
                 });
                 break;
             case LANG:
-                UserUtils.getUserInfos(eb,request, resUser -> {
-                    if (resUser == null) {
-                        return;
+                final String lang = Utils.getOrElse(I18n.acceptLanguage(request), "fr");
+                cacheService.upsertForLang(lang, key, value, ttl, res -> {
+                    if (res.succeeded()) {
+                        log.debug("[CacheFilter.saveToCache] response saved to lang cache key=" + key);
+                    } else {
+                        log.error("[CacheFilter.saveToCache] failed to save into lang cache key=" + key, res.cause());
                     }
-                    final String lang = Utils.getOrElse(I18n.acceptLanguage(request), "fr");
-                    cacheService.upsertForLang(lang, key, value, ttl, res -> {
-                        if (res.succeeded()) {
-                            log.debug("[CacheFilter.saveToCache] response saved to lang cache key=" + key);
-                        } else {
-                            log.error("[CacheFilter.saveToCache] failed to save into lang cache key=" + key, res.cause());
-                        }
-                    });
                 });
                 break;
             case USER:
-                UserUtils.getUserInfos(eb,request, resUser -> {
-                    if (resUser == null) {
-                        return;
+                cacheService.upsertForUser(user, key, value, ttl, res -> {
+                    if (res.succeeded()) {
+                        log.debug("[CacheFilter.saveToCache] response saved to user cache key=" + key);
+                    } else {
+                        log.error("[CacheFilter.saveToCache] failed to save into user cache key=" + key, res.cause());
                     }
-                    cacheService.upsertForUser(resUser, key, value, ttl, res -> {
-                        if (res.succeeded()) {
-                            log.debug("[CacheFilter.saveToCache] response saved to user cache key=" + key);
-                        } else {
-                            log.error("[CacheFilter.saveToCache] failed to save into user cache key=" + key, res.cause());
-                        }
-                    });
                 });
                 break;
         }
     }
 
     private String generateKeyWithQuery(HttpServerRequest request, boolean userQuery, String key){
-        if(userQuery){
-            final MultiMap params = request.params();
-            if(params.isEmpty()){
-                return key;
+        if(!userQuery){
+            return key;
+        }
+        final MultiMap params = request.params();
+        if(params.isEmpty()){
+            return key;
+        }
+        final String[] names = params.names().toArray(new String[0]);
+        Arrays.sort(names);
+        final StringBuilder sb = new StringBuilder(key.length() + 16 * names.length).append(key);
+        char separator = '?';
+        for(String name : names){
+            final List<String> values = params.getAll(name);
+            if(values.isEmpty()){
+                continue;
+            }
+            sb.append(separator).append(name).append('=');
+            separator = '&';
+            if(values.size() == 1){
+                sb.append(values.get(0));
             }else{
-                final List<String> keys = new ArrayList<>(params.names());
-                keys.sort(Comparator.comparing(String::toString));
-                final List<String> parts = new ArrayList<>();
-                for(String k : keys){
-                    final List<String> values = new ArrayList<>(request.params().getAll(k));
-                    if(!values.isEmpty()){
-                        values.sort(Comparator.comparing(String::toString));
-                        parts.add(k+"="+String.join(",",values));
+                final String[] sorted = values.toArray(new String[0]);
+                Arrays.sort(sorted);
+                for(int i = 0; i < sorted.length; i++){
+                    if(i > 0){
+                        sb.append(',');
                     }
-                }
-                if(parts.isEmpty()){
-                    return key;
-                }else{
-                    return key + "?"+String.join("&", parts);
+                    sb.append(sorted[i]);
                 }
             }
-        }else{
-            return key;
         }
+        return sb.toString();
     }
 
     private void cache(final Binding binding, final HttpServerRequest request, final Handler<Boolean> originalHandler){
@@ -181,6 +216,8 @@ public class CacheFilter implements Filter {
         if (CacheOperation.CACHE.equals(operation)) {
             //=== get or create from cache
             final Future<Optional<String>> result = Future.future();
+            // the user is looked up once and reused to save the response
+            final UserInfos[] user = new UserInfos[1];
             switch(cacheScope){
                 case GLOBAL:
                     cacheService.get(realKey, resCache -> {
@@ -197,6 +234,7 @@ public class CacheFilter implements Filter {
                             result.fail("User not found");
                             return;
                         }
+                        user[0] = resUser;
                         final String lang = Utils.getOrElse(I18n.acceptLanguage(request), "fr");
                         cacheService.getForLang(lang, realKey, resCache ->{
                             if(resCache.succeeded()){
@@ -213,6 +251,7 @@ public class CacheFilter implements Filter {
                             result.fail("User not found");
                             return;
                         }
+                        user[0] = resUser;
                         cacheService.getForUser(resUser, realKey, resCache -> {
                             if(resCache.succeeded()){
                                 result.complete(resCache.result());
@@ -235,7 +274,9 @@ public class CacheFilter implements Filter {
                         request.response().endHandler(resEnd -> {
                             final Optional<Buffer> buffer = tmp.getBodyResponseBuffered();
                             if(buffer.isPresent()){
-                                saveToCache(realKey, buffer.get().toString(),cacheScope,ttl,request);
+                                if (user[0] != null || CacheScope.GLOBAL.equals(cacheScope)) {
+                                    saveToCache(realKey, buffer.get().toString(), cacheScope, ttl, user[0], request);
+                                }
                             }else{
                                 log.warn("[CacheFilter].cache Could not get buffer response: " + tmp);
                             }
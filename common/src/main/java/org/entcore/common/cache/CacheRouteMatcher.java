@@ -0,0 +1,159 @@
+package org.entcore.common.cache;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Matches a request (method and path) against a set of routes.
+ * <p>
+ *     The routes of each http method are indexed in a trie by the literal prefix of their uri pattern : a lookup walks
+ *     the path once and only runs the regular expressions of the routes whose prefix matches, longest prefixes first.
+ *     Paths that can't be cached are usually rejected without running any regular expression.
+ * </p>
+ */
+public class CacheRouteMatcher<T> {
+
+    private static final String META_CHARACTERS = ".[]{}()*+?^$|";
+    private final Map<String, Node<T>> roots = new HashMap<>();
+
+    private static final class Route<T> {
+        private final Pattern pattern;
+        private final T value;
+
+        private Route(Pattern pattern, T value) {
+            this.pattern = pattern;
+            this.value = value;
+        }
+    }
+
+    private static final class Node<T> {
+        private final Map<Character, Node<T>> children = new HashMap<>();
+        private final List<Route<T>> routes = new ArrayList<>();
+    }
+
+    public CacheRouteMatcher<T> add(String method, Pattern uriPattern, T value) {
+        Node<T> node = roots.computeIfAbsent(method, k -> new Node<>());
+        final String prefix = literalPrefix(uriPattern.pattern());
+        for (int i = 0; i < prefix.length(); i++) {
+            node = node.children.computeIfAbsent(prefix.charAt(i), k -> new Node<>());
+        }
+        node.routes.add(new Route<>(uriPattern, value));
+        return this;
+    }
+
+    /**
+     * @return the value of the first route matching the request or {@code null}
+     */
+    public T match(String method, String path) {
+        Node<T> node = roots.get(method);
+        if (node == null || path == null) {
+            return null;
+        }
+        final List<Node<T>> candidates = new ArrayList<>(4);
+        if (!node.routes.isEmpty()) {
+            candidates.add(node);
+        }
+        for (int i = 0; i < path.length(); i++) {
+            node = node.children.get(path.charAt(i));
+            if (node == null) {
+                break;
+            }
+            if (!node.routes.isEmpty()) {
+                candidates.add(node);
+            }
+        }
+        for (int i = candidates.size() - 1; i >= 0; i--) {
+            for (Route<T> route : candidates.get(i).routes) {
+                if (route.pattern.matcher(path).matches()) {
+                    return route.value;
+                }
+            }
+        }
+        return null;
+    }
+
+    public boolean isEmpty() {
+        return roots.isEmpty();
+    }
+
+    /**
+     * @return the characters every path matched by the regular expression starts with
+     */
+    static String literalPrefix(String regex) {
+        if (hasTopLevelAlternation(regex)) {
+            return "";
+        }
+        final StringBuilder prefix = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length()) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= regex.length()) {
+                    break;
+                }
+                final char next = regex.charAt(i + 1);
+                if (next == 'Q') {
+                    final int end = regex.indexOf("\\E", i + 2);
+                    prefix.append(end < 0 ? regex.substring(i + 2) : regex.substring(i + 2, end));
+                    if (end < 0) {
+                        break;
+                    }
+                    i = end + 2;
+                    continue;
+                }
+                if (Character.isLetterOrDigit(next)) {
+                    // character class (\d, \w...) or back reference
+                    break;
+                }
+                prefix.append(next);
+                i += 2;
+                continue;
+            }
+            if (META_CHARACTERS.indexOf(c) >= 0) {
+                // a quantifier applies to the previous character, which is then optional
+                if ((c == '*' || c == '?' || c == '{') && prefix.length() > 0) {
+                    prefix.setLength(prefix.length() - 1);
+                }
+                break;
+            }
+            prefix.append(c);
+            i++;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean quoted = false;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (quoted) {
+                if (c == '\\' && i + 1 < regex.length() && regex.charAt(i + 1) == 'E') {
+                    quoted = false;
+                    i++;
+                }
+            } else if (c == '\\') {
+                if (i + 1 < regex.length() && regex.charAt(i + 1) == 'Q') {
+                    quoted = true;
+                }
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
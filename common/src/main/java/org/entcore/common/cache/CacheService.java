@@ -7,6 +7,7 @@ import io.vertx.core.json.JsonObject;
 import org.entcore.common.redis.Redis;
 import org.entcore.common.user.UserInfos;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -45,6 +46,11 @@ public interface CacheService {
 
     void removeForLang(String lang, String key, Handler<AsyncResult<Void>> handler);
 
+    /**
+     * Removes the entry of each user with a single DEL command, e.g. when their groups changed.
+     */
+    void removeForUsers(Collection<String> userIds, String key, Handler<AsyncResult<Void>> handler);
+
     void get(String key, Handler<AsyncResult<Optional<String>>> handler);
 
     void getForUser(UserInfos user, String key, Handler<AsyncResult<Optional<String>>> handler);
@@ -60,4 +66,10 @@ public interface CacheService {
     void prependToList(String key, String value, Handler<AsyncResult<Long>> handler);
 
     void removeLastFromList(String key, Handler<AsyncResult<String>> handler);
+
+    /**
+     * Prepends the same value to several lists and trims each of them to maxLength elements.
+     * The LPUSH and LTRIM commands are pipelined by batches of keys.
+     */
+    void prependToLists(Collection<String> keys, String value, int maxLength, Handler<AsyncResult<Void>> handler);
 }
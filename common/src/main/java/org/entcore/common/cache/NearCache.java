@@ -0,0 +1,232 @@
+/*
+ * Copyright © "Open Digital Education", 2017
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.common.cache;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * <p>Bounded in-memory cache shared by the near-caches of the platform (sessions, Neo4j results).</p>
+ * <p>
+ *     Entries are evicted in LRU order once {@code maxSize} is reached and considered stale after {@code ttl}
+ *     milliseconds. Each entry may carry tags, so that all the entries depending on the same data are dropped by
+ *     {@link #invalidateTag(String)}.
+ * </p>
+ * <p>
+ *     Every invalidation increments a generation : a value fetched while an invalidation was received may predate
+ *     it, so {@link #put(String, Object, Collection, long)} drops it when the generation read before the fetch
+ *     changed.
+ * </p>
+ */
+public class NearCache<V> {
+
+	private final int maxSize;
+	private final long ttl;
+	private final LongSupplier clock;
+	private final Map<String, CachedValue<V>> entries;
+	private final Map<String, Set<String>> keysByTag = new HashMap<>();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	private long generation = 0L;
+
+	private static final class CachedValue<V> {
+		private final V value;
+		private final Collection<String> tags;
+		private final long expireAt;
+		private long lastTouch;
+
+		private CachedValue(V value, Collection<String> tags, long now, long expireAt) {
+			this.value = value;
+			this.tags = tags;
+			this.lastTouch = now;
+			this.expireAt = expireAt;
+		}
+	}
+
+	/**
+	 * @param clock Current time in milliseconds
+	 */
+	public NearCache(int maxSize, long ttl, LongSupplier clock) {
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		this.clock = clock;
+		this.entries = new LinkedHashMap<String, CachedValue<V>>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedValue<V>> eldest) {
+				if (size() > NearCache.this.maxSize) {
+					evictions.incrementAndGet();
+					unindex(eldest.getKey(), eldest.getValue());
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * @return the cached value or {@code null} when it is absent or expired
+	 */
+	public V get(String key) {
+		if (key == null) {
+			return null;
+		}
+		synchronized (this) {
+			final CachedValue<V> entry = entries.get(key);
+			if (entry != null && entry.expireAt <= clock.getAsLong()) {
+				entries.remove(key);
+				unindex(key, entry);
+				return null;
+			}
+			return entry != null ? entry.value : null;
+		}
+	}
+
+	/**
+	 * @return the number of invalidations received so far, to read before fetching a value that will be put in the
+	 * cache (see {@link #put(String, Object, Collection, long)})
+	 */
+	public synchronized long generation() {
+		return generation;
+	}
+
+	/**
+	 * Caches a value unless an invalidation was received since {@code generation} was read.
+	 * @param tags Tags of the data the value depends on, may be {@code null}
+	 * @param generation value of {@link #generation()} read before the fetch, -1 to skip the check
+	 * @return false when the value was dropped
+	 */
+	public boolean put(String key, V value, Collection<String> tags, long generation) {
+		if (key == null || value == null) {
+			return false;
+		}
+		final long now = clock.getAsLong();
+		final CachedValue<V> entry = new CachedValue<>(value, tags, now, now + ttl);
+		synchronized (this) {
+			if (generation >= 0 && generation != this.generation) {
+				return false;
+			}
+			final CachedValue<V> previous = entries.put(key, entry);
+			if (previous != null) {
+				unindex(key, previous);
+			}
+			if (tags != null) {
+				for (String tag : tags) {
+					keysByTag.computeIfAbsent(tag, k -> new HashSet<>()).add(key);
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Records an access to a cached value.
+	 * @return true at most once every {@code delay} milliseconds by entry
+	 */
+	public synchronized boolean touch(String key, long delay) {
+		final CachedValue<V> entry = key != null ? entries.get(key) : null;
+		if (entry == null) {
+			return false;
+		}
+		final long now = clock.getAsLong();
+		if (now - entry.lastTouch < delay) {
+			return false;
+		}
+		entry.lastTouch = now;
+		return true;
+	}
+
+	public synchronized void invalidate(String key) {
+		generation++;
+		final CachedValue<V> entry = entries.remove(key);
+		if (entry != null) {
+			invalidations.incrementAndGet();
+			unindex(key, entry);
+		}
+	}
+
+	public synchronized void invalidateTag(String tag) {
+		generation++;
+		final Set<String> keys = keysByTag.remove(tag);
+		if (keys != null) {
+			for (String key : keys) {
+				final CachedValue<V> entry = entries.remove(key);
+				if (entry != null) {
+					invalidations.incrementAndGet();
+					unindex(key, entry);
+				}
+			}
+		}
+	}
+
+	public synchronized void clear() {
+		generation++;
+		invalidations.addAndGet(entries.size());
+		entries.clear();
+		keysByTag.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return the number of entries evicted because the cache was full
+	 */
+	public AtomicLong getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return the number of entries removed by an invalidation
+	 */
+	public AtomicLong getInvalidations() {
+		return invalidations;
+	}
+
+	private void unindex(String key, CachedValue<V> entry) {
+		if (entry.tags == null) {
+			return;
+		}
+		for (String tag : entry.tags) {
+			final Set<String> keys = keysByTag.get(tag);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty()) {
+					keysByTag.remove(tag);
+				}
+			}
+		}
+	}
+
+}
@@ -1,26 +1,42 @@
 package org.entcore.common.cache;
 
 import fr.wseduc.webutils.DefaultAsyncResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.micrometer.backends.BackendRegistries;
 import io.vertx.redis.RedisClient;
 import org.entcore.common.redis.Redis;
 import org.entcore.common.user.UserInfos;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public class RedisCacheService implements CacheService {
+    private static final Logger log = LoggerFactory.getLogger(RedisCacheService.class);
+    private static final int FAN_OUT_BATCH_SIZE = 500;
     final String GLOBAL_KEY = "global:";
     final String USER_KEY = "user:";
     final String LANG_KEY = "global:";
     final RedisClient redis;
+    private Timer fanOutBatchTimer;
 
     public RedisCacheService(RedisClient redis) {
         this.redis = redis;
+        registerMetrics();
     }
 
     public RedisCacheService(Vertx vertx, JsonObject redisConfig) {
@@ -28,23 +44,32 @@ public class RedisCacheService implements CacheService {
             throw new IllegalArgumentException("Could not create RedisCacheService because of missing redisConfig");
         Redis.getInstance().init(vertx, redisConfig);
         this.redis = Redis.getClient();
+        registerMetrics();
+    }
 
+    private void registerMetrics() {
+        final MeterRegistry registry = BackendRegistries.getDefaultNow();
+        if (registry != null) {
+            fanOutBatchTimer = Timer.builder("cache.list.fanout.batch")
+                    .description("time to push a value to a batch of lists")
+                    .register(registry);
+        }
     }
 
     private void doSet(String key, String value, Integer ttl, Handler<AsyncResult<Void>> handler) {
-        redis.set(key, value, res -> {
+        final Handler<AsyncResult<?>> resultHandler = res -> {
             if (res.succeeded()) {
-                if (ttl != null && ttl > 0) {
-                    redis.expire(key, ttl, resTtl -> {
-                        handler.handle(new DefaultAsyncResult<>(null));
-                    });
-                } else {
-                    handler.handle(new DefaultAsyncResult<>(null));
-                }
+                handler.handle(new DefaultAsyncResult<>(null));
             } else {
                 handler.handle(new DefaultAsyncResult<>(res.cause()));
             }
-        });
+        };
+        if (ttl != null && ttl > 0) {
+            // SET EX : value and expiration in one atomic command
+            redis.setex(key, ttl, value, resultHandler::handle);
+        } else {
+            redis.set(key, value, resultHandler::handle);
+        }
     }
 
     private String globalKey(String key) {
@@ -56,7 +81,11 @@ public class RedisCacheService implements CacheService {
     }
 
     private String userKey(UserInfos user, String key) {
-        return USER_KEY + user.getUserId() + ":" + key;
+        return userKey(user.getUserId(), key);
+    }
+
+    private String userKey(String userId, String key) {
+        return USER_KEY + userId + ":" + key;
     }
 
     public void upsert(String key, String value, Integer ttl, Handler<AsyncResult<Void>> handler) {
@@ -93,6 +122,21 @@ public class RedisCacheService implements CacheService {
         doRemove(langKey(lang, key), handler);
     }
 
+    public void removeForUsers(Collection<String> userIds, String key, Handler<AsyncResult<Void>> handler) {
+        if (userIds == null || userIds.isEmpty()) {
+            handler.handle(new DefaultAsyncResult<>(null));
+            return;
+        }
+        final List<String> keys = userIds.stream().map(userId -> userKey(userId, key)).collect(Collectors.toList());
+        redis.delMany(keys, res -> {
+            if (res.succeeded()) {
+                handler.handle(new DefaultAsyncResult<>(null));
+            } else {
+                handler.handle(new DefaultAsyncResult<>(res.cause()));
+            }
+        });
+    }
+
     private void doGet(String key, Handler<AsyncResult<Optional<String>>> handler) {
         redis.get(key, ar -> {
             if (ar.succeeded()) {
@@ -150,4 +194,48 @@ public class RedisCacheService implements CacheService {
     public void getListLength(String key, Handler<AsyncResult<Long>> handler){
         redis.llen(key, handler);
     }
+
+    public void prependToLists(Collection<String> keys, String value, int maxLength, Handler<AsyncResult<Void>> handler) {
+        if (keys == null || keys.isEmpty()) {
+            handler.handle(new DefaultAsyncResult<>(null));
+            return;
+        }
+        final List<String> allKeys = new ArrayList<>(keys);
+        prependToListsBatch(allKeys, 0, value, maxLength, handler);
+    }
+
+    private void prependToListsBatch(List<String> keys, int offset, String value, int maxLength,
+            Handler<AsyncResult<Void>> handler) {
+        if (offset >= keys.size()) {
+            handler.handle(new DefaultAsyncResult<>(null));
+            return;
+        }
+        final long start = System.nanoTime();
+        final int end = Math.min(offset + FAN_OUT_BATCH_SIZE, keys.size());
+        // the commands of a batch are written on the connection without waiting for the replies (pipelining)
+        final List<Future> futures = new ArrayList<>();
+        for (String key : keys.subList(offset, end)) {
+            final Promise<Long> pushed = Promise.promise();
+            final Promise<String> trimmed = Promise.promise();
+            redis.lpush(key, value, pushed);
+            redis.ltrim(key, 0, maxLength - 1, trimmed);
+            futures.add(pushed.future());
+            futures.add(trimmed.future());
+        }
+        CompositeFuture.all(futures).setHandler(res -> {
+            final long elapsed = System.nanoTime() - start;
+            if (fanOutBatchTimer != null) {
+                fanOutBatchTimer.record(elapsed, TimeUnit.NANOSECONDS);
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Pushed value to " + (end - offset) + " lists in " +
+                        TimeUnit.NANOSECONDS.toMillis(elapsed) + " ms");
+            }
+            if (res.succeeded()) {
+                prependToListsBatch(keys, end, value, maxLength, handler);
+            } else {
+                handler.handle(new DefaultAsyncResult<>(res.cause()));
+            }
+        });
+    }
 }
@@ -0,0 +1,411 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.common.events.impl;
+
+import fr.wseduc.webutils.Either;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.parsetools.RecordParser;
+import io.vertx.micrometer.backends.BackendRegistries;
+import io.vertx.pgclient.PgException;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.Tuple;
+import org.entcore.common.sql.Sql;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Buffers the events by table (and set of columns) and inserts them in one prepared statement per group when
+ * the group reaches batch-size events or every flush-delay milliseconds.
+ * <p>
+ *     When max-pending events are waiting or when postgres is unreachable, the events are appended to a spill file
+ *     (limited to spill-max-size bytes) which is inserted again, line by line, after the next successful flush.
+ *     Each buffer has its own file, spill-path suffixed with the module name and the rank of the buffer in this
+ *     module, so that a restarted module replays the files of its previous run. spill-path must be local to the
+ *     node. The spilled events are appended through one file handle, closed before the file is moved to be
+ *     replayed.
+ *     A batch rejected by postgres is inserted event by event to keep only the invalid events out.
+ *     The pending events are flushed when the verticle which created the buffer is undeployed.
+ * </p>
+ */
+public class PostgresqlEventBuffer {
+
+	private static final Logger log = LoggerFactory.getLogger(PostgresqlEventBuffer.class);
+	private static final Map<String, AtomicInteger> spillRanks = new ConcurrentHashMap<>();
+	private final Vertx vertx;
+	private final Supplier<PgPool> pgClient;
+	private final int batchSize;
+	private final int maxPending;
+	private final String spillPath;
+	private final String replayPath;
+	private final long flushDelay;
+	private final long spillMaxSize;
+	private final Map<String, List<PendingEvent>> groups = new HashMap<>();
+	private final AtomicInteger pending = new AtomicInteger(0);
+	private final AtomicLong spillSize = new AtomicLong(0);
+	private final AtomicBoolean replaying = new AtomicBoolean(false);
+	private final Object spillLock = new Object();
+	private final List<Handler<AsyncFile>> waitingSpills = new ArrayList<>();
+	private final long periodicId;
+	private AsyncFile appender;
+	private boolean opening;
+	private Timer flushTimer;
+
+	private static class PendingEvent {
+		private final String tableName;
+		private final JsonObject event;
+		private final Handler<Either<String, Void>> handler;
+
+		private PendingEvent(String tableName, JsonObject event, Handler<Either<String, Void>> handler) {
+			this.tableName = tableName;
+			this.event = event;
+			this.handler = handler;
+		}
+	}
+
+	public PostgresqlEventBuffer(Vertx vertx, Supplier<PgPool> pgClient, String module, JsonObject config) {
+		this.vertx = vertx;
+		this.pgClient = pgClient;
+		this.batchSize = config.getInteger("batch-size", 200);
+		this.maxPending = config.getInteger("max-pending", 20000);
+		this.spillPath = spillPath(config.getString("spill-path"), module);
+		this.replayPath = spillPath != null ? spillPath + ".replay" : null;
+		this.spillMaxSize = config.getLong("spill-max-size", 100L * 1024 * 1024);
+		if (spillPath != null) {
+			for (String path : new String[]{spillPath, replayPath}) {
+				if (vertx.fileSystem().existsBlocking(path)) {
+					spillSize.addAndGet(vertx.fileSystem().propsBlocking(path).size());
+				}
+			}
+		}
+		this.flushDelay = config.getLong("flush-delay", 1000L);
+		periodicId = vertx.setPeriodic(flushDelay, h -> flushAll());
+		vertx.getOrCreateContext().addCloseHook(this::close);
+		registerMetrics(module);
+	}
+
+	private static String spillPath(String path, String module) {
+		if (path == null) {
+			return null;
+		}
+		final String name = module != null ? module.replaceAll("[^A-Za-z0-9_-]", "_") : "default";
+		return path + "." + name + "." + spillRanks.computeIfAbsent(name, k -> new AtomicInteger()).getAndIncrement();
+	}
+
+	private void registerMetrics(String module) {
+		final MeterRegistry registry = BackendRegistries.getDefaultNow();
+		if (registry == null) {
+			return;
+		}
+		Gauge.builder("events.buffer.depth", pending, AtomicInteger::get)
+				.tag("module", module != null ? module : "")
+				.description("number of events waiting to be inserted").register(registry);
+		Gauge.builder("events.buffer.spill.size", spillSize, AtomicLong::get)
+				.tag("module", module != null ? module : "")
+				.description("size in bytes of the events spilled to disk").register(registry);
+		flushTimer = Timer.builder("events.buffer.flush")
+				.tag("module", module != null ? module : "")
+				.description("time to insert a batch of events").register(registry);
+	}
+
+	public int getPending() {
+		return pending.get();
+	}
+
+	public void add(String tableName, JsonObject event, Handler<Either<String, Void>> handler) {
+		if (pending.get() >= maxPending) {
+			spill(tableName, event, handler);
+			return;
+		}
+		pending.incrementAndGet();
+		final String key = tableName + new TreeSet<>(event.fieldNames());
+		final List<PendingEvent> batch;
+		synchronized (groups) {
+			final List<PendingEvent> group = groups.computeIfAbsent(key, k -> new ArrayList<>());
+			group.add(new PendingEvent(tableName, event, handler));
+			if (group.size() < batchSize) {
+				return;
+			}
+			batch = groups.remove(key);
+		}
+		insert(batch);
+	}
+
+	public Future<Void> flushAll() {
+		final List<List<PendingEvent>> batches;
+		synchronized (groups) {
+			batches = new ArrayList<>(groups.values());
+			groups.clear();
+		}
+		final List<Future> futures = new ArrayList<>();
+		for (List<PendingEvent> batch : batches) {
+			futures.add(insert(batch));
+		}
+		return join(futures);
+	}
+
+	/**
+	 * Stops the periodic flush and inserts (or spills) the pending events.
+	 */
+	public void close(Handler<AsyncResult<Void>> handler) {
+		vertx.cancelTimer(periodicId);
+		flushAll().onComplete(flushed -> {
+			final AsyncFile file;
+			synchronized (spillLock) {
+				file = appender;
+				appender = null;
+			}
+			if (file != null) {
+				file.close(handler);
+			} else {
+				handler.handle(Future.succeededFuture());
+			}
+		});
+	}
+
+	private static Future<Void> join(List<Future> futures) {
+		final Promise<Void> promise = Promise.promise();
+		CompositeFuture.join(futures).onComplete(ar -> promise.complete());
+		return promise.future();
+	}
+
+	private Future<Void> insert(final List<PendingEvent> batch) {
+		if (batch.isEmpty()) {
+			return Future.succeededFuture();
+		}
+		final Promise<Void> promise = Promise.promise();
+		final long start = System.nanoTime();
+		final String tableName = batch.get(0).tableName;
+		final StringBuilder columns = new StringBuilder();
+		for (String column : new TreeSet<>(batch.get(0).event.fieldNames())) {
+			columns.append(columns.length() > 0 ? "," : "").append(Sql.escapeField(column));
+		}
+		final JsonArray rows = new JsonArray();
+		for (PendingEvent e : batch) {
+			rows.add(e.event);
+		}
+		// the values are converted to the types of the columns by postgres, as with the literal inserts
+		final String query = "INSERT INTO " + tableName + " (" + columns + ") SELECT " + columns +
+				" FROM json_populate_recordset(NULL::" + tableName + ", $1::text::json)";
+		pgClient.get().preparedQuery(query).execute(Tuple.of(rows.encode()), ar -> {
+			if (flushTimer != null) {
+				flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+			}
+			if (ar.succeeded()) {
+				pending.addAndGet(-batch.size());
+				for (PendingEvent e : batch) {
+					e.handler.handle(new Either.Right<>(null));
+				}
+				promise.complete();
+				replaySpill();
+			} else if (ar.cause() instanceof PgException && batch.size() > 1) {
+				log.warn("Error persisting " + batch.size() + " events in " + tableName + ", retry one by one : " +
+						ar.cause().getMessage());
+				pending.addAndGet(-batch.size());
+				final List<Future> futures = new ArrayList<>();
+				for (PendingEvent e : batch) {
+					pending.incrementAndGet();
+					final List<PendingEvent> single = new ArrayList<>();
+					single.add(e);
+					futures.add(insert(single));
+				}
+				join(futures).onComplete(promise);
+			} else if (ar.cause() instanceof PgException) {
+				pending.decrementAndGet();
+				final PendingEvent e = batch.get(0);
+				log.error("Error persisting events on postgresql : " + e.event.encode(), ar.cause());
+				e.handler.handle(new Either.Left<>("Error : " + ar.cause().getMessage() + ", Event : " + e.event.encode()));
+				promise.complete();
+			} else {
+				log.error("Error persisting " + batch.size() + " events in " + tableName, ar.cause());
+				pending.addAndGet(-batch.size());
+				final List<Future> futures = new ArrayList<>();
+				for (PendingEvent e : batch) {
+					futures.add(spill(e.tableName, e.event, e.handler));
+				}
+				join(futures).onComplete(promise);
+			}
+		});
+		return promise.future();
+	}
+
+	private Future<Void> spill(String tableName, JsonObject event, Handler<Either<String, Void>> handler) {
+		final Buffer line = Buffer.buffer(new JsonObject().put("table", tableName).put("event", event).encode() + "\n");
+		if (spillPath == null || spillSize.addAndGet(line.length()) > spillMaxSize) {
+			if (spillPath != null) {
+				spillSize.addAndGet(-line.length());
+			}
+			log.error("Event buffer full, event dropped : " + event.encode());
+			handler.handle(new Either.Left<>("Event buffer full"));
+			return Future.succeededFuture();
+		}
+		final Promise<Void> promise = Promise.promise();
+		final Handler<AsyncFile> write = file -> {
+			if (file == null) {
+				spillSize.addAndGet(-line.length());
+				handler.handle(new Either.Left<>("Error spilling event : the spill file can not be opened"));
+				promise.complete();
+				return;
+			}
+			file.write(line, res -> {
+				if (res.failed()) {
+					spillSize.addAndGet(-line.length());
+					log.error("Error writing events spill file " + spillPath, res.cause());
+				}
+				handler.handle(res.succeeded() ? new Either.Right<>(null) :
+						new Either.Left<>("Error spilling event : " + res.cause().getMessage()));
+				promise.complete();
+			});
+		};
+		synchronized (spillLock) {
+			if (appender != null) {
+				// the writes are queued by the file, under the lock so that the file is not closed meanwhile
+				write.handle(appender);
+				return promise.future();
+			}
+			waitingSpills.add(write);
+			if (opening) {
+				return promise.future();
+			}
+			opening = true;
+		}
+		vertx.fileSystem().open(spillPath, new OpenOptions().setAppend(true).setCreate(true), ar -> {
+			synchronized (spillLock) {
+				if (ar.succeeded()) {
+					appender = ar.result();
+				} else {
+					log.error("Error opening events spill file " + spillPath, ar.cause());
+				}
+				opening = false;
+				for (Handler<AsyncFile> w : waitingSpills) {
+					w.handle(appender);
+				}
+				waitingSpills.clear();
+			}
+		});
+		return promise.future();
+	}
+
+	private void replaySpill() {
+		if (spillPath == null || spillSize.get() == 0 || pending.get() >= maxPending || !replaying.compareAndSet(false, true)) {
+			return;
+		}
+		vertx.fileSystem().exists(replayPath, exists -> {
+			if (exists.succeeded() && Boolean.TRUE.equals(exists.result())) {
+				// replay interrupted by a restart
+				replay();
+				return;
+			}
+			final AsyncFile file;
+			synchronized (spillLock) {
+				if (opening) {
+					replaying.set(false);
+					return;
+				}
+				// the next spilled events go to a new file
+				file = appender;
+				appender = null;
+			}
+			final Promise<Void> closed = Promise.promise();
+			if (file != null) {
+				file.close(closed);
+			} else {
+				closed.complete();
+			}
+			closed.future().onComplete(c -> vertx.fileSystem().move(spillPath, replayPath, moved -> {
+				if (moved.failed()) {
+					replaying.set(false);
+					return;
+				}
+				replay();
+			}));
+		});
+	}
+
+	private void replay() {
+		vertx.fileSystem().open(replayPath, new OpenOptions().setRead(true).setWrite(false), opened -> {
+			if (opened.failed()) {
+				log.error("Error reading events spill file " + replayPath, opened.cause());
+				replaying.set(false);
+				return;
+			}
+			final AsyncFile file = opened.result();
+			final AtomicInteger count = new AtomicInteger();
+			final RecordParser parser = RecordParser.newDelimited("\n", file);
+			parser.handler(record -> {
+				spillSize.addAndGet(-(record.length() + 1));
+				final String line = record.toString();
+				if (line.isEmpty()) {
+					return;
+				}
+				try {
+					final JsonObject spilled = new JsonObject(line);
+					add(spilled.getString("table"), spilled.getJsonObject("event"), res -> {
+						if (res.isLeft()) {
+							log.error("Error persisting spilled event : " + res.left().getValue());
+						}
+					});
+					count.incrementAndGet();
+				} catch (RuntimeException e) {
+					log.error("Invalid spilled event : " + line, e);
+				}
+				if (pending.get() >= maxPending) {
+					// let the buffer drain before reading the next events
+					parser.pause();
+					vertx.setTimer(flushDelay, h -> parser.resume());
+				}
+			});
+			parser.exceptionHandler(e -> {
+				log.error("Error reading events spill file " + replayPath, e);
+				file.close();
+				replaying.set(false);
+			});
+			parser.endHandler(v -> file.close(closed -> {
+				log.info("Replayed " + count.get() + " spilled events");
+				vertx.fileSystem().delete(replayPath, deleted -> replaying.set(false));
+			}));
+		});
+	}
+
+}
@@ -63,6 +63,7 @@ public class PostgresqlEventStore extends GenericEventStore {
 	private boolean enablePersistTimer = false;
 	private final AtomicInteger countNoAckReceive = new AtomicInteger(0);
 	private int maxNumberNoAck = 5;
+	private PostgresqlEventBuffer buffer;
 
 	public void init() {
 		init(ar -> {
@@ -126,6 +127,10 @@ public class PostgresqlEventStore extends GenericEventStore {
 					}
 				});
 				enablePersistTimer = eventStorePGConfig.getBoolean("enable-persist-fallback-timer", false);
+				final JsonObject bufferConfig = eventStorePGConfig.getJsonObject("buffer");
+				if (bufferConfig != null && buffer == null) {
+					buffer = new PostgresqlEventBuffer(vertx, () -> pgClient, module, bufferConfig);
+				}
 			} else {
 				handler.handle(Future.failedFuture(new ValidationException("Missing postgresql config.")));
 			}
@@ -235,6 +240,10 @@ public class PostgresqlEventStore extends GenericEventStore {
 				e.put("ip", ip.substring(0, idxComma));
 			}
 		}
+		if (buffer != null) {
+			buffer.add(tableName, e, handler);
+			return;
+		}
 		final String query = Sql.insertQuery(tableName, e);
 		pgClient.query(query).execute(ar -> {
 			if (ar.succeeded()) {
@@ -255,7 +264,9 @@ public class PostgresqlEventStore extends GenericEventStore {
 		payload.put("platform_id", platform);
 		final AtomicBoolean ack = new AtomicBoolean(false);
 		final AtomicLong timerId = new AtomicLong(-1);
-		if (enablePersistTimer) {
+		// the buffer acknowledges an event once inserted or spilled, which may take longer than the fallback
+		// delay : a retry would insert the event twice
+		if (enablePersistTimer && buffer == null) {
 			final long tId = vertx.setTimer(PERSIST_DELAY, r -> {
 				if (!ack.get()) {
 					logger.warn("Ack not receive after 10s. Retry persist payload id : " + payload.getString("id"));
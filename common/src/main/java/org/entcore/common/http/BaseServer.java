@@ -97,6 +97,7 @@ public abstract class BaseServer extends Server {
 		eventStoreFactory.setVertx(vertx);
 
 		Mfa.Factory.getFactory().init(vertx, config);
+		UserUtils.initSessionNearCache(vertx, config);
 
 		initFilters();
 
@@ -22,6 +22,7 @@ package org.entcore.common.neo4j;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
 
 public interface GraphDatabase {
 
@@ -42,6 +43,8 @@ public interface GraphDatabase {
 
 	void rollbackTransaction(int transactionId, Handler<JsonObject> handler);
 
+	ReadStream<JsonObject> stream(String query, JsonObject params);
+
 	void unmanagedExtension(String method, String uri, String body, Handler<JsonObject> handler);
 
 	void close();
@@ -30,18 +30,27 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
+import org.entcore.common.utils.ExceptionUtils;
 
 import java.net.URI;
+import java.util.Collection;
 import java.util.Map;
 
 public class Neo4j {
 
 	private EventBus eb;
 	private GraphDatabase database;
+	private Neo4jResultCache resultCache;
 	private static final Logger log = LoggerFactory.getLogger(Neo4j.class);
 
 	private Neo4j() {}
 
+	Neo4j(EventBus eb, GraphDatabase database) {
+		this.eb = eb;
+		this.database = database;
+	}
+
 	private static class Neo4jHolder {
 		private static final Neo4j instance = new Neo4j();
 	}
@@ -66,13 +75,14 @@ public class Neo4j {
 			serverUris = new fr.wseduc.webutils.collections.JsonArray().add(serverUri);
 		}
 
+		GraphDatabase rest = null;
 		if (serverUris != null) {
 			try {
 				URI[] uris = new URI[serverUris.size()];
 				for (int i = 0; i < serverUris.size(); i++) {
 					uris[i] = new URI(serverUris.getString(i));
 				}
-				database = new Neo4jRest(uris, config.getBoolean("slave-readonly", false), vertx,
+				rest = new Neo4jRest(uris, config.getBoolean("slave-readonly", false), vertx,
 						config.getLong("checkDelay", 3000l),
 						config.getInteger("poolSize", 16),
 						config.getBoolean("keepAlive", true),
@@ -80,9 +90,29 @@ public class Neo4j {
 			} catch (Exception e) {
 				log.error(e.getMessage(), e);
 			}
+		}
+		final JsonArray boltUris = config.getJsonArray("bolt-uris");
+		if ("bolt".equals(config.getString("transport")) && boltUris != null && boltUris.size() > 0) {
+			try {
+				URI[] uris = new URI[boltUris.size()];
+				for (int i = 0; i < boltUris.size(); i++) {
+					uris[i] = new URI(boltUris.getString(i));
+				}
+				database = new Neo4jBolt(uris, config.getBoolean("slave-readonly", false), vertx,
+						config.getInteger("poolSize", 16), config, rest);
+				if (rest == null) {
+					log.warn("Neo4j bolt transport without server-uris : explicit transactions can't be continued " +
+							"from another module.");
+				}
+			} catch (Exception e) {
+				log.error(e.getMessage(), e);
+			}
+		} else if (rest != null) {
+			database = rest;
 		} else {
 			log.error("Invalid Neo4j URI");
 		}
+		resultCache = Neo4jResultCache.create(eb, config);
 	}
 
 	public JsonObject getMetrics(){
@@ -117,6 +147,90 @@ public class Neo4j {
 		});
 	}
 
+	/**
+	 * Executes a query and pushes each row to {@code rowHandler} without keeping the whole result in memory.
+	 * The handler is called once all rows are handled, with an error message if the query failed.
+	 */
+	public void execute(String query, JsonObject params, final Handler<JsonObject> rowHandler,
+			final Handler<Message<JsonObject>> handler) {
+		final Handler<JsonObject> h = resultHandler(handler);
+		stream(query, params)
+				.handler(rowHandler)
+				.exceptionHandler(e -> h.handle(ExceptionUtils.exceptionToJson(e)))
+				.endHandler(v -> h.handle(new JsonObject()));
+	}
+
+	/**
+	 * Streams the rows of a query. The stream can be paused to apply back pressure on the Neo4j response.
+	 */
+	public ReadStream<JsonObject> stream(String query, JsonObject params) {
+		return database.stream(query, params);
+	}
+
+	/**
+	 * Executes a read-only query through the result cache when it is enabled for {@code name}.
+	 * Queries with writing clauses are never cached.
+	 * @param name Name of the query in the cache configuration and metrics
+	 * @param tags Tags of the data read by the query, used to invalidate the cached results
+	 */
+	public void executeCached(String name, Collection<String> tags, String query, JsonObject params,
+			Handler<Message<JsonObject>> handler) {
+		if (!isResultCacheEnabled(name) || Neo4jRest.WRITING_CLAUSES_PATTERN.matcher(query).find()) {
+			execute(query, params, handler);
+			return;
+		}
+		final String key = Neo4jResultCache.key(name, new JsonObject().put("query", query).put("params", params));
+		final JsonObject cached = resultCache.get(name, key);
+		if (cached != null) {
+			resultHandler(handler).handle(cached);
+			return;
+		}
+		final long generation = resultCache.generation();
+		database.execute(query, params, res -> {
+			if (res.getString("message") == null) {
+				resultCache.put(key, res, tags, generation);
+			}
+			resultHandler(handler).handle(res);
+		});
+	}
+
+	/**
+	 * Executes read-only statements in a single transaction through the result cache when it is enabled for
+	 * {@code name}, see {@link #executeCached(String, Collection, String, JsonObject, Handler)}.
+	 */
+	public void executeTransactionCached(String name, Collection<String> tags, JsonArray statements,
+			Handler<Message<JsonObject>> handler) {
+		boolean readOnly = isResultCacheEnabled(name);
+		for (int i = 0; readOnly && i < statements.size(); i++) {
+			readOnly = !Neo4jRest.WRITING_CLAUSES_PATTERN.matcher(statements.getJsonObject(i).getString("statement", "")).find();
+		}
+		if (!readOnly) {
+			executeTransaction(statements, null, true, true, true, handler);
+			return;
+		}
+		final String key = Neo4jResultCache.key(name, statements);
+		final JsonObject cached = resultCache.get(name, key);
+		if (cached != null) {
+			resultHandler(handler).handle(cached);
+			return;
+		}
+		final long generation = resultCache.generation();
+		database.executeTransaction(statements, null, true, true, true, res -> {
+			if (res.getString("message") == null) {
+				resultCache.put(key, res, tags, generation);
+			}
+			resultHandler(handler).handle(res);
+		});
+	}
+
+	public boolean isResultCacheEnabled(String name) {
+		return resultCache != null && resultCache.isEnabled(name);
+	}
+
+	public JsonObject getResultCacheStats() {
+		return resultCache != null ? resultCache.getStats() : null;
+	}
+
 	public void executeBatch(JsonArray queries, final Handler<Message<JsonObject>> handler) {
 		database.executeBatch(queries, resultHandler(handler));
 	}
@@ -133,12 +247,30 @@ public class Neo4j {
 
 	public void executeTransaction(JsonArray statements, Integer transactionId, boolean commit,
 			Handler<Message<JsonObject>> handler) {
-		database.executeTransaction(statements, transactionId, commit, resultHandler(handler));
+		database.executeTransaction(statements, transactionId, commit, committed(transactionId, commit, handler));
 	}
 
 	public void executeTransaction(JsonArray statements, Integer transactionId, boolean commit,
 			boolean allowRetry, boolean forceReadOnly, Handler<Message<JsonObject>> handler) {
-		database.executeTransaction(statements, transactionId, commit, allowRetry, forceReadOnly, resultHandler(handler));
+		database.executeTransaction(statements, transactionId, commit, allowRetry, forceReadOnly,
+				committed(transactionId, commit, handler));
+	}
+
+	/**
+	 * The statements of an explicit transaction may have been sent by other modules, which could not publish the
+	 * invalidation of the data they changed before the commit : the result caches are cleared once it is committed.
+	 */
+	private Handler<JsonObject> committed(Integer transactionId, boolean commit, Handler<Message<JsonObject>> handler) {
+		final Handler<JsonObject> h = resultHandler(handler);
+		if (transactionId == null || !commit) {
+			return h;
+		}
+		return res -> {
+			if (res.getString("message") == null) {
+				Neo4jResultCache.publishClear(eb);
+			}
+			h.handle(res);
+		};
 	}
 
 	public void resetTransactionTimeout(int transactionId, Handler<Message<JsonObject>> handler) {
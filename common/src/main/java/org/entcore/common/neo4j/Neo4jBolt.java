@@ -0,0 +1,541 @@
+/*
+ * Copyright © "Open Digital Education", 2017
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.common.neo4j;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
+import org.neo4j.driver.v1.AccessMode;
+import org.neo4j.driver.v1.AuthToken;
+import org.neo4j.driver.v1.AuthTokens;
+import org.neo4j.driver.v1.Config;
+import org.neo4j.driver.v1.Driver;
+import org.neo4j.driver.v1.Record;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.StatementResultCursor;
+import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.exceptions.Neo4jException;
+import org.neo4j.driver.v1.types.Entity;
+import org.neo4j.driver.v1.types.Path;
+
+import java.net.URI;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * {@link GraphDatabase} implementation over the Bolt protocol.
+ * <p>
+ *     Connections are pooled by the driver. Statements of a transaction or a batch are sent without waiting for the
+ *     previous results, and read queries are routed to the read replicas when {@code slave-readonly} is enabled
+ *     (a {@code bolt+routing} uri is required to route in a cluster).
+ * </p>
+ * <p>
+ *     Transaction ids are passed between modules on the event bus, so explicit transactions (opened with
+ *     {@code commit=false} or continued with a {@code transactionId}) stay on the REST transport when it is configured :
+ *     the server keeps them and every instance can continue them. Without REST transport, they are opened over Bolt,
+ *     keep their session until they are committed or rolled back, and are rolled back after
+ *     {@code transaction-timeout} ms of inactivity. Such a transaction only exists in the instance which began it :
+ *     its id is prefixed with a random node prefix so that an id used on another instance is reported as unknown
+ *     instead of running in a foreign transaction.
+ *     Unmanaged extensions are not available over Bolt and are delegated to the REST transport when it is configured.
+ * </p>
+ */
+public class Neo4jBolt implements GraphDatabase {
+
+	private static final Logger logger = LoggerFactory.getLogger(Neo4jBolt.class);
+	private static final int TRANSACTION_PREFIX_BITS = 10;
+
+	private final Vertx vertx;
+	private final Driver driver;
+	private final boolean ro;
+	private final GraphDatabase rest;
+	private final long transactionTimeout;
+	private final long expiryTimerId;
+	private final int transactionIdPrefix = new SecureRandom().nextInt(1 << TRANSACTION_PREFIX_BITS)
+			<< (31 - TRANSACTION_PREFIX_BITS);
+	private final AtomicInteger transactionIds = new AtomicInteger();
+	private final Map<Integer, BoltTransaction> transactions = new ConcurrentHashMap<>();
+
+	private static final class BoltTransaction {
+		private final Session session;
+		private final Transaction transaction;
+		private final AtomicInteger inFlight = new AtomicInteger();
+		private volatile long lastAccess = System.currentTimeMillis();
+
+		private BoltTransaction(Session session, Transaction transaction) {
+			this.session = session;
+			this.transaction = transaction;
+		}
+	}
+
+	public Neo4jBolt(URI[] uris, boolean ro, Vertx vertx, int poolSize, JsonObject neo4jConfig, GraphDatabase rest) {
+		this.vertx = vertx;
+		this.ro = ro;
+		this.rest = rest;
+		final JsonObject conf = neo4jConfig != null ? neo4jConfig : new JsonObject();
+		final AuthToken authToken;
+		if (conf.containsKey("username") && conf.containsKey("password")) {
+			authToken = AuthTokens.basic(conf.getString("username"), conf.getString("password"));
+		} else {
+			authToken = AuthTokens.none();
+		}
+		final Config config = Config.build()
+				.withMaxConnectionPoolSize(conf.getInteger("bolt-pool-size", poolSize))
+				.withConnectionAcquisitionTimeout(conf.getLong("bolt-acquisition-timeout", 60000L), TimeUnit.MILLISECONDS)
+				.toConfig();
+		if (uris.length > 1) {
+			driver = org.neo4j.driver.v1.GraphDatabase.routingDriver(Arrays.asList(uris), authToken, config);
+		} else {
+			driver = org.neo4j.driver.v1.GraphDatabase.driver(uris[0], authToken, config);
+		}
+		transactionTimeout = conf.getLong("transaction-timeout", 60000L);
+		expiryTimerId = vertx.setPeriodic(Math.max(1000L, transactionTimeout / 2), h -> rollbackExpiredTransactions());
+	}
+
+	@Override
+	public JsonObject getMetrics() {
+		final JsonObject metrics = new JsonObject().put("neo4j_bolt_open_transactions", transactions.size());
+		if (rest != null) {
+			metrics.mergeIn(rest.getMetrics());
+		}
+		return metrics;
+	}
+
+	@Override
+	public void execute(String query, JsonObject params, final Handler<JsonObject> handler) {
+		final Context context = vertx.getOrCreateContext();
+		final Session session = driver.session(isReadOnly(query) ? AccessMode.READ : AccessMode.WRITE);
+		session.runAsync(query, toParameters(params))
+				.thenCompose(StatementResultCursor::listAsync)
+				.whenComplete((records, err) -> {
+					session.closeAsync();
+					context.runOnContext(v -> {
+						if (err != null) {
+							handler.handle(error(err));
+						} else {
+							handler.handle(new JsonObject().put("result", toRows(records)));
+						}
+					});
+				});
+	}
+
+	@Override
+	public void executeBatch(JsonArray queries, final Handler<JsonObject> handler) {
+		final Context context = vertx.getOrCreateContext();
+		final Session session = driver.session(AccessMode.WRITE);
+		session.writeTransactionAsync(tx -> run(tx, queries, "query", "params"))
+				.whenComplete((results, err) -> {
+					session.closeAsync();
+					context.runOnContext(v -> {
+						if (err != null) {
+							handler.handle(error(err));
+							return;
+						}
+						final JsonArray out = new fr.wseduc.webutils.collections.JsonArray();
+						for (int i = 0; i < results.size(); i++) {
+							out.add(new JsonObject().put("result", toRows(results.get(i))).put("idx", i));
+						}
+						handler.handle(new JsonObject().put("results", out));
+					});
+				});
+	}
+
+	@Override
+	public void executeTransaction(JsonArray statements, Integer transactionId, boolean commit,
+			Handler<JsonObject> handler) {
+		executeTransaction(statements, transactionId, commit, true, false, handler);
+	}
+
+	@Override
+	public void executeTransaction(final JsonArray statements, final Integer transactionId, final boolean commit,
+			final boolean allowRetry, final boolean forceReadOnly, final Handler<JsonObject> handler) {
+		final Context context = vertx.getOrCreateContext();
+		if (transactionId == null && commit) {
+			final Session session = driver.session(forceReadOnly && ro ? AccessMode.READ : AccessMode.WRITE);
+			final CompletionStage<List<List<Record>>> f;
+			if (!allowRetry) {
+				f = session.beginTransactionAsync().thenCompose(tx -> run(tx, statements, "statement", "parameters")
+						.thenCompose(results -> tx.commitAsync().thenApply(v -> results)));
+			} else if (forceReadOnly && ro) {
+				f = session.readTransactionAsync(tx -> run(tx, statements, "statement", "parameters"));
+			} else {
+				f = session.writeTransactionAsync(tx -> run(tx, statements, "statement", "parameters"));
+			}
+			f.whenComplete((results, err) -> {
+				session.closeAsync();
+				context.runOnContext(v -> handler.handle(err != null ? error(err) : transactionResults(results, null)));
+			});
+			return;
+		}
+		if (rest != null) {
+			rest.executeTransaction(statements, transactionId, commit, allowRetry, forceReadOnly, handler);
+			return;
+		}
+		final CompletionStage<BoltTransaction> t;
+		if (transactionId == null) {
+			final Session session = driver.session(forceReadOnly && ro ? AccessMode.READ : AccessMode.WRITE);
+			t = session.beginTransactionAsync().thenApply(tx -> new BoltTransaction(session, tx));
+		} else {
+			final BoltTransaction tx = transactions.get(transactionId);
+			if (tx == null) {
+				handler.handle(new JsonObject().put("message", "Unknown transaction : " + transactionId));
+				return;
+			}
+			tx.lastAccess = System.currentTimeMillis();
+			t = CompletableFuture.completedFuture(tx);
+		}
+		t.whenComplete((tx, err) -> {
+			if (err != null) {
+				context.runOnContext(v -> handler.handle(error(err)));
+				return;
+			}
+			final Integer id = transactionId != null ? transactionId : nextTransactionId();
+			tx.inFlight.incrementAndGet();
+			transactions.put(id, tx);
+			run(tx.transaction, statements, "statement", "parameters")
+					.thenCompose(results -> commit ? tx.transaction.commitAsync().thenApply(v -> results) :
+							CompletableFuture.completedFuture(results))
+					.whenComplete((results, e) -> {
+						tx.lastAccess = System.currentTimeMillis();
+						tx.inFlight.decrementAndGet();
+						if (e != null) {
+							close(id, tx, false);
+						} else if (commit) {
+							transactions.remove(id);
+							tx.session.closeAsync();
+						}
+						context.runOnContext(v ->
+								handler.handle(e != null ? error(e) : transactionResults(results, commit ? null : id)));
+					});
+		});
+	}
+
+	@Override
+	public void resetTransactionTimeout(int transactionId, Handler<JsonObject> handler) {
+		if (rest != null) {
+			rest.resetTransactionTimeout(transactionId, handler);
+			return;
+		}
+		executeTransaction(new fr.wseduc.webutils.collections.JsonArray(), transactionId, false, handler);
+	}
+
+	@Override
+	public void rollbackTransaction(int transactionId, final Handler<JsonObject> handler) {
+		if (rest != null) {
+			rest.rollbackTransaction(transactionId, handler);
+			return;
+		}
+		final Context context = vertx.getOrCreateContext();
+		final BoltTransaction tx = transactions.get(transactionId);
+		if (tx == null) {
+			handler.handle(new JsonObject().put("message", "Unknown transaction : " + transactionId));
+			return;
+		}
+		close(transactionId, tx, true).whenComplete((v, err) -> context.runOnContext(x -> handler.handle(
+				err != null ? error(err) : new JsonObject().put("results", new fr.wseduc.webutils.collections.JsonArray()))));
+	}
+
+	@Override
+	public ReadStream<JsonObject> stream(String query, JsonObject params) {
+		final Session session = driver.session(isReadOnly(query) ? AccessMode.READ : AccessMode.WRITE);
+		return new BoltRowStream(vertx.getOrCreateContext(), session, session.runAsync(query, toParameters(params)));
+	}
+
+	@Override
+	public void unmanagedExtension(String method, String uri, String body, Handler<JsonObject> handler) {
+		if (rest != null) {
+			rest.unmanagedExtension(method, uri, body, handler);
+		} else {
+			handler.handle(new JsonObject().put("message", "Unmanaged extensions require the Neo4j REST transport."));
+		}
+	}
+
+	@Override
+	public void close() {
+		vertx.cancelTimer(expiryTimerId);
+		for (Map.Entry<Integer, BoltTransaction> e : transactions.entrySet()) {
+			close(e.getKey(), e.getValue(), true);
+		}
+		driver.closeAsync();
+		if (rest != null) {
+			rest.close();
+		}
+	}
+
+	private boolean isReadOnly(String query) {
+		return ro && query != null && !Neo4jRest.WRITING_CLAUSES_PATTERN.matcher(query).find();
+	}
+
+	private CompletionStage<Void> close(Integer id, BoltTransaction tx, boolean rollback) {
+		transactions.remove(id);
+		final CompletionStage<Void> f = rollback ? tx.transaction.rollbackAsync() : CompletableFuture.completedFuture(null);
+		return f.whenComplete((v, err) -> tx.session.closeAsync());
+	}
+
+	private int nextTransactionId() {
+		return transactionIdPrefix | (transactionIds.incrementAndGet() & ((1 << (31 - TRANSACTION_PREFIX_BITS)) - 1));
+	}
+
+	private void rollbackExpiredTransactions() {
+		final long expired = System.currentTimeMillis() - transactionTimeout;
+		for (Map.Entry<Integer, BoltTransaction> e : transactions.entrySet()) {
+			if (e.getValue().inFlight.get() == 0 && e.getValue().lastAccess < expired) {
+				logger.warn("Rollback expired Neo4j transaction : " + e.getKey());
+				close(e.getKey(), e.getValue(), true);
+			}
+		}
+	}
+
+	/**
+	 * Sends all the statements before reading any result, so that they are pipelined on the connection.
+	 */
+	private static CompletionStage<List<List<Record>>> run(Transaction tx, JsonArray statements, String queryField,
+			String paramsField) {
+		final List<CompletableFuture<List<Record>>> results = new ArrayList<>();
+		for (Object o : statements) {
+			if (!(o instanceof JsonObject)) continue;
+			final JsonObject s = (JsonObject) o;
+			results.add(tx.runAsync(s.getString(queryField), toParameters(s.getJsonObject(paramsField)))
+					.thenCompose(StatementResultCursor::listAsync).toCompletableFuture());
+		}
+		return CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+				.thenApply(v -> results.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+	}
+
+	private static JsonObject transactionResults(List<List<Record>> results, Integer transactionId) {
+		final JsonArray out = new fr.wseduc.webutils.collections.JsonArray();
+		for (List<Record> records : results) {
+			out.add(toRows(records));
+		}
+		final JsonObject json = new JsonObject().put("results", out);
+		if (transactionId != null) {
+			json.put("transactionId", transactionId);
+		}
+		return json;
+	}
+
+	private static JsonObject error(Throwable t) {
+		final Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+		final JsonObject error = new JsonObject().put("message", cause.getMessage());
+		if (cause instanceof Neo4jException) {
+			error.put("code", ((Neo4jException) cause).code());
+		} else {
+			logger.error("Neo4j bolt execution failed", cause);
+		}
+		return new JsonObject().put("message", new fr.wseduc.webutils.collections.JsonArray().add(error).encode());
+	}
+
+	private static JsonArray toRows(List<Record> records) {
+		final JsonArray out = new fr.wseduc.webutils.collections.JsonArray();
+		for (Record record : records) {
+			out.add(toRow(record));
+		}
+		return out;
+	}
+
+	static JsonObject toRow(Record record) {
+		final JsonObject row = new fr.wseduc.webutils.collections.JsonObject();
+		final List<String> keys = record.keys();
+		for (int i = 0; i < keys.size(); i++) {
+			row.put(keys.get(i), toJson(record.get(i).asObject()));
+		}
+		return row;
+	}
+
+	/**
+	 * Converts a driver value to the representation returned by the REST endpoints : nodes and relationships are
+	 * replaced by their properties, paths by the list of their nodes and relationships.
+	 */
+	static Object toJson(Object value) {
+		if (value == null || value instanceof String || value instanceof Boolean || value instanceof Number) {
+			return value;
+		} else if (value instanceof Entity) {
+			return toJson(((Entity) value).asMap());
+		} else if (value instanceof Path) {
+			final Path path = (Path) value;
+			final JsonArray a = new fr.wseduc.webutils.collections.JsonArray().add(toJson(path.start()));
+			for (Path.Segment segment : path) {
+				a.add(toJson(segment.relationship())).add(toJson(segment.end()));
+			}
+			return a;
+		} else if (value instanceof Map) {
+			final JsonObject o = new fr.wseduc.webutils.collections.JsonObject();
+			for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+				o.put(String.valueOf(e.getKey()), toJson(e.getValue()));
+			}
+			return o;
+		} else if (value instanceof List) {
+			final JsonArray a = new fr.wseduc.webutils.collections.JsonArray();
+			for (Object o : (List<?>) value) {
+				a.add(toJson(o));
+			}
+			return a;
+		} else if (value instanceof byte[]) {
+			return value;
+		}
+		return value.toString();
+	}
+
+	static Map<String, Object> toParameters(JsonObject params) {
+		if (params == null) {
+			return Collections.emptyMap();
+		}
+		final Map<String, Object> m = new LinkedHashMap<>();
+		for (Map.Entry<String, Object> e : params) {
+			m.put(e.getKey(), fromJson(e.getValue()));
+		}
+		return m;
+	}
+
+	private static Object fromJson(Object value) {
+		if (value instanceof JsonObject) {
+			return toParameters((JsonObject) value);
+		} else if (value instanceof JsonArray) {
+			final List<Object> l = new ArrayList<>();
+			for (Object o : (JsonArray) value) {
+				l.add(fromJson(o));
+			}
+			return l;
+		}
+		return value;
+	}
+
+	/**
+	 * Pulls the records one by one, so that pausing the stream stops reading the result.
+	 */
+	private static final class BoltRowStream implements ReadStream<JsonObject> {
+
+		private final Context context;
+		private final Session session;
+		private StatementResultCursor cursor;
+		private Handler<JsonObject> handler;
+		private Handler<Throwable> exceptionHandler;
+		private Handler<Void> endHandler;
+		private long demand = Long.MAX_VALUE;
+		private boolean fetching;
+		private boolean ended;
+
+		private BoltRowStream(Context context, Session session, CompletionStage<StatementResultCursor> cursor) {
+			this.context = context;
+			this.session = session;
+			cursor.whenComplete((c, err) -> context.runOnContext(v -> {
+				if (err != null) {
+					end(err);
+				} else {
+					this.cursor = c;
+					next();
+				}
+			}));
+		}
+
+		private void next() {
+			if (fetching || ended || cursor == null || demand == 0L) {
+				return;
+			}
+			fetching = true;
+			cursor.nextAsync().whenComplete((record, err) -> context.runOnContext(v -> {
+				fetching = false;
+				if (err != null) {
+					end(err);
+				} else if (record == null) {
+					end(null);
+				} else {
+					if (demand != Long.MAX_VALUE) {
+						demand--;
+					}
+					if (handler != null) {
+						handler.handle(toRow(record));
+					}
+					next();
+				}
+			}));
+		}
+
+		private void end(Throwable err) {
+			if (ended) {
+				return;
+			}
+			ended = true;
+			session.closeAsync();
+			if (err != null) {
+				if (exceptionHandler != null) {
+					final Throwable cause = err instanceof CompletionException && err.getCause() != null ? err.getCause() : err;
+					exceptionHandler.handle(cause);
+				}
+			} else if (endHandler != null) {
+				endHandler.handle(null);
+			}
+		}
+
+		@Override
+		public BoltRowStream exceptionHandler(Handler<Throwable> handler) {
+			this.exceptionHandler = handler;
+			return this;
+		}
+
+		@Override
+		public BoltRowStream handler(Handler<JsonObject> handler) {
+			this.handler = handler;
+			return this;
+		}
+
+		@Override
+		public BoltRowStream pause() {
+			demand = 0L;
+			return this;
+		}
+
+		@Override
+		public BoltRowStream resume() {
+			return fetch(Long.MAX_VALUE);
+		}
+
+		@Override
+		public BoltRowStream fetch(long amount) {
+			demand = demand + amount < 0L ? Long.MAX_VALUE : demand + amount;
+			next();
+			return this;
+		}
+
+		@Override
+		public BoltRowStream endHandler(Handler<Void> endHandler) {
+			this.endHandler = endHandler;
+			return this;
+		}
+	}
+
+}
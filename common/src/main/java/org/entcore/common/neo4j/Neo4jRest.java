@@ -31,6 +31,7 @@ import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import io.vertx.core.streams.ReadStream;
 import org.entcore.common.utils.StringUtils;
 import org.entcore.common.utils.ExceptionUtils;
 
@@ -42,13 +43,14 @@ import java.util.regex.Pattern;
 public class Neo4jRest implements GraphDatabase {
 	private static final Logger logger = LoggerFactory.getLogger(Neo4jRest.class);
 	private static final String EMPTY_STATEMENTS_STRING = "{\"statements\":[]}";
+	static final Pattern WRITING_CLAUSES_PATTERN = Pattern.compile(
+			"(\\s+set\\s+|create\\s+|merge\\s+|delete\\s+|remove\\s+|foreach)", Pattern.CASE_INSENSITIVE);
 
 	private final Neo4jRestClientNodeManager nodeManager;
 	private final boolean ro;
 	private final String basePath;
-	private final Pattern writingClausesPattern = Pattern.compile(
-			"(\\s+set\\s+|create\\s+|merge\\s+|delete\\s+|remove\\s+|foreach)", Pattern.CASE_INSENSITIVE);
 	private boolean ignoreEmptyStateError = false;
+	private boolean streamingResponses = false;
 	private final String authorizationHeader;
 
 	public Neo4jRest(URI[] uris, boolean ro, Vertx vertx, long checkDelay, int poolSize,
@@ -83,6 +85,7 @@ public class Neo4jRest implements GraphDatabase {
 				}
 			}
 			ignoreEmptyStateError = neo4jConfig.getBoolean("ignore-empty-statements-error", false);
+			streamingResponses = neo4jConfig.getBoolean("streaming-responses", false);
 		}
 	}
 
@@ -143,6 +146,14 @@ public class Neo4jRest implements GraphDatabase {
 
 				@Override
 				public void handle(final HttpClientResponse resp) {
+					if (streamingResponses && resp.statusCode() == 200) {
+						final Neo4jResultStream s = new Neo4jResultStream(true);
+						s.exceptionHandler(e -> handler.handle(ExceptionUtils.exceptionToJson(e)))
+								.endHandler(v -> handler.handle(new JsonObject().put("result", s.getResults().size() > 0 ?
+										s.getResults().getJsonArray(0) : new fr.wseduc.webutils.collections.JsonArray())))
+								.attach(resp);
+						return;
+					}
 					resp.bodyHandler(new Handler<Buffer>() {
 
 						@Override
@@ -246,6 +257,24 @@ public class Neo4jRest implements GraphDatabase {
 					new Handler<HttpClientResponse>() {
 				@Override
 				public void handle(final HttpClientResponse resp) {
+					if (streamingResponses && resp.statusCode() != 404 && resp.statusCode() != 500) {
+						final Neo4jResultStream s = new Neo4jResultStream(false);
+						s.exceptionHandler(e -> handler.handle(ExceptionUtils.exceptionToJson(e)))
+								.endHandler(v -> {
+									if (s.getErrors().size() == 0) {
+										final JsonObject json = new JsonObject().put("results", s.getResults());
+										if (s.getCommit() != null) {
+											json.put("commit", s.getCommit());
+											json.put("transactionId", s.getTransactionId());
+										}
+										handler.handle(json);
+									} else {
+										transactionErrors(s.getErrors(), statements, transactionId, commit, allowRetry, handler);
+									}
+								})
+								.attach(resp);
+						return;
+					}
 					resp.bodyHandler(new Handler<Buffer>() {
 
 						@Override
@@ -272,25 +301,8 @@ public class Neo4jRest implements GraphDatabase {
 									json.remove("errors");
 									handler.handle(json);
 								} else {
-									if (transactionId == null && commit && allowRetry && json.getJsonArray("errors") != null && json.getJsonArray("errors").size() > 0) {
-										JsonArray errors = json.getJsonArray("errors");
-										for (Object o : errors) {
-											if (!(o instanceof JsonObject)) continue;
-											switch (((JsonObject) o).getString("code", "")) {
-												case "Neo.TransientError.Transaction.ConstraintsChanged":
-												case "Neo.TransientError.Transaction.DeadlockDetected":
-												case "Neo.TransientError.Transaction.InstanceStateChanged":
-												case "Neo.TransientError.Schema.SchemaModifiedConcurrently":
-													executeTransaction(statements, transactionId, commit, false, handler);
-													if (logger.isDebugEnabled()) {
-														logger.debug("Retry transaction : " + statements.encode());
-													}
-													return;
-											}
-										}
-									}
-									handler.handle(new JsonObject().put("message",
-											json.getJsonArray("errors", new fr.wseduc.webutils.collections.JsonArray()).encode()));
+									transactionErrors(json.getJsonArray("errors", new fr.wseduc.webutils.collections.JsonArray()),
+											statements, transactionId, commit, allowRetry, handler);
 								}
 							} else {
 								handler.handle(new JsonObject().put("message",
@@ -305,6 +317,49 @@ public class Neo4jRest implements GraphDatabase {
 		}
 	}
 
+	private void transactionErrors(JsonArray errors, JsonArray statements, Integer transactionId, boolean commit,
+			boolean allowRetry, Handler<JsonObject> handler) {
+		if (transactionId == null && commit && allowRetry && errors.size() > 0) {
+			for (Object o : errors) {
+				if (!(o instanceof JsonObject)) continue;
+				switch (((JsonObject) o).getString("code", "")) {
+					case "Neo.TransientError.Transaction.ConstraintsChanged":
+					case "Neo.TransientError.Transaction.DeadlockDetected":
+					case "Neo.TransientError.Transaction.InstanceStateChanged":
+					case "Neo.TransientError.Schema.SchemaModifiedConcurrently":
+						executeTransaction(statements, transactionId, commit, false, handler);
+						if (logger.isDebugEnabled()) {
+							logger.debug("Retry transaction : " + statements.encode());
+						}
+						return;
+				}
+			}
+		}
+		handler.handle(new JsonObject().put("message", errors.encode()));
+	}
+
+	@Override
+	public ReadStream<JsonObject> stream(String query, JsonObject p) {
+		final Neo4jResultStream stream = new Neo4jResultStream(true);
+		final JsonObject body = new JsonObject()
+				.put("query", query)
+				.put("params", p != null ? p : new JsonObject());
+		try {
+			sendRequest("/cypher", body, true, resp -> {
+				if (resp.statusCode() == 200) {
+					stream.attach(resp);
+				} else {
+					resp.bodyHandler(b -> stream.fail(new Neo4jConnectionException(
+							resp.statusMessage() + " : " + b.toString())));
+				}
+			});
+		} catch (Neo4jConnectionException e) {
+			logger.error("Neo4j stream failed", e);
+			stream.fail(e);
+		}
+		return stream;
+	}
+
 	@Override
 	public void resetTransactionTimeout(int transactionId, Handler<JsonObject> handler) {
 		executeTransaction(new fr.wseduc.webutils.collections.JsonArray(), transactionId, false, handler);
@@ -391,33 +446,9 @@ public class Neo4jRest implements GraphDatabase {
 
 		if (data != null && columns != null) {
 			for (Object r: data) {
-				JsonArray row;
-				if (r instanceof JsonArray) {
-					row = (JsonArray) r;
-				} else if (r instanceof JsonObject) {
-					row = ((JsonObject) r).getJsonArray("row");
-				} else {
-					continue;
-				}
-				JsonObject outRow = new fr.wseduc.webutils.collections.JsonObject();
-				out.add(outRow);
-				for (int j = 0; j < row.size(); j++) {
-					Object value = row.getValue(j);
-					if (value == null) {
-						outRow.put(columns.getString(j), (String) null);
-					} else if (value instanceof String) {
-						outRow.put(columns.getString(j), (String) value);
-					} else if (value instanceof JsonArray) {
-						outRow.put(columns.getString(j), (JsonArray) value);
-					} else if (value instanceof JsonObject) {
-						outRow.put(columns.getString(j), (JsonObject) value);
-					} else if (value instanceof Boolean) {
-						outRow.put(columns.getString(j), (Boolean) value);
-					} else if (value instanceof Number) {
-						outRow.put(columns.getString(j), (Number) value);
-					} else {
-						outRow.put(columns.getString(j), value.toString());
-					}
+				final JsonObject outRow = Neo4jResultStream.toRow(columns, r);
+				if (outRow != null) {
+					out.add(outRow);
 				}
 			}
 		}
@@ -447,7 +478,7 @@ public class Neo4jRest implements GraphDatabase {
 		} else if (checkReadOnly && ro) {
 			String query = ((JsonObject) body).getString("query");
 			if (query != null) {
-				Matcher m = writingClausesPattern.matcher(query);
+				Matcher m = WRITING_CLAUSES_PATTERN.matcher(query);
 				if (!m.find()) {
 					client = nodeManager.getSlaveClient();
 				}
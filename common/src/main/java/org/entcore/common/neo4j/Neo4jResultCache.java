@@ -0,0 +1,288 @@
+/*
+ * Copyright © "Open Digital Education", 2017
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.common.neo4j;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.micrometer.backends.BackendRegistries;
+import org.entcore.common.cache.NearCache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_PUBLISH_ADDRESS;
+import static org.entcore.common.appregistry.AppRegistryEvents.IMPORT_SUCCEEDED;
+import static org.entcore.common.appregistry.AppRegistryEvents.PROFILE_GROUP_ACTIONS_UPDATED;
+import static org.entcore.common.appregistry.AppRegistryEvents.STRUCTURES_UPDATED;
+import static org.entcore.common.appregistry.AppRegistryEvents.USER_GROUP_UPDATED;
+
+/**
+ * <p>Opt-in cache of the results of read-only statements, see {@link Neo4j#executeCached}.</p>
+ * <p>
+ *     Results are keyed by the statements and their parameters, evicted in LRU order once {@code max-size} is
+ *     reached and considered stale after {@code ttl} milliseconds. Each cached query declares the tags of the data
+ *     it reads : the app-registry events ({@link #TAG_GROUPS}, {@link #TAG_ACTIONS}, {@link #TAG_STRUCTURES}, all
+ *     the entries after an import) and the messages sent on {@link #INVALIDATION_ADDRESS} (e.g. {@link #TAG_COMMUNICATION}
+ *     when communication rules change, {@link #TAG_GROUPS} when the manual feeder changes memberships,
+ *     {@link #TAG_USERS} when users are blocked) drop the matching entries. A result read while an invalidation is received is
+ *     not cached, and the commit of an explicit transaction clears all the entries (see {@link #publishClear}).
+ * </p>
+ * <p>Hits and misses are counted per query name, so that the ratio tells which queries are worth caching.</p>
+ */
+public class Neo4jResultCache {
+
+	public static final String INVALIDATION_ADDRESS = "neo4j.result.cache.invalidate";
+	public static final String TAG_GROUPS = "groups";
+	public static final String TAG_ACTIONS = "actions";
+	public static final String TAG_STRUCTURES = "structures";
+	public static final String TAG_COMMUNICATION = "communication";
+	public static final String TAG_USERS = "users";
+	private static final Logger log = LoggerFactory.getLogger(Neo4jResultCache.class);
+	private static final int DEFAULT_MAX_SIZE = 10000;
+	private static final long DEFAULT_TTL = 30000L;
+
+	private final Set<String> queries;
+	private final NearCache<JsonObject> entries;
+	private final Map<String, QueryStats> stats = new ConcurrentHashMap<>();
+	private MeterRegistry registry;
+
+	private static final class QueryStats {
+		private final AtomicLong hits = new AtomicLong();
+		private final AtomicLong misses = new AtomicLong();
+	}
+
+	/**
+	 * @param queries Names of the queries allowed to use the cache, {@code null} to allow every cached query
+	 */
+	public Neo4jResultCache(int maxSize, long ttl, Set<String> queries) {
+		this.queries = queries;
+		this.entries = new NearCache<>(maxSize, ttl, this::now);
+	}
+
+	/**
+	 * Creates the cache described by the {@code result-cache} entry of the neo4j configuration.
+	 * @return the cache or {@code null} if it is not enabled
+	 */
+	public static Neo4jResultCache create(EventBus eb, JsonObject neo4jConfig) {
+		final JsonObject conf = neo4jConfig.getJsonObject("result-cache", new JsonObject());
+		if (!conf.getBoolean("enabled", false)) {
+			return null;
+		}
+		final JsonArray q = conf.getJsonArray("queries");
+		final Set<String> queries;
+		if (q != null) {
+			queries = new HashSet<>();
+			for (Object o : q) {
+				if (o instanceof String) {
+					queries.add((String) o);
+				}
+			}
+		} else {
+			queries = null;
+		}
+		final Neo4jResultCache cache = new Neo4jResultCache(
+				conf.getInteger("max-size", DEFAULT_MAX_SIZE), conf.getLong("ttl", DEFAULT_TTL), queries);
+		cache.listen(eb);
+		cache.registerMetrics();
+		log.info("Neo4j result cache enabled with max-size " + cache.entries.getMaxSize() + " and ttl " +
+				cache.entries.getTtl() + " ms" +
+				(queries != null ? " for queries " + queries : "") + ".");
+		return cache;
+	}
+
+	/**
+	 * Drops the cached results depending on the given tags in every module of the platform.
+	 */
+	public static void publishInvalidation(EventBus eb, String... tags) {
+		if (tags == null || tags.length == 0) {
+			return;
+		}
+		eb.publish(INVALIDATION_ADDRESS, new JsonObject().put("tags", new JsonArray(Arrays.asList(tags))));
+	}
+
+	/**
+	 * Drops all the cached results in every module of the platform, e.g. after the commit of a transaction whose
+	 * statements were sent by another module.
+	 */
+	public static void publishClear(EventBus eb) {
+		eb.publish(INVALIDATION_ADDRESS, new JsonObject().put("clear", true));
+	}
+
+	public void listen(EventBus eb) {
+		eb.<JsonObject>consumer(INVALIDATION_ADDRESS, message -> {
+			if (message.body() != null && message.body().getBoolean("clear", false)) {
+				clear();
+				return;
+			}
+			final JsonArray tags = message.body() != null ? message.body().getJsonArray("tags") : null;
+			if (tags != null) {
+				for (Object tag : tags) {
+					if (tag instanceof String) {
+						invalidate((String) tag);
+					}
+				}
+			}
+		});
+		eb.<JsonObject>consumer(APP_REGISTRY_PUBLISH_ADDRESS, message -> {
+			final String type = message.body() != null ? message.body().getString("type") : null;
+			if (type == null) {
+				return;
+			}
+			switch (type) {
+				case USER_GROUP_UPDATED:
+					invalidate(TAG_GROUPS);
+					break;
+				case PROFILE_GROUP_ACTIONS_UPDATED:
+					invalidate(TAG_ACTIONS);
+					break;
+				case STRUCTURES_UPDATED:
+					invalidate(TAG_STRUCTURES);
+					break;
+				case IMPORT_SUCCEEDED:
+					clear();
+					break;
+			}
+		});
+	}
+
+	public boolean isEnabled(String name) {
+		return name != null && (queries == null || queries.contains(name));
+	}
+
+	public static String key(String name, Object statements) {
+		return name + '\u0000' + (statements instanceof JsonArray ? ((JsonArray) statements).encode() :
+				statements instanceof JsonObject ? ((JsonObject) statements).encode() : String.valueOf(statements));
+	}
+
+	/**
+	 * @return a copy of the cached result or {@code null} when it is absent or expired
+	 */
+	public JsonObject get(String name, String key) {
+		final JsonObject result = entries.get(key);
+		final QueryStats s = stats(name);
+		if (result == null) {
+			s.misses.incrementAndGet();
+			return null;
+		}
+		s.hits.incrementAndGet();
+		return result.copy();
+	}
+
+	/**
+	 * @return the number of invalidations received so far, to read before sending a query whose result will be put
+	 * in the cache (see {@link #put(String, JsonObject, Collection, long)})
+	 */
+	public long generation() {
+		return entries.generation();
+	}
+
+	public void put(String key, JsonObject result, Collection<String> tags) {
+		put(key, result, tags, -1L);
+	}
+
+	/**
+	 * Caches a result unless an invalidation was received since {@code generation} was read : the result may
+	 * predate it.
+	 * @param generation value of {@link #generation()} read before the query, -1 to skip the check
+	 */
+	public void put(String key, JsonObject result, Collection<String> tags, long generation) {
+		if (result != null) {
+			entries.put(key, result.copy(), tags, generation);
+		}
+	}
+
+	public void invalidate(String tag) {
+		entries.invalidateTag(tag);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public JsonObject getStats() {
+		final JsonObject queriesStats = new JsonObject();
+		for (Map.Entry<String, QueryStats> e : stats.entrySet()) {
+			final long hits = e.getValue().hits.get();
+			final long misses = e.getValue().misses.get();
+			queriesStats.put(e.getKey(), new JsonObject()
+					.put("hits", hits)
+					.put("misses", misses)
+					.put("ratio", hits + misses > 0 ? (double) hits / (hits + misses) : 0d));
+		}
+		return new JsonObject()
+				.put("size", size())
+				.put("evictions", entries.getEvictions().get())
+				.put("invalidations", entries.getInvalidations().get())
+				.put("queries", queriesStats);
+	}
+
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	private QueryStats stats(String name) {
+		QueryStats s = stats.get(name);
+		if (s == null) {
+			final QueryStats created = new QueryStats();
+			s = stats.putIfAbsent(name, created);
+			if (s == null) {
+				s = created;
+				if (registry != null) {
+					FunctionCounter.builder("neo4j.result.cache.hits", s.hits, AtomicLong::get)
+							.description("number of results served by the neo4j result cache")
+							.tag("query", name).register(registry);
+					FunctionCounter.builder("neo4j.result.cache.misses", s.misses, AtomicLong::get)
+							.description("number of cached queries sent to neo4j")
+							.tag("query", name).register(registry);
+				}
+			}
+		}
+		return s;
+	}
+
+	private void registerMetrics() {
+		registry = BackendRegistries.getDefaultNow();
+		if (registry == null) {
+			return;
+		}
+		FunctionCounter.builder("neo4j.result.cache.evictions", entries.getEvictions(), AtomicLong::get)
+				.description("number of results evicted because the cache was full").register(registry);
+		FunctionCounter.builder("neo4j.result.cache.invalidations", entries.getInvalidations(), AtomicLong::get)
+				.description("number of results removed after an invalidation event").register(registry);
+		Gauge.builder("neo4j.result.cache.size", this, Neo4jResultCache::size)
+				.description("number of results in the cache").register(registry);
+	}
+
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright © "Open Digital Education", 2017
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.common.neo4j;
+
+import io.vertx.core.Handler;
+import io.vertx.core.VertxException;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.parsetools.JsonEvent;
+import io.vertx.core.parsetools.JsonEventType;
+import io.vertx.core.parsetools.JsonParser;
+import io.vertx.core.streams.ReadStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental decoding of the Neo4j REST responses.
+ * <p>
+ *     The response is parsed with the Vert.x {@link JsonParser} : only one row of the {@code data} arrays is decoded at a
+ *     time and it is directly mapped to a {@link JsonObject} keyed by the result columns, without building the whole
+ *     response document first.
+ * </p>
+ * <p>
+ *     When a row handler is set, rows are pushed to it and not kept in memory, otherwise they are collected in
+ *     {@link #getResults()} (one array of rows per statement, as returned by the buffered mode).
+ * </p>
+ */
+public class Neo4jResultStream implements ReadStream<JsonObject>, Handler<JsonEvent> {
+
+	private final boolean singleResult;
+	private final int resultDepth;
+	private JsonParser parser;
+	private Handler<JsonObject> rowHandler;
+	private Handler<Throwable> exceptionHandler;
+	private Handler<Void> endHandler;
+	private boolean paused;
+	private long demand = Long.MAX_VALUE;
+	private boolean ended;
+	private Throwable failure;
+
+	private int depth;
+	private String section;
+	private String field;
+	private JsonArray columns;
+	private List<Object> pendingRows;
+	private JsonArray rows;
+	private final JsonArray results = new fr.wseduc.webutils.collections.JsonArray();
+	private final JsonArray errors = new fr.wseduc.webutils.collections.JsonArray();
+	private String commit;
+
+	/**
+	 * @param singleResult true for the legacy cypher endpoint ({@code {"columns":[], "data":[[]]}}),
+	 *                     false for the transactional endpoint ({@code {"results":[{"columns":[], "data":[{"row":[]}]}], "errors":[]}})
+	 */
+	public Neo4jResultStream(boolean singleResult) {
+		this.singleResult = singleResult;
+		this.resultDepth = singleResult ? 1 : 3;
+	}
+
+	/**
+	 * Starts parsing the source, usually an http response.
+	 */
+	public Neo4jResultStream attach(ReadStream<Buffer> source) {
+		parser = JsonParser.newParser(source);
+		parser.handler(this);
+		parser.exceptionHandler(this::fail);
+		parser.endHandler(v -> end());
+		if (paused) {
+			parser.pause();
+			if (demand > 0) {
+				parser.fetch(demand);
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Parses a complete buffer, used when the response has already been read.
+	 */
+	public Neo4jResultStream parse(Buffer buffer) {
+		parser = JsonParser.newParser();
+		parser.handler(this);
+		parser.exceptionHandler(this::fail);
+		parser.handle(buffer);
+		parser.end();
+		end();
+		return this;
+	}
+
+	@Override
+	public void handle(JsonEvent event) {
+		switch (event.type()) {
+			case START_OBJECT:
+			case START_ARRAY:
+				depth++;
+				if (depth == 2) {
+					section = event.fieldName();
+					if ("errors".equals(section) && !singleResult) {
+						parser.objectValueMode();
+					}
+				}
+				if (depth == resultDepth && event.type() == JsonEventType.START_OBJECT &&
+						(singleResult || "results".equals(section))) {
+					columns = null;
+					pendingRows = null;
+					rows = rowHandler == null ? new fr.wseduc.webutils.collections.JsonArray() : null;
+				} else if (depth == resultDepth + 1 && inResult()) {
+					field = event.fieldName();
+					if ("data".equals(field)) {
+						parser.objectValueMode();
+						parser.arrayValueMode();
+					} else if ("columns".equals(field)) {
+						columns = new fr.wseduc.webutils.collections.JsonArray();
+					}
+				}
+				break;
+			case VALUE:
+				if (depth == 1 && !singleResult && "commit".equals(event.fieldName())) {
+					commit = event.stringValue();
+				} else if (depth == 2 && !singleResult && "errors".equals(section)) {
+					errors.add(event.value());
+				} else if (depth == resultDepth + 1 && inResult()) {
+					if ("columns".equals(field)) {
+						columns.add(event.value());
+					} else if ("data".equals(field)) {
+						row(event.value());
+					}
+				}
+				break;
+			case END_OBJECT:
+			case END_ARRAY:
+				if (depth == resultDepth + 1 && inResult() && "data".equals(field)) {
+					parser.objectEventMode();
+					parser.arrayEventMode();
+				} else if (depth == 2 && "errors".equals(section) && !singleResult) {
+					parser.objectEventMode();
+				}
+				if (depth == resultDepth && inResult()) {
+					endResult();
+				}
+				if (depth == resultDepth + 1) {
+					field = null;
+				}
+				depth--;
+				break;
+		}
+	}
+
+	private boolean inResult() {
+		return singleResult || (depth >= resultDepth && "results".equals(section));
+	}
+
+	private void row(Object value) {
+		if (columns == null) {
+			if (pendingRows == null) {
+				pendingRows = new ArrayList<>();
+			}
+			pendingRows.add(value);
+			return;
+		}
+		final JsonObject row = toRow(columns, value);
+		if (row == null) {
+			return;
+		}
+		if (rowHandler != null) {
+			rowHandler.handle(row);
+		} else {
+			rows.add(row);
+		}
+	}
+
+	private void endResult() {
+		if (pendingRows != null) {
+			if (columns == null) {
+				columns = new fr.wseduc.webutils.collections.JsonArray();
+			}
+			final List<Object> pending = pendingRows;
+			pendingRows = null;
+			for (Object r : pending) {
+				row(r);
+			}
+		}
+		if (rows != null) {
+			results.add(rows);
+			rows = null;
+		}
+		columns = null;
+	}
+
+	void fail(Throwable t) {
+		if (ended) {
+			return;
+		}
+		ended = true;
+		if (exceptionHandler != null) {
+			exceptionHandler.handle(t);
+		} else {
+			failure = t;
+		}
+	}
+
+	private void end() {
+		if (ended) {
+			return;
+		}
+		if (errors.size() > 0 && rowHandler != null) {
+			fail(new VertxException(errors.encode()));
+			return;
+		}
+		ended = true;
+		if (endHandler != null) {
+			endHandler.handle(null);
+		}
+	}
+
+	/**
+	 * Maps a Neo4j row ({@code [v1, v2]} or {@code {"row":[v1, v2]}}) to an object keyed by the columns.
+	 */
+	static JsonObject toRow(JsonArray columns, Object r) {
+		final JsonArray row;
+		if (r instanceof JsonArray) {
+			row = (JsonArray) r;
+		} else if (r instanceof JsonObject) {
+			row = ((JsonObject) r).getJsonArray("row");
+		} else {
+			return null;
+		}
+		final JsonObject outRow = new fr.wseduc.webutils.collections.JsonObject();
+		if (row == null) {
+			return outRow;
+		}
+		for (int j = 0; j < row.size() && j < columns.size(); j++) {
+			final Object value = row.getValue(j);
+			if (value == null || value instanceof String || value instanceof JsonArray || value instanceof JsonObject ||
+					value instanceof Boolean || value instanceof Number) {
+				outRow.put(columns.getString(j), value);
+			} else {
+				outRow.put(columns.getString(j), value.toString());
+			}
+		}
+		return outRow;
+	}
+
+	public JsonArray getResults() {
+		return results;
+	}
+
+	public JsonArray getErrors() {
+		return errors;
+	}
+
+	public String getCommit() {
+		return commit;
+	}
+
+	public Integer getTransactionId() {
+		if (commit != null) {
+			final String[] c = commit.split("/");
+			if (c.length > 2) {
+				return Integer.parseInt(c[c.length - 2]);
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public Neo4jResultStream exceptionHandler(Handler<Throwable> handler) {
+		this.exceptionHandler = handler;
+		if (handler != null && failure != null) {
+			final Throwable t = failure;
+			failure = null;
+			handler.handle(t);
+		}
+		return this;
+	}
+
+	@Override
+	public Neo4jResultStream handler(Handler<JsonObject> handler) {
+		this.rowHandler = handler;
+		return this;
+	}
+
+	@Override
+	public Neo4jResultStream pause() {
+		paused = true;
+		demand = 0L;
+		if (parser != null) {
+			parser.pause();
+		}
+		return this;
+	}
+
+	@Override
+	public Neo4jResultStream resume() {
+		paused = false;
+		demand = Long.MAX_VALUE;
+		if (parser != null) {
+			parser.resume();
+		}
+		return this;
+	}
+
+	@Override
+	public Neo4jResultStream fetch(long amount) {
+		demand = demand + amount < 0L ? Long.MAX_VALUE : demand + amount;
+		if (parser != null) {
+			parser.fetch(amount);
+		}
+		return this;
+	}
+
+	@Override
+	public Neo4jResultStream endHandler(Handler<Void> endHandler) {
+		this.endHandler = endHandler;
+		return this;
+	}
+
+}
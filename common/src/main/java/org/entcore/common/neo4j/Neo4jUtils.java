@@ -34,10 +34,12 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 public class Neo4jUtils {
 
 	private static final Logger log = LoggerFactory.getLogger(Neo4jUtils.class);
+	private static final Pattern ROW_PARAMETER = Pattern.compile("\\{(\\w+)\\}");
 	private static final String UPDATE_SCRIPTS =
 			"MERGE (n:System {name : {appName}}) SET n.scripts = coalesce(n.scripts, []) + {newFiles} ";
 
@@ -60,6 +62,35 @@ public class Neo4jUtils {
 		return " ";
 	}
 
+	/**
+	 * Same as nodeSetPropertiesFromJson but reads the values from the {@code row} of an UNWIND statement.
+	 */
+	public static String nodeSetPropertiesFromRow(String nodeAlias, JsonObject json, String... ignore) {
+		StringBuilder sb = new StringBuilder();
+		List<String> i;
+		if (ignore != null) {
+			i = Arrays.asList(ignore);
+		} else {
+			i = Collections.emptyList();
+		}
+		for (String a: json.fieldNames()) {
+			String attr = a.replaceAll("\\W+", "");
+			if (i.contains(attr)) continue;
+			sb.append(", ").append(nodeAlias).append(".").append(attr).append(" = row.").append(attr);
+		}
+		if (sb.length() > 2) {
+			return sb.append(" ").substring(2);
+		}
+		return " ";
+	}
+
+	/**
+	 * Replaces the parameters ({@code {name}}) of a query by the attributes of the {@code row} of an UNWIND statement.
+	 */
+	public static String toRowParameters(String query) {
+		return ROW_PARAMETER.matcher(query).replaceAll("row.$1");
+	}
+
 	public static void loadScripts(final String appName, final Vertx vertx, final String path) {
 		String query = "MATCH (n:System) WHERE n.name = {appName} RETURN n.scripts as scripts";
 		Neo4j.getInstance().execute(query, new JsonObject().put("appName", appName), new Handler<Message<JsonObject>>() {
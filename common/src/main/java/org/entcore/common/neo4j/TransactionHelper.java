@@ -38,6 +38,12 @@ import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 public class TransactionHelper
 {
@@ -49,9 +55,24 @@ public class TransactionHelper
 			super.add(s);
 			this.commit();
 		}
+
+		@Override
+		public void add(Statement s, String key)
+		{
+			super.add(s, key);
+			this.commit();
+		}
+
+		@Override
+		public void addBatch(String query, Collection<String> keys, JsonObject row)
+		{
+			super.addBatch(query, keys, row);
+			this.commit();
+		}
 	};
 
 	private static final Logger log = LoggerFactory.getLogger(TransactionHelper.class);
+	private static final String UNWIND_ROWS = "UNWIND {rows} AS row ";
 	private final Neo4j neo4j;
 	private volatile List<Statement> statements;
 	private AtomicInteger remainingStatementNumber;
@@ -65,6 +86,11 @@ public class TransactionHelper
 	private boolean flush = false;
 	private Handler<Message<JsonObject>> flushHandler;
 	private boolean autoSend = true;
+	private List<Batch> batches = new ArrayList<Batch>();
+	private final Map<String, Batch> lastBatches = new HashMap<String, Batch>();
+	private long statementsCount = 0;
+	private boolean payloadCounted = false;
+	private long payloadSize = 0;
 
 	public final Source source;
 
@@ -157,6 +183,39 @@ public class TransactionHelper
 		}
 	}
 
+	private static class Batch
+	{
+		private final String query;
+		private final Statement statement;
+		private final JsonArray rows = new JsonArray();
+		private final Set<String> keys = new HashSet<String>();
+
+		private Batch(String query)
+		{
+			this.query = query;
+			this.statement = null;
+		}
+
+		private Batch(Statement statement, String key)
+		{
+			this.query = null;
+			this.statement = statement;
+			this.keys.add(key);
+		}
+
+		private Statement toStatement()
+		{
+			if (this.statement != null)
+				return this.statement;
+			return new Statement(UNWIND_ROWS + this.query, new JsonObject().put("rows", this.rows));
+		}
+
+		private int weight()
+		{
+			return this.statement != null ? 1 : this.rows.size();
+		}
+	}
+
 	public TransactionHelper(Source source)
 	{
 		this(Neo4j.getInstance(), source);
@@ -205,8 +264,112 @@ public class TransactionHelper
 	{
 		if(statement == null)
 			return;
+		sendBatches();
+		statementsCount++;
+		countPayload(statement);
+		add(statement, 1);
+	}
+
+	/**
+	 * Adds a statement which only depends on the previous statements and rows of the same key : it is queued after
+	 * them without sending the pending rows of the other keys, which may still be grouped before it.
+	 * @param statement Statement to add
+	 * @param key Key of the entity written by the statement, {@code null} to keep it after all the pending rows
+	 */
+	public void add(Statement statement, String key)
+	{
+		if (key == null) {
+			add(statement);
+			return;
+		}
+		if (statement == null)
+			return;
+		batches.add(new Batch(statement, key));
+		statementsCount++;
+		countPayload(statement);
+		if (batches.size() >= statementNumber) {
+			sendBatches();
+		}
+	}
+
+	/**
+	 * Adds a row to the statement {@code UNWIND {rows} AS row <query>} : the rows of the same query are sent together,
+	 * by batches of statementNumber rows, instead of one statement per row. The query reads the values of the row
+	 * with {@code row.<attribute>}.
+	 * <p>
+	 *     The rows of a same key (e.g. the externalId of a user) keep their order but the rows of different keys may
+	 *     be reordered, so they must not depend on each other : a row matching the nodes merged for other keys must
+	 *     be added with all these keys ({@link #addBatch(String, Collection, JsonObject)}). Pending rows are sent
+	 *     before any statement added without key.
+	 * </p>
+	 * @param query Query executed for each row
+	 * @param key Key of the entity written by the row, {@code null} to keep the row after all the pending ones
+	 * @param row Values of the row
+	 */
+	public void addBatch(String query, String key, JsonObject row)
+	{
+		addBatch(query, key != null ? Collections.singletonList(key) : null, row);
+	}
+
+	/**
+	 * Adds a row which writes or reads several entities, e.g. a relationship between two users : it keeps its order
+	 * with the pending rows of each of these keys, so a row linking a user to the nodes merged by the rows of other
+	 * keys must give all their keys.
+	 * @param query Query executed for each row
+	 * @param keys Keys of the entities used by the row, {@code null} or empty to keep the row after all the pending ones
+	 * @param row Values of the row
+	 */
+	public void addBatch(String query, Collection<String> keys, JsonObject row)
+	{
+		if (query == null || query.trim().isEmpty() || row == null)
+			return;
+		final boolean keyed = keys != null && !keys.isEmpty();
+		Batch batch = lastBatches.get(query);
+		if (batch != null) {
+			for (int i = batches.indexOf(batch) + 1; i < batches.size(); i++) {
+				if (!keyed || !Collections.disjoint(batches.get(i).keys, keys)) {
+					batch = null;
+					break;
+				}
+			}
+		}
+		if (batch == null) {
+			batch = new Batch(query);
+			batches.add(batch);
+			lastBatches.put(query, batch);
+			if (payloadCounted) {
+				payloadSize += utf8Length(UNWIND_ROWS) + utf8Length(query);
+			}
+		}
+		batch.rows.add(row);
+		statementsCount++;
+		if (payloadCounted) {
+			payloadSize += utf8Length(row.encode());
+		}
+		if (keyed) {
+			batch.keys.addAll(keys);
+		}
+		if (batch.rows.size() >= statementNumber || batches.size() >= statementNumber) {
+			sendBatches();
+		}
+	}
+
+	private void sendBatches()
+	{
+		if (batches.isEmpty())
+			return;
+		final List<Batch> b = batches;
+		batches = new ArrayList<Batch>();
+		lastBatches.clear();
+		for (Batch batch : b) {
+			add(batch.toStatement(), batch.weight());
+		}
+	}
+
+	private void add(Statement statement, int weight)
+	{
 		if (autoSend && !waitingQuery && transactionId != null &&
-				remainingStatementNumber.getAndDecrement() == 0) {
+				remainingStatementNumber.getAndAdd(-weight) <= 0) {
 			final List<Statement> s = statements;
 			this.statements = new ArrayList<Statement>();
 			send(s);
@@ -290,6 +453,7 @@ public class TransactionHelper
 	}
 
 	public void commit(Handler<Message<JsonObject>> handler, boolean th) {
+		sendBatches();
 		if (error != null) {
 			if (!th && handler != null) {
 				handler.handle(error);
@@ -372,6 +536,7 @@ public class TransactionHelper
 	}
 
 	public void flush(Handler<Message<JsonObject>> handler, boolean th) {
+		sendBatches();
 		if (error != null) {
 			if (!th && handler != null) {
 				handler.handle(error);
@@ -398,8 +563,58 @@ public class TransactionHelper
 		return neo4j;
 	}
 
+	/**
+	 * @return the number of statements and batch rows added since the creation of the helper
+	 */
+	public long getStatementsCount() {
+		return statementsCount;
+	}
+
+	/**
+	 * Counts the size of the statements added from now on, see {@link #getPayloadSize()}. It is disabled by default
+	 * because the parameters are encoded once more to be measured.
+	 */
+	public void setPayloadCounted(boolean payloadCounted) {
+		this.payloadCounted = payloadCounted;
+	}
+
+	/**
+	 * @return the size in bytes (UTF-8) of the queries and encoded parameters added while the payload is counted,
+	 * the query of a batch is counted once with its first row
+	 */
+	public long getPayloadSize() {
+		return payloadSize;
+	}
+
+	private void countPayload(Statement statement) {
+		if (payloadCounted) {
+			payloadSize += utf8Length(statement.query) + (statement.params != null ? utf8Length(statement.params.encode()) : 0);
+		}
+	}
+
+	private static long utf8Length(String s) {
+		if (s == null) {
+			return 0;
+		}
+		long length = 0;
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80) {
+				length++;
+			} else if (c < 0x800) {
+				length += 2;
+			} else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				length += 4;
+				i++;
+			} else {
+				length += 3;
+			}
+		}
+		return length;
+	}
+
 	public boolean isEmpty() {
-		return statements == null || statements.size() == 0;
+		return (statements == null || statements.size() == 0) && batches.isEmpty();
 	}
 
 
@@ -72,7 +72,9 @@ public interface IPostgresClient {
                 .setHost(config.getString("host"))
                 .setDatabase(config.getString("database"))
                 .setUser(config.getString("user"))
-                .setPassword(config.getString("password"));
+                .setPassword(config.getString("password"))
+                .setCachePreparedStatements(config.getBoolean("cache-prepared-statements", false))
+                .setPipeliningLimit(config.getInteger("pipelining-limit", PgConnectOptions.DEFAULT_PIPELINING_LIMIT));
         if (!SslMode.DISABLE.equals(sslMode)) {
             options.setSslMode(sslMode).setTrustAll(SslMode.ALLOW.equals(sslMode) || SslMode.PREFER.equals(sslMode) || SslMode.REQUIRE.equals(sslMode));
         }
@@ -40,6 +40,10 @@ public class Structure implements IdObject {
 
     // Attach a user to a structure
     public static Future<JsonArray> attach(TransactionHelper tx, NodeMatcher<User> usersMatcher, NodeMatcher<Structure> structuresMatcher) {
+        return attach(tx, usersMatcher, structuresMatcher, null);
+    }
+
+    public static Future<JsonArray> attach(TransactionHelper tx, NodeMatcher<User> usersMatcher, NodeMatcher<Structure> structuresMatcher, String key) {
         Promise<JsonArray> promise = Promise.promise();
         JsonObject params = new JsonObject();
 
@@ -77,13 +81,17 @@ public class Structure implements IdObject {
         usersMatcher.addParams(params);
         structuresMatcher.addParams(params);
 
-        tx.add(query, params, promise);
+        tx.add(new TransactionHelper.Statement(query, params, promise), key);
 
         return promise.future();
     }
 
     // Detach a user from a structure
     public static Future<JsonArray> dettach(TransactionHelper tx, NodeMatcher<User> usersMatcher, NodeMatcher<Structure> structuresMatcher) {
+        return dettach(tx, usersMatcher, structuresMatcher, null);
+    }
+
+    public static Future<JsonArray> dettach(TransactionHelper tx, NodeMatcher<User> usersMatcher, NodeMatcher<Structure> structuresMatcher, String key) {
         Promise<JsonArray> promise = Promise.promise();
 
         structuresMatcher.setNodeName("s");
@@ -137,7 +145,7 @@ public class Structure implements IdObject {
             "WITH r " +
             "WHERE LENGTH(r.scope) = 0 DELETE r"; // Remove scope if empty
 
-        tx.add(query, params, promise);
+        tx.add(new TransactionHelper.Statement(query, params, promise), key);
 
         String dpgQuery =
             "MATCH (u:User) WHERE " + usersMatcher + " " +
@@ -148,7 +156,7 @@ public class Structure implements IdObject {
             "WHERE p.name = HEAD(u.profiles) " +
             "MERGE (u)-[:IN]->(dpg)"; // Add users with no structures left to the default groups
 
-        tx.add(dpgQuery, params);
+        tx.add(new TransactionHelper.Statement(dpgQuery, params), key);
 
         return promise.future();
     }
@@ -51,7 +51,7 @@ public class User<P extends Profile> implements IdObject
 
     public Future<JsonArray> attach(TransactionHelper tx, Collection<Identifier<Structure, ?>> structures)
     {
-        return Structure.attach(tx, new IdentifierMatcher<User>(this.id.get() == null ? this.externalId : this.id), new IdentifierMatcher<Structure>(structures));
+        return Structure.attach(tx, new IdentifierMatcher<User>(this.id.get() == null ? this.externalId : this.id), new IdentifierMatcher<Structure>(structures), this.key());
     }
 
     public Future<JsonArray> dettach(TransactionHelper tx, Identifier<Structure, ?>... structures)
@@ -61,7 +61,13 @@ public class User<P extends Profile> implements IdObject
 
     public Future<JsonArray> dettach(TransactionHelper tx, NodeMatcher<Structure> structuresMatcher)
     {
-        return Structure.dettach(tx, new IdentifierMatcher<User>(this.id.get() == null ? this.externalId : this.id), structuresMatcher);
+        return Structure.dettach(tx, new IdentifierMatcher<User>(this.id.get() == null ? this.externalId : this.id), structuresMatcher, this.key());
+    }
+
+    // Statements of the same user keep their order in a transaction
+    private String key()
+    {
+        return this.externalId == null ? null : this.externalId.get();
     }
 
     public void setAccount(Account a)
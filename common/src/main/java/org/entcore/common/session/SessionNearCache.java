@@ -0,0 +1,221 @@
+/*
+ * Copyright © "Open Digital Education", 2017
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.common.session;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.EventBus;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.micrometer.backends.BackendRegistries;
+import org.entcore.common.cache.NearCache;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Bounded, per-module copy of the sessions recently fetched from the session module.</p>
+ * <p>
+ *     Entries are keyed by the id used to look the session up (oneSessionId cookie or OAuth token id), evicted in
+ *     LRU order once {@code max-size} is reached and considered stale after {@code ttl} milliseconds.
+ *     The session module publishes on {@link #INVALIDATION_ADDRESS} whenever a session is dropped or its cache
+ *     attributes change, so that every near-cache of the platform forgets the stale copy.
+ * </p>
+ * <p>
+ *     A cache hit tells the session module that the session is still active at most once every
+ *     {@code activity-refresh-delay} milliseconds (see {@link #touch(String)}), so that active users are not
+ *     expired for inactivity while their session is served from the cache.
+ * </p>
+ */
+public class SessionNearCache {
+
+	public static final String INVALIDATION_ADDRESS = "wse.session.invalidate";
+	private static final Logger log = LoggerFactory.getLogger(SessionNearCache.class);
+	private static final int DEFAULT_MAX_SIZE = 10000;
+	private static final long DEFAULT_TTL = 30000L;
+	private static final long DEFAULT_ACTIVITY_REFRESH_DELAY = 10000L;
+
+	private final long activityRefreshDelay;
+	private final NearCache<JsonObject> entries;
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	public SessionNearCache(int maxSize, long ttl) {
+		this(maxSize, ttl, DEFAULT_ACTIVITY_REFRESH_DELAY);
+	}
+
+	public SessionNearCache(int maxSize, long ttl, long activityRefreshDelay) {
+		this.activityRefreshDelay = activityRefreshDelay;
+		this.entries = new NearCache<>(maxSize, ttl, this::now);
+	}
+
+	/**
+	 * Creates the near-cache described by the {@code session-near-cache} configuration of the module (or by the
+	 * {@code sessionNearCache} entry of the server map) and subscribes it to the invalidation events.
+	 * @return the cache or {@code null} if it is not enabled
+	 */
+	public static SessionNearCache create(Vertx vertx, JsonObject config) {
+		JsonObject conf = config.getJsonObject("session-near-cache");
+		if (conf == null) {
+			final String serverConf = (String) vertx.sharedData().getLocalMap("server").get("sessionNearCache");
+			conf = serverConf != null ? new JsonObject(serverConf) : new JsonObject();
+		}
+		if (!conf.getBoolean("enabled", false)) {
+			return null;
+		}
+		final SessionNearCache cache = new SessionNearCache(
+				conf.getInteger("max-size", DEFAULT_MAX_SIZE), conf.getLong("ttl", DEFAULT_TTL),
+				conf.getLong("activity-refresh-delay", DEFAULT_ACTIVITY_REFRESH_DELAY));
+		cache.listen(vertx.eventBus());
+		cache.registerMetrics();
+		log.info("Session near-cache enabled with max-size " + cache.entries.getMaxSize() + " and ttl " +
+				cache.entries.getTtl() + " ms.");
+		return cache;
+	}
+
+	/**
+	 * Tells every near-cache of the platform that a session (and/or all the sessions of a user) changed.
+	 * @param eb Event bus
+	 * @param sessionId Id of the modified session, may be {@code null}
+	 * @param userId Id of the user whose sessions changed, may be {@code null}
+	 */
+	public static void publishInvalidation(EventBus eb, String sessionId, String userId) {
+		if (sessionId == null && userId == null) {
+			return;
+		}
+		eb.publish(INVALIDATION_ADDRESS, new JsonObject().put("sessionId", sessionId).put("userId", userId));
+	}
+
+	public void listen(EventBus eb) {
+		eb.<JsonObject>consumer(INVALIDATION_ADDRESS, message -> {
+			final JsonObject body = message.body();
+			if (body == null) {
+				return;
+			}
+			final String sessionId = body.getString("sessionId");
+			final String userId = body.getString("userId");
+			if (sessionId != null) {
+				invalidateSession(sessionId);
+			}
+			if (userId != null) {
+				invalidateUser(userId);
+			}
+		});
+	}
+
+	/**
+	 * @param key Id of the session (or of the token)
+	 * @return a copy of the cached session or {@code null} when it is absent or expired
+	 */
+	public JsonObject get(String key) {
+		final JsonObject session = entries.get(key);
+		if (session == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return session.copy();
+	}
+
+	/**
+	 * @return the number of invalidations received so far, to read before fetching a session that will be put
+	 * in the cache (see {@link #put(String, JsonObject, long)})
+	 */
+	public long generation() {
+		return entries.generation();
+	}
+
+	public void put(String key, JsonObject session) {
+		put(key, session, -1L);
+	}
+
+	/**
+	 * Caches a session unless an invalidation was received since {@code generation} was read : the fetched copy
+	 * may predate it.
+	 * @param generation value of {@link #generation()} read before the fetch, -1 to skip the check
+	 */
+	public void put(String key, JsonObject session, long generation) {
+		if (session == null) {
+			return;
+		}
+		final String userId = session.getString("userId");
+		entries.put(key, session.copy(), userId != null ? Collections.singleton(userId) : null, generation);
+	}
+
+	/**
+	 * Records an access to a cached session.
+	 * @param key Id of the session (or of the token)
+	 * @return true when the last activity of the session must be refreshed in the session module, at most once
+	 * every {@code activity-refresh-delay} milliseconds by session
+	 */
+	public boolean touch(String key) {
+		return entries.touch(key, activityRefreshDelay);
+	}
+
+	public void invalidateSession(String key) {
+		entries.invalidate(key);
+	}
+
+	public void invalidateUser(String userId) {
+		entries.invalidateTag(userId);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public JsonObject getStats() {
+		return new JsonObject()
+				.put("size", size())
+				.put("hits", hits.get())
+				.put("misses", misses.get())
+				.put("evictions", entries.getEvictions().get())
+				.put("invalidations", entries.getInvalidations().get());
+	}
+
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	private void registerMetrics() {
+		final MeterRegistry registry = BackendRegistries.getDefaultNow();
+		if (registry == null) {
+			return;
+		}
+		FunctionCounter.builder("session.nearcache.hits", hits, AtomicLong::get)
+				.description("number of sessions served by the near-cache").register(registry);
+		FunctionCounter.builder("session.nearcache.misses", misses, AtomicLong::get)
+				.description("number of session lookups sent to the session module").register(registry);
+		FunctionCounter.builder("session.nearcache.evictions", entries.getEvictions(), AtomicLong::get)
+				.description("number of sessions evicted because the near-cache was full").register(registry);
+		FunctionCounter.builder("session.nearcache.invalidations", entries.getInvalidations(), AtomicLong::get)
+				.description("number of sessions removed after an invalidation event").register(registry);
+		Gauge.builder("session.nearcache.size", this, SessionNearCache::size)
+				.description("number of sessions in the near-cache").register(registry);
+	}
+
+}
@@ -0,0 +1,357 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.common.sql;
+
+import fr.wseduc.webutils.eventbus.ResultMessage;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import io.vertx.sqlclient.Row;
+import io.vertx.sqlclient.RowSet;
+import io.vertx.sqlclient.Tuple;
+import org.entcore.common.bus.ErrorMessage;
+import org.entcore.common.postgres.IPostgresClient;
+import org.entcore.common.postgres.IPostgresTransaction;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ISql implementation executing the statements with the native postgres client instead of sending them to the
+ * sql persistor through the event bus. The responses have the persistor format, so SqlResult handlers are unchanged.
+ * <p>
+ *     The {@code ?} placeholders are translated to {@code $n}. A placeholder followed by a cast ({@code ?::jsonb})
+ *     is bound as text then cast. The numbers are bound with an explicit type (int4, int8 or float8) because the
+ *     client does not convert an Integer for a bigint parameter, postgres then converts them to the type of the
+ *     column. The other values are bound with their java type. The statements of a transaction are pipelined on a
+ *     single connection.
+ *     The delivery options are ignored.
+ * </p>
+ */
+public class PostgresSql implements ISql {
+
+	private static final Logger log = LoggerFactory.getLogger(PostgresSql.class);
+	private final IPostgresClient client;
+
+	public PostgresSql(IPostgresClient client) {
+		this.client = client;
+	}
+
+	@Override
+	public void prepared(String query, JsonArray values, Handler<Message<JsonObject>> handler) {
+		prepared(query, values, new DeliveryOptions(), handler);
+	}
+
+	@Override
+	public void prepared(String query, JsonArray values, DeliveryOptions deliveryOptions, Handler<Message<JsonObject>> handler) {
+		prepared(query, values, deliveryOptions).onComplete(ar -> handler.handle(ar.result()));
+	}
+
+	@Override
+	public Future<Message<JsonObject>> prepared(String query, JsonArray values, DeliveryOptions deliveryOptions) {
+		final Promise<Message<JsonObject>> promise = Promise.promise();
+		final Statement statement = Statement.prepared(query, values);
+		client.preparedQuery(statement.query, statement.tuple).onComplete(ar -> promise.complete(toMessage(ar)));
+		return promise.future();
+	}
+
+	@Override
+	public void raw(String query, Handler<Message<JsonObject>> handler) {
+		execute(Statement.raw(query), handler);
+	}
+
+	@Override
+	public void insert(String table, JsonObject params, Handler<Message<JsonObject>> handler) {
+		insert(table, params, null, handler);
+	}
+
+	@Override
+	public void insert(String table, JsonObject params, String returning, Handler<Message<JsonObject>> handler) {
+		execute(Statement.of(new SqlStatementsBuilder().insert(table, params, returning).build()), handler);
+	}
+
+	@Override
+	public void insert(String table, JsonArray fields, JsonArray values, Handler<Message<JsonObject>> handler) {
+		insert(table, fields, values, null, handler);
+	}
+
+	@Override
+	public void insert(String table, JsonArray fields, JsonArray values, String returning,
+			Handler<Message<JsonObject>> handler) {
+		execute(Statement.of(new SqlStatementsBuilder().insert(table, fields, values, returning).build()), handler);
+	}
+
+	@Override
+	public void upsert(String table, JsonArray fields, JsonArray values, JsonArray conflictFields,
+			JsonArray updateFields, String returning, Handler<Message<JsonObject>> handler) {
+		execute(Statement.of(new SqlStatementsBuilder()
+				.upsert(table, fields, values, conflictFields, updateFields, returning).build()), handler);
+	}
+
+	@Override
+	public void select(String table, JsonArray fields, Handler<Message<JsonObject>> handler) {
+		execute(Statement.of(new SqlStatementsBuilder().select(table, fields).build()), handler);
+	}
+
+	@Override
+	public void transaction(JsonArray statements, Handler<Message<JsonObject>> handler) {
+		transaction(statements, new DeliveryOptions(), handler);
+	}
+
+	@Override
+	public void transaction(JsonArray statements, DeliveryOptions deliveryOptions, Handler<Message<JsonObject>> handler) {
+		final List<Statement> parsed = new ArrayList<>();
+		try {
+			for (Object s : statements) {
+				parsed.add(Statement.parse((JsonObject) s));
+			}
+		} catch (RuntimeException e) {
+			handler.handle(error(e));
+			return;
+		}
+		client.transaction().onComplete(ar -> {
+			if (ar.failed()) {
+				handler.handle(error(ar.cause()));
+				return;
+			}
+			final IPostgresTransaction transaction = ar.result();
+			final List<Future<RowSet<Row>>> futures = new ArrayList<>();
+			for (Statement statement : parsed) {
+				futures.add(transaction.addPreparedQuery(statement.query, statement.tuple));
+			}
+			transaction.commit().onComplete(commit -> {
+				if (commit.failed()) {
+					transaction.rollback().onComplete(rollback -> {
+						if (rollback.failed()) {
+							log.debug("Error rolling back transaction", rollback.cause());
+						}
+					});
+					handler.handle(error(commit.cause()));
+					return;
+				}
+				final JsonArray results = new JsonArray();
+				for (Future<RowSet<Row>> f : futures) {
+					results.add(toResult(f.result()));
+				}
+				handler.handle(new ResultMessage(new JsonObject().put("status", "ok").put("results", results)));
+			});
+		});
+	}
+
+	private void execute(Statement statement, Handler<Message<JsonObject>> handler) {
+		if (statement == null) {
+			handler.handle(new ErrorMessage("invalid.parameters"));
+			return;
+		}
+		client.preparedQuery(statement.query, statement.tuple).onComplete(ar -> handler.handle(toMessage(ar)));
+	}
+
+	private static Message<JsonObject> toMessage(AsyncResult<RowSet<Row>> ar) {
+		if (ar.failed()) {
+			return error(ar.cause());
+		}
+		return new ResultMessage(toResult(ar.result()));
+	}
+
+	private static Message<JsonObject> error(Throwable cause) {
+		log.error("Postgres error", cause);
+		return new ErrorMessage(cause.getMessage() != null ? cause.getMessage() : cause.getClass().getName());
+	}
+
+	static JsonObject toResult(RowSet<Row> rowSet) {
+		final JsonArray fields = new JsonArray();
+		final JsonArray results = new JsonArray();
+		if (rowSet.columnsNames() != null) {
+			for (String column : rowSet.columnsNames()) {
+				fields.add(column);
+			}
+			for (Row row : rowSet) {
+				final JsonArray line = new JsonArray();
+				for (int i = 0; i < row.size(); i++) {
+					line.add(toJsonValue(row.getValue(i)));
+				}
+				results.add(line);
+			}
+		}
+		return new JsonObject()
+				.put("status", "ok")
+				.put("message", "")
+				.put("fields", fields)
+				.put("results", results)
+				.put("rows", rowSet.rowCount());
+	}
+
+	static Object toJsonValue(Object value) {
+		if (value == null || value instanceof String || value instanceof Boolean || value instanceof Integer ||
+				value instanceof Long || value instanceof Double || value instanceof Float ||
+				value instanceof JsonObject || value instanceof JsonArray) {
+			return value;
+		} else if (value instanceof Short) {
+			return ((Short) value).intValue();
+		} else if (value instanceof Number) {
+			final Number n = (Number) value;
+			return n.doubleValue() == Math.rint(n.doubleValue()) && Math.abs(n.doubleValue()) < Long.MAX_VALUE ?
+					(Object) n.longValue() : (Object) n.doubleValue();
+		} else if (value.getClass().isArray()) {
+			final JsonArray a = new JsonArray();
+			for (int i = 0; i < java.lang.reflect.Array.getLength(value); i++) {
+				a.add(toJsonValue(java.lang.reflect.Array.get(value, i)));
+			}
+			return a;
+		}
+		return value.toString();
+	}
+
+	/**
+	 * Statement of the sql persistor format translated for the postgres client.
+	 */
+	static class Statement {
+		final String query;
+		final Tuple tuple;
+
+		private Statement(String query, Tuple tuple) {
+			this.query = query;
+			this.tuple = tuple;
+		}
+
+		static Statement of(JsonArray statements) {
+			return statements.isEmpty() ? null : parse(statements.getJsonObject(0));
+		}
+
+		static Statement raw(String query) {
+			return new Statement(query, Tuple.tuple());
+		}
+
+		static Statement parse(JsonObject s) {
+			switch (s.getString("action", "")) {
+				case "raw":
+					return raw(s.getString("command"));
+				case "prepared":
+					return prepared(s.getString("statement"), s.getJsonArray("values"));
+				case "insert":
+				case "upsert":
+					return insert(s);
+				case "select":
+					return raw("SELECT " + columns(s.getJsonArray("fields"), "*") + " FROM " + s.getString("table"));
+				default:
+					throw new IllegalArgumentException("Invalid statement action : " + s.getString("action"));
+			}
+		}
+
+		static Statement prepared(String query, JsonArray values) {
+			final Tuple tuple = Tuple.tuple();
+			final StringBuilder sb = new StringBuilder(query.length() + 16);
+			int index = 0;
+			char quote = 0;
+			for (int i = 0; i < query.length(); i++) {
+				final char c = query.charAt(i);
+				if (quote != 0) {
+					if (c == quote) {
+						quote = 0;
+					}
+					sb.append(c);
+				} else if (c == '\'' || c == '"') {
+					quote = c;
+					sb.append(c);
+				} else if (c == '?') {
+					final Object value = values != null && index < values.size() ? values.getValue(index) : null;
+					index++;
+					sb.append('$').append(index);
+					if (query.startsWith("::", i + 1)) {
+						// bound as text and cast by postgres
+						sb.append("::text");
+						tuple.addValue(value != null ? value.toString() : null);
+					} else {
+						sb.append(numberCast(value));
+						tuple.addValue(value);
+					}
+				} else {
+					sb.append(c);
+				}
+			}
+			return new Statement(sb.toString(), tuple);
+		}
+
+		private static String numberCast(Object value) {
+			if (value instanceof Integer) {
+				return "::int4";
+			} else if (value instanceof Long) {
+				return "::int8";
+			} else if (value instanceof Double) {
+				return "::float8";
+			}
+			return "";
+		}
+
+		private static Statement insert(JsonObject s) {
+			final JsonArray fields = s.getJsonArray("fields", new JsonArray());
+			final JsonArray values = s.getJsonArray("values", new JsonArray());
+			final StringBuilder sb = new StringBuilder("INSERT INTO ").append(s.getString("table"))
+					.append(" (").append(columns(fields, "")).append(") VALUES ");
+			final JsonArray params = new JsonArray();
+			for (int i = 0; i < values.size(); i++) {
+				final JsonArray row = values.getJsonArray(i);
+				sb.append(i > 0 ? ",(" : "(");
+				for (int j = 0; j < row.size(); j++) {
+					sb.append(j > 0 ? ",?" : "?");
+					params.add(row.getValue(j));
+				}
+				sb.append(")");
+			}
+			if ("upsert".equals(s.getString("action"))) {
+				final JsonArray updateFields = s.getJsonArray("updateFields");
+				sb.append(" ON CONFLICT (").append(columns(s.getJsonArray("conflictFields"), "")).append(")");
+				if (updateFields == null || updateFields.isEmpty()) {
+					sb.append(" DO NOTHING");
+				} else {
+					sb.append(" DO UPDATE SET ");
+					for (int i = 0; i < updateFields.size(); i++) {
+						final String field = Sql.escapeField(updateFields.getString(i));
+						sb.append(i > 0 ? "," : "").append(field).append(" = EXCLUDED.").append(field);
+					}
+				}
+			}
+			final String returning = s.getString("returning");
+			if (returning != null && !returning.trim().isEmpty()) {
+				sb.append(" RETURNING ").append(returning);
+			}
+			return prepared(sb.toString(), params);
+		}
+
+		private static String columns(JsonArray fields, String defaultColumns) {
+			if (fields == null || fields.isEmpty()) {
+				return defaultColumns;
+			}
+			final StringBuilder sb = new StringBuilder();
+			for (Object field : fields) {
+				sb.append(sb.length() > 0 ? "," : "").append(Sql.escapeField(field.toString()));
+			}
+			return sb.toString();
+		}
+	}
+
+}
@@ -23,6 +23,8 @@ public class BucketStats {
 
 	private long storageSize;
 	private long objectNumber;
+	private long savedSize;
+	private long linkFallbacks;
 
 	public long getStorageSize() {
 		return storageSize;
@@ -40,4 +42,20 @@ public class BucketStats {
 		this.objectNumber = objectNumber;
 	}
 
+	public long getSavedSize() {
+		return savedSize;
+	}
+
+	public void setSavedSize(long savedSize) {
+		this.savedSize = savedSize;
+	}
+
+	public long getLinkFallbacks() {
+		return linkFallbacks;
+	}
+
+	public void setLinkFallbacks(long linkFallbacks) {
+		this.linkFallbacks = linkFallbacks;
+	}
+
 }
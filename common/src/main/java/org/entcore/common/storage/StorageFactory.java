@@ -144,6 +144,11 @@ public class StorageFactory {
 				fileValidator.setNext(new ExtensionValidator(blockedExtensions));
 			}
 			((FileStorage) storage).setValidator(fileValidator);
+			((FileStorage) storage).setLinkCopies(fs.getBoolean("link-copies", false));
+			JsonObject locationIndex = fs.getJsonObject("location-index");
+			if (locationIndex != null) {
+				((FileStorage) storage).setLocationIndex(vertx, locationIndex);
+			}
 
 			JsonObject s3fallback = fs.getJsonObject("s3fallback");
 			if (s3fallback != null) {
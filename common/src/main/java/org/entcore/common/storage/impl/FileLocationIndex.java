@@ -0,0 +1,365 @@
+/*
+ * Copyright © "Open Digital Education", 2016
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.common.storage.impl;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * <p>Tells in which bucket of a multi-bucket {@link FileStorage} a file is stored.</p>
+ * <p>
+ *     Files are only written in the last bucket, so the previous buckets are only read and purged. Each of them gets a
+ *     bloom filter built by a background scan and saved in {@code path} to be reloaded on the next start. The last
+ *     bucket, which is also fed by the other nodes, is always probed after the buckets whose filter may contain the file.
+ *     The locations resolved or written by this node are kept in a LRU cache of {@code cache-size} entries.
+ * </p>
+ * <p>
+ *     The filters are shared by the storages of the JVM : each one is read or built once, by the first module
+ *     loading it, and takes about {@code expected-files} * 9.6 bits for the default {@code fpp} of 1%. The scans run
+ *     one after the other on a thread of their own, so that they neither hold a worker thread nor walk the same
+ *     bucket twice.
+ * </p>
+ * <p>
+ *     A filter older than {@code rebuild-delay} milliseconds (one day by default, 0 to disable) is built again, which
+ *     forgets the removed files and catches the files copied in a bucket outside of the application. The files
+ *     written by this node during a rebuild are only found by the probe of the excluded buckets until the next one.
+ * </p>
+ */
+public class FileLocationIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(FileLocationIndex.class);
+	private static final Map<String, BitSet> sharedFilters = new ConcurrentHashMap<>();
+	private static final Map<String, Long> builtAt = new ConcurrentHashMap<>();
+	private static final ExecutorService scanner = Executors.newSingleThreadExecutor(r -> {
+		final Thread t = new Thread(r, "file-location-index");
+		t.setDaemon(true);
+		return t;
+	});
+	private final Vertx vertx;
+	private final List<String> buckets;
+	private final int writeBucketIdx;
+	private final String indexPath;
+	private final int nbBits;
+	private final int nbHashes;
+	private final long rebuildDelay;
+	private final String[] filterKeys;
+	private final Map<String, Integer> locations;
+
+	public FileLocationIndex(Vertx vertx, List<String> buckets, JsonObject config) {
+		this.vertx = vertx;
+		this.buckets = buckets;
+		this.writeBucketIdx = buckets.size() - 1;
+		this.indexPath = config.getString("path");
+		final long expectedFiles = config.getLong("expected-files", 5000000L);
+		final double fpp = config.getDouble("fpp", 0.01);
+		this.nbBits = (int) Math.min(Integer.MAX_VALUE - 64,
+				Math.ceil(-expectedFiles * Math.log(fpp) / (Math.log(2) * Math.log(2))));
+		this.nbHashes = Math.max(1, (int) Math.round((double) nbBits / expectedFiles * Math.log(2)));
+		this.rebuildDelay = config.getLong("rebuild-delay", 86400000L);
+		this.filterKeys = new String[writeBucketIdx];
+		for (int i = 0; i < writeBucketIdx; i++) {
+			filterKeys[i] = buckets.get(i) + "|" + nbBits + "|" + nbHashes;
+		}
+		final int cacheSize = config.getInteger("cache-size", 100000);
+		this.locations = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	/**
+	 * Loads the saved bloom filters or scans the read-only buckets, then rebuilds them every rebuild-delay.
+	 * Until a bucket is loaded, it is always probed.
+	 */
+	public void load(Handler<AsyncResult<Void>> handler) {
+		final List<Future> futures = new ArrayList<>();
+		for (int i = 0; i < writeBucketIdx; i++) {
+			futures.add(submit(i, false));
+		}
+		CompositeFuture.join(futures).onComplete(ar -> handler.handle(ar.mapEmpty()));
+		if (rebuildDelay > 0 && writeBucketIdx > 0) {
+			vertx.setPeriodic(rebuildDelay, h -> {
+				for (int i = 0; i < writeBucketIdx; i++) {
+					submit(i, true);
+				}
+			});
+		}
+	}
+
+	private Future<Void> submit(int idx, boolean rebuild) {
+		final Context context = vertx.getOrCreateContext();
+		final Promise<Void> promise = Promise.promise();
+		scanner.execute(() -> {
+			try {
+				if (rebuild) {
+					rebuildFilter(idx);
+				} else {
+					loadFilter(idx);
+				}
+				context.runOnContext(v -> promise.complete());
+			} catch (Exception e) {
+				log.error("Error loading location index of bucket " + buckets.get(idx), e);
+				context.runOnContext(v -> promise.fail(e));
+			}
+		});
+		return promise.future();
+	}
+
+	private void loadFilter(int idx) throws IOException {
+		final String key = filterKeys[idx];
+		if (sharedFilters.containsKey(key)) {
+			return;
+		}
+		final BitSet filter = readFilter(idx);
+		if (filter != null) {
+			sharedFilters.put(key, filter);
+		} else {
+			buildFilter(idx);
+		}
+	}
+
+	private void rebuildFilter(int idx) throws IOException {
+		final Long built = builtAt.get(filterKeys[idx]);
+		// already rebuilt by the index of another module
+		if (built == null || System.currentTimeMillis() - built >= rebuildDelay) {
+			buildFilter(idx);
+		}
+	}
+
+	private void buildFilter(int idx) throws IOException {
+		final long start = System.currentTimeMillis();
+		final BitSet filter = scan(idx);
+		log.info("Location index of bucket " + buckets.get(idx) + " built in " +
+				(System.currentTimeMillis() - start) + " ms.");
+		sharedFilters.put(filterKeys[idx], filter);
+		builtAt.put(filterKeys[idx], start);
+		writeFilter(idx, filter);
+	}
+
+	static void clearSharedFilters() {
+		sharedFilters.clear();
+		builtAt.clear();
+	}
+
+	/**
+	 * @param key Path of the file relative to its bucket
+	 * @return the index of the bucket which contains the file when this node already located it or {@code null}
+	 */
+	public Integer getLocation(String key) {
+		synchronized (locations) {
+			return locations.get(key);
+		}
+	}
+
+	/**
+	 * @param key Path of the file relative to its bucket
+	 * @return the indexes of the buckets which may contain the file, in probe order, the last one being the write bucket
+	 */
+	public List<Integer> getCandidates(String key) {
+		final List<Integer> candidates = new ArrayList<>();
+		final int[] hashes = hashes(key);
+		for (int i = 0; i < writeBucketIdx; i++) {
+			final BitSet filter = sharedFilters.get(filterKeys[i]);
+			if (filter == null || mightContain(filter, hashes)) {
+				candidates.add(i);
+			}
+		}
+		candidates.add(writeBucketIdx);
+		return candidates;
+	}
+
+	public void setLocation(String key, int bucketIdx) {
+		synchronized (locations) {
+			locations.put(key, bucketIdx);
+		}
+	}
+
+	/**
+	 * Records a file written by this node.
+	 * @param path Absolute path of the file, ignored if it is not inside a bucket
+	 */
+	public void added(String path) {
+		final int idx = bucketOf(path);
+		if (idx < 0) {
+			return;
+		}
+		final String key = path.substring(buckets.get(idx).length());
+		if (idx < writeBucketIdx) {
+			final BitSet filter = sharedFilters.get(filterKeys[idx]);
+			if (filter != null) {
+				add(filter, hashes(key));
+			}
+		}
+		setLocation(key, idx);
+	}
+
+	/**
+	 * Forgets the location of a file removed by this node.
+	 * @param path Absolute path of the file
+	 */
+	public void removed(String path) {
+		final int idx = bucketOf(path);
+		if (idx >= 0) {
+			synchronized (locations) {
+				locations.remove(path.substring(buckets.get(idx).length()));
+			}
+		}
+	}
+
+	private int bucketOf(String path) {
+		int idx = -1;
+		for (int i = 0; i < buckets.size(); i++) {
+			if (path.startsWith(buckets.get(i)) && (idx < 0 || buckets.get(i).length() > buckets.get(idx).length())) {
+				idx = i;
+			}
+		}
+		return idx;
+	}
+
+	private BitSet scan(int idx) throws IOException {
+		final BitSet filter = new BitSet(nbBits);
+		final Path root = Paths.get(buckets.get(idx));
+		try (Stream<Path> files = Files.walk(root)) {
+			files.filter(Files::isRegularFile).forEach(f -> add(filter, hashes(root.relativize(f).toString())));
+		}
+		return filter;
+	}
+
+	private Path filterPath(int idx) {
+		if (indexPath == null) {
+			return null;
+		}
+		return Paths.get(indexPath, buckets.get(idx).replaceAll("[^A-Za-z0-9_-]", "_") + ".bloom");
+	}
+
+	private BitSet readFilter(int idx) throws IOException {
+		final Path p = filterPath(idx);
+		if (p == null || !Files.exists(p)) {
+			return null;
+		}
+		final long modified = Files.getLastModifiedTime(p).toMillis();
+		if (rebuildDelay > 0 && System.currentTimeMillis() - modified >= rebuildDelay) {
+			log.info("Location index of bucket " + buckets.get(idx) + " is outdated, rebuild it");
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(p)))) {
+			if (in.readInt() != nbBits || in.readInt() != nbHashes) {
+				log.info("Location index parameters changed, rebuild index of bucket " + buckets.get(idx));
+				return null;
+			}
+			final byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			builtAt.put(filterKeys[idx], modified);
+			return BitSet.valueOf(bytes);
+		}
+	}
+
+	private void writeFilter(int idx, BitSet filter) throws IOException {
+		final Path p = filterPath(idx);
+		if (p == null) {
+			return;
+		}
+		Files.createDirectories(p.getParent());
+		// other JVMs of the node may save the same filter
+		final Path tmp = p.resolveSibling(p.getFileName() + "." + UUID.randomUUID() + ".tmp");
+		try {
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+				final byte[] bytes = filter.toByteArray();
+				out.writeInt(nbBits);
+				out.writeInt(nbHashes);
+				out.writeInt(bytes.length);
+				out.write(bytes);
+			}
+			try {
+				Files.move(tmp, p, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmp, p, StandardCopyOption.REPLACE_EXISTING);
+			}
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private int[] hashes(String key) {
+		final int h1 = key.hashCode();
+		int h2 = 0x811c9dc5;
+		for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+			h2 = (h2 ^ b) * 0x01000193;
+		}
+		final int[] hashes = new int[nbHashes];
+		for (int i = 0; i < nbHashes; i++) {
+			hashes[i] = (int) (((h1 + (long) i * h2) & Long.MAX_VALUE) % nbBits);
+		}
+		return hashes;
+	}
+
+	private static void add(BitSet filter, int[] hashes) {
+		// the filter may be shared with the storages of the other modules
+		synchronized (filter) {
+			for (int h : hashes) {
+				filter.set(h);
+			}
+		}
+	}
+
+	private static boolean mightContain(BitSet filter, int[] hashes) {
+		synchronized (filter) {
+			for (int h : hashes) {
+				if (!filter.get(h)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+}
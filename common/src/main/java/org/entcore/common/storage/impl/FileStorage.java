@@ -27,6 +27,7 @@ import fr.wseduc.webutils.http.Renders;
 import io.vertx.core.*;
 import io.vertx.core.buffer.Buffer;
 import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.CopyOptions;
 import io.vertx.core.file.FileProps;
 import io.vertx.core.file.FileSystem;
 import io.vertx.core.file.FileSystemProps;
@@ -51,10 +52,16 @@ import org.entcore.common.validation.FileValidator;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -65,13 +72,18 @@ public class FileStorage implements Storage {
 	private static final Logger log = LoggerFactory.getLogger(FileStorage.class);
 	private final List<String> basePaths;
 	private final int lastBucketIdx;
+	private final List<Integer> allBuckets = new ArrayList<>();
 	private static final Pattern RANGE = Pattern.compile("^bytes=(\\d+)-(\\d*)$");
+	private final Vertx vertx;
 	private final FileSystem fs;
 	private final boolean flat;
 	private final IMessagingClient messagingClient;
 	private AntivirusClient antivirus;
 	private FileValidator validator;
 	private FallbackStorage fallbackStorage;
+	private FileLocationIndex locationIndex;
+	private boolean linkCopies = false;
+	private final AtomicLong linkFallbacks = new AtomicLong(0);
 	private static final String STORAGE_ID = "file";
 
 	public FileStorage(Vertx vertx, String basePath, boolean flat, final IMessagingClient messagingClient) {
@@ -86,6 +98,7 @@ public class FileStorage implements Storage {
 	}
 	public FileStorage(Vertx vertx, JsonArray bP, boolean flat, final IMessagingClient messagingClient, final StorageFileAnalyzer.Configuration configuration) {
 		this.flat = flat;
+		this.vertx = vertx;
 		this.fs = vertx.fileSystem();
 		this.basePaths = new ArrayList<>();
 		for (Object o: bP) {
@@ -94,6 +107,9 @@ public class FileStorage implements Storage {
 			this.basePaths.add(((!basePath.endsWith("/")) ? basePath + "/" : basePath));
 		}
 		this.lastBucketIdx = this.basePaths.size() - 1;
+		for (int i = 0; i <= lastBucketIdx; i++) {
+			this.allBuckets.add(i);
+		}
 		this.messagingClient = messagingClient;
 		final String verticleIdt = vertx.getOrCreateContext().config().getString("main");
 		if(this.messagingClient.canListen()) {
@@ -184,6 +200,7 @@ public class FileStorage implements Storage {
 								return;
 							}
 						}
+						indexAdded(path);
 						handler.handle(res.put("_id", id)
 								.put("status", "ok")
 								.put("metadata", metadata));
@@ -312,21 +329,25 @@ public class FileStorage implements Storage {
 		mkdirsIfNotExists(id, path, new Handler<AsyncResult<Void>>() {
 			@Override
 			public void handle(AsyncResult<Void> event) {
-				fs.writeFile(path, buff, new Handler<AsyncResult<Void>>() {
+				final String writePath = replacementPath(path);
+				fs.writeFile(writePath, buff, new Handler<AsyncResult<Void>>() {
 					@Override
-					public void handle(AsyncResult<Void> event) {
-						if (event.succeeded()) {
-							final JsonObject metadata = new JsonObject().put("content-type", contentType)
-									.put("filename", filename).put("size", buff.length());
-							res.put("status", "ok").put("_id", id).put("metadata", metadata);
-							if(!safe) {
-								sendFileMetadataForSecurityThreatsAnalysis(id, metadata);
-								scanFile(path);
+					public void handle(AsyncResult<Void> written) {
+						replaceWith(written, writePath, path).onComplete(replaced -> {
+							if (replaced.succeeded()) {
+								final JsonObject metadata = new JsonObject().put("content-type", contentType)
+										.put("filename", filename).put("size", buff.length());
+								indexAdded(path);
+								res.put("status", "ok").put("_id", id).put("metadata", metadata);
+								if(!safe) {
+									sendFileMetadataForSecurityThreatsAnalysis(id, metadata);
+									scanFile(path);
+								}
+							} else {
+								res.put("status", "error").put("message", replaced.cause().getMessage());
 							}
-						} else {
-							res.put("status", "error").put("message", event.cause().getMessage());
-						}
-						handler.handle(res);
+							handler.handle(res);
+						});
 					}
 				});
 			}
@@ -351,13 +372,16 @@ public class FileStorage implements Storage {
 								  final String contentType, final String filename) {
 		Promise<JsonObject> promise = Promise.promise();
 		final JsonObject res = new JsonObject();
+		final String writePath = replacementPath(path);
 		mkdirsIfNotExists(id, path)
-				.compose(v -> streamBufferToFileSystem(path, bufferReadStream))
+				.compose(v -> streamBufferToFileSystem(writePath, bufferReadStream))
+				.compose(streamedFile -> replaceWith(Future.succeededFuture(), writePath, path).map(streamedFile))
 				.onSuccess(streamedFileResult -> {
 					final JsonObject metadata = new JsonObject()
 							.put("content-type", contentType)
 							.put("filename", filename)
 							.put("size", streamedFileResult.getWritePos());
+					indexAdded(path);
 					res.put("status", "ok")
 							.put("_id", id)
 							.put("metadata", metadata);
@@ -647,6 +671,7 @@ public class FileStorage implements Storage {
 				fs.delete(path, new Handler<AsyncResult<Void>>() {
 					@Override
 					public void handle(AsyncResult<Void> event) {
+						indexRemoved(path);
 						if (event.succeeded()) {
 							res.put("status", "ok");
 						} else {
@@ -678,6 +703,7 @@ public class FileStorage implements Storage {
 					fs.delete(path, new Handler<AsyncResult<Void>>() {
 						@Override
 						public void handle(AsyncResult<Void> event) {
+							indexRemoved(path);
 							if (event.failed()) {
 								errors.add(new JsonObject().put("id", o.toString())
 										.put("message", event.cause().getMessage()));
@@ -715,7 +741,7 @@ public class FileStorage implements Storage {
 				@Override
 				public void handle(AsyncResult<Void> event) {
 					if (event.succeeded()) {
-						copyFileId(id, path, newId, handler);
+						copyFileId(id, path, newId, linkCopies, handler);
 					} else {
 						handler.handle(new JsonObject().put("status", "error")
 								.put("message", event.cause().getMessage()));
@@ -746,10 +772,15 @@ public class FileStorage implements Storage {
 		copyFilePath(path, to, null, handler);
 	}
 
-	private void copyFileId(String id, final String to, final String newId, final Handler<JsonObject> handler) {
+	private void copyFileId(String id, final String to, final String newId, final boolean link,
+			final Handler<JsonObject> handler) {
 		getReadPath(id, ar -> {
 			if (ar.succeeded()) {
-				copyFilePath(ar.result(), to, newId, handler);
+				if (link) {
+					linkFilePath(ar.result(), to, newId, handler);
+				} else {
+					copyFilePath(ar.result(), to, newId, handler);
+				}
 			} else {
 				handler.handle(new JsonObject().put("status", "error").put("message", "invalid.path"));
 				log.warn(ar.cause().getMessage(), ar.cause());
@@ -757,6 +788,54 @@ public class FileStorage implements Storage {
 		});
 	}
 
+	/**
+	 * Creates the copy as a hard link of the source file : the content is shared until the last link is removed.
+	 * Falls back to a physical copy when the link can't be created (e.g. buckets on different volumes).
+	 */
+	private void linkFilePath(String path, final String to, final String newId, final Handler<JsonObject> handler) {
+		fs.link(to, path, ar -> {
+			if (ar.succeeded()) {
+				indexAdded(to);
+				handler.handle(new JsonObject().put("status", "ok").put("_id", (isNotEmpty(newId) ? newId : to)));
+			} else {
+				// e.g. every copy of the files of a bucket mounted on another volume
+				if (linkFallbacks.getAndIncrement() == 0) {
+					log.warn("Unable to link " + path + " to " + to + ", the copies are physical until the source " +
+							"is in the same volume as the write bucket : " + ar.cause().getMessage());
+				} else {
+					log.debug("Unable to link " + path + " to " + to + ", copy it : " + ar.cause().getMessage());
+				}
+				copyFilePath(path, to, newId, handler);
+			}
+		});
+	}
+
+	/**
+	 * When copies are links, a file must be replaced instead of overwritten to keep the content of its copies : it is
+	 * written next to the target, then moved over it.
+	 */
+	private String replacementPath(String path) {
+		return linkCopies ? path + "." + UUID.randomUUID() + ".tmp" : path;
+	}
+
+	private Future<Void> replaceWith(AsyncResult<Void> written, String writePath, String path) {
+		final Promise<Void> promise = Promise.promise();
+		if (written.failed() || writePath.equals(path)) {
+			if (written.failed() && !writePath.equals(path)) {
+				fs.delete(writePath, d -> {});
+			}
+			promise.handle(written);
+			return promise.future();
+		}
+		fs.move(writePath, path, new CopyOptions().setReplaceExisting(true).setAtomicMove(true), ar -> {
+			if (ar.failed()) {
+				fs.delete(writePath, d -> {});
+			}
+			promise.handle(ar);
+		});
+		return promise.future();
+	}
+
 	private void copyFilePath(String path, final String to, final String newId, final Handler<JsonObject> handler)
 	{
 		final JsonObject res = new JsonObject();
@@ -773,6 +852,7 @@ public class FileStorage implements Storage {
 						@Override
 						public void handle(AsyncResult<Void> event) {
 							if (event.succeeded()) {
+								indexAdded(to);
 								res.put("status", "ok").put("_id", (isNotEmpty(newId) ? newId : to));
 							} else {
 								res.put("status", "error").put("message", event.cause().getMessage());
@@ -847,7 +927,25 @@ public class FileStorage implements Storage {
 					final FileSystemProps fsProps = event.result();
 					final BucketStats bucketStats = new BucketStats();
 					bucketStats.setStorageSize(fsProps.totalSpace() - fsProps.usableSpace());
-					handler.handle(new DefaultAsyncResult<>(bucketStats));
+					bucketStats.setLinkFallbacks(linkFallbacks.get());
+					if (!linkCopies) {
+						handler.handle(new DefaultAsyncResult<>(bucketStats));
+						return;
+					}
+					vertx.<Long>executeBlocking(p -> {
+						try {
+							p.complete(savedSize());
+						} catch (IOException | UncheckedIOException e) {
+							p.fail(e);
+						}
+					}, false, saved -> {
+						if (saved.succeeded()) {
+							bucketStats.setSavedSize(saved.result());
+						} else {
+							log.error("Error computing the size saved by the links", saved.cause());
+						}
+						handler.handle(new DefaultAsyncResult<>(bucketStats));
+					});
 				} else {
 					handler.handle(new DefaultAsyncResult<BucketStats>(event.cause()));
 				}
@@ -855,6 +953,28 @@ public class FileStorage implements Storage {
 		});
 	}
 
+	/**
+	 * Walks the buckets : a file with n hard links is stored once but counted n times, so each link saves
+	 * (n - 1) / n of its size.
+	 */
+	private long savedSize() throws IOException {
+		double saved = 0;
+		for (String bucket : basePaths) {
+			try (Stream<Path> files = Files.walk(Paths.get(bucket))) {
+				for (Path f : (Iterable<Path>) files::iterator) {
+					if (!Files.isRegularFile(f)) {
+						continue;
+					}
+					final int nlink = (Integer) Files.getAttribute(f, "unix:nlink");
+					if (nlink > 1) {
+						saved += (double) Files.size(f) * (nlink - 1) / nlink;
+					}
+				}
+			}
+		}
+		return Math.round(saved);
+	}
+
 	private String getWritePath(String file) throws FileNotFoundException {
 		return getFilePath(file, getBucket());
 	}
@@ -892,12 +1012,36 @@ public class FileStorage implements Storage {
 			} catch (FileNotFoundException e) {
 				handler.handle(Future.failedFuture(e));
 			}
+		} else if (locationIndex != null) {
+			final String key;
+			try {
+				key = getFilePath(file, "");
+			} catch (FileNotFoundException e) {
+				handler.handle(Future.failedFuture(e));
+				return;
+			}
+			final Integer idx = locationIndex.getLocation(key);
+			if (idx != null) {
+				handler.handle(Future.succeededFuture(basePaths.get(idx) + key));
+			} else {
+				// the buckets excluded by the filters are probed last, before giving up
+				final List<Integer> buckets = locationIndex.getCandidates(key);
+				final int nbCandidates = buckets.size();
+				for (Integer i : allBuckets) {
+					if (!buckets.contains(i)) {
+						buckets.add(i);
+					}
+				}
+				getReadPath(file, buckets, nbCandidates, 0, handler);
+			}
 		} else {
-			getReadPath(file, 0, handler);
+			getReadPath(file, allBuckets, allBuckets.size(), 0, handler);
 		}
 	}
 
-	private void getReadPath(final String file, final int idx, final Handler<AsyncResult<String>> handler) {
+	private void getReadPath(final String file, final List<Integer> buckets, final int nbCandidates, final int pos,
+			final Handler<AsyncResult<String>> handler) {
+		final int idx = buckets.get(pos);
 		final String p;
 		try {
 			p = getFilePath(file, basePaths.get(idx));
@@ -907,9 +1051,15 @@ public class FileStorage implements Storage {
 		}
 		fs.exists(p, ar -> {
 			if (ar.succeeded() && Boolean.TRUE.equals(ar.result())) {
+				if (locationIndex != null && pos >= nbCandidates) {
+					log.warn("File " + p + " missing from the location index.");
+					locationIndex.added(p);
+				} else if (locationIndex != null) {
+					locationIndex.setLocation(p.substring(basePaths.get(idx).length()), idx);
+				}
 				handler.handle(Future.succeededFuture(p));
-			} else if (idx < lastBucketIdx) {
-				getReadPath(file, idx + 1, handler);
+			} else if (pos < buckets.size() - 1) {
+				getReadPath(file, buckets, nbCandidates, pos + 1, handler);
 			} else if (fallbackStorage != null) {
 				fallbackStorage.downloadFile(file, p, handler);
 			} else {
@@ -981,4 +1131,40 @@ public class FileStorage implements Storage {
 		this.fallbackStorage = fallbackStorage;
 	}
 
+	/**
+	 * Resolves the bucket of the files with a {@link FileLocationIndex} instead of probing each bucket.
+	 * Only useful with several paths.
+	 */
+	public void setLocationIndex(Vertx vertx, JsonObject config) {
+		if (lastBucketIdx == 0) {
+			return;
+		}
+		final FileLocationIndex index = new FileLocationIndex(vertx, basePaths, config);
+		this.locationIndex = index;
+		index.load(ar -> {
+			if (ar.failed()) {
+				log.error("Error loading file location index", ar.cause());
+			}
+		});
+	}
+
+	/**
+	 * Makes {@link #copyFile} create hard links instead of physical copies.
+	 */
+	public void setLinkCopies(boolean linkCopies) {
+		this.linkCopies = linkCopies;
+	}
+
+	private void indexAdded(String path) {
+		if (locationIndex != null) {
+			locationIndex.added(path);
+		}
+	}
+
+	private void indexRemoved(String path) {
+		if (locationIndex != null) {
+			locationIndex.removed(path);
+		}
+	}
+
 }
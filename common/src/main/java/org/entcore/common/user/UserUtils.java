@@ -50,6 +50,7 @@ import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import static org.entcore.common.http.filter.AppOAuthResourceProvider.getTokenId;
 import org.entcore.common.neo4j.Neo4j;
+import org.entcore.common.session.SessionNearCache;
 import org.entcore.common.session.SessionRecreationRequest;
 import org.entcore.common.utils.HostUtils;
 import org.entcore.common.utils.StringUtils;
@@ -81,6 +82,22 @@ public class UserUtils {
 	private static final I18n i18n = I18n.getInstance();
 	private static final long JWT_TOKEN_EXPIRATION_TIME = 600L;
 	private static final long LOG_SESSION_DELAY = 500L;
+	private static SessionNearCache sessionNearCache;
+
+	/**
+	 * Enables the near-cache of sessions of the module if it is configured.
+	 * @param vertx Vertx instance of the module
+	 * @param config Configuration of the module
+	 */
+	public static void initSessionNearCache(Vertx vertx, JsonObject config) {
+		if (sessionNearCache == null) {
+			sessionNearCache = SessionNearCache.create(vertx, config);
+		}
+	}
+
+	public static SessionNearCache getSessionNearCache() {
+		return sessionNearCache;
+	}
 
 	private static void findUsers(final EventBus eb, HttpServerRequest request,
 								  final JsonObject query, final Handler<JsonArray> handler) {
@@ -564,6 +581,25 @@ public class UserUtils {
 
 	private static void findSession(EventBus eb, final HttpServerRequest request, JsonObject findSession, final boolean paused,
 			final Handler<JsonObject> handler) {
+		final SessionNearCache nearCache = "find".equals(findSession.getString("action")) ? sessionNearCache : null;
+		final String cacheKey = findSession.getString("sessionId");
+		if (nearCache != null) {
+			final JsonObject cachedSession = nearCache.get(cacheKey);
+			if (cachedSession != null) {
+				if (request != null && !paused) {
+					request.resume();
+				}
+				if (request instanceof SecureHttpServerRequest) {
+					((SecureHttpServerRequest) request).setSession(cachedSession);
+				}
+				handler.handle(cachedSession);
+				if (nearCache.touch(cacheKey)) {
+					refreshCachedSession(eb, nearCache, cacheKey, findSession);
+				}
+				return;
+			}
+		}
+		final long generation = nearCache != null ? nearCache.generation() : -1L;
 		final long startSessionTime = System.currentTimeMillis();
 		eb.send(SESSION_ADDRESS, findSession, new Handler<AsyncResult<Message<JsonObject>>>() {
 
@@ -576,6 +612,9 @@ public class UserUtils {
 						request.resume();
 					}
 					if ("ok".equals(message.result().body().getString("status")) && session != null) {
+						if (nearCache != null) {
+							nearCache.put(cacheKey, session, generation);
+						}
 						if (request instanceof SecureHttpServerRequest) {
 							((SecureHttpServerRequest) request).setSession(session);
 						}
@@ -597,6 +636,30 @@ public class UserUtils {
 		});
 	}
 
+	/**
+	 * Sends the lookup of a session served by the near-cache to the session module, which refreshes its last
+	 * activity, and updates the cached copy with the answer.
+	 */
+	private static void refreshCachedSession(EventBus eb, final SessionNearCache nearCache, final String cacheKey,
+			JsonObject findSession) {
+		final long generation = nearCache.generation();
+		eb.send(SESSION_ADDRESS, findSession, new Handler<AsyncResult<Message<JsonObject>>>() {
+			@Override
+			public void handle(AsyncResult<Message<JsonObject>> message) {
+				if (message.failed()) {
+					log.error("Could not refresh cached session activity : " + message.cause());
+					return;
+				}
+				final JsonObject session = message.result().body().getJsonObject("session");
+				if ("ok".equals(message.result().body().getString("status")) && session != null) {
+					nearCache.put(cacheKey, session, generation);
+				} else {
+					nearCache.invalidateSession(cacheKey);
+				}
+			}
+		});
+	}
+
 	private static void findSessionMonitoring(long startSessionTime, AsyncResult<Message<JsonObject>> message) {
 		final long timeGetSessionDelay = System.currentTimeMillis() - startSessionTime;
 		if (timeGetSessionDelay > LOG_SESSION_DELAY) {
@@ -0,0 +1,45 @@
+package org.entcore.common.cache;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.regex.Pattern;
+
+@RunWith(VertxUnitRunner.class)
+public class CacheRouteMatcherTest {
+
+    @Test
+    public void testLiteralPrefix(final TestContext context) {
+        context.assertEquals("/workspace/documents", CacheRouteMatcher.literalPrefix("^/workspace/documents$"));
+        context.assertEquals("/workspace/document/", CacheRouteMatcher.literalPrefix("^/workspace/document/(?<id>[^/]+)$"));
+        context.assertEquals("/timeline/", CacheRouteMatcher.literalPrefix("/timeline/\\d+"));
+        context.assertEquals("/a.b/", CacheRouteMatcher.literalPrefix("/a\\.b/\\Q\\E.*"));
+        context.assertEquals("/a.b", CacheRouteMatcher.literalPrefix("\\Q/a.b\\E(/.*)?"));
+        context.assertEquals("/item", CacheRouteMatcher.literalPrefix("/items?"));
+        context.assertEquals("", CacheRouteMatcher.literalPrefix("/a|/b"));
+        context.assertEquals("/", CacheRouteMatcher.literalPrefix("/(a|b)"));
+    }
+
+    @Test
+    public void testMatch(final TestContext context) {
+        final CacheRouteMatcher<String> matcher = new CacheRouteMatcher<String>()
+                .add("GET", Pattern.compile("^/workspace/documents$"), "documents")
+                .add("GET", Pattern.compile("^/workspace/document/(?<id>[^/]+)$"), "document")
+                .add("GET", Pattern.compile("^/workspace/document/properties/(?<id>[^/]+)$"), "properties")
+                .add("POST", Pattern.compile("^/workspace/documents$"), "create")
+                .add("GET", Pattern.compile("/timeline|/timeline/lastNotifications"), "timeline");
+        context.assertEquals("documents", matcher.match("GET", "/workspace/documents"));
+        context.assertEquals("create", matcher.match("POST", "/workspace/documents"));
+        context.assertEquals("document", matcher.match("GET", "/workspace/document/123"));
+        context.assertEquals("properties", matcher.match("GET", "/workspace/document/properties/123"));
+        context.assertEquals("timeline", matcher.match("GET", "/timeline/lastNotifications"));
+        context.assertNull(matcher.match("GET", "/workspace/documents/123"));
+        context.assertNull(matcher.match("PUT", "/workspace/documents"));
+        context.assertNull(matcher.match("GET", "/conversation/list"));
+        context.assertFalse(matcher.isEmpty());
+        context.assertTrue(new CacheRouteMatcher<String>().isEmpty());
+    }
+
+}
@@ -0,0 +1,83 @@
+package org.entcore.common.cache;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.test.TestHelper;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.GenericContainer;
+
+import java.util.Arrays;
+
+@RunWith(VertxUnitRunner.class)
+public class RedisCacheServiceTest {
+    private static final TestHelper test = TestHelper.helper();
+    @ClassRule
+    public static GenericContainer<?> redisContainer = test.database().createRedisContainer().withExposedPorts(6379);
+    private static RedisCacheService cacheService;
+
+    @BeforeClass
+    public static void setUp() {
+        cacheService = new RedisCacheService(test.vertx(), new JsonObject()
+                .put("host", redisContainer.getHost()).put("port", redisContainer.getMappedPort(6379)));
+    }
+
+    @Test
+    public void testUpsertWithTtlShouldSetExpiration(TestContext context) {
+        final Async async = context.async();
+        cacheService.upsert("ttl", "value", 60, context.asyncAssertSuccess(v ->
+                cacheService.redis.ttl("global:ttl", context.asyncAssertSuccess(ttl -> {
+                    context.assertTrue(ttl > 0 && ttl <= 60, "ttl should be set with the value : " + ttl);
+                    async.complete();
+                }))));
+    }
+
+    @Test
+    public void testUpsertWithoutTtlShouldNotExpire(TestContext context) {
+        final Async async = context.async();
+        cacheService.upsert("nottl", "value", -60, context.asyncAssertSuccess(v ->
+                cacheService.redis.ttl("global:nottl", context.asyncAssertSuccess(ttl -> {
+                    context.assertEquals(-1L, ttl);
+                    cacheService.get("nottl", context.asyncAssertSuccess(value -> {
+                        context.assertEquals("value", value.orElse(null));
+                        async.complete();
+                    }));
+                }))));
+    }
+
+    @Test
+    public void testRemoveForUsersShouldOnlyRemoveTheirEntries(TestContext context) {
+        final Async async = context.async();
+        cacheService.redis.set("user:u1:apps", "a1", context.asyncAssertSuccess(r1 ->
+            cacheService.redis.set("user:u2:apps", "a2", context.asyncAssertSuccess(r2 ->
+                cacheService.redis.set("user:u3:apps", "a3", context.asyncAssertSuccess(r3 ->
+                    cacheService.removeForUsers(Arrays.asList("u1", "u2"), "apps", context.asyncAssertSuccess(v ->
+                        cacheService.redis.exists("user:u1:apps", context.asyncAssertSuccess(e1 -> {
+                            context.assertEquals(0L, e1);
+                            cacheService.redis.exists("user:u3:apps", context.asyncAssertSuccess(e3 -> {
+                                context.assertEquals(1L, e3);
+                                async.complete();
+                            }));
+                        }))))))))));
+    }
+
+    @Test
+    public void testPrependToListsShouldTrimEachList(TestContext context) {
+        final Async async = context.async();
+        cacheService.prependToLists(Arrays.asList("list1", "list2"), "v1", 2, context.asyncAssertSuccess(r1 ->
+            cacheService.prependToLists(Arrays.asList("list1", "list2"), "v2", 2, context.asyncAssertSuccess(r2 ->
+                cacheService.prependToLists(Arrays.asList("list1", "list2"), "v3", 2, context.asyncAssertSuccess(r3 ->
+                    cacheService.getList("list2", context.asyncAssertSuccess(list -> {
+                        context.assertEquals(Arrays.asList("v3", "v2"), list);
+                        cacheService.getListLength("list1", context.asyncAssertSuccess(length -> {
+                            context.assertEquals(2L, length);
+                            async.complete();
+                        }));
+                    }))))))));
+    }
+
+}
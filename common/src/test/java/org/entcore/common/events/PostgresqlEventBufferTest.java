@@ -0,0 +1,169 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.common.events;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.entcore.common.events.impl.PostgresqlEventBuffer;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import io.vertx.pgclient.PgConnectOptions;
+import io.vertx.pgclient.PgPool;
+import io.vertx.sqlclient.PoolOptions;
+
+@RunWith(VertxUnitRunner.class)
+public class PostgresqlEventBufferTest {
+    @ClassRule
+    public static PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer("postgres:9.5");
+
+    private static final Vertx vertx = Vertx.vertx();
+    private static PgPool pgPool;
+
+    @BeforeClass
+    public static void beforeAll(TestContext context) {
+        final PgConnectOptions options = new PgConnectOptions()
+                .setPort(postgreSQLContainer.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT))
+                .setHost(postgreSQLContainer.getContainerIpAddress()).setDatabase(postgreSQLContainer.getDatabaseName())
+                .setUser(postgreSQLContainer.getUsername()).setPassword(postgreSQLContainer.getPassword());
+        pgPool = PgPool.pool(vertx, options, new PoolOptions().setMaxSize(2));
+        final Async async = context.async();
+        pgPool.query("CREATE SCHEMA events").execute(resSch -> {
+            context.assertTrue(resSch.succeeded());
+            pgPool.query("CREATE TABLE events.test_events(id VARCHAR(36) PRIMARY KEY, user_id VARCHAR(36), " +
+                    "date TIMESTAMP)").execute(resSql -> {
+                context.assertTrue(resSql.succeeded());
+                async.complete();
+            });
+        });
+    }
+
+    private JsonObject event(String id, String userId) {
+        return new JsonObject().put("id", id).put("user_id", userId).put("date", "2020-01-01T10:00:00");
+    }
+
+    private Future<Integer> count(String userId) {
+        final Promise<Integer> promise = Promise.promise();
+        pgPool.query("SELECT count(*) FROM events.test_events WHERE user_id = '" + userId + "'").execute(ar -> {
+            if (ar.succeeded()) {
+                promise.complete(ar.result().iterator().next().getLong(0).intValue());
+            } else {
+                promise.fail(ar.cause());
+            }
+        });
+        return promise.future();
+    }
+
+    @Test
+    public void testInsertBatchAndKeepInvalidEventsOut(TestContext context) {
+        final Async async = context.async();
+        final PostgresqlEventBuffer buffer = new PostgresqlEventBuffer(vertx, () -> pgPool, "batch",
+                new JsonObject().put("batch-size", 3).put("flush-delay", 60000L));
+        final String id = UUID.randomUUID().toString();
+        final AtomicInteger acks = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        for (JsonObject e : new JsonObject[]{ event(id, "batch"), event(UUID.randomUUID().toString(), "batch"),
+                event(id, "batch") }) {
+            buffer.add("events.test_events", e, res -> {
+                if (res.isLeft()) {
+                    errors.incrementAndGet();
+                }
+                if (acks.incrementAndGet() == 3) {
+                    // the duplicate id rejects the batch, the events are then inserted one by one
+                    context.assertEquals(1, errors.get());
+                    context.assertEquals(0, buffer.getPending());
+                    count("batch").setHandler(context.asyncAssertSuccess(c -> {
+                        context.assertEquals(2, c);
+                        async.complete();
+                    }));
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testCloseShouldFlushPendingEvents(TestContext context) {
+        final Async async = context.async();
+        final PostgresqlEventBuffer buffer = new PostgresqlEventBuffer(vertx, () -> pgPool, "close",
+                new JsonObject().put("batch-size", 100).put("flush-delay", 60000L));
+        buffer.add("events.test_events", event(UUID.randomUUID().toString(), "close"), res -> {});
+        buffer.add("events.test_events", event(UUID.randomUUID().toString(), "close"), res -> {});
+        context.assertEquals(2, buffer.getPending());
+        buffer.close(context.asyncAssertSuccess(v -> {
+            context.assertEquals(0, buffer.getPending());
+            count("close").setHandler(context.asyncAssertSuccess(c -> {
+                context.assertEquals(2, c);
+                async.complete();
+            }));
+        }));
+    }
+
+    @Test
+    public void testSpillAndReplayWhenPostgresIsBack(TestContext context) throws Exception {
+        final Async async = context.async();
+        final File dir = Files.createTempDirectory("events-spill").toFile();
+        final PgPool unreachable = PgPool.pool(vertx, new PgConnectOptions().setHost("localhost").setPort(1)
+                .setDatabase("test").setUser("test").setPassword("test"), new PoolOptions().setMaxSize(1));
+        final AtomicReference<PgPool> pool = new AtomicReference<>(unreachable);
+        final PostgresqlEventBuffer buffer = new PostgresqlEventBuffer(vertx, pool::get, "spill",
+                new JsonObject().put("batch-size", 2).put("flush-delay", 500L)
+                        .put("spill-path", dir.getAbsolutePath() + "/events"));
+        final File spillFile = new File(dir, "events.spill.0");
+        final AtomicInteger spilled = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            buffer.add("events.test_events", event(UUID.randomUUID().toString(), "spill"), res -> {
+                context.assertTrue(res.isRight());
+                if (spilled.incrementAndGet() < 2) {
+                    return;
+                }
+                // both events are appended through the same file handle
+                context.assertEquals(2, vertx.fileSystem().readFileBlocking(spillFile.getAbsolutePath())
+                        .toString().split("\n").length);
+                pool.set(pgPool);
+                buffer.add("events.test_events", event(UUID.randomUUID().toString(), "spill"), r -> {});
+                buffer.add("events.test_events", event(UUID.randomUUID().toString(), "spill"), r -> {});
+                vertx.setPeriodic(200L, timerId -> count("spill").setHandler(context.asyncAssertSuccess(c -> {
+                    if (c == 4 && !spillFile.exists() && !new File(dir, "events.spill.0.replay").exists()) {
+                        vertx.cancelTimer(timerId);
+                        async.complete();
+                    }
+                })));
+            });
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.entcore.common.neo4j;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(VertxUnitRunner.class)
+public class Neo4jResultCacheTest {
+
+    private static class ClockedCache extends Neo4jResultCache {
+        private long time = 0L;
+
+        ClockedCache(int maxSize, long ttl) {
+            super(maxSize, ttl, null);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+
+    private static JsonObject result(String id) {
+        return new JsonObject().put("result", new JsonArray().add(new JsonObject().put("id", id)));
+    }
+
+    @Test
+    public void testHitRatioAndTtl(final TestContext context) {
+        final ClockedCache cache = new ClockedCache(10, 1000L);
+        final String key = Neo4jResultCache.key("q1", new JsonObject().put("query", "MATCH (n) RETURN n").put("params", new JsonObject()));
+        context.assertNull(cache.get("q1", key));
+        cache.put(key, result("a"), null);
+        context.assertEquals("a", cache.get("q1", key).getJsonArray("result").getJsonObject(0).getString("id"));
+        cache.time = 1000L;
+        context.assertNull(cache.get("q1", key), "entry should expire after ttl");
+        final JsonObject stats = cache.getStats().getJsonObject("queries").getJsonObject("q1");
+        context.assertEquals(1L, stats.getLong("hits"));
+        context.assertEquals(2L, stats.getLong("misses"));
+    }
+
+    @Test
+    public void testInvalidateByTag(final TestContext context) {
+        final Neo4jResultCache cache = new Neo4jResultCache(10, 1000L, null);
+        cache.put("k1", result("a"), Arrays.asList(Neo4jResultCache.TAG_GROUPS, Neo4jResultCache.TAG_ACTIONS));
+        cache.put("k2", result("b"), Collections.singletonList(Neo4jResultCache.TAG_COMMUNICATION));
+        cache.invalidate(Neo4jResultCache.TAG_ACTIONS);
+        context.assertNull(cache.get("q", "k1"));
+        context.assertNotNull(cache.get("q", "k2"));
+        cache.invalidate(Neo4jResultCache.TAG_GROUPS);
+        context.assertEquals(1, cache.size());
+        context.assertEquals(1L, cache.getStats().getLong("invalidations"));
+    }
+
+    @Test
+    public void testQueryInFlightDuringInvalidationIsNotCached(final TestContext context) {
+        final Neo4jResultCache cache = new Neo4jResultCache(10, 1000L, null);
+        final long generation = cache.generation();
+        cache.invalidate(Neo4jResultCache.TAG_ACTIONS);
+        cache.put("k1", result("a"), Collections.singletonList(Neo4jResultCache.TAG_ACTIONS), generation);
+        context.assertNull(cache.get("q", "k1"), "result read before the invalidation should not be cached");
+        cache.put("k1", result("a"), Collections.singletonList(Neo4jResultCache.TAG_ACTIONS), cache.generation());
+        context.assertNotNull(cache.get("q", "k1"));
+    }
+
+    @Test
+    public void testEnabledQueries(final TestContext context) {
+        final Neo4jResultCache cache = new Neo4jResultCache(10, 1000L, Collections.singleton("session.rights"));
+        context.assertTrue(cache.isEnabled("session.rights"));
+        context.assertFalse(cache.isEnabled("communication.visibleUsers"));
+        context.assertTrue(new Neo4jResultCache(10, 1000L, null).isEnabled("communication.visibleUsers"));
+    }
+
+}
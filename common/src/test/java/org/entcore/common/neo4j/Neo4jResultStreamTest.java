@@ -0,0 +1,116 @@
+package org.entcore.common.neo4j;
+
+import io.vertx.core.Handler;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.streams.ReadStream;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(VertxUnitRunner.class)
+public class Neo4jResultStreamTest {
+
+    private static final String TRANSACTION_RESPONSE = "{\"commit\":\"http://localhost:7474/db/data/transaction/12/commit\"," +
+            "\"results\":[{\"columns\":[\"id\",\"groups\"],\"data\":[" +
+            "{\"row\":[\"u1\",[{\"name\":\"g1\"}]],\"meta\":[null,null]}," +
+            "{\"row\":[\"u2\",null],\"meta\":[null,null]}]}," +
+            "{\"columns\":[\"count\"],\"data\":[{\"row\":[2]}]}]," +
+            "\"transaction\":{\"expires\":\"Tue, 13 Oct 2020 10:00:00 +0000\"},\"errors\":[]}";
+
+    private static void chunked(Neo4jResultStream stream, String response) {
+        final BufferReadStream source = new BufferReadStream();
+        stream.attach(source);
+        for (int i = 0; i < response.length(); i += 7) {
+            source.handler.handle(Buffer.buffer(response.substring(i, Math.min(response.length(), i + 7))));
+        }
+        source.endHandler.handle(null);
+    }
+
+    @Test
+    public void testTransactionResults(final TestContext context) {
+        final Neo4jResultStream stream = new Neo4jResultStream(false);
+        stream.parse(Buffer.buffer(TRANSACTION_RESPONSE));
+        final JsonArray results = stream.getResults();
+        context.assertEquals(2, results.size());
+        final JsonArray first = results.getJsonArray(0);
+        context.assertEquals(2, first.size());
+        context.assertEquals("u1", first.getJsonObject(0).getString("id"));
+        context.assertEquals("g1", first.getJsonObject(0).getJsonArray("groups").getJsonObject(0).getString("name"));
+        context.assertTrue(first.getJsonObject(1).containsKey("groups"));
+        context.assertNull(first.getJsonObject(1).getValue("groups"));
+        context.assertEquals(2, results.getJsonArray(1).getJsonObject(0).getInteger("count"));
+        context.assertEquals(12, stream.getTransactionId());
+        context.assertEquals(0, stream.getErrors().size());
+    }
+
+    @Test
+    public void testRowHandler(final TestContext context) {
+        final List<JsonObject> rows = new ArrayList<>();
+        final Neo4jResultStream stream = new Neo4jResultStream(true);
+        stream.handler(rows::add).endHandler(v -> rows.add(new JsonObject().put("end", true)));
+        chunked(stream, "{\"columns\":[\"name\",\"age\"],\"data\":[[\"a\",1],[\"b\",{\"x\":[1,2]}]]}");
+        context.assertEquals(3, rows.size());
+        context.assertEquals("a", rows.get(0).getString("name"));
+        context.assertEquals(new JsonArray().add(1).add(2), rows.get(1).getJsonObject("age").getJsonArray("x"));
+        context.assertTrue(rows.get(2).getBoolean("end"));
+        context.assertEquals(0, stream.getResults().size(), "rows must not be kept when a row handler is set");
+    }
+
+    @Test
+    public void testErrors(final TestContext context) {
+        final Neo4jResultStream buffered = new Neo4jResultStream(false);
+        buffered.parse(Buffer.buffer("{\"results\":[],\"errors\":[{\"code\":\"Neo.ClientError.Statement.SyntaxError\",\"message\":\"Invalid input\"}]}"));
+        context.assertEquals("Neo.ClientError.Statement.SyntaxError", buffered.getErrors().getJsonObject(0).getString("code"));
+
+        final List<Throwable> failures = new ArrayList<>();
+        final Neo4jResultStream streamed = new Neo4jResultStream(false);
+        streamed.handler(r -> context.fail("unexpected row")).exceptionHandler(failures::add)
+                .endHandler(v -> context.fail("unexpected end"));
+        chunked(streamed, "{\"results\":[],\"errors\":[{\"code\":\"Neo.ClientError.Statement.SyntaxError\"}]}");
+        context.assertEquals(1, failures.size());
+    }
+
+    private static class BufferReadStream implements ReadStream<Buffer> {
+        private Handler<Buffer> handler;
+        private Handler<Void> endHandler;
+
+        @Override
+        public BufferReadStream exceptionHandler(Handler<Throwable> handler) {
+            return this;
+        }
+
+        @Override
+        public BufferReadStream handler(Handler<Buffer> handler) {
+            this.handler = handler;
+            return this;
+        }
+
+        @Override
+        public BufferReadStream pause() {
+            return this;
+        }
+
+        @Override
+        public BufferReadStream resume() {
+            return this;
+        }
+
+        @Override
+        public BufferReadStream fetch(long amount) {
+            return this;
+        }
+
+        @Override
+        public BufferReadStream endHandler(Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+    }
+
+}
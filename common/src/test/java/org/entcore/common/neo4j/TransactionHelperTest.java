@@ -0,0 +1,158 @@
+package org.entcore.common.neo4j;
+
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.common.schema.Source;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(VertxUnitRunner.class)
+public class TransactionHelperTest {
+
+    private static final String Q1 = "MERGE (u:User {externalId : row.externalId})";
+    private static final String Q2 = "MATCH (u:User {externalId : row.externalId}) SET u.email = row.email";
+    private static Vertx vertx;
+    private final List<JsonObject> sent = new ArrayList<>();
+    private Neo4j neo4j;
+
+    @BeforeClass
+    public static void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterClass
+    public static void tearDown(TestContext context) {
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    @Before
+    public void database() {
+        // answers synchronously, so the statements are recorded in the order they are sent
+        final GraphDatabase database = (GraphDatabase) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { GraphDatabase.class }, (proxy, method, args) -> {
+                    if ("executeTransaction".equals(method.getName())) {
+                        final JsonArray statements = (JsonArray) args[0];
+                        final JsonArray results = new JsonArray();
+                        for (Object s : statements) {
+                            sent.add((JsonObject) s);
+                            results.add(new JsonArray());
+                        }
+                        ((Handler<JsonObject>) args[args.length - 1]).handle(new JsonObject()
+                                .put("status", "ok").put("transactionId", 1).put("results", results));
+                    }
+                    return null;
+                });
+        neo4j = new Neo4j(vertx.eventBus(), database);
+    }
+
+    private static JsonObject row(String externalId) {
+        return new JsonObject().put("externalId", externalId);
+    }
+
+    private void assertSent(TestContext context, Object... expected) {
+        context.assertEquals(expected.length / 2, sent.size(), sent.toString());
+        for (int i = 0; i < sent.size(); i++) {
+            final JsonObject statement = sent.get(i);
+            final Object e = expected[2 * i + 1];
+            if (e instanceof String[]) {
+                context.assertEquals("UNWIND {rows} AS row " + expected[2 * i], statement.getString("statement"));
+                final List<String> rows = new ArrayList<>();
+                for (Object r : statement.getJsonObject("parameters").getJsonArray("rows")) {
+                    rows.add(((JsonObject) r).getString("externalId"));
+                }
+                context.assertEquals(Arrays.asList((String[]) e), rows);
+            } else {
+                context.assertEquals(expected[2 * i], statement.getString("statement"));
+            }
+        }
+    }
+
+    @Test
+    public void testRowsOfDifferentKeysAreGrouped(TestContext context) {
+        final TransactionHelper tx = new TransactionHelper(neo4j, Source.AAF);
+        tx.addBatch(Q1, "a", row("a"));
+        tx.addBatch(Q2, "a", row("a"));
+        tx.addBatch(Q1, "b", row("b"));
+        tx.addBatch(Q2, "b", row("b"));
+        context.assertFalse(tx.isEmpty(), "pending rows must be committed");
+        tx.commit();
+        assertSent(context, Q1, new String[] { "a", "b" }, Q2, new String[] { "a", "b" });
+        context.assertEquals(4L, tx.getStatementsCount());
+        context.assertTrue(tx.isEmpty());
+    }
+
+    @Test
+    public void testRowsOfSameKeyKeepTheirOrder(TestContext context) {
+        final TransactionHelper tx = new TransactionHelper(neo4j, Source.AAF);
+        tx.addBatch(Q1, "a", row("a1"));
+        tx.addBatch(Q2, "a", row("a2"));
+        tx.addBatch(Q1, "a", row("a3"));
+        tx.addBatch(Q1, "b", row("b"));
+        tx.commit();
+        assertSent(context, Q1, new String[] { "a1" }, Q2, new String[] { "a2" }, Q1, new String[] { "a3", "b" });
+    }
+
+    @Test
+    public void testRowsWithSeveralKeys(TestContext context) {
+        final TransactionHelper tx = new TransactionHelper(neo4j, Source.AAF);
+        tx.addBatch(Q2, "student1", row("student1"));
+        tx.addBatch(Q1, "relative", row("relative"));
+        // a relationship to the relative must not be grouped before the relative merge
+        tx.addBatch(Q2, Arrays.asList("student2", "relative"), row("student2"));
+        tx.addBatch(Q1, "student3", row("student3"));
+        tx.commit();
+        assertSent(context, Q2, new String[] { "student1" }, Q1, new String[] { "relative", "student3" },
+                Q2, new String[] { "student2" });
+    }
+
+    @Test
+    public void testKeyedStatementOnlyOrdersItsKey(TestContext context) {
+        final TransactionHelper tx = new TransactionHelper(neo4j, Source.AAF);
+        tx.addBatch(Q1, "a", row("a"));
+        tx.add(new TransactionHelper.Statement("MATCH (u:User {externalId : 'a'}) SET u.seen = true"), "a");
+        tx.addBatch(Q1, "b", row("b"));
+        tx.addBatch(Q1, "a", row("a2"));
+        tx.commit();
+        assertSent(context, Q1, new String[] { "a", "b" }, "MATCH (u:User {externalId : 'a'}) SET u.seen = true",
+                Q1, new String[] { "a2" });
+    }
+
+    @Test
+    public void testStatementWithoutKeyCutsTheBatches(TestContext context) {
+        final TransactionHelper tx = new TransactionHelper(neo4j, Source.AAF);
+        tx.addBatch(Q1, "a", row("a"));
+        tx.add("MATCH (s:Structure) SET s.checked = true", null);
+        tx.addBatch(Q1, "b", row("b"));
+        tx.addBatch(Q2, "d", row("d"));
+        // a row without key stays after all the pending rows
+        tx.addBatch(Q1, (String) null, row("c"));
+        tx.addBatch(Q1, "e", row("e"));
+        tx.commit();
+        assertSent(context, Q1, new String[] { "a" }, "MATCH (s:Structure) SET s.checked = true",
+                Q1, new String[] { "b" }, Q2, new String[] { "d" }, Q1, new String[] { "c", "e" });
+    }
+
+    @Test
+    public void testBatchesAreCutByStatementNumber(TestContext context) {
+        final TransactionHelper tx = new TransactionHelper(neo4j, Source.AAF, 2);
+        tx.addBatch(Q1, "a", row("a"));
+        tx.addBatch(Q1, "b", row("b"));
+        tx.addBatch(Q1, "c", row("c"));
+        tx.addBatch(Q2, "c", row("c"));
+        tx.commit();
+        assertSent(context, Q1, new String[] { "a", "b" }, Q1, new String[] { "c" }, Q2, new String[] { "c" });
+    }
+
+}
@@ -0,0 +1,110 @@
+package org.entcore.common.session;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class SessionNearCacheTest {
+
+    private static class ClockedCache extends SessionNearCache {
+        private long time = 0L;
+
+        ClockedCache(int maxSize, long ttl) {
+            super(maxSize, ttl);
+        }
+
+        ClockedCache(int maxSize, long ttl, long activityRefreshDelay) {
+            super(maxSize, ttl, activityRefreshDelay);
+        }
+
+        @Override
+        protected long now() {
+            return time;
+        }
+    }
+
+    private static JsonObject session(String userId) {
+        return new JsonObject().put("userId", userId).put("cache", new JsonObject());
+    }
+
+    @Test
+    public void testHitMissAndTtl(final TestContext context) {
+        final ClockedCache cache = new ClockedCache(10, 1000L);
+        context.assertNull(cache.get("s1"));
+        cache.put("s1", session("u1"));
+        context.assertEquals("u1", cache.get("s1").getString("userId"));
+        cache.time = 1000L;
+        context.assertNull(cache.get("s1"), "entry should expire after ttl");
+        context.assertEquals(1L, cache.getStats().getLong("hits"));
+        context.assertEquals(2L, cache.getStats().getLong("misses"));
+    }
+
+    @Test
+    public void testReturnedSessionIsACopy(final TestContext context) {
+        final SessionNearCache cache = new SessionNearCache(10, 1000L);
+        cache.put("s1", session("u1"));
+        cache.get("s1").getJsonObject("cache").put("key", "value");
+        context.assertFalse(cache.get("s1").getJsonObject("cache").containsKey("key"));
+    }
+
+    @Test
+    public void testLruEviction(final TestContext context) {
+        final SessionNearCache cache = new SessionNearCache(2, 1000L);
+        cache.put("s1", session("u1"));
+        cache.put("s2", session("u2"));
+        cache.get("s1");
+        cache.put("s3", session("u3"));
+        context.assertNotNull(cache.get("s1"));
+        context.assertNull(cache.get("s2"), "least recently used entry should be evicted");
+        context.assertNotNull(cache.get("s3"));
+        context.assertEquals(1L, cache.getStats().getLong("evictions"));
+    }
+
+    @Test
+    public void testInvalidation(final TestContext context) {
+        final SessionNearCache cache = new SessionNearCache(10, 1000L);
+        cache.put("s1", session("u1"));
+        cache.put("s2", session("u1"));
+        cache.put("s3", session("u2"));
+        cache.invalidateSession("s3");
+        context.assertNull(cache.get("s3"));
+        cache.invalidateUser("u1");
+        context.assertNull(cache.get("s1"));
+        context.assertNull(cache.get("s2"));
+        context.assertEquals(0, cache.size());
+        context.assertEquals(3L, cache.getStats().getLong("invalidations"));
+    }
+
+    @Test
+    public void testFetchInFlightDuringInvalidationIsNotCached(final TestContext context) {
+        final SessionNearCache cache = new SessionNearCache(10, 1000L);
+        final long sessionFetch = cache.generation();
+        cache.invalidateSession("s1");
+        cache.put("s1", session("u1"), sessionFetch);
+        context.assertNull(cache.get("s1"), "session fetched before its invalidation should not be cached");
+        final long userFetch = cache.generation();
+        cache.invalidateUser("u1");
+        cache.put("s1", session("u1"), userFetch);
+        context.assertNull(cache.get("s1"), "session fetched before the invalidation of its user should not be cached");
+        cache.put("s1", session("u1"), cache.generation());
+        context.assertNotNull(cache.get("s1"));
+    }
+
+    @Test
+    public void testTouchIsThrottled(final TestContext context) {
+        final ClockedCache cache = new ClockedCache(10, 10000L, 100L);
+        context.assertFalse(cache.touch("s1"), "absent session should not be refreshed");
+        cache.put("s1", session("u1"));
+        context.assertFalse(cache.touch("s1"));
+        cache.time = 100L;
+        context.assertTrue(cache.touch("s1"), "activity should be refreshed after the delay");
+        cache.time = 150L;
+        context.assertFalse(cache.touch("s1"), "activity should be refreshed once by delay");
+        cache.time = 200L;
+        context.assertTrue(cache.touch("s1"));
+    }
+
+}
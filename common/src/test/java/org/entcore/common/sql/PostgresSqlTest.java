@@ -0,0 +1,114 @@
+package org.entcore.common.sql;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.common.postgres.PostgresClient;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+@RunWith(VertxUnitRunner.class)
+public class PostgresSqlTest {
+
+    @ClassRule
+    public static PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer("postgres:14.3");
+
+    private static PostgresSql sql;
+
+    @BeforeClass
+    public static void beforeAll(TestContext context) {
+        final JsonObject postgresql = new JsonObject().put("database", postgreSQLContainer.getDatabaseName())
+                .put("port", postgreSQLContainer.getMappedPort(PostgreSQLContainer.POSTGRESQL_PORT))
+                .put("host", postgreSQLContainer.getContainerIpAddress())
+                .put("password", postgreSQLContainer.getPassword()).put("user", postgreSQLContainer.getUsername());
+        sql = new PostgresSql(new PostgresClient(Vertx.vertx(), postgresql).getClientPool());
+        final Async async = context.async();
+        sql.raw("CREATE TABLE bindings (id BIGINT PRIMARY KEY, nb INTEGER, ratio NUMERIC, name VARCHAR(36), " +
+                "data JSONB)", res -> {
+            context.assertEquals("ok", res.body().getString("status"));
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testPreparedPlaceholders(final TestContext context) {
+        final PostgresSql.Statement statement = PostgresSql.Statement.prepared(
+                "SELECT * FROM t WHERE a = ? AND b = '?' AND \"c?\" @> ?::jsonb AND d IN (?,?)",
+                new JsonArray().add("x").add(new JsonArray().add("u1")).add(1).add(2L));
+        context.assertEquals("SELECT * FROM t WHERE a = $1 AND b = '?' AND \"c?\" @> $2::text::jsonb AND d IN ($3::int4,$4::int8)",
+                statement.query);
+        context.assertEquals(4, statement.tuple.size());
+        context.assertEquals("x", statement.tuple.getValue(0));
+        context.assertEquals("[\"u1\"]", statement.tuple.getValue(1));
+        context.assertEquals(1, statement.tuple.getValue(2));
+        context.assertEquals(2L, statement.tuple.getValue(3));
+    }
+
+    @Test
+    public void testInsertAndUpsert(final TestContext context) {
+        final JsonArray statements = new SqlStatementsBuilder()
+                .insert("s.t", new JsonArray().add("id").add("name"),
+                        new JsonArray().add(new JsonArray().add(1).add("a")).add(new JsonArray().add(2).add("b")), "id")
+                .upsert("s.t", new JsonArray().add("id").add("name"),
+                        new JsonArray().add(new JsonArray().add(1).add("a")), new JsonArray().add("id"),
+                        new JsonArray().add("name"), null)
+                .build();
+        final PostgresSql.Statement insert = PostgresSql.Statement.parse(statements.getJsonObject(0));
+        context.assertEquals("INSERT INTO s.t (\"id\",\"name\") VALUES ($1::int4,$2),($3::int4,$4) RETURNING id", insert.query);
+        context.assertEquals(4, insert.tuple.size());
+        final PostgresSql.Statement upsert = PostgresSql.Statement.parse(statements.getJsonObject(1));
+        context.assertEquals("INSERT INTO s.t (\"id\",\"name\") VALUES ($1::int4,$2) ON CONFLICT (\"id\") " +
+                "DO UPDATE SET \"name\" = EXCLUDED.\"name\"", upsert.query);
+    }
+
+    @Test
+    public void testBindIntegersAndLongsToAnyIntegerColumn(final TestContext context) {
+        final Async async = context.async();
+        // an Integer for the bigint column and a Long for the integer column
+        sql.prepared("INSERT INTO bindings (id, nb, ratio, name) VALUES (?, ?, ?, ?)",
+                new JsonArray().add(1).add(2L).add(1.5).add("one"), insert -> {
+            context.assertEquals("ok", insert.body().getString("status"), insert.body().getString("message"));
+            sql.prepared("SELECT id, nb, ratio, name FROM bindings WHERE id = ? AND nb < ? AND ratio > ?",
+                    new JsonArray().add(1).add(3).add(1), select -> {
+                final JsonArray results = select.body().getJsonArray("results");
+                context.assertEquals(1, results.size());
+                context.assertEquals(new JsonArray().add(1L).add(2).add(1.5).add("one"), results.getJsonArray(0));
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testBindCastedPlaceholdersAsText(final TestContext context) {
+        final Async async = context.async();
+        final SqlStatementsBuilder builder = new SqlStatementsBuilder();
+        builder.prepared("INSERT INTO bindings (id, nb, data) VALUES (?::bigint, ?::integer, ?::jsonb)",
+                new JsonArray().add(2).add("3").add(new JsonObject().put("key", "value")));
+        builder.prepared("SELECT data->>'key' as key FROM bindings WHERE id = ?::bigint AND data @> ?::jsonb",
+                new JsonArray().add(2L).add(new JsonObject().put("key", "value").encode()));
+        sql.transaction(builder.build(), res -> {
+            context.assertEquals("ok", res.body().getString("status"), res.body().getString("message"));
+            final JsonArray results = res.body().getJsonArray("results");
+            context.assertEquals(2, results.size());
+            context.assertEquals("value", results.getJsonObject(1).getJsonArray("results").getJsonArray(0)
+                    .getString(0));
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testJsonValues(final TestContext context) {
+        context.assertEquals(3L, PostgresSql.toJsonValue(new java.math.BigDecimal("3")));
+        context.assertEquals(1.5, PostgresSql.toJsonValue(new java.math.BigDecimal("1.5")));
+        context.assertEquals(new JsonArray().add("a").add("b"), PostgresSql.toJsonValue(new String[]{"a", "b"}));
+        context.assertEquals("2020-01-01", PostgresSql.toJsonValue(java.time.LocalDate.of(2020, 1, 1)));
+        context.assertEquals(new JsonObject(), PostgresSql.toJsonValue(new JsonObject()));
+    }
+
+}
@@ -0,0 +1,124 @@
+package org.entcore.common.storage.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+@RunWith(VertxUnitRunner.class)
+public class FileLocationIndexTest {
+
+    private Vertx vertx;
+    private Path root;
+    private List<String> buckets;
+
+    @Before
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("location-index");
+        buckets = Arrays.asList(bucket("b0"), bucket("b1"), bucket("b2"));
+        write("b0", "ab" + File.separator + "cd" + File.separator + "0000cdab");
+        write("b1", "ef" + File.separator + "gh" + File.separator + "0000ghef");
+    }
+
+    @After
+    public void tearDown(final TestContext context) {
+        FileLocationIndex.clearSharedFilters();
+        vertx.fileSystem().deleteRecursiveBlocking(root.toString(), true);
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    private String bucket(String name) throws IOException {
+        return Files.createDirectories(root.resolve(name)).toString() + File.separator;
+    }
+
+    private void write(String bucket, String key) throws IOException {
+        final Path p = root.resolve(bucket).resolve(key);
+        Files.createDirectories(p.getParent());
+        Files.write(p, new byte[]{1});
+    }
+
+    private FileLocationIndex index() {
+        return new FileLocationIndex(vertx, buckets, new JsonObject()
+                .put("path", root.resolve("index").toString()).put("expected-files", 1000L));
+    }
+
+    @Test
+    public void testCandidatesFromScan(final TestContext context) {
+        final FileLocationIndex index = index();
+        context.assertEquals(Arrays.asList(0, 1, 2), index.getCandidates("ab/cd/0000cdab"),
+                "buckets not loaded yet must be probed");
+        index.load(context.asyncAssertSuccess(v -> {
+            context.assertEquals(Arrays.asList(0, 2), index.getCandidates("ab" + File.separator + "cd" + File.separator + "0000cdab"));
+            context.assertEquals(Arrays.asList(1, 2), index.getCandidates("ef" + File.separator + "gh" + File.separator + "0000ghef"));
+            context.assertEquals(Arrays.asList(2), index.getCandidates("zz" + File.separator + "yy" + File.separator + "0000yyzz"));
+            context.assertTrue(Files.exists(root.resolve("index")), "filters should be saved");
+        }));
+    }
+
+    @Test
+    public void testReloadSavedFilters(final TestContext context) throws IOException {
+        final Async async = context.async();
+        index().load(context.asyncAssertSuccess(v -> {
+            try {
+                write("b0", "new");
+            } catch (IOException e) {
+                context.fail(e);
+            }
+            // forget the filters of the JVM to read the saved ones
+            FileLocationIndex.clearSharedFilters();
+            final FileLocationIndex reloaded = index();
+            reloaded.load(context.asyncAssertSuccess(v2 -> {
+                context.assertEquals(Arrays.asList(2), reloaded.getCandidates("new"),
+                        "saved filter should be used instead of a new scan");
+                async.complete();
+            }));
+        }));
+    }
+
+    @Test
+    public void testRebuildFilters(final TestContext context) throws IOException {
+        final Async async = context.async();
+        final FileLocationIndex index = new FileLocationIndex(vertx, buckets, new JsonObject()
+                .put("path", root.resolve("index").toString()).put("expected-files", 1000L).put("rebuild-delay", 200L));
+        index.load(context.asyncAssertSuccess(v -> {
+            context.assertEquals(Arrays.asList(2), index.getCandidates("new"));
+            try {
+                write("b0", "new");
+            } catch (IOException e) {
+                context.fail(e);
+            }
+            vertx.setPeriodic(100L, timerId -> {
+                if (index.getCandidates("new").contains(0)) {
+                    vertx.cancelTimer(timerId);
+                    async.complete();
+                }
+            });
+        }));
+    }
+
+    @Test
+    public void testAddedAndRemoved(final TestContext context) {
+        final FileLocationIndex index = index();
+        final String path = buckets.get(2) + "ij" + File.separator + "kl" + File.separator + "0000klij";
+        index.added(path);
+        context.assertEquals(2, index.getLocation("ij" + File.separator + "kl" + File.separator + "0000klij"));
+        index.removed(path);
+        context.assertNull(index.getLocation("ij" + File.separator + "kl" + File.separator + "0000klij"));
+        index.added("/elsewhere/file");
+        context.assertNull(index.getLocation("file"));
+    }
+
+}
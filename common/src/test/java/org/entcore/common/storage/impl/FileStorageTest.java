@@ -0,0 +1,162 @@
+package org.entcore.common.storage.impl;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.common.messaging.IMessagingClient;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+@RunWith(VertxUnitRunner.class)
+public class FileStorageTest {
+
+    private Vertx vertx;
+    private Path root;
+    private JsonArray buckets;
+
+    @Before
+    public void setUp() throws IOException {
+        vertx = Vertx.vertx();
+        root = Files.createTempDirectory("file-storage");
+        buckets = new JsonArray();
+        for (String bucket : Arrays.asList("b0", "b1", "b2")) {
+            buckets.add(Files.createDirectories(root.resolve(bucket)).toString() + File.separator);
+        }
+    }
+
+    @After
+    public void tearDown(final TestContext context) {
+        FileLocationIndex.clearSharedFilters();
+        vertx.fileSystem().deleteRecursiveBlocking(root.toString(), true);
+        vertx.close(context.asyncAssertSuccess());
+    }
+
+    private Path path(String bucket, String id) {
+        return Paths.get(bucket).resolve(id.substring(id.length() - 2))
+                .resolve(id.substring(id.length() - 4, id.length() - 2)).resolve(id);
+    }
+
+    private void write(String bucket, String id) throws IOException {
+        final Path p = path(root.resolve(bucket).toString(), id);
+        Files.createDirectories(p.getParent());
+        Files.write(p, new byte[]{1, 2, 3});
+    }
+
+    private int nlink(Path p) throws IOException {
+        return (Integer) Files.getAttribute(p, "unix:nlink");
+    }
+
+    private long tmpFiles() throws IOException {
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(f -> f.toString().endsWith(".tmp")).count();
+        }
+    }
+
+    @Test
+    public void testLinkedCopyShouldKeepItsContentWhenTheSourceIsReplaced(final TestContext context) {
+        final Async async = context.async();
+        final String bucket = buckets.getString(2);
+        final FileStorage storage = new FileStorage(vertx, buckets, false, IMessagingClient.noop);
+        storage.setLinkCopies(true);
+        storage.writeBuffer("00000001", Buffer.buffer("content"), "text/plain", "f.txt", written -> {
+            context.assertEquals("ok", written.getString("status"));
+            storage.copyFile("00000001", copied -> {
+                context.assertEquals("ok", copied.getString("status"));
+                final String copyId = copied.getString("_id");
+                try {
+                    context.assertEquals(2, nlink(path(bucket, copyId)), "the copy should be a link");
+                } catch (IOException e) {
+                    context.fail(e);
+                }
+                storage.stats(context.asyncAssertSuccess(stats -> {
+                    // 7 bytes stored once for 2 files
+                    context.assertEquals(7L, stats.getSavedSize());
+                    storage.writeBuffer("00000001", Buffer.buffer("replaced"), "text/plain", "f.txt", replaced -> {
+                        context.assertEquals("ok", replaced.getString("status"));
+                        try {
+                            context.assertEquals("content", new String(Files.readAllBytes(path(bucket, copyId))));
+                            context.assertEquals("replaced", new String(Files.readAllBytes(path(bucket, "00000001"))));
+                            context.assertEquals(1, nlink(path(bucket, copyId)));
+                            context.assertEquals(0L, tmpFiles(), "the temporary file should be moved");
+                        } catch (IOException e) {
+                            context.fail(e);
+                        }
+                        async.complete();
+                    });
+                }));
+            });
+        });
+    }
+
+    @Test
+    public void testCopyShouldFallbackWhenTheSourceIsOnAnotherVolume(final TestContext context) throws IOException {
+        final Path shm = Paths.get("/dev/shm");
+        Assume.assumeTrue(Files.isDirectory(shm) &&
+                !Files.getFileStore(shm).equals(Files.getFileStore(root)));
+        final Async async = context.async();
+        final Path otherVolume = Files.createTempDirectory(shm, "file-storage");
+        final JsonArray crossVolumeBuckets = new JsonArray().add(otherVolume.toString() + File.separator)
+                .add(buckets.getString(2));
+        final Path source = path(otherVolume.toString(), "0000cdab");
+        Files.createDirectories(source.getParent());
+        Files.write(source, new byte[]{1, 2, 3});
+        final FileStorage storage = new FileStorage(vertx, crossVolumeBuckets, false, IMessagingClient.noop);
+        storage.setLinkCopies(true);
+        storage.copyFile("0000cdab", copied -> {
+            context.assertEquals("ok", copied.getString("status"));
+            try {
+                final Path copy = path(buckets.getString(2), copied.getString("_id"));
+                context.assertEquals(3L, Files.size(copy));
+                context.assertEquals(1, nlink(copy));
+            } catch (IOException e) {
+                context.fail(e);
+            }
+            storage.stats(context.asyncAssertSuccess(stats -> {
+                context.assertEquals(1L, stats.getLinkFallbacks());
+                vertx.fileSystem().deleteRecursiveBlocking(otherVolume.toString(), true);
+                async.complete();
+            }));
+        });
+    }
+
+    @Test
+    public void testReadFileMissingFromTheLocationIndex(final TestContext context) {
+        final Async async = context.async();
+        final JsonObject indexConfig = new JsonObject().put("expected-files", 1000L);
+        final FileLocationIndex index = new FileLocationIndex(vertx, buckets.getList(), indexConfig);
+        index.load(context.asyncAssertSuccess(v -> {
+            try {
+                // copied in a read-only bucket after its filter was built
+                write("b0", "0000cdab");
+            } catch (IOException e) {
+                context.fail(e);
+            }
+            context.assertEquals(Arrays.asList(2), index.getCandidates("ab" + File.separator + "cd" +
+                    File.separator + "0000cdab"));
+            final FileStorage storage = new FileStorage(vertx, buckets, false, IMessagingClient.noop);
+            storage.setLocationIndex(vertx, indexConfig);
+            storage.fileStats("0000cdab", context.asyncAssertSuccess(stats -> {
+                context.assertEquals(3L, stats.getSizeInBytes());
+                context.assertEquals(Arrays.asList(0, 2), index.getCandidates("ab" + File.separator + "cd" +
+                        File.separator + "0000cdab"), "the file found should be added to the filter");
+                async.complete();
+            }));
+        }));
+    }
+
+}
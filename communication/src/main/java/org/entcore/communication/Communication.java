@@ -34,7 +34,11 @@ public class Communication extends BaseServer {
 		TimelineHelper helper = new TimelineHelper(vertx, vertx.eventBus(), config);
 		CommunicationController communicationController = new CommunicationController();
 
-		communicationController.setCommunicationService(new DefaultCommunicationService(helper, config.getJsonArray("discoverVisibleExpectedProfile", new JsonArray())));
+		DefaultCommunicationService communicationService = new DefaultCommunicationService(helper,
+				config.getJsonArray("discoverVisibleExpectedProfile", new JsonArray()),
+				config.getBoolean("visibility-index", false));
+		communicationService.initVisibilityIndex(vertx, config.getLong("visibility-index-repair-delay", 3600000L));
+		communicationController.setCommunicationService(communicationService);
 
 		addController(communicationController);
 		setDefaultResourceFilter(new CommunicationFilter());
@@ -47,11 +47,14 @@ import org.entcore.communication.services.impl.DefaultCommunicationService;
 
 import java.util.List;
 
+import static fr.wseduc.webutils.Utils.getOrElse;
 import static fr.wseduc.webutils.Utils.isNotEmpty;
 import static org.entcore.common.http.response.DefaultResponseHandler.*;
 
 public class CommunicationController extends BaseController {
 
+	private static final int DEFAULT_SEARCH_LIMIT = 50;
+	private static final int MAX_SEARCH_LIMIT = 500;
 	private CommunicationService communicationService;
 
 	@Get("/admin-console")
@@ -284,6 +287,31 @@ public class CommunicationController extends BaseController {
 		}));
 	}
 
+	@Get("/visible/search")
+	@SecuredAction(value = "", type = ActionType.AUTHENTICATED)
+	public void searchVisibles(HttpServerRequest request) {
+		UserUtils.getUserInfos(eb, request, user -> {
+			if (user != null) {
+				final int skip;
+				final int limit;
+				try {
+					skip = Integer.parseInt(getOrElse(request.params().get("skip"), "0"));
+					limit = Math.min(Integer.parseInt(getOrElse(request.params().get("limit"),
+							String.valueOf(DEFAULT_SEARCH_LIMIT))), MAX_SEARCH_LIMIT);
+				} catch (NumberFormatException e) {
+					badRequest(request, "invalid.paging");
+					return;
+				}
+				final List<String> expectedTypes = request.params().getAll("type");
+				communicationService.searchVisibles(user.getUserId(), request.params().get("q"),
+						new fr.wseduc.webutils.collections.JsonArray(expectedTypes), skip, limit,
+						arrayResponseHandler(request));
+			} else {
+				badRequest(request, "invalid.user");
+			}
+		});
+	}
+
 	@Get("/visible/group/:groupId")
 	@SecuredAction(value = "", type = ActionType.AUTHENTICATED)
 	public void visibleGroupContains(HttpServerRequest request) {
@@ -346,6 +374,11 @@ public class CommunicationController extends BaseController {
 			case "usersCanSeeMe":
 				communicationService.usersCanSeeMe(userId, responseHandler);
 				break;
+			case "searchVisibles":
+				communicationService.searchVisibles(userId, message.body().getString("search"), expectedTypes,
+						message.body().getInteger("skip", 0), message.body().getInteger("limit", DEFAULT_SEARCH_LIMIT),
+						responseHandler);
+				break;
 			case "visibleProfilsGroups":
 				String pF = message.body().getString("preFilter");
 				String c = message.body().getString("customReturn");
@@ -469,6 +502,12 @@ public class CommunicationController extends BaseController {
 				communicationService.applyRules(
 						message.body().getString("groupId"), responseHandler);
 				break;
+			case "rebuildVisibilityIndex" :
+				communicationService.rebuildVisibilityIndex(responseHandler);
+				break;
+			case "checkVisibilityIndex" :
+				communicationService.checkVisibilityIndex(message.body().getInteger("limit", 100), responseHandler);
+				break;
 			default:
 				message.reply(new JsonObject().put("status", "error")
 						.put("message", "invalid.action"));
@@ -113,6 +113,20 @@ public interface CommunicationService {
 			boolean profile, String preFilter, String customReturn, JsonObject additionnalParams, String userProfile,
 			Handler<Either<String, JsonArray>> handler);
 
+	/**
+	 * Searches the users and groups visible by a user whose display name starts with the search,
+	 * ordered by display name.
+	 *
+	 * @param userId        id of the user
+	 * @param search        searched prefix, all the visibles are returned if it is empty
+	 * @param expectedTypes labels of the returned visibles (all if null or empty)
+	 * @param skip          number of visibles to skip
+	 * @param limit         maximum number of visibles returned
+	 * @param handler       final handler
+	 */
+	void searchVisibles(String userId, String search, JsonArray expectedTypes, int skip, int limit,
+			Handler<Either<String, JsonArray>> handler);
+
 	void usersCanSeeMe(String userId, final Handler<Either<String, JsonArray>> handler);
 
 	void visibleProfilsGroups(String userId, String customReturn, JsonObject additionnalParams, String preFilter,
@@ -148,6 +162,29 @@ public interface CommunicationService {
 	 */
 	void verify(String senderId, String recipientId, Handler<Either<String, JsonObject>> handler);
 
+	/**
+	 * Recomputes the visibility index of every group.
+	 * Returns JsonObject :
+	 * {
+	 * groups : number of groups
+	 * }
+	 */
+	void rebuildVisibilityIndex(Handler<Either<String, JsonObject>> handler);
+
+	/**
+	 * Compares the visibility index with the communication relations.
+	 * Returns JsonObject :
+	 * {
+	 * groups : number of checked groups,
+	 * inconsistent : number of groups whose index differs from the relations,
+	 * groupIds : ids of the first inconsistent groups
+	 * }
+	 *
+	 * @param limit   maximum number of returned group ids
+	 * @param handler final handler
+	 */
+	void checkVisibilityIndex(int limit, Handler<Either<String, JsonObject>> handler);
+
 	void getDiscoverVisibleUsers(String userId, JsonObject filter, final Handler<Either<String, JsonArray>> handler);
 
 	void getDiscoverVisibleStructures(final Handler<Either<String, JsonArray>> handler);
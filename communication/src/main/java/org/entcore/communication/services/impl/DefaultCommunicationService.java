@@ -24,6 +24,7 @@ import fr.wseduc.webutils.collections.Joiner;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.http.HttpServerRequest;
 import io.vertx.core.json.JsonArray;
@@ -31,6 +32,7 @@ import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import org.entcore.common.neo4j.Neo4j;
+import org.entcore.common.neo4j.Neo4jResultCache;
 import org.entcore.common.neo4j.StatementsBuilder;
 import org.entcore.common.notification.TimelineHelper;
 import org.entcore.common.user.DefaultFunctions;
@@ -43,6 +45,7 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
@@ -54,15 +57,32 @@ public class DefaultCommunicationService implements CommunicationService {
 
 	protected final Neo4j neo4j = Neo4j.getInstance();
 	private static final String CAN_COMMUNICATE_VERIFY = "canCommunicate";
+	public static final String VISIBLE_USERS_CACHE = "communication.visibleUsers";
+	private static final List<String> VISIBLE_USERS_CACHE_TAGS =
+			Arrays.asList(Neo4jResultCache.TAG_GROUPS, Neo4jResultCache.TAG_COMMUNICATION, Neo4jResultCache.TAG_USERS);
 
 	protected static final Logger log = LoggerFactory.getLogger(DefaultCommunicationService.class);
 
 	private final TimelineHelper notifyTimeline;
 	final JsonArray discoverVisibleExpectedProfile = new JsonArray();
+	private final VisibilityIndex visibilityIndex;
 
 	public DefaultCommunicationService(TimelineHelper notifyTimeline, JsonArray discoverVisibleExpectedProfile) {
+		this(notifyTimeline, discoverVisibleExpectedProfile, false);
+	}
+
+	public DefaultCommunicationService(TimelineHelper notifyTimeline, JsonArray discoverVisibleExpectedProfile,
+			boolean visibilityIndex) {
 		this.notifyTimeline = notifyTimeline;
 		this.discoverVisibleExpectedProfile.addAll(discoverVisibleExpectedProfile);
+		this.visibilityIndex = visibilityIndex ? new VisibilityIndex() : null;
+	}
+
+	public void initVisibilityIndex(Vertx vertx, long repairDelay) {
+		if (visibilityIndex != null) {
+			visibilityIndex.init();
+			visibilityIndex.listen(vertx, repairDelay);
+		}
 	}
 
 	@Override
@@ -75,7 +95,7 @@ public class DefaultCommunicationService implements CommunicationService {
 		JsonObject params = new JsonObject()
 				.put("startGroupId", startGroupId)
 				.put("endGroupId", endGroupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		executeAndRefreshIndex(query, params, "MATCH (g:Group {id : {startGroupId}}) ", visibilityChanged(handler));
 	}
 
 	@Override
@@ -89,7 +109,7 @@ public class DefaultCommunicationService implements CommunicationService {
 		JsonObject params = new JsonObject()
 				.put("startGroupId", startGroupId)
 				.put("endGroupId", endGroupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		executeAndRefreshIndex(query, params, "MATCH (g:Group {id : {startGroupId}}) ", visibilityChanged(handler));
 	}
 
 	@Override
@@ -101,7 +121,7 @@ public class DefaultCommunicationService implements CommunicationService {
 							"SET g.users = {direction} " +
 							"RETURN 0 as number ";
 			JsonObject params = new JsonObject().put("groupId", groupId).put("direction", direction.name());
-			neo4j.execute(query, params, validUniqueResultHandler(handler));
+			neo4j.execute(query, params, validUniqueResultHandler(visibilityChanged(handler)));
 		} else {
 			String createRelationship;
 			switch (direction) {
@@ -122,7 +142,7 @@ public class DefaultCommunicationService implements CommunicationService {
 							"CREATE UNIQUE " + createRelationship +
 							"RETURN COUNT(*) as number ";
 			JsonObject params = new JsonObject().put("groupId", groupId).put("direction", direction.name());
-			neo4j.execute(query, params, validUniqueResultHandler(handler));
+			neo4j.execute(query, params, validUniqueResultHandler(visibilityChanged(handler)));
 		}
 	}
 
@@ -162,7 +182,7 @@ public class DefaultCommunicationService implements CommunicationService {
 				}
 			});
 
-			neo4j.executeTransaction(sb.build(), null, true, validUniqueResultHandler(handler));
+			neo4j.executeTransaction(sb.build(), null, true, validUniqueResultHandler(visibilityChanged(handler)));
 		} else {
 			handler.handle(new Either.Left<>("Error addLinkWithUsers: params can't be null"));
 		}
@@ -196,7 +216,7 @@ public class DefaultCommunicationService implements CommunicationService {
 						"DELETE r " +
 						"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().put("groupId", groupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(visibilityChanged(handler)));
 	}
 
 	@Override
@@ -243,7 +263,7 @@ public class DefaultCommunicationService implements CommunicationService {
 						"CREATE UNIQUE " + createRelationship +
 						"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().put("groupId", groupId).put("direction", direction.name());
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(visibilityChanged(handler)));
 	}
 
 	@Override
@@ -275,7 +295,7 @@ public class DefaultCommunicationService implements CommunicationService {
 						"DELETE r " +
 						"RETURN COUNT(*) as number ";
 		JsonObject params = new JsonObject().put("groupId", groupId);
-		neo4j.execute(query, params, validUniqueResultHandler(handler));
+		neo4j.execute(query, params, validUniqueResultHandler(visibilityChanged(handler)));
 	}
 
 	@Override
@@ -497,6 +517,10 @@ public class DefaultCommunicationService implements CommunicationService {
 						"WITH DISTINCT v " +
 						"SET v:Visible ";
 		s.add(setVisible2, params);
+		if (visibilityIndex != null) {
+			s.add(VisibilityIndex.refresh("MATCH (s:Structure)<-[:DEPENDS*1..2]-(g:Group) WHERE s.id IN {structures} "),
+					params);
+		}
 		neo4j.executeTransaction(s.build(), transactionId, commit.booleanValue(), event -> {
 			if ("ok".equals(event.body().getString("status"))) {
 				handler.handle(new Either.Right<>(event.body()));
@@ -552,7 +576,10 @@ public class DefaultCommunicationService implements CommunicationService {
 						"WITH DISTINCT v " +
 						"SET v:Visible ";
 		s.add(setVisible, params);
-		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(handler));
+		if (visibilityIndex != null) {
+			s.add(VisibilityIndex.refresh("MATCH (g:Group {id : {groupId}}) "), params);
+		}
+		neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(visibilityChanged(handler)));
 	}
 
 	@Override
@@ -571,7 +598,13 @@ public class DefaultCommunicationService implements CommunicationService {
 					"OPTIONAL MATCH ()-[r1:COMMUNIQUE_DIRECT]->() " +
 					"DELETE r, r1 ";
 		}
-		neo4j.execute(query, params, validEmptyHandler(handler));
+		if (visibilityIndex != null) {
+			StatementsBuilder s = new StatementsBuilder().add(query, params).add(
+					params.containsKey("schoolId") ? VisibilityIndex.refreshStructure() : VisibilityIndex.clear(), params);
+			neo4j.executeTransaction(s.build(), null, true, validEmptyHandler(visibilityChanged(handler)));
+		} else {
+			neo4j.execute(query, params, validEmptyHandler(visibilityChanged(handler)));
+		}
 	}
 
 	@Override
@@ -590,22 +623,28 @@ public class DefaultCommunicationService implements CommunicationService {
 		String condition = itSelf ? "" : "AND m.id <> {userId} ";
 		StringBuilder union = null;
 		String conditionUnion = itSelf ? "" : "AND m.id <> {userId} ";
-		if (structureId != null && !structureId.trim().isEmpty()) {
-			query.append("MATCH (n:User)-[:COMMUNIQUE*1..3]->m-[:DEPENDS*1..2]->(s:Structure {id:{schoolId}}) "); //TODO manage leaf
-			params.put("schoolId", structureId);
+		String visibleCondition = "WHERE  g.id IN comGroups " +
+				"AND (length(p) < 1 OR (length(p) < 2 AND g.id <> cg.id) OR (length(p) < 2 AND m:User)) ";
+		if (visibilityIndex != null) {
+			query.append(VisibilityIndex.userGroups(myGroup));
+			query.append("MATCH p=(vg:Group)-[:COMMUNIQUE*0..1]->m ");
+			visibleCondition = "WHERE vg.id IN groupIds AND (length(p) < 1 OR (m:User AND vg.id IN memberIds)) ";
 		} else {
 			String myGroupQuery = (myGroup) ? "COLLECT(CASE WHEN g.users = 'BOTH' THEN g.id ELSE '' END)" : "[]";
 			query.append(" MATCH (n:User {id: {userId}})-[:COMMUNIQUE]->(g:Group) ");
 			query.append("WITH (REDUCE(acc=[], groups IN COLLECT(COALESCE(g.communiqueWith, [])) | acc+groups) + ")
 					.append(myGroupQuery).append(") as comGroups ");
 			query.append("MATCH p=(g:Group)<-[:DEPENDS*0..1]-cg-[:COMMUNIQUE*0..1]->m ");
-			if (userProfile == null || "Student".equals(userProfile) || "Relative".equals(userProfile) || discoverVisibleExpectedProfile.contains(userProfile) ) {
-				union = new StringBuilder("MATCH p=(n:User)-[:COMMUNIQUE_DIRECT]->m " +
-						"WHERE n.id = {userId} AND (NOT(HAS(m.blocked)) OR m.blocked = false) ");
-			}
 		}
-		query.append("WHERE  g.id IN comGroups " +
-				"AND (length(p) < 1 OR (length(p) < 2 AND g.id <> cg.id) OR (length(p) < 2 AND m:User)) " +
+		if (structureId != null && !structureId.trim().isEmpty()) {
+			// only the visible groups of the structure
+			visibleCondition += "AND (m)-[:DEPENDS*1..2]->(:Structure {id : {schoolId}}) ";
+			params.put("schoolId", structureId);
+		} else if (userProfile == null || "Student".equals(userProfile) || "Relative".equals(userProfile) || discoverVisibleExpectedProfile.contains(userProfile) ) {
+			union = new StringBuilder("MATCH p=(n:User)-[:COMMUNIQUE_DIRECT]->m " +
+					"WHERE n.id = {userId} AND (NOT(HAS(m.blocked)) OR m.blocked = false) ");
+		}
+		query.append(visibleCondition +
 				"AND (NOT(HAS(m.blocked)) OR m.blocked = false) " +
 				"AND (NOT(HAS(m.nbUsers)) OR m.nbUsers > 0) ");
 		if (preFilter != null) {
@@ -678,7 +717,87 @@ public class DefaultCommunicationService implements CommunicationService {
 		} else {
 			q = query.toString();
 		}
-		neo4j.execute(q, params, validResultHandler(handler));
+		neo4j.executeCached(VISIBLE_USERS_CACHE, VISIBLE_USERS_CACHE_TAGS, q, params, validResultHandler(handler));
+	}
+
+	@Override
+	public void searchVisibles(String userId, String search, JsonArray expectedTypes, int skip, int limit,
+							   Handler<Either<String, JsonArray>> handler) {
+		final String prefix = search != null ? StringValidation.sanitize(search) : "";
+		final String searchCondition = prefix.isEmpty() ? "" : "AND m.displayNameSearchField STARTS WITH {search} ";
+		final JsonObject params = new JsonObject()
+				.put("search", prefix)
+				.put("skip", Math.max(skip, 0))
+				.put("limit", limit);
+		final StringBuilder types = new StringBuilder();
+		if (expectedTypes != null) {
+			for (Object o : expectedTypes) {
+				if (EXPECTED_TYPES.contains(o)) {
+					types.append(" OR v:").append(o);
+				}
+			}
+		}
+		final String typesCondition = types.length() > 0 ? "WHERE " + types.substring(4) + " " : "";
+		final String r =
+				"RETURN v.id as id, v.name as name, v.displayName as displayName, " +
+				"v.groupDisplayName as groupDisplayName, HEAD(v.profiles) as profile " +
+				"ORDER BY LOWER(COALESCE(v.displayName, v.name)) ";
+		if (visibilityIndex == null) {
+			visibleUsers(userId, null, null, false, true, false, searchCondition,
+					"WITH DISTINCT visibles as v " + typesCondition + r, params, res -> {
+						if (res.isLeft()) {
+							handler.handle(res);
+							return;
+						}
+						final List<JsonObject> visibles = new ArrayList<>();
+						for (Object o : res.right().getValue()) {
+							if (o instanceof JsonObject) {
+								visibles.add((JsonObject) o);
+							}
+						}
+						visibles.sort(Comparator.comparing(v -> v.getString("displayName") != null ?
+								v.getString("displayName") : v.getString("name"), Comparator.nullsFirst(String.CASE_INSENSITIVE_ORDER)));
+						final JsonArray page = new fr.wseduc.webutils.collections.JsonArray();
+						for (int i = Math.max(skip, 0); i < visibles.size() && page.size() < limit; i++) {
+							page.add(visibles.get(i));
+						}
+						handler.handle(new Either.Right<>(page));
+					});
+			return;
+		}
+		final String query =
+				VisibilityIndex.userGroups(true) +
+				"MATCH p=(vg:Group)-[:COMMUNIQUE*0..1]->m " +
+				"WHERE vg.id IN groupIds AND (length(p) < 1 OR (m:User AND vg.id IN memberIds)) " +
+				"AND (NOT(HAS(m.blocked)) OR m.blocked = false) " +
+				"AND (NOT(HAS(m.nbUsers)) OR m.nbUsers > 0) AND m.id <> {userId} " + searchCondition +
+				"WITH COLLECT(DISTINCT m) as visibles " +
+				"OPTIONAL MATCH (n:User {id: {userId}})-[:COMMUNIQUE_DIRECT]->(m:User) " +
+				"WHERE (NOT(HAS(m.blocked)) OR m.blocked = false) " + searchCondition +
+				"WITH visibles + COLLECT(m) as visibles " +
+				"UNWIND visibles as v " +
+				"WITH DISTINCT v " + typesCondition +
+				r + "SKIP {skip} LIMIT {limit} ";
+		params.put("userId", userId);
+		neo4j.executeCached(VISIBLE_USERS_CACHE, VISIBLE_USERS_CACHE_TAGS, query, params, validResultHandler(handler));
+	}
+
+	@Override
+	public void rebuildVisibilityIndex(Handler<Either<String, JsonObject>> handler) {
+		if (visibilityIndex == null) {
+			handler.handle(new Either.Left<>("visibility.index.disabled"));
+			return;
+		}
+		visibilityIndex.rebuild(visibilityChanged(handler));
+	}
+
+	@Override
+	public void checkVisibilityIndex(int limit, Handler<Either<String, JsonObject>> handler) {
+		if (visibilityIndex == null) {
+			handler.handle(new Either.Left<>("visibility.index.disabled"));
+			return;
+		}
+		visibilityIndex.check(limit, handler);
 	}
 
 	@Override
@@ -713,11 +832,19 @@ public class DefaultCommunicationService implements CommunicationService {
 		if (additionnalParams != null) {
 			excludeEmptyGroups = additionnalParams.getBoolean("excludeEmptyGroups", excludeEmptyGroups);
 		}
+		final String visibleGroups;
+		if (visibilityIndex != null) {
+			visibleGroups = VisibilityIndex.visibleGroups() +
+					"MATCH (gp:Group) " +
+					"WHERE gp.id IN groupIds ";
+		} else {
+			visibleGroups = "MATCH p=(n:User)-[:COMMUNIQUE*1..2]->l<-[:DEPENDS*0..1]-(gp:Group) " +
+					"WHERE n.id = {userId} AND (length(p) > 1 OR gp.users <> 'INCOMING') ";
+		}
 		String query =
-				"MATCH p=(n:User)-[:COMMUNIQUE*1..2]->l<-[:DEPENDS*0..1]-(gp:Group) " +
-						"WHERE n.id = {userId} " +
-						(excludeEmptyGroups ? "AND (NOT(HAS(gp.nbUsers)) OR gp.nbUsers > 0)" : "") +
-						"AND (length(p) > 1 OR gp.users <> 'INCOMING') " + (preFilter != null ? preFilter : "") +
+				visibleGroups +
+						(excludeEmptyGroups ? "AND (NOT(HAS(gp.nbUsers)) OR gp.nbUsers > 0) " : "") +
+						(preFilter != null ? preFilter : "") +
 						"OPTIONAL MATCH gp-[:DEPENDS*0..1]->(pg:ProfileGroup)-[:HAS_PROFILE]->(profile:Profile) " +
 						r;
 		neo4j.execute(query, params, validResultHandler(handler));
@@ -737,10 +864,17 @@ public class DefaultCommunicationService implements CommunicationService {
 		JsonObject params =
 				(additionnalParams != null) ? additionnalParams : new JsonObject();
 		params.put("userId", userId);
-		String query =
-				"MATCH p=(n:User)-[:COMMUNIQUE*1..2]->l<-[:DEPENDS*0..1]-(mg:ManualGroup) " +
-						"WHERE n.id = {userId} AND (length(p) > 1 OR mg.users <> 'INCOMING') " +
-						r;
+		String query;
+		if (visibilityIndex != null) {
+			query = VisibilityIndex.visibleGroups() +
+					"MATCH (mg:ManualGroup) " +
+					"WHERE mg.id IN groupIds " +
+					r;
+		} else {
+			query = "MATCH p=(n:User)-[:COMMUNIQUE*1..2]->l<-[:DEPENDS*0..1]-(mg:ManualGroup) " +
+					"WHERE n.id = {userId} AND (length(p) > 1 OR mg.users <> 'INCOMING') " +
+					r;
+		}
 		neo4j.execute(query, params, validResultHandler(handler));
 	}
 
@@ -1489,4 +1623,29 @@ public class DefaultCommunicationService implements CommunicationService {
 		handler.handle(new Either.Right<>(discoverVisibleExpectedProfile));
 	}
 
+	/**
+	 * Executes a query changing the communication relations and, when the visibility index is enabled,
+	 * refreshes the index of the groups bound by {@code refreshMatch} in the same transaction.
+	 */
+	private void executeAndRefreshIndex(String query, JsonObject params, String refreshMatch,
+			Handler<Either<String, JsonObject>> handler) {
+		if (visibilityIndex != null) {
+			StatementsBuilder s = new StatementsBuilder()
+					.add(query, params)
+					.add(VisibilityIndex.refresh(refreshMatch), params);
+			neo4j.executeTransaction(s.build(), null, true, validUniqueResultHandler(0, handler));
+		} else {
+			neo4j.execute(query, params, validUniqueResultHandler(handler));
+		}
+	}
+
+	private <T> Handler<Either<String, T>> visibilityChanged(Handler<Either<String, T>> handler) {
+		return event -> {
+			if (event.isRight()) {
+				Neo4jResultCache.publishInvalidation(neo4j.getEventBus(), Neo4jResultCache.TAG_COMMUNICATION);
+			}
+			handler.handle(event);
+		};
+	}
+
 }
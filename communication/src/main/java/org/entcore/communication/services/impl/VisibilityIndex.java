@@ -0,0 +1,337 @@
+/* Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ *
+ */
+
+package org.entcore.communication.services.impl;
+
+import fr.wseduc.webutils.Either;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.common.neo4j.Neo4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_PUBLISH_ADDRESS;
+import static org.entcore.common.appregistry.AppRegistryEvents.IMPORT_SUCCEEDED;
+import static org.entcore.common.appregistry.AppRegistryEvents.STRUCTURES_UPDATED;
+import static org.entcore.common.neo4j.Neo4jResult.validResult;
+import static org.entcore.common.neo4j.Neo4jResult.validUniqueResult;
+
+/**
+ * Materialised visibility of the groups.
+ * <p>
+ *     Each group stores the ids of the groups that its senders can see : {@code visibleMembersOf} holds the groups
+ *     it communicates with (the users those groups communicate with are visible) and {@code visibleGroups} adds the
+ *     groups depending on them (visible as groups only). The properties are refreshed in the transactions that change
+ *     the {@code COMMUNIQUE} relations, so that the visible queries only follow fixed length relations.
+ * </p>
+ * <p>
+ *     The feeder creates groups and relations without going through this module : the groups never indexed (and the
+ *     groups seeing the groups they depend on) are repaired at the end of the imports and every
+ *     {@code visibility-index-repair-delay} ms, and the groups of the updated structures (and the groups seeing them)
+ *     when structures are updated. {@link #repair} checks every group.
+ * </p>
+ */
+public class VisibilityIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(VisibilityIndex.class);
+	private static final int BATCH_SIZE = 1000;
+	private static final String EXPECTED =
+			"OPTIONAL MATCH g-[:COMMUNIQUE]->(t:Group) " +
+			"OPTIONAL MATCH t<-[:DEPENDS]-(c:Group) " +
+			"WITH g, COLLECT(DISTINCT t.id) as targets, COLLECT(DISTINCT c.id) as children " +
+			"WITH g, targets, targets + FILTER(cId IN children WHERE NOT(cId IN targets)) as expected ";
+	private static final String REFRESH = EXPECTED +
+			"SET g.visibleMembersOf = targets, g.visibleGroups = expected ";
+	private static final String STALE = EXPECTED +
+			"WITH g, targets, expected, COALESCE(g.visibleMembersOf, []) as members, " +
+			"COALESCE(g.visibleGroups, []) as groups " +
+			"WHERE NOT(HAS(g.visibleGroups)) OR LENGTH(members) <> LENGTH(targets) OR LENGTH(groups) <> LENGTH(expected) " +
+			"OR ANY(gId IN targets WHERE NOT(gId IN members)) OR ANY(gId IN expected WHERE NOT(gId IN groups)) ";
+	private static final String CHECK = STALE +
+			"RETURN COLLECT(g.id) as groupIds ";
+	private static final String REPAIR = STALE +
+			"SET g.visibleMembersOf = targets, g.visibleGroups = expected " +
+			"RETURN COLLECT(g.id) as groupIds ";
+	private static final String REPAIR_LOCK = "visibility.index.repair";
+	private static final String ALL_GROUPS = "MATCH (g:Group) WHERE HAS(g.id) RETURN g.id as id";
+	private static final String NEW_GROUPS =
+			"MATCH (n:Group) WHERE HAS(n.id) AND NOT(HAS(n.visibleGroups)) " +
+			"OPTIONAL MATCH n-[:DEPENDS]->(:Group)<-[:COMMUNIQUE]-(vg:Group) " +
+			"WITH COLLECT(DISTINCT n.id) + COLLECT(DISTINCT vg.id) as ids " +
+			"UNWIND ids as id RETURN DISTINCT id";
+	private static final String STRUCTURES_GROUPS =
+			"MATCH (s:Structure)<-[:DEPENDS*1..2]-(sg:Group) WHERE s.id IN {structureIds} " +
+			"OPTIONAL MATCH sg-[:DEPENDS*0..1]->(:Group)<-[:COMMUNIQUE]-(vg:Group) " +
+			"WITH COLLECT(DISTINCT sg.id) + COLLECT(DISTINCT vg.id) as ids " +
+			"UNWIND ids as id RETURN DISTINCT id";
+
+	private final Neo4j neo4j = Neo4j.getInstance();
+	private Vertx vertx;
+
+	/**
+	 * @param match Clauses binding the groups to refresh to {@code g}
+	 * @return the statement refreshing the index of these groups
+	 */
+	public static String refresh(String match) {
+		return match + "WITH DISTINCT g " + REFRESH;
+	}
+
+	/**
+	 * Refresh of the groups of a structure and of the groups seeing them, used when relations are removed.
+	 */
+	public static String refreshStructure() {
+		return refresh(
+				"MATCH (s:Structure {id : {schoolId}})<-[:DEPENDS*1..2]-(sg:Group) " +
+				"WITH COLLECT(sg.id) as structureGroups " +
+				"MATCH (g:Group) " +
+				"WHERE g.id IN structureGroups OR ANY(gId IN COALESCE(g.visibleGroups, []) WHERE gId IN structureGroups) ");
+	}
+
+	/**
+	 * Clears the index after the removal of every communication relation.
+	 */
+	public static String clear() {
+		return "MATCH (g:Group) WHERE HAS(g.visibleGroups) OR HAS(g.visibleMembersOf) " +
+				"SET g.visibleGroups = [], g.visibleMembersOf = [] ";
+	}
+
+	/**
+	 * Head of the visible users queries : collects in {@code groupIds} the groups visible by {@code {userId}} and in
+	 * {@code memberIds} the groups whose users are visible.
+	 * @param myGroup add the groups of the user with a {@code BOTH} rule (and the groups depending on them)
+	 */
+	public static String userGroups(boolean myGroup) {
+		final StringBuilder query = new StringBuilder("MATCH (n:User {id: {userId}})-[:COMMUNIQUE]->(g:Group) ");
+		if (myGroup) {
+			query.append("OPTIONAL MATCH g<-[:DEPENDS]-(c:Group) WHERE g.users = 'BOTH' ")
+					.append("WITH g, COLLECT(c.id) as children ")
+					.append("WITH g, CASE WHEN g.users = 'BOTH' THEN [g.id] + children ELSE [] END as myGroups, ")
+					.append("CASE WHEN g.users = 'BOTH' THEN [g.id] ELSE [] END as myMembers ");
+		} else {
+			query.append("WITH g, [] as myGroups, [] as myMembers ");
+		}
+		query.append("WITH REDUCE(acc=[], ids IN COLLECT(COALESCE(g.visibleGroups, []) + myGroups) | acc + ids) as groupIds, ")
+				.append("REDUCE(acc=[], ids IN COLLECT(COALESCE(g.visibleMembersOf, []) + myMembers) | acc + ids) as memberIds ");
+		return query.toString();
+	}
+
+	/**
+	 * Head of the visible groups queries : collects in {@code groupIds} the groups of {@code {userId}} which are not
+	 * incoming only, the groups depending on them and the groups they see.
+	 */
+	public static String visibleGroups() {
+		return "MATCH (n:User {id: {userId}})-[:COMMUNIQUE]->(g:Group) " +
+				"OPTIONAL MATCH g<-[:DEPENDS]-(c:Group) " +
+				"WITH g, COLLECT(c.id) as children " +
+				"WITH REDUCE(acc=[], ids IN COLLECT(COALESCE(g.visibleGroups, []) + children + " +
+				"CASE WHEN g.users <> 'INCOMING' THEN [g.id] ELSE [] END) | acc + ids) as groupIds ";
+	}
+
+	/**
+	 * Builds the index of every group when it has never been built.
+	 */
+	public void init() {
+		neo4j.execute("MATCH (g:Group) WHERE HAS(g.visibleGroups) RETURN g.id as id LIMIT 1", new JsonObject(), event -> {
+			final Either<String, JsonArray> r = validResult(event);
+			if (r.isRight() && r.right().getValue().isEmpty()) {
+				log.info("Building visibility index.");
+				rebuild(res -> {
+					if (res.isLeft()) {
+						log.error("Error building visibility index : " + res.left().getValue());
+					}
+				});
+			} else if (r.isLeft()) {
+				log.error("Error checking visibility index : " + r.left().getValue());
+			}
+		});
+	}
+
+	/**
+	 * Repairs the index after the changes made by the feeder.
+	 * @param repairDelay Delay between two periodic repairs, disabled when not positive
+	 */
+	public void listen(Vertx vertx, long repairDelay) {
+		this.vertx = vertx;
+		vertx.eventBus().<JsonObject>consumer(APP_REGISTRY_PUBLISH_ADDRESS, message -> {
+			final String type = message.body() != null ? message.body().getString("type") : null;
+			if (IMPORT_SUCCEEDED.equals(type)) {
+				scheduleRepair(this::repairNewGroups);
+			} else if (STRUCTURES_UPDATED.equals(type)) {
+				final JsonArray structureIds = new JsonArray();
+				final JsonArray structures = message.body().getJsonArray("structures");
+				if (structures != null) {
+					for (Object o : structures) {
+						if (o instanceof JsonObject && ((JsonObject) o).getString("id") != null) {
+							structureIds.add(((JsonObject) o).getString("id"));
+						}
+					}
+				}
+				if (structureIds.isEmpty()) {
+					scheduleRepair(this::repairNewGroups);
+				} else {
+					scheduleRepair(h -> repairStructures(structureIds, h));
+				}
+			}
+		});
+		if (repairDelay > 0) {
+			vertx.setPeriodic(repairDelay, h -> scheduleRepair(this::repairNewGroups));
+		}
+	}
+
+	private void scheduleRepair(Handler<Handler<Either<String, JsonObject>>> repair) {
+		// only one instance repairs the index at a time, the others skip this run
+		vertx.sharedData().getLockWithTimeout(REPAIR_LOCK, 1000L, lock -> {
+			if (lock.failed()) {
+				log.debug("Visibility index repair already running.");
+				return;
+			}
+			repair.handle(res -> {
+				lock.result().release();
+				if (res.isLeft()) {
+					log.error("Error repairing visibility index : " + res.left().getValue());
+				}
+			});
+		});
+	}
+
+	/**
+	 * Refreshes the groups whose index differs from the communication relations, by batches of groups.
+	 */
+	public void repair(Handler<Either<String, JsonObject>> handler) {
+		repair(ALL_GROUPS, new JsonObject(), handler);
+	}
+
+	/**
+	 * Refreshes the groups never indexed and the groups seeing the groups they depend on.
+	 */
+	public void repairNewGroups(Handler<Either<String, JsonObject>> handler) {
+		repair(NEW_GROUPS, new JsonObject(), handler);
+	}
+
+	/**
+	 * Refreshes the stale groups of the given structures and the stale groups seeing them.
+	 */
+	public void repairStructures(JsonArray structureIds, Handler<Either<String, JsonObject>> handler) {
+		repair(STRUCTURES_GROUPS, new JsonObject().put("structureIds", structureIds), handler);
+	}
+
+	/**
+	 * Refreshes the stale index of the groups returned by {@code groupsQuery}, by batches of groups.
+	 * @param groupsQuery Query returning the ids of the groups to check in {@code id}
+	 */
+	private void repair(String groupsQuery, JsonObject params, Handler<Either<String, JsonObject>> handler) {
+		final long start = System.currentTimeMillis();
+		final JsonArray repaired = new JsonArray();
+		forEachBatch(groupsQuery, params, "MATCH (g:Group) WHERE g.id IN {groupIds} " + REPAIR, repaired, result -> {
+			if (result.isRight()) {
+				result.right().getValue().put("repaired", repaired.size());
+				if (repaired.size() > 0) {
+					log.info("Visibility index of " + repaired.size() + " groups repaired in " +
+							(System.currentTimeMillis() - start) + " ms.");
+				}
+			}
+			handler.handle(result);
+		});
+	}
+
+	/**
+	 * Recomputes the index of every group, by batches of groups.
+	 */
+	public void rebuild(Handler<Either<String, JsonObject>> handler) {
+		final long start = System.currentTimeMillis();
+		forEachBatch(ALL_GROUPS, new JsonObject(), refresh("MATCH (g:Group) WHERE g.id IN {groupIds} "), new JsonArray(),
+				result -> {
+			if (result.isRight()) {
+				log.info("Visibility index of " + result.right().getValue().getInteger("groups") + " groups rebuilt in " +
+						(System.currentTimeMillis() - start) + " ms.");
+			}
+			handler.handle(result);
+		});
+	}
+
+	/**
+	 * Compares the index with the communication relations of the graph.
+	 * @param limit Maximum number of inconsistent group ids returned
+	 */
+	public void check(int limit, Handler<Either<String, JsonObject>> handler) {
+		final JsonArray inconsistent = new JsonArray();
+		forEachBatch(ALL_GROUPS, new JsonObject(), "MATCH (g:Group) WHERE g.id IN {groupIds} " + CHECK, inconsistent,
+				result -> {
+			if (result.isLeft()) {
+				handler.handle(result);
+				return;
+			}
+			final JsonArray sample = new JsonArray();
+			for (int i = 0; i < inconsistent.size() && i < limit; i++) {
+				sample.add(inconsistent.getValue(i));
+			}
+			handler.handle(new Either.Right<>(result.right().getValue()
+					.put("inconsistent", inconsistent.size())
+					.put("groupIds", sample)));
+		});
+	}
+
+	private void forEachBatch(String groupsQuery, JsonObject params, String query, JsonArray collected,
+			Handler<Either<String, JsonObject>> handler) {
+		neo4j.execute(groupsQuery, params, event -> {
+			final Either<String, JsonArray> r = validResult(event);
+			if (r.isLeft()) {
+				handler.handle(new Either.Left<>(r.left().getValue()));
+				return;
+			}
+			final JsonArray ids = r.right().getValue();
+			final List<JsonArray> batches = new ArrayList<>();
+			JsonArray batch = null;
+			for (int i = 0; i < ids.size(); i++) {
+				if (i % BATCH_SIZE == 0) {
+					batch = new JsonArray();
+					batches.add(batch);
+				}
+				batch.add(ids.getJsonObject(i).getString("id"));
+			}
+			nextBatch(query, batches, 0, collected, ids.size(), handler);
+		});
+	}
+
+	private void nextBatch(String query, List<JsonArray> batches, int idx, JsonArray collected, int groups,
+			Handler<Either<String, JsonObject>> handler) {
+		if (idx >= batches.size()) {
+			handler.handle(new Either.Right<>(new JsonObject().put("groups", groups)));
+			return;
+		}
+		neo4j.execute(query, new JsonObject().put("groupIds", batches.get(idx)), event -> {
+			final Either<String, JsonObject> r = validUniqueResult(event);
+			if (r.isLeft()) {
+				handler.handle(new Either.Left<>(r.left().getValue()));
+				return;
+			}
+			final JsonArray groupIds = r.right().getValue().getJsonArray("groupIds");
+			if (groupIds != null) {
+				collected.addAll(groupIds);
+			}
+			nextBatch(query, batches, idx + 1, collected, groups, handler);
+		});
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ */
+
+package org.entcore.communication.services.impl;
+
+import fr.wseduc.webutils.Either;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.common.notification.TimelineHelper;
+import org.entcore.communication.services.CommunicationService;
+import org.entcore.test.TestHelper;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.Neo4jContainer;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+@RunWith(VertxUnitRunner.class)
+public class VisibilityIndexTest {
+    private static final TestHelper test = TestHelper.helper();
+    @ClassRule
+    public static Neo4jContainer<?> neo4jContainer = test.database().createNeo4jContainer();
+    private static final String IDS_RETURN = "RETURN DISTINCT visibles.id as id ";
+    private static final String CREATE_STRUCTURE =
+            "CREATE (s:Structure {id: {p} + '-s', name: {p}}), " +
+            "(tg:Group:ProfileGroup {id: {p} + '-tg', name: 'teachers', users: 'BOTH', communiqueWith: [{p} + '-sg']}), " +
+            "(sg:Group:ProfileGroup {id: {p} + '-sg', name: 'students', users: 'OUTGOING', communiqueWith: []}), " +
+            "(cg:Group:ProfileGroup {id: {p} + '-cg', name: 'class', users: 'BOTH', communiqueWith: [{p} + '-tg']}), " +
+            "(t:User {id: {p} + '-t', displayName: 'teacher'}), " +
+            "(u1:User {id: {p} + '-u1', displayName: 'student 1'}), " +
+            "(u2:User {id: {p} + '-u2', displayName: 'student 2'}), " +
+            "tg-[:DEPENDS]->s, sg-[:DEPENDS]->s, cg-[:DEPENDS]->sg, " +
+            "t-[:IN]->tg, t-[:COMMUNIQUE]->tg, tg-[:COMMUNIQUE]->t, " +
+            "u1-[:IN]->sg, u1-[:IN]->cg, sg-[:COMMUNIQUE]->u1, u1-[:COMMUNIQUE]->cg, cg-[:COMMUNIQUE]->u1, " +
+            "u2-[:IN]->sg, u2-[:IN]->cg, sg-[:COMMUNIQUE]->u2, u2-[:COMMUNIQUE]->cg, cg-[:COMMUNIQUE]->u2, " +
+            "tg-[:COMMUNIQUE]->sg, cg-[:COMMUNIQUE]->tg ";
+    // class created by an import : the feeder does not refresh the index
+    private static final String FEEDER_CLASS =
+            "MATCH (sg:Group {id: {p} + '-sg'}) " +
+            "CREATE (cg2:Group:ProfileGroup {id: {p} + '-cg2', name: 'class 2', users: 'BOTH', communiqueWith: []}), " +
+            "(u3:User {id: {p} + '-u3', displayName: 'student 3'}), " +
+            "cg2-[:DEPENDS]->sg, u3-[:IN]->sg, u3-[:IN]->cg2, sg-[:COMMUNIQUE]->u3, " +
+            "u3-[:COMMUNIQUE]->cg2, cg2-[:COMMUNIQUE]->u3 ";
+
+    private static CommunicationService defaultService;
+    private static DefaultCommunicationService indexedService;
+
+    @BeforeClass
+    public static void setUp(TestContext context) throws Exception {
+        test.database().initNeo4j(context, neo4jContainer);
+        final TimelineHelper timeline = new TimelineHelper(test.vertx(), test.vertx().eventBus(), new JsonObject());
+        defaultService = new DefaultCommunicationService(timeline, new JsonArray());
+        indexedService = new DefaultCommunicationService(timeline, new JsonArray(), true);
+    }
+
+    @Test
+    public void testIndexShouldMatchVisibleUsers(TestContext context) {
+        final Async async = context.async();
+        createStructure("a").compose(v -> rebuild()).compose(v -> compare(context, users("a", "t", "u1", "u2")))
+                .setHandler(context.asyncAssertSuccess(v -> async.complete()));
+    }
+
+    @Test
+    public void testRepairShouldIndexFeederChanges(TestContext context) {
+        final Async async = context.async();
+        final VisibilityIndex index = new VisibilityIndex();
+        createStructure("b").compose(v -> rebuild())
+                .compose(v -> test.database().executeNeo4j(FEEDER_CLASS, new JsonObject().put("p", "b")))
+                .compose(v -> {
+                    final Future<JsonObject> check = Future.future();
+                    index.check(10, toFuture(check));
+                    return check;
+                }).compose(check -> {
+                    context.assertTrue(check.getJsonArray("groupIds").contains("b-tg"));
+                    final Future<JsonObject> repair = Future.future();
+                    index.repair(toFuture(repair));
+                    return repair;
+                }).compose(repair -> {
+                    context.assertTrue(repair.getInteger("repaired") > 0);
+                    final Future<JsonObject> check = Future.future();
+                    index.check(10, toFuture(check));
+                    return check;
+                }).compose(check -> {
+                    context.assertEquals(0, check.getInteger("inconsistent"));
+                    return visibles(indexedService, "b-t");
+                }).compose(visibles -> {
+                    context.assertTrue(visibles.contains("b-cg2"));
+                    context.assertTrue(visibles.contains("b-u3"));
+                    return compare(context, users("b", "t", "u1", "u2", "u3"));
+                }).setHandler(context.asyncAssertSuccess(v -> async.complete()));
+    }
+
+    @Test
+    public void testRepairNewGroupsShouldIndexFeederClass(TestContext context) {
+        final Async async = context.async();
+        final VisibilityIndex index = new VisibilityIndex();
+        createStructure("c").compose(v -> rebuild())
+                .compose(v -> test.database().executeNeo4j(FEEDER_CLASS, new JsonObject().put("p", "c")))
+                .compose(v -> {
+                    final Future<JsonObject> repair = Future.future();
+                    index.repairNewGroups(toFuture(repair));
+                    return repair;
+                }).compose(repair -> {
+                    context.assertTrue(repair.getInteger("repaired") >= 2);
+                    return visibles(indexedService, "c-t");
+                }).compose(visibles -> {
+                    context.assertTrue(visibles.contains("c-cg2"));
+                    return compare(context, users("c", "t", "u1", "u2", "u3"));
+                }).setHandler(context.asyncAssertSuccess(v -> async.complete()));
+    }
+
+    @Test
+    public void testRepairStructuresShouldOnlyRepairTheirGroups(TestContext context) {
+        final Async async = context.async();
+        final VisibilityIndex index = new VisibilityIndex();
+        createStructure("d").compose(v -> createStructure("e")).compose(v -> rebuild())
+                .compose(v -> test.database().executeNeo4j(FEEDER_CLASS, new JsonObject().put("p", "d")))
+                .compose(v -> test.database().executeNeo4j(FEEDER_CLASS, new JsonObject().put("p", "e")))
+                .compose(v -> {
+                    final Future<JsonObject> repair = Future.future();
+                    index.repairStructures(new JsonArray().add("d-s"), toFuture(repair));
+                    return repair;
+                }).compose(repair -> visibles(indexedService, "d-t"))
+                .compose(visibles -> {
+                    context.assertTrue(visibles.contains("d-cg2"));
+                    return visibles(indexedService, "e-t");
+                }).compose(visibles -> {
+                    context.assertFalse(visibles.contains("e-cg2"), "groups of other structures are not repaired");
+                    return rebuild();
+                }).setHandler(context.asyncAssertSuccess(v -> async.complete()));
+    }
+
+    @Test
+    public void testStructureVisiblesShouldMatch(TestContext context) {
+        final Async async = context.async();
+        createStructure("f").compose(v -> rebuild())
+                .compose(v -> CompositeFuture.all(visibles(defaultService, "f-t", "f-s"), visibles(indexedService, "f-t", "f-s")))
+                .compose(c -> {
+                    final Set<String> expected = c.resultAt(0);
+                    context.assertEquals(new TreeSet<>(users("f", "cg", "sg", "tg")), expected);
+                    context.assertEquals(expected, c.resultAt(1));
+                    return Future.<Void>succeededFuture();
+                }).setHandler(context.asyncAssertSuccess(v -> async.complete()));
+    }
+
+    private Future<JsonArray> createStructure(String prefix) {
+        return test.database().executeNeo4j(CREATE_STRUCTURE, new JsonObject().put("p", prefix));
+    }
+
+    private Future<Void> rebuild() {
+        final Future<JsonObject> future = Future.future();
+        indexedService.rebuildVisibilityIndex(toFuture(future));
+        return future.mapEmpty();
+    }
+
+    private Future<Void> compare(TestContext context, List<String> userIds) {
+        Future<Void> f = Future.succeededFuture();
+        for (String userId : userIds) {
+            f = f.compose(v -> CompositeFuture.all(visibles(defaultService, userId), visibles(indexedService, userId)))
+                    .compose(c -> {
+                        final Set<String> expected = c.resultAt(0);
+                        context.assertFalse(expected.isEmpty(), userId);
+                        context.assertEquals(expected, c.resultAt(1), userId);
+                        return Future.succeededFuture();
+                    });
+        }
+        return f;
+    }
+
+    private Future<Set<String>> visibles(CommunicationService service, String userId) {
+        return visibles(service, userId, null);
+    }
+
+    private Future<Set<String>> visibles(CommunicationService service, String userId, String structureId) {
+        final Future<Set<String>> future = Future.future();
+        service.visibleUsers(userId, structureId, null, false, true, false, null, IDS_RETURN, new JsonObject(), r -> {
+            if (r.isLeft()) {
+                future.fail(r.left().getValue());
+                return;
+            }
+            final Set<String> ids = new TreeSet<>();
+            for (Object o : r.right().getValue()) {
+                ids.add(((JsonObject) o).getString("id"));
+            }
+            future.complete(ids);
+        });
+        return future;
+    }
+
+    private static List<String> users(String prefix, String... names) {
+        final String[] ids = new String[names.length];
+        for (int i = 0; i < names.length; i++) {
+            ids[i] = prefix + "-" + names[i];
+        }
+        return Arrays.asList(ids);
+    }
+
+    private static <T> Handler<Either<String, T>> toFuture(Future<T> future) {
+        return r -> {
+            if (r.isRight()) {
+                future.complete(r.right().getValue());
+            } else {
+                future.fail(r.left().getValue());
+            }
+        };
+    }
+
+}
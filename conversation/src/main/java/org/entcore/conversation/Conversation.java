@@ -27,6 +27,7 @@ import org.entcore.conversation.controllers.ConversationController;
 import org.entcore.conversation.service.impl.ConversationRepositoryEvents;
 import org.entcore.conversation.service.impl.ConversationStorage;
 import org.entcore.conversation.service.impl.DeleteOrphan;
+import org.entcore.conversation.service.impl.RepairUnreadCounters;
 
 import java.text.ParseException;
 
@@ -57,6 +58,15 @@ public class Conversation extends BaseServer {
 				log.error("Invalid cron expression.", e);
 			}
 		}
+
+		final String repairUnreadCountersCron = config.getString("repairUnreadCountersCron");
+		if (repairUnreadCountersCron != null) {
+			try {
+				new CronTrigger(vertx, repairUnreadCountersCron).schedule(new RepairUnreadCounters());
+			} catch (ParseException e) {
+				log.error("Invalid cron expression.", e);
+			}
+		}
 	}
 
 }
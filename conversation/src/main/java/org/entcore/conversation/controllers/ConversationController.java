@@ -517,6 +517,18 @@ public class ConversationController extends BaseController {
 		notification.notifyTimeline(request, "messagerie.send-message", user, recipients, id, params);
 	}
 
+	/**
+	 * Date of the last listed item, to list the next items (keyset pagination) instead of using the page.
+	 */
+	private Long getListCursor(final HttpServerRequest request) {
+		try {
+			final String before = request.params().get("before");
+			return before != null ? Long.valueOf(before) : null;
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
 	@Get("list/:folder")
 	@SecuredAction(value = "conversation.list", type = ActionType.AUTHENTICATED)
 	public void list(final HttpServerRequest request) {
@@ -529,6 +541,8 @@ public class ConversationController extends BaseController {
 			return;
 		}
 		final String p = Utils.getOrElse(request.params().get("page"), "0", false);
+		final Long before = getListCursor(request);
+		final String beforeId = request.params().get("beforeId");
 		if (folder == null || folder.trim().isEmpty()) {
 			badRequest(request);
 			return;
@@ -545,7 +559,7 @@ public class ConversationController extends BaseController {
 					if (unread != null && !unread.isEmpty()) {
 						b = Boolean.valueOf(unread);
 					}
-					conversationService.list(folder, restrain, b, user, page, search, new Handler<Either<String, JsonArray>>() {
+					final Handler<Either<String, JsonArray>> handler = new Handler<Either<String, JsonArray>>() {
 						@Override
 						public void handle(Either<String, JsonArray> r) {
 							if (r.isRight()) {
@@ -562,7 +576,12 @@ public class ConversationController extends BaseController {
 								renderJson(request, error, 400);
 							}
 						}
-					});
+					};
+					if (before != null) {
+						conversationService.list(folder, restrain, b, user, before, beforeId, search, handler);
+					} else {
+						conversationService.list(folder, restrain, b, user, page, search, handler);
+					}
 				} else {
 					unauthorized(request);
 				}
@@ -667,6 +686,8 @@ public class ConversationController extends BaseController {
 	@SecuredAction(value = "conversation.threads.list")
 	public void listThreads(final HttpServerRequest request){
 		final String p = Utils.getOrElse(request.params().get("page"), "0", false);
+		final Long before = getListCursor(request);
+		final String beforeId = request.params().get("beforeId");
 		getUserInfos(eb, request, new Handler<UserInfos>() {
 			@Override
 			public void handle(final UserInfos user) {
@@ -675,7 +696,7 @@ public class ConversationController extends BaseController {
 					try {
 						page = Integer.parseInt(p);
 					} catch (NumberFormatException e) { page = 0; }
-					conversationService.listThreads( user, page, new Handler<Either<String, JsonArray>>() {
+					final Handler<Either<String, JsonArray>> handler = new Handler<Either<String, JsonArray>>() {
 						@Override
 						public void handle(Either<String, JsonArray> r) {
 							if (r.isRight()) {
@@ -692,7 +713,12 @@ public class ConversationController extends BaseController {
 								renderJson(request, error, 400);
 							}
 						}
-					});
+					};
+					if (before != null) {
+						conversationService.listThreads(user, before, beforeId, handler);
+					} else {
+						conversationService.listThreads(user, page, handler);
+					}
 				} else {
 					unauthorized(request);
 				}
@@ -705,6 +731,8 @@ public class ConversationController extends BaseController {
 	public void listThreadMessages(final HttpServerRequest request){
 		final String threadId = request.params().get("id");
 		final String p = Utils.getOrElse(request.params().get("page"), "0", false);
+		final Long before = getListCursor(request);
+		final String beforeId = request.params().get("beforeId");
 
 		if (threadId == null || threadId.trim().isEmpty()) {
 			badRequest(request);
@@ -718,7 +746,7 @@ public class ConversationController extends BaseController {
 					try {
 						page = Integer.parseInt(p);
 					} catch (NumberFormatException e) { page = 0; }
-					conversationService.listThreadMessages(threadId, page, user, new Handler<Either<String, JsonArray>>() {
+					final Handler<Either<String, JsonArray>> handler = new Handler<Either<String, JsonArray>>() {
 						@Override
 						public void handle(Either<String, JsonArray> r) {
 							if (r.isRight()) {
@@ -735,7 +763,12 @@ public class ConversationController extends BaseController {
 								renderJson(request, error, 400);
 							}
 						}
-					});
+					};
+					if (before != null) {
+						conversationService.listThreadMessages(threadId, before, beforeId, user, handler);
+					} else {
+						conversationService.listThreadMessages(threadId, page, user, handler);
+					}
 				} else {
 					unauthorized(request);
 				}
@@ -35,6 +35,7 @@ import java.util.Optional;
 public interface ConversationService {
 
 	static final int LIST_LIMIT = 25;
+	static final int THREAD_LIST_LIMIT = 10;
 
 	enum State { DRAFT, SENT }
 
@@ -61,10 +62,19 @@ public interface ConversationService {
 
 	void list(String folder, String restrain, Boolean unread, UserInfos user, int page, String searchWords, Handler<Either<String, JsonArray>> results);
 
+	/**
+	 * Keyset pagination : lists the messages older than (beforeDate, beforeId), the first page if beforeDate is null.
+	 */
+	void list(String folder, String restrain, Boolean unread, UserInfos user, Long beforeDate, String beforeId, String searchWords, Handler<Either<String, JsonArray>> results);
+
 	void listThreads(UserInfos user, int page, Handler<Either<String, JsonArray>> results);
 
+	void listThreads(UserInfos user, Long beforeDate, String beforeId, Handler<Either<String, JsonArray>> results);
+
 	void listThreadMessages(String threadId, int page, UserInfos user, Handler<Either<String, JsonArray>> results);
 
+	void listThreadMessages(String threadId, Long beforeDate, String beforeId, UserInfos user, Handler<Either<String, JsonArray>> results);
+
 	void listThreadMessagesNavigation(String messageId, boolean previous, UserInfos user, Handler<Either<String, JsonArray>> results);
 
 	void trash(List<String> messagesId, UserInfos user, Handler<Either<String, JsonObject>> result);
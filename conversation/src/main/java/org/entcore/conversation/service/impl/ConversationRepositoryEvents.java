@@ -235,7 +235,18 @@ public class ConversationRepositoryEvents extends SqlRepositoryEvents {
 					new SqlStatementsBuilder(), forceImportAsDuplication, done -> {
 					exportUserId.remove(userId);
 					uuidReplacement.remove(userId);
-					handler.handle(done);
+					if (!"ok".equals(done.getString("status"))) {
+						handler.handle(done);
+						return;
+					}
+					// the imported unread messages are not in the counters of the user
+					RepairUnreadCounters.repair(new fr.wseduc.webutils.collections.JsonArray().add(userId), res -> {
+						if (res.isLeft()) {
+							log.error(title + " : Failed to update unread counters of user " + userId + " : " +
+									res.left().getValue());
+						}
+						handler.handle(done);
+					});
 				});
 			}
 		});
@@ -444,6 +455,11 @@ public class ConversationRepositoryEvents extends SqlRepositoryEvents {
 			"WHERE um.user_id IN " + Sql.listPrepared(userIds.getList());
 		builder.prepared(deleteUserMessages, userIds);
 
+		String deleteUserCounters =
+			"DELETE FROM conversation.usercounters " +
+			"WHERE user_id IN " + Sql.listPrepared(userIds.getList());
+		builder.prepared(deleteUserCounters, userIds);
+
 		String setFrom =
 			"UPDATE conversation.messages " +
 			"SET " +
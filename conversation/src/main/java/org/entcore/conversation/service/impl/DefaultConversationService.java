@@ -449,11 +449,32 @@ public class DefaultConversationService implements ConversationService {
 
 	}
 
+	@Override
+	public void listThreads(UserInfos user, Long beforeDate, String beforeId, Handler<Either<String, JsonArray>> results) {
+		// threads are only listed by the sql service
+		results.handle(new Either.Left<String, JsonArray>("keyset.pagination.not.supported"));
+	}
+
 	@Override
 	public void listThreadMessages(String threadId, int page, UserInfos user, Handler<Either<String, JsonArray>> results) {
 
 	}
 
+	@Override
+	public void listThreadMessages(String threadId, Long beforeDate, String beforeId, UserInfos user, Handler<Either<String, JsonArray>> results) {
+		// threads are only listed by the sql service
+		results.handle(new Either.Left<String, JsonArray>("keyset.pagination.not.supported"));
+	}
+
+	@Override
+	public void list(String folder, String restrain, Boolean unread, UserInfos user, Long beforeDate, String beforeId, String searchWords, Handler<Either<String, JsonArray>> results) {
+		if (beforeDate == null) {
+			list(folder, restrain, unread, user, 0, searchWords, results);
+		} else {
+			results.handle(new Either.Left<String, JsonArray>("keyset.pagination.not.supported"));
+		}
+	}
+
 	@Override
 	public void listThreadMessagesNavigation(String messageId, boolean previous, UserInfos user, Handler<Either<String, JsonArray>> results) {
 
@@ -0,0 +1,97 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.conversation.service.impl;
+
+import fr.wseduc.webutils.Either;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.DeliveryOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.common.sql.Sql;
+import org.entcore.common.sql.SqlResult;
+import org.entcore.common.sql.SqlStatementsBuilder;
+
+/**
+ * Rebuilds the unread counters read by count. Imports and user deletions update the counters of their users, the
+ * scheduled repair of every counter only fixes the drifts of the changes made outside of the application.
+ */
+public class RepairUnreadCounters implements Handler<Long> {
+
+	private static final Logger log = LoggerFactory.getLogger(RepairUnreadCounters.class);
+
+	private static final String DELETE_COUNTERS =
+			"DELETE FROM conversation.usercounters";
+
+	private static final String INSERT_COUNTERS =
+			"INSERT INTO conversation.usercounters (user_id, folder_id, nb_unread) " +
+			"SELECT g.user_id, g.folder_id, g.nb FROM (" +
+			SqlConversationService.unreadCountersQuery("conversation", "true") + ") as g";
+
+	private static final String UPDATE_LIST_COLUMNS =
+			"UPDATE conversation.usermessages as um SET date = m.date, " +
+			"has_attachment = EXISTS (SELECT 1 FROM conversation.usermessagesattachments uma " +
+			"WHERE uma.user_id = um.user_id AND uma.message_id = um.message_id), " +
+			"response = EXISTS (SELECT 1 FROM conversation.messages r " +
+			"WHERE r.parent_id = um.message_id AND r.from = um.user_id AND r.state = 'SENT') " +
+			"FROM conversation.messages m WHERE m.id = um.message_id";
+
+	private final long timeout;
+
+	public RepairUnreadCounters() {
+		timeout = Vertx.currentContext().config().getLong("repair-counters-timeout", 600000L);
+	}
+
+	/**
+	 * Rebuilds the counters of some users, in a transaction of its own. The columns denormalized on usermessages for
+	 * the lists are also set again, the archives imported may have been exported before they existed.
+	 */
+	public static void repair(JsonArray userIds, Handler<Either<String, JsonObject>> handler) {
+		final String condition = "um.user_id IN " + Sql.listPrepared(userIds.getList());
+		final SqlStatementsBuilder builder = new SqlStatementsBuilder();
+		builder.prepared(DELETE_COUNTERS + " WHERE user_id IN " + Sql.listPrepared(userIds.getList()), userIds);
+		builder.prepared("INSERT INTO conversation.usercounters (user_id, folder_id, nb_unread) " +
+				"SELECT g.user_id, g.folder_id, g.nb FROM (" +
+				SqlConversationService.unreadCountersQuery("conversation", condition) + ") as g", userIds);
+		builder.prepared(UPDATE_LIST_COLUMNS + " AND " + condition, userIds);
+		Sql.getInstance().transaction(builder.build(), SqlResult.validUniqueResultHandler(1, handler));
+	}
+
+	@Override
+	public void handle(Long event) {
+		final SqlStatementsBuilder builder = new SqlStatementsBuilder();
+		builder.raw(DELETE_COUNTERS);
+		builder.raw(INSERT_COUNTERS);
+		Sql.getInstance().transaction(builder.build(), new DeliveryOptions().setSendTimeout(timeout),
+				SqlResult.validUniqueResultHandler(1, new Handler<Either<String, JsonObject>>() {
+			@Override
+			public void handle(Either<String, JsonObject> res) {
+				if (res.isRight()) {
+					log.info("Successful repair of conversation unread counters.");
+				} else {
+					log.error("Repair conversation unread counters error : " + res.left().getValue());
+				}
+			}
+		}));
+	}
+
+}
@@ -23,12 +23,17 @@ import static fr.wseduc.webutils.Utils.isNotEmpty;
 import static org.entcore.common.user.UserUtils.findVisibles;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 
 import io.vertx.core.DeploymentOptions;
 import io.vertx.core.eventbus.DeliveryOptions;
+import org.entcore.common.postgres.IPostgresClient;
+import org.entcore.common.sql.ISql;
+import org.entcore.common.sql.PostgresSql;
 import org.entcore.common.sql.Sql;
 import org.entcore.common.sql.SqlResult;
 import org.entcore.common.sql.SqlStatementsBuilder;
@@ -44,6 +49,8 @@ import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.EventBus;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
 
 import fr.wseduc.webutils.Either;
 import fr.wseduc.webutils.Server;
@@ -52,8 +59,9 @@ import fr.wseduc.webutils.Either.Right;
 
 public class SqlConversationService implements ConversationService{
 	public static final int DEFAULT_SENDTIMEOUT = 15 * 60 * 1000;
+	private static final Logger log = LoggerFactory.getLogger(SqlConversationService.class);
 	private final EventBus eb;
-	private final Sql sql;
+	private final ISql sql;
 
 	private final int maxFolderDepth;
 
@@ -62,21 +70,47 @@ public class SqlConversationService implements ConversationService{
 	private final String attachmentTable;
 	private final String userMessageTable;
 	private final String userMessageAttachmentTable;
+	private final String userCounterTable;
+	private final String schema;
 	private final boolean optimizedThreadList;
 	private int sendTimeout = DEFAULT_SENDTIMEOUT;
 
 	public SqlConversationService(Vertx vertx, String schema) {
 		this.eb = Server.getEventBus(vertx);
-		this.sql = Sql.getInstance();
+		this.sql = getSql(vertx);
 		this.maxFolderDepth = Config.getConf().getInteger("max-folder-depth", Conversation.DEFAULT_FOLDER_DEPTH);
 		messageTable = schema + ".messages";
 		folderTable = schema + ".folders";
 		attachmentTable = schema + ".attachments";
 		userMessageTable = schema + ".usermessages";
 		userMessageAttachmentTable = schema + ".usermessagesattachments";
+		userCounterTable = schema + ".usercounters";
+		this.schema = schema;
 		optimizedThreadList = vertx.getOrCreateContext().config().getBoolean("optimized-thread-list", false);
 	}
 
+	/**
+	 * With "direct-postgres", the statements are executed by the postgres client of the module instead of the
+	 * sql persistor. When the module uses its own persistor ("sql-address"), the shared postgres configuration
+	 * targets another database, so the module must have its own "postgresConfig".
+	 */
+	private static ISql getSql(Vertx vertx) {
+		final JsonObject config = vertx.getOrCreateContext().config();
+		if (config.getBoolean("direct-postgres", false)) {
+			if (config.getString("sql-address") != null && config.getJsonObject("postgresConfig") == null) {
+				log.error("direct-postgres needs the postgresConfig of the database of " +
+						config.getString("sql-address") + ", the sql persistor is used.");
+				return Sql.getInstance();
+			}
+			try {
+				return new PostgresSql(IPostgresClient.create(vertx, config, false, true));
+			} catch (Exception e) {
+				log.error("Could not create the postgres client, the sql persistor is used.", e);
+			}
+		}
+		return Sql.getInstance();
+	}
+
 	public SqlConversationService setSendTimeout(int sendTimeout) {
 		this.sendTimeout = sendTimeout;
 		return this;
@@ -115,7 +149,8 @@ public class SqlConversationService implements ConversationService{
 		// 2 - Link message to the user
 		builder.insert(userMessageTable, new JsonObject()
 			.put("user_id", user.getUserId())
-			.put("message_id", message.getString("id")));
+			.put("message_id", message.getString("id"))
+			.put("date", message.getLong("date")));
 
 		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
 	}
@@ -152,7 +187,16 @@ public class SqlConversationService implements ConversationService{
 			"WHERE id = ? AND state = ?";
 		values.add(messageId).add("DRAFT");
 
-		sql.prepared(query, values, SqlResult.validUniqueResultHandler(result));
+		// the list date is denormalized on usermessages to be served by the listing index
+		final String updateDate =
+			"UPDATE " + userMessageTable + " SET date = ? " +
+			"WHERE user_id = ? AND message_id = ?";
+
+		SqlStatementsBuilder builder = new SqlStatementsBuilder();
+		builder.prepared(query, values);
+		builder.prepared(updateDate, new fr.wseduc.webutils.collections.JsonArray()
+				.add(message.getLong("date")).add(user.getUserId()).add(messageId));
+		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
 	}
 
 	private void getSenderAttachments(String senderId, String messageId, Handler<Either<String, JsonObject>> handler){
@@ -200,6 +244,8 @@ public class SqlConversationService implements ConversationService{
 				if(ids.contains(user.getUserId()))
 					unread = "true";
 				SqlStatementsBuilder builder = new SqlStatementsBuilder();
+				final String draftCondition = "um.message_id = ?";
+				decrUnreadCounters(builder, draftCondition, new JsonArray().add(draftId));
 
 				String updateMessage =
 						"UPDATE " + messageTable + " SET state = ? WHERE id = ? "+
@@ -228,30 +274,52 @@ public class SqlConversationService implements ConversationService{
 					builder.prepared(insertUserThread, new fr.wseduc.webutils.collections.JsonArray().add(user.getUserId()).add(threadId).add(0));
 				}
 
-				for(Object toObj : ids){
-					if(toObj.equals(user.getUserId()))
-						continue;
+				final Set<String> recipientIds = new LinkedHashSet<>();
+				for (Object toObj : ids) {
+					if (!toObj.equals(user.getUserId())) {
+						recipientIds.add(toObj.toString());
+					}
+				}
+				final JsonArray recipients = new JsonArray(new ArrayList<>(recipientIds));
 
-					builder.insert(userMessageTable, new JsonObject()
-						.put("user_id", toObj.toString())
-						.put("message_id", draftId)
-						.put("total_quota", totalQuota)
-					);
+				// set-based delivery : the number of statements does not depend on the number of recipients
+				if (recipients.size() > 0) {
+					final String insertUserMessages =
+							"INSERT INTO " + userMessageTable + " (user_id, message_id, total_quota, has_attachment, date) " +
+							"SELECT r.user_id, m.id, ?, ?, m.date FROM jsonb_array_elements_text(?::jsonb) as r(user_id) " +
+							"CROSS JOIN " + messageTable + " m WHERE m.id = ?";
+					builder.prepared(insertUserMessages, new JsonArray().add(totalQuota)
+							.add(attachmentIds.size() > 0).add(recipients.encode()).add(draftId));
 
 					if (threadId != null) {
-						builder.prepared(insertUserThread, new fr.wseduc.webutils.collections.JsonArray().add(toObj.toString()).add(threadId).add(1));
+						final String insertUserThreads =
+								"INSERT INTO conversation.userthreads as ut (user_id,thread_id,nb_unread) " +
+								"SELECT r.user_id, ?, 1 FROM jsonb_array_elements_text(?::jsonb) as r(user_id) " +
+								"ON CONFLICT (user_id,thread_id) DO UPDATE SET nb_unread = ut.nb_unread + 1 " +
+								"WHERE ut.user_id = EXCLUDED.user_id AND ut.thread_id = EXCLUDED.thread_id";
+						builder.prepared(insertUserThreads, new JsonArray().add(threadId).add(recipients.encode()));
 					}
 
-					for(Object attachmentId : attachmentIds){
-						builder.insert(userMessageAttachmentTable, new JsonObject()
-							.put("user_id", toObj.toString())
-							.put("message_id", draftId)
-							.put("attachment_id", attachmentId.toString())
-						);
+					if (attachmentIds.size() > 0) {
+						final String insertUserAttachments =
+								"INSERT INTO " + userMessageAttachmentTable + " (user_id, message_id, attachment_id) " +
+								"SELECT r.user_id, ?, a.attachment_id FROM jsonb_array_elements_text(?::jsonb) as r(user_id) " +
+								"CROSS JOIN jsonb_array_elements_text(?::jsonb) as a(attachment_id)";
+						builder.prepared(insertUserAttachments,
+								new JsonArray().add(draftId).add(recipients.encode()).add(attachmentIds.encode()));
 					}
 				}
 
-				sql.transaction(builder.build(),new DeliveryOptions().setSendTimeout(sendTimeout), SqlResult.validUniqueResultHandler(0, result));
+				final String updateResponse =
+						"UPDATE " + userMessageTable + " AS um SET response = true " +
+						"FROM " + messageTable + " r " +
+						"WHERE r.id = ? AND um.message_id = r.parent_id AND um.user_id = ? AND um.response = false";
+				builder.prepared(updateResponse, new JsonArray().add(draftId).add(user.getUserId()));
+
+				// sender and recipients
+				incrUnreadCounters(builder, draftCondition, new JsonArray().add(draftId));
+
+				sql.transaction(builder.build(),new DeliveryOptions().setSendTimeout(sendTimeout), SqlResult.validUniqueResultHandler(2, result));
 			}
 		});
 	}
@@ -264,33 +332,64 @@ public class SqlConversationService implements ConversationService{
 			results.handle(new Either.Right<String, JsonArray>(new JsonArray()));
 			return;
 		}
-		int skip = page * LIST_LIMIT;
+		listMessages(folder, restrain, unread, user, page, null, null, searchText, results);
+	}
+
+	@Override
+	public void list(String folder, String restrain, Boolean unread, UserInfos user, Long beforeDate, String beforeId,
+			final String searchText, Handler<Either<String, JsonArray>> results)
+	{
+		listMessages(folder, restrain, unread, user, null, beforeDate, beforeId, searchText, results);
+	}
 
+	/**
+	 * The page mode also returns the total count of messages of the list, the keyset mode (messages before
+	 * beforeDate and beforeId, first page if null) relies on count.
+	 */
+	private void listMessages(String folder, String restrain, Boolean unread, UserInfos user, Integer page, Long beforeDate,
+			String beforeId, final String searchText, Handler<Either<String, JsonArray>> results)
+	{
 		JsonArray values = new fr.wseduc.webutils.collections.JsonArray();
 		String messageConditionUnread = addMessageConditionUnread(folder, values, unread, user);
 		String messagesFields = "m.id, m.subject, m.from, m.state, m.\"fromName\", m.to, m.\"toName\", m.cc, m.\"ccName\", m.cci, m.\"cciName\", m.\"displayNames\", m.date ";
 
-		values.add("SENT").add(user.getUserId());
+		values.add(user.getUserId());
 		String additionalWhere = addCompleteFolderCondition(values, restrain, unread, folder, user);
 
 		if(searchText != null){
 			additionalWhere += " AND m.text_searchable  @@ to_tsquery(m.language::regconfig, unaccent(?)) ";
 			values.add(StringUtils.join(checkAndComposeWordFromSearchText(searchText), " & "));
 		}
-		String query = "SELECT "+messagesFields+", um.unread as unread, " +
-				"CASE when COUNT(distinct r) = 0 THEN false ELSE true END AS response, COUNT(*) OVER() as count, " +
-				"CASE when COUNT(distinct uma) = 0 THEN false ELSE true END AS  \"hasAttachment\" " +
-				"FROM " + userMessageTable + " um LEFT JOIN " +
-				userMessageAttachmentTable + " uma ON um.user_id = uma.user_id AND um.message_id = uma.message_id JOIN " +
-				messageTable + " m ON (um.message_id = m.id" + messageConditionUnread + ") LEFT JOIN " +
-				messageTable + " r ON um.message_id = r.parent_id AND r.from = um.user_id AND r.state= ? " +
+		additionalWhere += addKeysetCondition("um.date", "um.message_id", beforeDate, beforeId, values);
+
+		String query = "SELECT "+messagesFields+", um.unread as unread, um.response as response, " +
+				(page != null ? "COUNT(*) OVER() as count, " : "") +
+				"um.has_attachment AS \"hasAttachment\" " +
+				"FROM " + userMessageTable + " um JOIN " +
+				messageTable + " m ON (um.message_id = m.id" + messageConditionUnread + ") " +
 				"WHERE um.user_id = ? " + additionalWhere + " " +
-				"GROUP BY m.id, unread " +
-				"ORDER BY m.date DESC LIMIT " + LIST_LIMIT + " OFFSET " + skip;
+				"ORDER BY um.date DESC, um.message_id DESC LIMIT " + LIST_LIMIT +
+				(page != null ? " OFFSET " + (page * LIST_LIMIT) : "");
 
 		sql.prepared(query, values, SqlResult.validResultHandler(results, "attachments", "to", "toName", "cc", "ccName", "cci", "cciName", "displayNames"));
 	}
 
+	private String addKeysetCondition(String alias, Long beforeDate, String beforeId, JsonArray values) {
+		return addKeysetCondition(alias + ".date", alias + ".id", beforeDate, beforeId, values);
+	}
+
+	private String addKeysetCondition(String dateColumn, String idColumn, Long beforeDate, String beforeId, JsonArray values) {
+		if (beforeDate == null) {
+			return "";
+		}
+		values.add(beforeDate);
+		if (beforeId == null) {
+			return " AND " + dateColumn + " < ? ";
+		}
+		values.add(beforeId);
+		return " AND (" + dateColumn + ", " + idColumn + ") < (?, ?) ";
+	}
+
 	//TODO : add to utils (similar function in SearchEngineController)
 	private List<String> checkAndComposeWordFromSearchText(final String searchText) {
 		List<String> searchWords = new ArrayList<>();
@@ -309,8 +408,16 @@ public class SqlConversationService implements ConversationService{
 
 	@Override
 	public void listThreads(UserInfos user, int page, Handler<Either<String, JsonArray>> results) {
-		int nbThread =  10;
-		int skip = page * nbThread;
+		listThreads(user, page * THREAD_LIST_LIMIT, null, null, results);
+	}
+
+	@Override
+	public void listThreads(UserInfos user, Long beforeDate, String beforeId, Handler<Either<String, JsonArray>> results) {
+		listThreads(user, 0, beforeDate, beforeId, results);
+	}
+
+	private void listThreads(UserInfos user, int skip, Long beforeDate, String beforeId, Handler<Either<String, JsonArray>> results) {
+		int nbThread = THREAD_LIST_LIMIT;
 		String messagesFields = "id, date, subject, \"displayNames\", \"to\", \"from\", cc, cci ";
 		JsonArray values = new fr.wseduc.webutils.collections.JsonArray();
 		values.add(user.getUserId());
@@ -321,8 +428,8 @@ public class SqlConversationService implements ConversationService{
 				"t.\"to\" as \"to\", t.\"from\" as \"from\", t.cc as cc, t.cci as cci, ut.nb_unread as unread " +
 				"FROM conversation.userthreads ut " +
 				"LEFT JOIN conversation.threads t on ut.thread_id = t.id " +
-				"WHERE  ut.user_id = ? " +
-				"ORDER BY date DESC " +
+				"WHERE  ut.user_id = ? " + addKeysetCondition("t", beforeDate, beforeId, values) +
+				"ORDER BY date DESC, id DESC " +
 				"LIMIT " + nbThread + " OFFSET " + skip;
 		} else {
 			query =
@@ -330,12 +437,13 @@ public class SqlConversationService implements ConversationService{
 				" SELECT * from (SELECT  DISTINCT ON (m.thread_id) thread_id AS "+messagesFields+ " FROM " + userMessageTable + " um " +
 				" JOIN "+messageTable+" m ON um.message_id = m.id " +
 				" WHERE um.user_id = ? AND m.state = 'SENT' AND um.trashed = false ORDER BY m.thread_id, m.date DESC) a "+
-				" ORDER BY date DESC LIMIT "+ nbThread +" OFFSET "+ skip + ") " +
+				" WHERE true " + addKeysetCondition("a", beforeDate, beforeId, values) +
+				" ORDER BY date DESC, id DESC LIMIT "+ nbThread +" OFFSET "+ skip + ") " +
 
 				"SELECT "+ messagesFields +", unread FROM threads JOIN (SELECT m.thread_id, SUM(CASE WHEN um.unread THEN 1 ELSE 0 END) AS unread " +
 				"FROM threads, conversation.usermessages um JOIN conversation.messages m ON um.message_id = m.id and um.user_id= ? " +
 				"WHERE  um.trashed = false AND m.thread_id=threads.id GROUP BY m.thread_id) c ON threads.id = c.thread_id " +
-				"ORDER BY date DESC";
+				"ORDER BY date DESC, id DESC";
 			values.add(user.getUserId());
 		}
 		sql.prepared(query, values, SqlResult.validResultHandler(results, "to", "toName", "cc", "cci", "ccName", "displayNames"));
@@ -343,7 +451,15 @@ public class SqlConversationService implements ConversationService{
 
 	@Override
 	public void listThreadMessages(String threadId, int page, UserInfos user, Handler<Either<String, JsonArray>> results) {
-		int skip = page * LIST_LIMIT;
+		listThreadMessages(threadId, page * LIST_LIMIT, null, null, user, results);
+	}
+
+	@Override
+	public void listThreadMessages(String threadId, Long beforeDate, String beforeId, UserInfos user, Handler<Either<String, JsonArray>> results) {
+		listThreadMessages(threadId, 0, beforeDate, beforeId, user, results);
+	}
+
+	private void listThreadMessages(String threadId, int skip, Long beforeDate, String beforeId, UserInfos user, Handler<Either<String, JsonArray>> results) {
 		String messagesFields = "m.id, m.parent_id, m.subject, m.body, m.from, m.\"fromName\", m.to, m.\"toName\", m.cc, m.\"ccName\",  m.cci, m.\"cciName\", m.\"displayNames\", m.date, m.thread_id ";
 		JsonArray values = new fr.wseduc.webutils.collections.JsonArray();
 
@@ -359,9 +475,9 @@ public class SqlConversationService implements ConversationService{
 				" LEFT JOIN " + attachmentTable + " att " +
 				" ON att.id = uma.attachment_id " +
 				" WHERE um.user_id = ? AND m.thread_id = ? " +
-				" AND m.state = 'SENT' AND um.trashed = false " +
+				" AND m.state = 'SENT' AND um.trashed = false " + addKeysetCondition("m", beforeDate, beforeId, values) +
 				" GROUP BY m.id, um.unread " +
-				" ORDER BY m.date DESC LIMIT " + LIST_LIMIT + " OFFSET " + skip;
+				" ORDER BY m.date DESC, m.id DESC LIMIT " + LIST_LIMIT + " OFFSET " + skip;
 
 		sql.prepared(query, values, SqlResult.validResultHandler(results, "to", "toName", "cc", "ccName", "cci", "cciName", "displayNames", "attachments"));
 	}
@@ -435,9 +551,11 @@ public class SqlConversationService implements ConversationService{
 		final JsonArray values2 = new JsonArray().add(user.getUserId()).add(user.getUserId());
 
 		SqlStatementsBuilder builder = new SqlStatementsBuilder();
+		decrUnreadCounters(builder, "um.user_id = ? AND um.message_id IN " + Sql.listPrepared(messagesId.toArray()),
+				new JsonArray().add(user.getUserId()).addAll(new JsonArray(messagesId)));
 		builder.prepared(query.toString(), values);
 		builder.prepared(deleteUserThreads, values2);
-		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
+		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(2, result));
 	}
 
 	@Override
@@ -459,9 +577,11 @@ public class SqlConversationService implements ConversationService{
 		final JsonArray values2 = new JsonArray(threadIds).add(user.getUserId());
 
 		SqlStatementsBuilder builder = new SqlStatementsBuilder();
+		decrUnreadCounters(builder, "um.user_id = ? AND m.thread_id IN " + Sql.listPrepared(threadIds.toArray()),
+				new JsonArray().add(user.getUserId()).addAll(new JsonArray(threadIds)));
 		builder.prepared(query.toString(), values);
 		builder.prepared(deleteUserThreads, values2);
-		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
+		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(2, result));
 
 	}
 
@@ -490,10 +610,15 @@ public class SqlConversationService implements ConversationService{
 				"GROUP BY user_id, m.thread_id) ON CONFLICT (user_id,thread_id) DO NOTHING";
 		JsonArray values2 = new JsonArray(messagesId).add(user.getUserId());
 
+		final String countersCondition = "um.user_id = ? AND um.message_id IN " + Sql.listPrepared(messagesId.toArray());
+		final JsonArray countersValues = new JsonArray().add(user.getUserId()).addAll(new JsonArray(messagesId));
 		SqlStatementsBuilder builder = new SqlStatementsBuilder();
+		// the restored messages are not counted, only the already restored ones are removed and added again
+		decrUnreadCounters(builder, countersCondition, countersValues);
 		builder.prepared(query.toString(), values);
 		builder.prepared(insertUserThread, values2);
-		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
+		incrUnreadCounters(builder, countersCondition, countersValues);
+		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(2, result));
 	}
 
 	@Override
@@ -521,6 +646,7 @@ public class SqlConversationService implements ConversationService{
 		}
 
 		builder.prepared(getTotalQuota, values2);
+		// only trashed messages are deleted, they are not in the unread counters
 		builder.prepared(deleteUserMessages, values3);
 
 		sql.transaction(builder.build(), SqlResult.validResultsHandler(result));
@@ -569,11 +695,12 @@ public class SqlConversationService implements ConversationService{
 			.add(user.getUserId())
 			.add(messageId);
 
+		decrUnreadCounters(builder, "um.user_id = ? AND um.message_id = ?", values);
 		builder.prepared(decrUnreadThread, tValues);
 		builder.prepared(updateQuery, values);
 		builder.prepared(selectQuery, values);
 
-		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(2, result, "attachments", "to", "toName", "cc", "ccName", "displayNames", "cci", "cciName"));
+		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(4, result, "attachments", "to", "toName", "cc", "ccName", "displayNames", "cci", "cciName"));
 	}
 
 	@Override
@@ -581,6 +708,18 @@ public class SqlConversationService implements ConversationService{
 		if (validationParamsError(user, result, folder))
 			return;
 
+		if (unread != null && unread && (restrain != null || "INBOX".equals(folder.toUpperCase()))) {
+			// materialized by the write operations, see unreadCountersQuery
+			final String query =
+				"SELECT COALESCE((SELECT nb_unread FROM " + userCounterTable + " " +
+				"WHERE user_id = ? AND folder_id = ?), 0) as count";
+			final JsonArray values = new fr.wseduc.webutils.collections.JsonArray()
+				.add(user.getUserId())
+				.add(restrain != null ? folder : "INBOX");
+			sql.prepared(query, values, SqlResult.validUniqueResultHandler(result));
+			return;
+		}
+
 		JsonArray values = new fr.wseduc.webutils.collections.JsonArray();
 
 		String messageConditionUnread = addMessageConditionUnread(folder, values, unread, user);
@@ -708,7 +847,11 @@ public class SqlConversationService implements ConversationService{
 					values.add(id);
 				}
 
+				final String countersCondition = "um.user_id = ? AND um.message_id IN " + Sql.listPrepared(messagesIds.toArray());
+				final JsonArray countersValues = new JsonArray().add(user.getUserId()).addAll(new JsonArray(messagesIds));
+				decrUnreadCounters(builder, countersCondition, countersValues);
 				builder.prepared(query, values);
+				incrUnreadCounters(builder, countersCondition, countersValues);
 
 				final List<String> threadIds = new ArrayList<>();
 				for (Object row: either.right().getValue()) {
@@ -717,7 +860,7 @@ public class SqlConversationService implements ConversationService{
 				}
 				recalculateNbUnreadInThreads(threadIds, user, builder);
 
-				sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
+				sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(2, result));
 			} else {
 				result.handle(new Either.Left<>(either.left().getValue()));
 			}
@@ -738,9 +881,13 @@ public class SqlConversationService implements ConversationService{
 		query.append(" AND um.user_id = ? AND um.message_id = m.id ");
 		values.add(user.getUserId());
 
+		final String countersCondition = "um.user_id = ? AND m.thread_id IN " + Sql.listPrepared(threadIds.toArray());
+		final JsonArray countersValues = new JsonArray().add(user.getUserId()).addAll(new JsonArray(threadIds));
+		decrUnreadCounters(builder, countersCondition, countersValues);
 		builder.prepared(query.toString(), values);
+		incrUnreadCounters(builder, countersCondition, countersValues);
 		recalculateNbUnreadInThreads(threadIds, user, builder);
-		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
+		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(2, result));
 	}
 
 	private void recalculateNbUnreadInThreads(List<String> threadIds, UserInfos user, SqlStatementsBuilder builder) {
@@ -758,6 +905,47 @@ public class SqlConversationService implements ConversationService{
 
 		builder.prepared(query, new JsonArray(threadIds).add(user.getUserId()));
 	}
+
+	/**
+	 * Unread messages of the inbox and of the user folders, by user and folder ('INBOX' for the inbox).
+	 * Must match the conditions of {@link #count} with unread = true.
+	 */
+	public static String unreadCountersQuery(String schema, String condition) {
+		return "SELECT um.user_id as user_id, COALESCE(um.folder_id, 'INBOX') as folder_id, count(*) as nb " +
+				"FROM " + schema + ".usermessages um " +
+				"JOIN " + schema + ".messages m on um.message_id = m.id " +
+				"WHERE " + condition + " AND um.unread = true AND um.trashed = false AND m.state = 'SENT' " +
+				"AND (m.from <> um.user_id OR m.to @> to_jsonb(um.user_id) OR m.cc @> to_jsonb(um.user_id)) " +
+				"GROUP BY um.user_id, COALESCE(um.folder_id, 'INBOX')";
+	}
+
+	/* The counters are updated in the transaction of the change : the unread messages matching the condition
+	are removed from the counters before the change and added again after. The usermessages rows are locked
+	first, so a concurrent change of the same messages waits for the commit and then counts the committed
+	state instead of removing the same messages twice. decrUnreadCounters adds 2 statements to the builder. */
+
+	private void decrUnreadCounters(SqlStatementsBuilder builder, String condition, JsonArray values) {
+		final String lock =
+				"SELECT um.user_id FROM " + userMessageTable + " um " +
+				"JOIN " + messageTable + " m on um.message_id = m.id " +
+				"WHERE " + condition + " " +
+				"ORDER BY um.user_id, um.message_id FOR UPDATE OF um";
+		builder.prepared(lock, values);
+		final String query =
+				"UPDATE " + userCounterTable + " as uc " +
+				"SET nb_unread = GREATEST(uc.nb_unread - g.nb, 0) " +
+				"FROM (" + unreadCountersQuery(schema, condition) + ") as g " +
+				"WHERE uc.user_id = g.user_id AND uc.folder_id = g.folder_id ";
+		builder.prepared(query, values);
+	}
+
+	private void incrUnreadCounters(SqlStatementsBuilder builder, String condition, JsonArray values) {
+		final String query =
+				"INSERT INTO " + userCounterTable + " as uc (user_id, folder_id, nb_unread) " +
+				"SELECT g.user_id, g.folder_id, g.nb FROM (" + unreadCountersQuery(schema, condition) + ") as g " +
+				"ON CONFLICT (user_id, folder_id) DO UPDATE SET nb_unread = uc.nb_unread + EXCLUDED.nb_unread";
+		builder.prepared(query, values);
+	}
 	private boolean isDuplicateError(String msg){
 		return msg.contains("violates unique constraint") || msg.contains("rompt la contrainte unique");
 	}
@@ -936,7 +1124,7 @@ public class SqlConversationService implements ConversationService{
 
 		query += generateInVars(messageIds, values);
 
-		sql.prepared(query, values, SqlResult.validUniqueResultHandler(result));
+		moveUnreadCounters(query, values, messageIds, user, result);
 	}
 
 	@Override
@@ -954,7 +1142,19 @@ public class SqlConversationService implements ConversationService{
 		values.add(user.getUserId());
 
 		query += generateInVars(messageIds, values);
-		sql.prepared(query, values, SqlResult.validUniqueResultHandler(result));
+		moveUnreadCounters(query, values, messageIds, user, result);
+	}
+
+	private void moveUnreadCounters(String moveQuery, JsonArray moveValues, List<String> messageIds, UserInfos user,
+			Handler<Either<String, JsonObject>> result) {
+		final String countersCondition = "um.user_id = ? AND um.message_id IN " + Sql.listPrepared(messageIds.toArray());
+		final JsonArray countersValues = new JsonArray().add(user.getUserId()).addAll(new JsonArray(messageIds));
+
+		SqlStatementsBuilder builder = new SqlStatementsBuilder();
+		decrUnreadCounters(builder, countersCondition, countersValues);
+		builder.prepared(moveQuery, moveValues);
+		incrUnreadCounters(builder, countersCondition, countersValues);
+		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(2, result));
 	}
 
 	@Override
@@ -1046,6 +1246,14 @@ public class SqlConversationService implements ConversationService{
 
 		builder.prepared(deleteFolder, values);
 
+		/* Remove the counters of the deleted folders */
+
+		String deleteCounters =
+			"DELETE FROM " + userCounterTable + " uc " +
+			"WHERE uc.user_id = ? AND uc.folder_id <> 'INBOX' AND NOT EXISTS (" +
+				"SELECT 1 FROM " + folderTable + " f WHERE f.id = uc.folder_id)";
+		builder.prepared(deleteCounters, new fr.wseduc.webutils.collections.JsonArray().add(user.getUserId()));
+
 		/* Perform the transaction */
 
 		sql.transaction(builder.build(), SqlResult.validResultsHandler(result));
@@ -1081,7 +1289,7 @@ public class SqlConversationService implements ConversationService{
 
 		String query =
 			"UPDATE " + userMessageTable + " AS um " +
-			"SET total_quota = total_quota + ? " +
+			"SET total_quota = total_quota + ?, has_attachment = true " +
 			"WHERE um.user_id = ? AND um.message_id = ?";
 		JsonArray values = new fr.wseduc.webutils.collections.JsonArray()
 			.add(attachmentSize)
@@ -1168,6 +1376,13 @@ public class SqlConversationService implements ConversationService{
 			"message_id = ? AND user_id = ? AND attachment_id = ?";
 		builder.prepared(query4, values);
 
+		String query5 =
+			"UPDATE " + userMessageTable + " AS um " +
+			"SET has_attachment = EXISTS (SELECT 1 FROM " + userMessageAttachmentTable + " uma " +
+				"WHERE uma.user_id = um.user_id AND uma.message_id = um.message_id) " +
+			"WHERE um.message_id = ? AND um.user_id = ?";
+		builder.prepared(query5, new fr.wseduc.webutils.collections.JsonArray().add(messageId).add(user.getUserId()));
+
 		sql.transaction(builder.build(), SqlResult.validResultsHandler(new Handler<Either<String,JsonArray>>() {
 			public void handle(Either<String, JsonArray> event) {
 				if(event.isLeft()){
@@ -1204,7 +1419,16 @@ public class SqlConversationService implements ConversationService{
 				.add(forwardId)
 				.add(messageId);
 
-		sql.prepared(query, values, SqlResult.validUniqueResultHandler(result));
+		String updateFlag =
+			"UPDATE " + userMessageTable + " AS um " +
+			"SET has_attachment = EXISTS (SELECT 1 FROM " + userMessageAttachmentTable + " uma " +
+				"WHERE uma.user_id = um.user_id AND uma.message_id = um.message_id) " +
+			"WHERE um.user_id = ? AND um.message_id = ?";
+
+		SqlStatementsBuilder builder = new SqlStatementsBuilder();
+		builder.prepared(query, values);
+		builder.prepared(updateFlag, new fr.wseduc.webutils.collections.JsonArray().add(user.getUserId()).add(messageId));
+		sql.transaction(builder.build(), SqlResult.validUniqueResultHandler(0, result));
 	}
 
 	///////////
@@ -0,0 +1,16 @@
+CREATE TABLE conversation.usercounters (
+    "user_id" VARCHAR(36) NOT NULL,
+    "folder_id" VARCHAR(36) NOT NULL,
+    "nb_unread" INTEGER NOT NULL DEFAULT 0,
+    PRIMARY KEY (user_id, folder_id)
+);
+
+INSERT INTO conversation.usercounters (user_id, folder_id, nb_unread)
+SELECT um.user_id, COALESCE(um.folder_id, 'INBOX'), count(*)
+FROM conversation.usermessages um
+JOIN conversation.messages m on um.message_id = m.id
+WHERE um.unread = true AND um.trashed = false AND m.state = 'SENT'
+AND (m.from <> um.user_id OR m.to @> to_jsonb(um.user_id) OR m.cc @> to_jsonb(um.user_id))
+GROUP BY um.user_id, COALESCE(um.folder_id, 'INBOX');
+
+GRANT SELECT, INSERT, UPDATE, DELETE, TRUNCATE ON conversation.usercounters TO "apps";
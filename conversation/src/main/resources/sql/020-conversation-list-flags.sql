@@ -0,0 +1,14 @@
+ALTER TABLE conversation.usermessages ADD COLUMN "has_attachment" BOOLEAN NOT NULL DEFAULT FALSE;
+ALTER TABLE conversation.usermessages ADD COLUMN "response" BOOLEAN NOT NULL DEFAULT FALSE;
+
+UPDATE conversation.usermessages as um SET has_attachment = TRUE
+WHERE EXISTS (SELECT 1 FROM conversation.usermessagesattachments uma
+WHERE uma.user_id = um.user_id AND uma.message_id = um.message_id);
+
+UPDATE conversation.usermessages as um SET response = TRUE
+FROM conversation.messages r
+WHERE r.parent_id = um.message_id AND r.from = um.user_id AND r.state = 'SENT';
+
+CREATE INDEX idx_usermessages_list ON conversation.usermessages (user_id, trashed, folder_id);
+CREATE INDEX idx_messages_date_id ON conversation.messages (date DESC, id DESC);
+CREATE INDEX idx_threads_date_id ON conversation.threads (date DESC, id DESC);
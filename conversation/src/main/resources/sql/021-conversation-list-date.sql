@@ -0,0 +1,8 @@
+ALTER TABLE conversation.usermessages ADD COLUMN "date" BIGINT;
+
+UPDATE conversation.usermessages as um SET date = m.date
+FROM conversation.messages m
+WHERE m.id = um.message_id;
+
+DROP INDEX IF EXISTS conversation.idx_usermessages_list;
+CREATE INDEX idx_usermessages_list ON conversation.usermessages (user_id, folder_id, trashed, date DESC, message_id DESC);
@@ -0,0 +1,145 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.conversation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.entcore.common.user.UserInfos;
+import org.entcore.common.utils.Config;
+import org.entcore.conversation.service.ConversationService;
+import org.entcore.conversation.service.impl.SqlConversationService;
+import org.entcore.test.TestHelper;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class ListMessagesTest {
+    private static final TestHelper test = TestHelper.helper();
+    static final String schema = "conversation";
+    @ClassRule
+    public static PostgreSQLContainer<?> pgContainer = test.database().createPostgreSQLContainer();
+    static ConversationService conversationService;
+
+    @BeforeClass
+    public static void setUp(TestContext context) throws Exception {
+        Config.getInstance().setConfig(new JsonObject());
+        conversationService = new SqlConversationService(test.vertx(), schema);
+        test.database().initPostgreSQL(context, pgContainer, schema);
+    }
+
+    private Future<String> send(String parentId, UserInfos sender, UserInfos recipient) {
+        final Future<String> future = Future.future();
+        final JsonObject message = new JsonObject().put("subject", "subject").put("body", "body")
+                .put("to", new JsonArray().add(recipient.getUserId()));
+        conversationService.saveDraft(parentId, null, message, sender, draft -> {
+            if (draft.isLeft()) {
+                future.fail(draft.left().getValue());
+                return;
+            }
+            final String id = draft.right().getValue().getString("id");
+            conversationService.send(parentId, id, message.copy().put("allUsers",
+                    new JsonArray().add(recipient.getUserId())), sender, sent -> {
+                if (sent.isLeft()) {
+                    future.fail(sent.left().getValue());
+                } else {
+                    future.complete(id);
+                }
+            });
+        });
+        return future;
+    }
+
+    private Future<JsonArray> list(String folder, UserInfos user, JsonObject before) {
+        final Future<JsonArray> future = Future.future();
+        conversationService.list(folder, null, null, user, before != null ? before.getLong("date") : null,
+                before != null ? before.getString("id") : null, null, res -> {
+            if (res.isLeft()) {
+                future.fail(res.left().getValue());
+            } else {
+                future.complete(res.right().getValue());
+            }
+        });
+        return future;
+    }
+
+    private List<String> ids(JsonArray messages) {
+        final List<String> ids = new ArrayList<>();
+        for (Object o : messages) {
+            ids.add(((JsonObject) o).getString("id"));
+        }
+        return ids;
+    }
+
+    @Test
+    public void testKeysetPagesShouldFollowTheFirstPage(TestContext context) {
+        final Async async = context.async();
+        final UserInfos sender = test.directory().generateUser("keyset-sender");
+        final UserInfos recipient = test.directory().generateUser("keyset-recipient");
+        Future<String> sent = Future.succeededFuture();
+        for (int i = 0; i < 5; i++) {
+            sent = sent.compose(id -> send(null, sender, recipient));
+        }
+        sent.compose(id -> list("INBOX", recipient, null)).compose(first -> {
+            context.assertEquals(5, first.size());
+            return list("INBOX", recipient, first.getJsonObject(1)).map(next -> {
+                // the messages with the same date are ordered by id on both pages
+                context.assertEquals(ids(first).subList(2, 5), ids(next));
+                return next;
+            });
+        }).compose(next -> list("OUTBOX", sender, null)).setHandler(context.asyncAssertSuccess(outbox -> {
+            context.assertEquals(5, outbox.size());
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void testReplyShouldFlagTheParentMessage(TestContext context) {
+        final Async async = context.async();
+        final UserInfos sender = test.directory().generateUser("response-sender");
+        final UserInfos recipient = test.directory().generateUser("response-recipient");
+        send(null, sender, recipient).compose(id -> send(id, recipient, sender).map(reply -> id))
+                .compose(id -> list("INBOX", recipient, null).map(inbox -> {
+            context.assertEquals(1, inbox.size());
+            context.assertEquals(id, inbox.getJsonObject(0).getString("id"));
+            context.assertTrue(inbox.getJsonObject(0).getBoolean("response"));
+            context.assertFalse(inbox.getJsonObject(0).getBoolean("hasAttachment"));
+            return inbox;
+        })).compose(inbox -> list("INBOX", sender, null)).setHandler(context.asyncAssertSuccess(inbox -> {
+            context.assertEquals(1, inbox.size());
+            context.assertFalse(inbox.getJsonObject(0).getBoolean("response"));
+            async.complete();
+        }));
+    }
+
+}
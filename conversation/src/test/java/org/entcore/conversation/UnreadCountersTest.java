@@ -0,0 +1,168 @@
+/*
+ * Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+
+package org.entcore.conversation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import org.entcore.common.user.UserInfos;
+import org.entcore.common.utils.Config;
+import org.entcore.conversation.service.ConversationService;
+import org.entcore.conversation.service.impl.SqlConversationService;
+import org.entcore.test.TestHelper;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+import fr.wseduc.webutils.Either;
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class UnreadCountersTest {
+    private static final TestHelper test = TestHelper.helper();
+    static final String schema = "conversation";
+    @ClassRule
+    public static PostgreSQLContainer<?> pgContainer = test.database().createPostgreSQLContainer();
+    static ConversationService conversationService;
+
+    @BeforeClass
+    public static void setUp(TestContext context) throws Exception {
+        Config.getInstance().setConfig(new JsonObject());
+        conversationService = new SqlConversationService(test.vertx(), schema);
+        test.database().initPostgreSQL(context, pgContainer, schema);
+    }
+
+    private Future<String> send(UserInfos sender, UserInfos recipient) {
+        final Future<String> future = Future.future();
+        final JsonObject message = new JsonObject().put("subject", "subject").put("body", "body")
+                .put("to", new JsonArray().add(recipient.getUserId()));
+        conversationService.saveDraft(null, null, message, sender, draft -> {
+            if (draft.isLeft()) {
+                future.fail(draft.left().getValue());
+                return;
+            }
+            final String id = draft.right().getValue().getString("id");
+            conversationService.send(null, id, message.copy().put("allUsers",
+                    new JsonArray().add(recipient.getUserId())), sender, sent -> {
+                if (sent.isLeft()) {
+                    future.fail(sent.left().getValue());
+                } else {
+                    future.complete(id);
+                }
+            });
+        });
+        return future;
+    }
+
+    private Future<Integer> unread(UserInfos user) {
+        final Future<Integer> future = Future.future();
+        conversationService.count("INBOX", null, true, user, res -> {
+            if (res.isLeft()) {
+                future.fail(res.left().getValue());
+            } else {
+                future.complete(res.right().getValue().getInteger("count"));
+            }
+        });
+        return future;
+    }
+
+    private <T> Future<T> handle(Consumer<Handler<Either<String, T>>> action) {
+        final Future<T> future = Future.future();
+        action.accept(res -> {
+            if (res.isLeft()) {
+                future.fail(res.left().getValue());
+            } else {
+                future.complete(res.right().getValue());
+            }
+        });
+        return future;
+    }
+
+    @Test
+    public void testCountersShouldFollowReadAndTrash(TestContext context) {
+        final Async async = context.async();
+        final UserInfos sender = test.directory().generateUser("counters-sender");
+        final UserInfos recipient = test.directory().generateUser("counters-recipient");
+        send(sender, recipient).compose(id -> {
+            final List<String> ids = Arrays.asList(id);
+            return unread(recipient).compose(c -> {
+                context.assertEquals(1, c);
+                return this.<JsonObject>handle(h -> conversationService.toggleUnread(ids, false, recipient, h));
+            }).compose(r -> unread(recipient)).compose(c -> {
+                context.assertEquals(0, c);
+                return this.<JsonObject>handle(h -> conversationService.toggleUnread(ids, true, recipient, h));
+            }).compose(r -> this.<JsonObject>handle(h -> conversationService.toggleUnread(ids, true, recipient, h)))
+            .compose(r -> unread(recipient)).compose(c -> {
+                context.assertEquals(1, c, "toggling twice should count the message once");
+                return this.<JsonObject>handle(h -> conversationService.trash(ids, recipient, h));
+            }).compose(r -> this.<JsonObject>handle(h -> conversationService.trash(ids, recipient, h)))
+            .compose(r -> unread(recipient)).compose(c -> {
+                context.assertEquals(0, c);
+                return this.<JsonObject>handle(h -> conversationService.restore(ids, recipient, h));
+            }).compose(r -> this.<JsonObject>handle(h -> conversationService.restore(ids, recipient, h)))
+            .compose(r -> unread(recipient)).compose(c -> {
+                context.assertEquals(1, c, "restoring twice should count the message once");
+                return this.<JsonObject>handle(h -> conversationService.trash(ids, recipient, h));
+            }).compose(r -> this.<JsonArray>handle(h -> conversationService.delete(ids, false, recipient, h)))
+            .compose(r -> unread(recipient));
+        }).setHandler(context.asyncAssertSuccess(c -> {
+            context.assertEquals(0, c);
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void testConcurrentTogglesShouldNotCountTwice(TestContext context) {
+        final Async async = context.async();
+        final UserInfos sender = test.directory().generateUser("concurrent-sender");
+        final UserInfos recipient = test.directory().generateUser("concurrent-recipient");
+        send(sender, recipient).compose(id -> {
+            final List<String> ids = Arrays.asList(id);
+            return CompositeFuture.all(
+                    this.<JsonObject>handle(h -> conversationService.toggleUnread(ids, false, recipient, h)),
+                    this.<JsonObject>handle(h -> conversationService.toggleUnread(ids, false, recipient, h)),
+                    this.<JsonObject>handle(h -> conversationService.toggleUnread(ids, false, recipient, h)))
+            .compose(r -> unread(recipient)).compose(c -> {
+                context.assertEquals(0, c);
+                return CompositeFuture.all(
+                        this.<JsonObject>handle(h -> conversationService.toggleUnread(ids, true, recipient, h)),
+                        this.<JsonObject>handle(h -> conversationService.toggleUnread(ids, true, recipient, h)),
+                        this.<JsonObject>handle(h -> conversationService.toggleUnread(ids, true, recipient, h)));
+            }).compose(r -> unread(recipient));
+        }).setHandler(context.asyncAssertSuccess(c -> {
+            context.assertEquals(1, c);
+            async.complete();
+        }));
+    }
+
+}
@@ -30,6 +30,7 @@ import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import org.entcore.common.neo4j.Neo4j;
 import org.entcore.common.neo4j.Neo4jResult;
+import org.entcore.common.neo4j.Neo4jResultCache;
 import org.entcore.common.neo4j.StatementsBuilder;
 import org.entcore.common.user.UserInfos;
 import org.entcore.common.utils.StringUtils;
@@ -457,7 +458,8 @@ public class DefaultSchoolService implements SchoolService {
 				.put("blocked", block);
 		neo.execute(query, params, new Handler<Message<JsonObject>>() {
 			@Override
-			public void handle(Message<JsonObject> r) { ;
+			public void handle(Message<JsonObject> r) {
+				Neo4jResultCache.publishInvalidation(eventBus, Neo4jResultCache.TAG_USERS);
 				handler.handle(r.body());
 			}
 		});
@@ -0,0 +1,116 @@
+/* Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ */
+
+package org.entcore.feeder.csv;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the rows of a generated {@code Student.csv} of {@code rowsNumber} lines as the feed of a validated file
+ * does, either by parsing the CSV with its charset detection ({@code csv}) or from the spill written by the
+ * validation ({@code spill}).
+ * <p>
+ *     The allocations of both modes are compared with the GC profiler, e.g.
+ *     {@code gradle :feeder:jmh -Pjmh='CsvSpillBenchmark -prof gc'}.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CsvSpillBenchmark {
+
+	private static final String HEADER = "Id;Nom;Prénom;Date de naissance;Classe;Adresse;Code postal;Ville;Email;Sexe";
+
+	@Param({"csv", "spill"})
+	public String mode;
+
+	@Param({"10000", "100000"})
+	public int rowsNumber;
+
+	private Path file;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		file = Files.createTempFile("Student", ".csv");
+		try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			w.write(HEADER);
+			w.newLine();
+			for (int i = 0; i < rowsNumber; i++) {
+				w.write("student-" + i + ";Nom" + i + ";Prénom" + i + ";01/02/2010;CM" + (i % 5) +
+						";" + i + " rue de l'École;75001;Paris;eleve" + i + "@example.com;" + (i % 2 == 0 ? "M" : "F"));
+				w.newLine();
+			}
+		}
+		if ("spill".equals(mode)) {
+			final CsvSpill.Writer writer = CsvSpill.create(file.toString());
+			if (writer == null) {
+				throw new IllegalStateException("spill.error");
+			}
+			try (CsvSpill.Rows rows = CsvSpill.open(file.toString(), "UTF-8", 0)) {
+				String[] row;
+				while ((row = rows.readNext()) != null) {
+					writer.write(row);
+				}
+				writer.commit();
+			} finally {
+				writer.abort();
+			}
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		CsvSpill.delete(file.toString());
+		Files.deleteIfExists(file);
+	}
+
+	@Benchmark
+	public long readRows() throws Exception {
+		long values = 0;
+		// a null charset is detected when the file has no spill, as in CsvFeeder.start
+		try (CsvSpill.Rows rows = CsvSpill.open(file.toString(), null, 0)) {
+			String[] row;
+			while ((row = rows.readNext()) != null) {
+				values += row.length;
+			}
+		}
+		return values;
+	}
+
+}
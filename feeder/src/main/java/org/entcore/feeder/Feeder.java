@@ -39,6 +39,7 @@ import org.entcore.feeder.aaf.AafFeeder;
 import org.entcore.feeder.aaf1d.Aaf1dFeeder;
 import org.entcore.feeder.csv.CsvFeeder;
 import org.entcore.feeder.csv.CsvImportsLauncher;
+import org.entcore.feeder.csv.CsvReport;
 import org.entcore.feeder.csv.CsvValidator;
 import org.entcore.feeder.dictionary.structures.*;
 import org.entcore.feeder.export.Exporter;
@@ -51,6 +52,7 @@ import org.entcore.feeder.timetable.edt.EDTFeederLauncher;
 import org.entcore.feeder.timetable.edt.EDTImporter;
 import org.entcore.feeder.timetable.edt.EDTUtils;
 import org.entcore.feeder.timetable.udt.UDTImporter;
+import org.entcore.feeder.utils.ImportFingerprints;
 import org.entcore.feeder.utils.Report;
 import org.entcore.feeder.utils.ResultMessage;
 import org.entcore.feeder.utils.TransactionManager;
@@ -111,7 +113,7 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 		defaultFeed = config.getString("feeder", "AAF");
 		feeds.put("AAF", new AafFeeder(vertx, getFilesDirectory("AAF")));
 		feeds.put("AAF1D", new Aaf1dFeeder(vertx, getFilesDirectory("AAF1D")));
-		feeds.put("CSV", new CsvFeeder(vertx));
+		feeds.put("CSV", new CsvFeeder(vertx, config.getInteger("csv-chunk-size", CsvFeeder.DEFAULT_CHUNK_SIZE)));
 		this.allowManualActionsDuringFeeds = config.getBoolean("allow-manual-actions-during-feeds", false);
 		final long deleteUserDelay = config.getLong("delete-user-delay", defaultDeleteUserDelay);
 		final long preDeleteUserDelay = config.getLong("pre-delete-user-delay", defaultPreDeleteUserDelay);
@@ -192,6 +194,7 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 		manual = new ManualFeeder(neo4j, eb, new DefaultUserPositionService(eb));
 		duplicateUsers = new DuplicateUsers(config.getBoolean("timetable", true),
 				config.getBoolean("autoMergeOnlyInSameStructure", true), vertx.eventBus());
+		duplicateUsers.setBlockingDetection(config.getBoolean("blocking-duplicates-detection", true));
 		postImport = new PostImport(vertx, duplicateUsers, config);
 		vertx.eventBus().consumer(
 				config.getString("address", FEEDER_ADDRESS), this);
@@ -595,6 +598,14 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 		switch (source) {
 			case "CSV":
 				v = new CsvValidator(vertx, acceptLanguage, message.body());
+				if (handler != null && message.body().getBoolean("not-persist-report", false)) {
+					// validation of already validated files before their import, only their errors are used
+					((CsvValidator) v).setKeepUsers(false);
+				}
+				if (handler != null) {
+					// the import reads the rows parsed by the validation
+					((CsvValidator) v).setSpillRows(true);
+				}
 				break;
 			case "AAF":
 			case "AAF1D":
@@ -779,6 +790,9 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 					if (report.isNotReverseFilesOrder()) {
 						message.body().put("notReverseFilesOrder", true);
 					}
+					if (report instanceof CsvReport) {
+						message.body().put("externalIdsChecked", true);
+					}
 					logger.info(e -> "START import");
 					doImport(message, feed, new Handler<Report>() {
 						@Override
@@ -814,6 +828,9 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 						}
 					});
 				} else if (report != null) {
+					if (report instanceof CsvValidator) {
+						((CsvValidator) report).deleteSpills();
+					}
 					sendOK(message, new JsonObject().put("result", report.getResult()));
 					logger.error(e -> "FAILED validation | details: "+report.getResult());
 				} else {
@@ -829,11 +846,19 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 		final String importPath = message.body().getString("path");
 		final boolean executePostImport = getOrElse(message.body().getBoolean("postImport"), true);
 		final boolean notReverseFilesOrder = message.body().getBoolean("notReverseFilesOrder", false);
+		final boolean externalIdsChecked = message.body().getBoolean("externalIdsChecked", false);
 		final FeederLogger logger = new FeederLogger(t -> "Feeder.doImport", t -> String.format("withPostImport: %s", executePostImport));
 		final Importer importer = Importer.getInstance();
 		if (importer.isReady()) {
 			logger.info(t -> "START init import with path: "+importPath, true);
 			final long start = System.currentTimeMillis();
+			final JsonObject deltaImport = config.getJsonObject("delta-import");
+			if (deltaImport != null && deltaImport.getString("path") != null) {
+				final String structureExternalId = message.body().getString("structureExternalId");
+				importer.setFingerprints(new ImportFingerprints(vertx, deltaImport,
+						feed.getFeederSource() + (structureExternalId != null ? "-" + structureExternalId : ""),
+						message.body().getBoolean("fullImport", false)));
+			}
 			importer.init(neo4j, vertx, feed.getFeederSource(), acceptLanguage, config.getBoolean("block-create-by-ine", false),
 					config.getBoolean("support-perseducnat-1d-2d", false),
 					config.getBoolean("check-exists-relationships", false),
@@ -852,12 +877,17 @@ public class Feeder extends BusModBase implements Handler<Message<JsonObject>> {
 					if (notReverseFilesOrder) {
 						report.setNotReverseFilesOrder(true);
 					}
+					report.setExternalIdsChecked(externalIdsChecked);
 					try {
 						Handler<Message<JsonObject>> handler = new Handler<Message<JsonObject>>() {
 							@Override
 							public void handle(Message<JsonObject> m) {
 								if (m != null && "ok".equals(m.body().getString("status"))) {
 									logger.info(t -> "SUCCEED to launch feeder | details: "+m.body().encode(), true);
+									if (importer.getFingerprints().isEnabled()) {
+										report.setFingerprints(importer.getFingerprints().getStats());
+										importer.getFingerprints().save();
+									}
 									if (executePostImport) {
 										postImport.execute(feed.getFeederSource(), new HashSet<String>(importer.getStructureImportedExternalId()));
 									}
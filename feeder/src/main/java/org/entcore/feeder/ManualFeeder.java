@@ -26,11 +26,13 @@ import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.json.Json;
+import org.entcore.common.appregistry.ApplicationUtils;
 import org.entcore.common.bus.MessageUtils;
 import org.entcore.common.events.EventStore;
 import org.entcore.common.events.EventStoreFactory;
 import org.entcore.common.neo4j.Neo4j;
 import org.entcore.common.neo4j.Neo4jQueryAndParams;
+import org.entcore.common.neo4j.Neo4jResultCache;
 import org.entcore.common.neo4j.Neo4jUtils;
 import org.entcore.common.neo4j.TransactionHelper;
 import org.entcore.common.schema.Source;
@@ -115,6 +117,11 @@ public class ManualFeeder extends BusModBase {
 				public void handle(Message<JsonObject> event) {
 					final JsonArray results = event.body().getJsonArray("results");
 					if ("ok".equals(event.body().getString("status")) && results != null && results.size() > 0) {
+						if (commit && results.getJsonArray(0).size() > 0) {
+							ApplicationUtils.publishStructuresUpdated(eb, new JsonArray().add(new JsonObject()
+									.put("id", results.getJsonArray(0).getJsonObject(0).getString("id"))
+									.put("externalId", struct.getString("externalId"))));
+						}
 						message.reply(event.body().put("result", results.getJsonArray(0)));
 					} else {
 						message.reply(event.body());
@@ -1124,7 +1131,13 @@ public class ManualFeeder extends BusModBase {
 			tx.setAutoSend(autoSend.booleanValue());
 			f.apply(tx);
 			if (commit.booleanValue()) {
-				tx.commit(h);
+				tx.commit(event -> {
+					if ("ok".equals(event.body().getString("status"))) {
+						// memberships and groups may have changed, the cached visibilities are stale
+						Neo4jResultCache.publishInvalidation(eb, Neo4jResultCache.TAG_GROUPS);
+					}
+					h.handle(event);
+				});
 			} else {
 				tx.flush(h);
 			}
@@ -39,13 +39,13 @@ public final class AAFHandler extends DefaultHandler {
 	private StringBuilder s;
 	private JsonObject currentStructure;
 	private final JsonObject mapping;
-	private final ImportProcessing processing;
+	private final RecordProcessing processing;
 	private final List<String> allowEmptyUpdate = Arrays.asList(
 			"ENTAuxEnsClassesPrincipal", "mobile", "ENTPersonMobileSMS", "ENTPersonAdresse",
 			"ENTPersonCodePostal", "ENTPersonVille", "ENTPersonPays", "ENTAuxEnsMEF", "ENTEleveMEF",
 			"ENTEleveLibelleMEF", "ENTEleveCodeEnseignements", "ENTEleveEnseignements");
 
-	public AAFHandler(ImportProcessing processing) {
+	public AAFHandler(RecordProcessing processing) {
 		this.processing = processing;
 		this.mapping = JsonUtil.loadFromResource(processing.getMappingResource());
 		this.s = new StringBuilder();
@@ -22,7 +22,11 @@ package org.entcore.feeder.aaf;
 import org.apache.commons.lang3.text.translate.*;
 import org.entcore.feeder.FeederLogger;
 import org.entcore.feeder.dictionary.structures.Importer;
+import org.entcore.feeder.utils.ResultMessage;
+import io.vertx.core.Context;
+import io.vertx.core.Future;
 import io.vertx.core.Handler;
+import io.vertx.core.Promise;
 import io.vertx.core.Vertx;
 import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonArray;
@@ -38,8 +42,16 @@ import org.xml.sax.helpers.XMLReaderFactory;
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.regex.Pattern;
 
@@ -59,12 +71,31 @@ public abstract class BaseImportProcessing implements ImportProcessing {
 					new LookupTranslator(EntityArrays.HTML40_EXTENDED_UNESCAPE()),
 					new NumericEntityUnescaper()
 			);
-	private static final int MAX_DEADLOCK_RETRIES = 1;
 	private static final Pattern DEADLOCK_PATTERN = Pattern.compile("(deadlock|EntityNotFound)", Pattern.CASE_INSENSITIVE);
+	protected static final String MAIN_TRANSACTION = "main";
+	private static final ExecutorService PARSER = Executors.newSingleThreadExecutor(r -> {
+		final Thread t = new Thread(r, "aaf-parser");
+		t.setDaemon(true);
+		return t;
+	});
+	private final int chunkSize;
+	private final int writePartitions;
 
 	protected BaseImportProcessing(String path, Vertx vertx) {
+		this(path, vertx, vertx.getOrCreateContext().config().getInteger("aaf-chunk-size", 5000),
+				vertx.getOrCreateContext().config().getInteger("aaf-write-partitions", 1));
+	}
+
+	/**
+	 * @param chunkSize Number of records handed over by the parser at once
+	 * @param writePartitions Number of transactions receiving the users concurrently, by structure (see
+	 * {@link #getPartitionStructure(JsonObject)})
+	 */
+	protected BaseImportProcessing(String path, Vertx vertx, int chunkSize, int writePartitions) {
 		this.path = path;
 		this.vertx = vertx;
+		this.chunkSize = Math.max(1, chunkSize);
+		this.writePartitions = writePartitions;
 		log = new FeederLogger(e-> getTag(), e-> "academy: "+ academyPrefix);
 	}
 
@@ -73,91 +104,342 @@ public abstract class BaseImportProcessing implements ImportProcessing {
 	}
 
 
+	/**
+	 * Imports the files of the directory in order. The files are parsed on a dedicated thread which hands the records
+	 * over by chunks of {@code chunkSize} : a chunk is validated and persisted while the next one is parsed, so at
+	 * most two chunks are in memory.
+	 */
 	protected void parse(final Handler<Message<JsonObject>> handler, final ImportProcessing importProcessing) {
 		log.info(e -> "START parsing directory : " + path);
 		initAcademyPrefix(path);
 		final List<String> files = vertx.fileSystem()
 				.readDirBlocking(path, getFileRegex());
-		final Handler[] handlers = new Handler[files.size() + 1];
-		handlers[handlers.length -1] = new Handler<Integer>() {
-			@Override
-			public void handle(Integer v) {
-				log.info(e -> "SUCCEED parsing directory : " + path);
+		Collections.sort(files);
+		final PipelineStats stats = new PipelineStats();
+		if (files.isEmpty()) {
+			log.info(e -> "SUCCEED parsing directory : " + path);
+			next(handler, importProcessing);
+			return;
+		}
+		final ChunkReader reader = new ChunkReader(files, stats, vertx.getOrCreateContext(), chunk -> {
+			if (chunk.error != null) {
+				log.error(t -> "FAILED parsing file : " + chunk.file, chunk.error);
+				error(chunk.error, handler);
+				return Future.failedFuture(chunk.error);
+			}
+			if (chunk.records == null) {
+				log.info(e -> "SUCCEED parsing directory : " + path + " - " + stats);
 				next(handler, importProcessing);
+				return Future.succeededFuture();
 			}
-		};
-		Collections.sort(files);
-		for (int i = files.size() - 1; i >= 0; i--) {
-			final int j = i;
-			handlers[i] = new Handler<Integer>() {
+			return persistChunk(chunk, stats).compose(message -> {
+				if (!"ok".equals(message.body().getString("status"))) {
+					error(message, handler);
+					return Future.failedFuture(message.body().getString("message", ""));
+				}
+				return Future.succeededFuture();
+			}, err -> {
+				final Exception e = err instanceof Exception ? (Exception) err : new Exception(err);
+				error(e, handler);
+				return Future.failedFuture(e);
+			});
+		});
+		PARSER.execute(reader);
+	}
+
+	/**
+	 * Validates and persists the records of a chunk. With several write partitions, the users of each partition are
+	 * written in their own transaction, committed concurrently once the main one is persisted. The records of the
+	 * partitions which failed on a deadlock are written again once, in the main transaction, before the next chunk.
+	 */
+	private Future<Message<JsonObject>> persistChunk(final Chunk chunk, final PipelineStats stats) {
+		if (chunk.first) {
+			loadedFile(chunk.file);
+		}
+		return persistRecords(chunk.file, chunk.records, writePartitions, stats).compose(failed -> {
+			if (failed.isEmpty()) {
+				log.info(e -> "SUCCEED persist successfully for file : " + chunk.file);
+				return Future.succeededFuture(okMessage());
+			}
+			log.error(e -> "FAILED persist for file : " + chunk.file + " - transactions : " + failed.keySet());
+			for (String msg : failed.values()) {
+				if (!DEADLOCK_PATTERN.matcher(msg).find()) {
+					return Future.succeededFuture(errorMessage(String.join(", ", failed.values())));
+				}
+			}
+			final List<JsonObject> retry = new ArrayList<>();
+			for (JsonObject object : chunk.records) {
+				final String key = partitionOf(object, writePartitions);
+				if (failed.containsKey(MAIN_TRANSACTION) || (key != null && failed.containsKey(key))) {
+					retry.add(object);
+				}
+			}
+			log.info(e -> "RETRY persist for file : " + chunk.file + " - " + retry.size() + " records");
+			return persistRecords(chunk.file, retry, 1, stats).map(retryFailed -> {
+				if (retryFailed.isEmpty()) {
+					log.info(e -> "SUCCEED persist successfully for file : " + chunk.file);
+					return okMessage();
+				}
+				log.error(e -> "FAILED persist retry for file : " + chunk.file);
+				return errorMessage(String.join(", ", retryFailed.values()));
+			});
+		});
+	}
+
+	private Future<Map<String, String>> persistRecords(final String file, final List<JsonObject> records,
+			final int partitions, final PipelineStats stats) {
+		try {
+			final long start = System.nanoTime();
+			for (JsonObject object : records) {
+				partition(partitionOf(object, partitions));
+				process(object);
+			}
+			partition(null);
+			stats.process(records.size(), System.nanoTime() - start);
+		} catch (Exception e) {
+			log.error(t -> "FAILED processing file : " + file, e);
+			partition(null);
+			return Future.failedFuture(e);
+		} catch (OutOfMemoryError err) { // badly catch Error to unlock importer
+			log.error(t -> "FAILED processing file (OOM) : " + file, err);
+			partition(null);
+			return Future.failedFuture(new Exception("OOM"));
+		}
+		log.info(e -> "START peristing file : " + file);
+		final long startPersist = System.nanoTime();
+		return persistTransactions().map(failed -> {
+			stats.persist(System.nanoTime() - startPersist);
+			return failed;
+		});
+	}
+
+	private String partitionOf(JsonObject object, int partitions) {
+		if (partitions < 2) {
+			return null;
+		}
+		final String structure = getPartitionStructure(object);
+		return structure != null ? Integer.toString(Math.floorMod(structure.hashCode(), partitions)) : null;
+	}
+
+	/**
+	 * @return the externalId of the structure whose write partition receives the statements of the record,
+	 * {@code null} to write them in the main transaction
+	 */
+	protected String getPartitionStructure(JsonObject object) {
+		return null;
+	}
+
+	protected void loadedFile(String file) {
+		importer.getReport().loadedFile(file);
+	}
+
+	protected void partition(String key) {
+		importer.partition(key);
+	}
+
+	/**
+	 * Persists the main transaction, then commits the partitions concurrently.
+	 * @return the error messages of the transactions which failed, by partition key ({@link #MAIN_TRANSACTION} for
+	 * the main one)
+	 */
+	protected Future<Map<String, String>> persistTransactions() {
+		final Promise<Message<JsonObject>> promise = Promise.promise();
+		importer.persist(promise::complete);
+		return promise.future().compose(message -> {
+			if (!"ok".equals(message.body().getString("status"))) {
+				importer.rollbackPartitions();
+				return Future.succeededFuture(Collections.singletonMap(MAIN_TRANSACTION,
+						message.body().getString("message", "")));
+			}
+			return importer.persistPartitions();
+		});
+	}
+
+	private static Message<JsonObject> okMessage() {
+		return new ResultMessage();
+	}
+
+	private static Message<JsonObject> errorMessage(String message) {
+		return new ResultMessage().error(message);
+	}
+
+	private static final class Chunk {
+		private final String file;
+		private final boolean first;
+		private final List<JsonObject> records;
+		private final Exception error;
+
+		private Chunk(String file, boolean first, List<JsonObject> records, Exception error) {
+			this.file = file;
+			this.first = first;
+			this.records = records;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * Parses the files in order and hands each chunk over to the context once the previous one is persisted. A chunk
+	 * without records ends the import, a chunk with an error ends it after a parsing failure.
+	 */
+	private final class ChunkReader implements Runnable, RecordProcessing {
+		private final List<String> files;
+		private final PipelineStats stats;
+		private final Context context;
+		private final Function<Chunk, Future<Void>> consumer;
+		private final Semaphore handOver = new Semaphore(1);
+		private volatile boolean cancelled = false;
+		private String file;
+		private boolean first;
+		private List<JsonObject> records;
+
+		private ChunkReader(List<String> files, PipelineStats stats, Context context,
+				Function<Chunk, Future<Void>> consumer) {
+			this.files = files;
+			this.stats = stats;
+			this.context = context;
+			this.consumer = consumer;
+		}
+
+		@Override
+		public void run() {
+			try {
+				for (String f : files) {
+					file = f;
+					first = true;
+					records = new ArrayList<>(chunkSize);
+					readRecords(f);
+					if (first || !records.isEmpty()) {
+						handOver(new Chunk(f, first, records, null));
+					}
+				}
+				handOver(new Chunk(file, false, null, null));
+			} catch (CancellationException e) {
+				log.info(t -> "STOP parsing directory : " + path);
+			} catch (Exception e) {
+				handOverError(e);
+			} catch (OutOfMemoryError err) { // badly catch Error to unlock importer
+				log.error(t -> "FAILED parsing file (OOM) : " + file, err);
+				handOverError(new Exception("OOM"));
+			}
+		}
+
+		private void handOverError(Exception e) {
+			try {
+				handOver(new Chunk(file, false, null, e));
+			} catch (CancellationException c) {
+				log.info(t -> "STOP parsing directory : " + path);
+			}
+		}
+
+		private void readRecords(final String f) throws Exception {
+			log.info(e -> "START parsing file : " + f, true);
+			final long start = System.nanoTime();
+			byte[] encoded = Files.readAllBytes(Paths.get(f));
+			String content = UNESCAPE_AAF.translate(new String(encoded, "UTF-8"));
+			InputSource in = new InputSource(new StringReader(content));
+			AAFHandler sh = new AAFHandler(this);
+			XMLReader xr = XMLReaderFactory.createXMLReader();
+			xr.setContentHandler(sh);
+			xr.setEntityResolver(new EntityResolver2() {
 				@Override
-				public void handle(Integer nbRetries) {
-					final String file = files.get(j);
-					try {
-						log.info(e -> "START parsing file : " + file, true);
-						importer.getReport().loadedFile(file);
-						byte[] encoded = Files.readAllBytes(Paths.get(file));
-						String content = UNESCAPE_AAF.translate(new String(encoded, "UTF-8"));
-						InputSource in = new InputSource(new StringReader(content));
-						AAFHandler sh = new AAFHandler(BaseImportProcessing.this);
-						XMLReader xr = XMLReaderFactory.createXMLReader();
-						xr.setContentHandler(sh);
-						xr.setEntityResolver(new EntityResolver2() {
-							@Override
-							public InputSource getExternalSubset(String name, String baseURI) throws SAXException, IOException {
-								return null;
-							}
-
-							@Override
-							public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId) throws SAXException, IOException {
-								return resolveEntity(publicId, systemId);
-							}
-
-							@Override
-							public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
-								if (systemId.equals("ficAlimMENESR.dtd")) {
-									Reader reader = new FileReader(path + File.separator + "ficAlimMENESR.dtd");
-									return new InputSource(reader);
-								} else {
-									return null;
-								}
-							}
-						});
-						xr.parse(in);
-						log.info(e -> "START peristing file : " + file);
-						importer.persist(new Handler<Message<JsonObject>>() {
-							@Override
-							public void handle(Message<JsonObject> message) {
-								if ("ok".equals(message.body().getString("status"))) {
-									log.info(e -> "SUCCEED persist successfully for file : " + file);
-									handlers[j + 1].handle(0);
-								} else {
-									log.error(e -> "FAILED persist for file : " + file);
-
-									String msg = message.body().getString("message", "");
-									if(nbRetries < MAX_DEADLOCK_RETRIES && DEADLOCK_PATTERN.matcher(msg).find() == true)
-									{
-										log.info(e -> "RETRY persist for file : " + file);
-										handlers[j].handle(nbRetries + 1);
-									}
-									else
-									{
-										error(message, handler);
-									}
-								}
-							}
-						});
-					} catch (Exception e) {
-						error(e, handler);
-						log.error(t -> "FAILED parsing file : " + file, e);
-					} catch (OutOfMemoryError err) { // badly catch Error to unlock importer
-						log.error(t -> "FAILED parsing file (OOM) : " + file, err);
-						error(new Exception("OOM"), handler);
+				public InputSource getExternalSubset(String name, String baseURI) throws SAXException, IOException {
+					return null;
+				}
+
+				@Override
+				public InputSource resolveEntity(String name, String publicId, String baseURI, String systemId) throws SAXException, IOException {
+					return resolveEntity(publicId, systemId);
+				}
+
+				@Override
+				public InputSource resolveEntity(String publicId, String systemId) throws SAXException, IOException {
+					if (systemId.equals("ficAlimMENESR.dtd")) {
+						Reader reader = new FileReader(path + File.separator + "ficAlimMENESR.dtd");
+						return new InputSource(reader);
+					} else {
+						return null;
 					}
 				}
-			};
+			});
+			xr.parse(in);
+			stats.parse(System.nanoTime() - start);
+		}
+
+		private void handOver(Chunk chunk) {
+			try {
+				handOver.acquire();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CancellationException();
+			}
+			if (cancelled) {
+				throw new CancellationException();
+			}
+			context.runOnContext(v -> consumer.apply(chunk).onComplete(ar -> {
+				if (ar.failed()) {
+					cancelled = true;
+				}
+				handOver.release();
+			}));
+		}
+
+		@Override
+		public String getMappingResource() {
+			return BaseImportProcessing.this.getMappingResource();
+		}
+
+		@Override
+		public void process(JsonObject object) {
+			records.add(object);
+			stats.parsed();
+			if (records.size() >= chunkSize) {
+				handOver(new Chunk(file, first, records, null));
+				first = false;
+				records = new ArrayList<>(chunkSize);
+			}
+		}
+
+		@Override
+		public String getAcademyPrefix() {
+			return BaseImportProcessing.this.getAcademyPrefix();
+		}
+	}
+
+	private static final class PipelineStats {
+		private final AtomicLong parsed = new AtomicLong();
+		private final AtomicLong parseTime = new AtomicLong();
+		private long processed;
+		private long processTime;
+		private long persistTime;
+
+		private void parsed() {
+			parsed.incrementAndGet();
+		}
+
+		private void parse(long time) {
+			parseTime.addAndGet(time);
+		}
+
+		private void process(int records, long time) {
+			processed += records;
+			processTime += time;
+		}
+
+		private void persist(long time) {
+			persistTime += time;
+		}
+
+		private static String throughput(long records, long time) {
+			return records + " records in " + TimeUnit.NANOSECONDS.toMillis(time) + " ms (" +
+					(time > 0 ? records * 1000000000L / time : records) + " records/s)";
+		}
+
+		@Override
+		public String toString() {
+			return "parse : " + throughput(parsed.get(), parseTime.get()) +
+					", validation and statements : " + throughput(processed, processTime) +
+					", persist : " + throughput(processed, persistTime);
 		}
-		handlers[0].handle(0);
 	}
 
 	protected void next(final Handler<Message<JsonObject>> handler, final ImportProcessing importProcessing) {
@@ -24,14 +24,8 @@ import io.vertx.core.eventbus.Message;
 import io.vertx.core.json.JsonObject;
 
 
-public interface ImportProcessing {
+public interface ImportProcessing extends RecordProcessing {
 
 	void start(Handler<Message<JsonObject>> handler);
 
-	String getMappingResource();
-
-	void process(JsonObject object);
-
-	String getAcademyPrefix();
-
 }
@@ -242,6 +242,12 @@ public class PersonnelImportProcessing extends BaseImportProcessing {
 		return ".*?PersEducNat_[0-9]{4}\\.xml";
 	}
 
+	@Override
+	protected String getPartitionStructure(JsonObject object) {
+		final JsonArray structures = object.getJsonArray("structures");
+		return structures != null && structures.size() > 0 ? structures.getString(0) : null;
+	}
+
 	protected ImportProcessing getNextImportProcessing() {
 		return new PersonnelImportProcessing2(path, vertx);
 	}
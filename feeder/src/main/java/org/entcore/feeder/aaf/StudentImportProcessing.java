@@ -131,4 +131,10 @@ public class StudentImportProcessing extends BaseImportProcessing {
 		return ".*?_Eleve_[0-9]{4}\\.xml";
 	}
 
+	@Override
+	protected String getPartitionStructure(JsonObject object) {
+		final JsonArray structures = object.getJsonArray("structures");
+		return structures != null && structures.size() > 0 ? structures.getString(0) : null;
+	}
+
 }
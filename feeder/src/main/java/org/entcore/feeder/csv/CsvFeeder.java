@@ -54,14 +54,24 @@ public class CsvFeeder implements Feed {
 
 	public static final Pattern frenchDatePatter = Pattern.compile("^([0-9]{2})/([0-9]{2})/([0-9]{4})$");
 	private static final Logger log = LoggerFactory.getLogger(CsvFeeder.class);
+	public static final int DEFAULT_CHUNK_SIZE = 1000;
 	private long defaultStudentSeed = 0l;
 	private ProfileColumnsMapper columnsMapper;
 	private final Vertx vertx;
+	private final int chunkSize;
 	private final Map<String, String> studentExternalIdMapping = new HashMap<>();
 	private Map<String, String> reverseRelativeExternalIds = new HashMap<>();
 
 	public CsvFeeder(Vertx vertx) {
+		this(vertx, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * @param chunkSize Number of lines parsed before the statements of a file are flushed to the transaction
+	 */
+	public CsvFeeder(Vertx vertx, int chunkSize) {
 		this.vertx = vertx;
+		this.chunkSize = chunkSize > 0 ? chunkSize : DEFAULT_CHUNK_SIZE;
 		this.columnsMapper = new ProfileColumnsMapper();
 	}
 
@@ -119,7 +129,11 @@ public class CsvFeeder implements Feed {
 					vertx.fileSystem().readDir(path, new Handler<AsyncResult<List<String>>>() {
 						@Override
 						public void handle(final AsyncResult<List<String>> event) {
-							if (event.succeeded()) {
+							if (event.succeeded() && importer.getReport() != null &&
+									importer.getReport().isExternalIdsChecked()) {
+								// the externalIds are already checked by the validation of the files, don't parse them twice
+								launchFiles(path, event.result(), s, importer, handler);
+							} else if (event.succeeded()) {
 								checkNotModifiableExternalId(event.result(), new Handler<Message<JsonObject>>() {
 									@Override
 									public void handle(Message<JsonObject> m) {
@@ -143,7 +157,17 @@ public class CsvFeeder implements Feed {
 	}
 
 	private void launchFiles(final String path, final List<String> files, final ImporterStructure structure,
-			final Importer importer, final Handler<Message<JsonObject>> handler) {
+			final Importer importer, final Handler<Message<JsonObject>> resultHandler) {
+		// the rows kept by the validation of the files are only read once
+		final Handler<Message<JsonObject>> handler = new Handler<Message<JsonObject>>() {
+			@Override
+			public void handle(Message<JsonObject> message) {
+				for (String file : files) {
+					CsvSpill.delete(file);
+				}
+				resultHandler.handle(message);
+			}
+		};
 		if (importer.getReport() != null && importer.getReport().isNotReverseFilesOrder()) { // pronote case
 			Collections.sort(files);
 		} else {
@@ -178,12 +202,11 @@ public class CsvFeeder implements Feed {
 							handlers[j + 1].handle(null);
 							return;
 						}
-						CSVUtil.getCharset(vertx, file, new Handler<String>(){
+						final Handler<String> charsetHandler = new Handler<String>(){
 
 							@Override
 							public void handle(String charset) {
-								start(profile, structure, file, charset, importer, handler);
-								importer.flush(new Handler<Message<JsonObject>>() {
+								start(profile, structure, file, charset, importer, handler, new Handler<Message<JsonObject>>() {
 									@Override
 									public void handle(Message<JsonObject> message) {
 										if ("ok".equals(message.body().getString("status"))) {
@@ -195,7 +218,13 @@ public class CsvFeeder implements Feed {
 									}
 								});
 							}
-						});
+						};
+						if (CsvSpill.exists(file)) {
+							// the spilled rows are already decoded
+							charsetHandler.handle(null);
+						} else {
+							CSVUtil.getCharset(vertx, file, charsetHandler);
+						}
 					} catch (Exception e) {
 						importer.getReport().addErrorWithParams("file.error", file);
 						handler.handle(null);
@@ -303,8 +332,16 @@ public class CsvFeeder implements Feed {
 		}
 	}
 
+	/**
+	 * Parses a file by chunks of {@code chunkSize} lines, the statements of each chunk are flushed before the next
+	 * one is parsed so that they are not all kept in memory and the event loop is released between the chunks.
+	 * The rows spilled by the validation of the file are read instead of the CSV when they are still valid.
+	 * @param charset Charset of the file, detected if null and the file has no valid spill
+	 * @param flushHandler Receives the result of the last flush of the file
+	 */
 	public void start(final String profile, final ImporterStructure structure, String file, String charset,
-			final Importer importer, final Handler<Message<JsonObject>> handler) {
+			final Importer importer, final Handler<Message<JsonObject>> handler,
+			final Handler<Message<JsonObject>> flushHandler) {
 		importer.getReport().addProfile(profile);
 		importer.createOrUpdateProfile(STUDENT_PROFILE);
 		importer.createOrUpdateProfile(RELATIVE_PROFILE);
@@ -319,22 +356,89 @@ public class CsvFeeder implements Feed {
 //			handler.handle(new ResultMessage().error("invalid.structure"));
 //			return;
 //		}
-		CSVReader csvParser = null;
+		final CsvSpill.Rows csvParser;
+		try {
+			csvParser = CsvSpill.open(file, charset, 0);
+		} catch (Exception e) {
+			handler.handle(new ResultMessage().error("csv.exception"));
+			log.error("csv.exception", e);
+			importer.flush(flushHandler);
+			return;
+		}
+		parseChunk(new CsvFileParsing(profile, structure, validator, csvParser), importer, handler, flushHandler);
+	}
+
+	private static final class CsvFileParsing {
+		private final String profile;
+		private final ImporterStructure structure;
+		private final Validator validator;
+		private final CsvSpill.Rows csvParser;
+		private final List<String> columns = new ArrayList<>();
+		private int line = 0;
+
+		private CsvFileParsing(String profile, ImporterStructure structure, Validator validator, CsvSpill.Rows csvParser) {
+			this.profile = profile;
+			this.structure = structure;
+			this.validator = validator;
+			this.csvParser = csvParser;
+		}
+
+		private void close() {
+			try {
+				csvParser.close();
+			} catch (Exception e) {
+				log.error("Could not close parser", e);
+			}
+		}
+	}
+
+	private void parseChunk(final CsvFileParsing parsing, final Importer importer,
+			final Handler<Message<JsonObject>> handler, final Handler<Message<JsonObject>> flushHandler) {
+		final boolean end = parseLines(parsing, importer, handler);
+		if (end) {
+			parsing.close();
+		}
+		try {
+			importer.flush(new Handler<Message<JsonObject>>() {
+				@Override
+				public void handle(Message<JsonObject> message) {
+					if (!end && "ok".equals(message.body().getString("status"))) {
+						parseChunk(parsing, importer, handler, flushHandler);
+					} else {
+						if (!end) {
+							parsing.close();
+						}
+						flushHandler.handle(message);
+					}
+				}
+			});
+		} catch (IllegalStateException e) {
+			log.error("Error flushing file of profile " + parsing.profile, e);
+			if (!end) {
+				parsing.close();
+			}
+			flushHandler.handle(new ResultMessage().error(e.getMessage()));
+		}
+	}
+
+	/**
+	 * @return true when the file is entirely parsed, false when the chunk is full
+	 */
+	private boolean parseLines(final CsvFileParsing parsing, final Importer importer,
+			final Handler<Message<JsonObject>> handler) {
+		final String profile = parsing.profile;
+		final ImporterStructure structure = parsing.structure;
+		final Validator validator = parsing.validator;
+		final List<String> columns = parsing.columns;
+		int nbColumns = columns.size();
+		int i = parsing.line;
 		try {
-			csvParser = getCsvReader(file, charset);
-			final List<String> columns = new ArrayList<>();
-			int nbColumns = 0;
 			String[] strings;
-			int i = 0;
-			csvParserWhile : while ((strings = csvParser.readNext()) != null) {
+			csvParserWhile : while ((strings = parsing.csvParser.readNext()) != null) {
 				if (i == 0) {
 					columnsMapper.getColumsNames(profile, strings, columns, handler);
 					nbColumns = columns.size();
-				} else if (!columns.isEmpty()) {
-					if (emptyLine(strings)) {
-						i++;
-						continue;
-					}
+				} else if (!columns.isEmpty() && !emptyLine(strings)) {
 					if (strings.length > nbColumns) {
 						strings = Arrays.asList(strings).subList(0, nbColumns).toArray(new String[nbColumns]);
 					}
@@ -588,7 +692,7 @@ public class CsvFeeder implements Feed {
 										relativeStudentMapping(linkStudents, mapping);
 									} else {
 										handler.handle(new ResultMessage().error("invalid.child.mapping"));
-										return;
+										return true;
 									}
 								} else if ("childLastName".equals(attr) && !user.fieldNames().contains("childUsername")) {
 									Object childLastName = user.getValue(attr);
@@ -628,7 +732,7 @@ public class CsvFeeder implements Feed {
 											relativeStudentMapping(linkStudents, mapping);
 									} else {
 										handler.handle(new ResultMessage().error("invalid.child.mapping"));
-										return;
+										return true;
 									}
 								}
 							}
@@ -640,6 +744,10 @@ public class CsvFeeder implements Feed {
 					}
 				}
 				i++;
+				if (i % chunkSize == 0) {
+					parsing.line = i;
+					return false;
+				}
 			}
 
 			switch (profile) {
@@ -660,15 +768,8 @@ public class CsvFeeder implements Feed {
 		} catch (Exception e) {
 			handler.handle(new ResultMessage().error("csv.exception"));
 			log.error("csv.exception", e);
-		} finally {
-			if(csvParser!=null) {
-				try {
-					csvParser.close();
-				} catch (Exception e) {
-					log.error("Could not close parser", e);
-				}
-			}
 		}
+		return true;
 //		importer.markMissingUsers(structure.getExternalId(), new Handler<Void>() {
 //			@Override
 //			public void handle(Void event) {
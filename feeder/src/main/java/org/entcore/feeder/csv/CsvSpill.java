@@ -0,0 +1,234 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ */
+
+package org.entcore.feeder.csv;
+
+import com.opencsv.CSVReader;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.feeder.utils.CSVUtil;
+import org.entcore.feeder.utils.Hash;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Rows of a CSV file tokenized by its validation, written in a compact binary form (length prefixed UTF-8 values)
+ * so that the validation and the feed of the file read them again without parsing the CSV. A spill is only read
+ * while the size and the modification date of its file are unchanged, otherwise the CSV is parsed.
+ */
+final class CsvSpill {
+
+	private static final Logger log = LoggerFactory.getLogger(CsvSpill.class);
+	private static final int VERSION = 1;
+	private static final int END = -1;
+	private static final Path DIRECTORY = Paths.get(System.getProperty("java.io.tmpdir"), "feeder-csv-spill");
+
+	private CsvSpill() {}
+
+	interface Rows extends Closeable {
+
+		/**
+		 * @return the values of the next row, null at the end of the file
+		 */
+		String[] readNext() throws IOException;
+
+	}
+
+	static final class Writer {
+		private final Path tmp;
+		private final Path path;
+		private final DataOutputStream out;
+		private boolean done = false;
+
+		private Writer(Path tmp, Path path, DataOutputStream out) {
+			this.tmp = tmp;
+			this.path = path;
+			this.out = out;
+		}
+
+		void write(String[] row) throws IOException {
+			out.writeInt(row.length);
+			for (String value : row) {
+				final byte[] b = (value != null ? value : "").getBytes(StandardCharsets.UTF_8);
+				out.writeInt(b.length);
+				out.write(b);
+			}
+		}
+
+		/**
+		 * Makes the spill readable once all the rows are written.
+		 */
+		void commit() throws IOException {
+			out.writeInt(END);
+			out.close();
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			done = true;
+		}
+
+		/**
+		 * Drops an uncommitted spill, does nothing once the spill is committed.
+		 */
+		void abort() {
+			if (done) {
+				return;
+			}
+			done = true;
+			try {
+				out.close();
+				Files.deleteIfExists(tmp);
+			} catch (IOException e) {
+				log.error("Error deleting CSV spill " + tmp, e);
+			}
+		}
+	}
+
+	private static Path path(String file) throws IOException {
+		try {
+			return DIRECTORY.resolve(Hash.sha1(new File(file).getAbsolutePath().getBytes(StandardCharsets.UTF_8)) + ".rows");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * @return a writer of the spill of the file, null if it can't be created : the CSV is parsed again
+	 */
+	static Writer create(String file) {
+		try {
+			final File csv = new File(file);
+			final Path path = path(file);
+			Files.createDirectories(DIRECTORY);
+			final Path tmp = Files.createTempFile(DIRECTORY, path.getFileName().toString(), ".tmp");
+			final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)));
+			out.writeInt(VERSION);
+			out.writeLong(csv.length());
+			out.writeLong(csv.lastModified());
+			return new Writer(tmp, path, out);
+		} catch (IOException e) {
+			log.error("Error creating CSV spill of " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * @param charset Charset of the CSV file, detected again if null, only used when the file has no valid spill
+	 * @param skipLines Number of rows skipped at the beginning of the file
+	 * @return the rows of the spill of the file if it is still valid, the rows parsed from the CSV file otherwise
+	 */
+	static Rows open(String file, String charset, int skipLines) throws IOException {
+		Rows rows = openSpill(file);
+		if (rows == null) {
+			return rows(CSVUtil.getCsvReader(file, charset != null ? charset : CSVUtil.getCharsetSync(file), skipLines));
+		}
+		for (int i = 0; i < skipLines; i++) {
+			rows.readNext();
+		}
+		return rows;
+	}
+
+	/**
+	 * @return true if the file has a spill written after its last modification
+	 */
+	static boolean exists(String file) {
+		try {
+			final Rows rows = openSpill(file);
+			if (rows != null) {
+				rows.close();
+				return true;
+			}
+		} catch (IOException e) {
+			log.error("Error reading CSV spill of " + file, e);
+		}
+		return false;
+	}
+
+	static void delete(String file) {
+		try {
+			Files.deleteIfExists(path(file));
+		} catch (IOException e) {
+			log.error("Error deleting CSV spill of " + file, e);
+		}
+	}
+
+	private static Rows openSpill(String file) throws IOException {
+		final Path path = path(file);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		final File csv = new File(file);
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)));
+		try {
+			if (in.readInt() != VERSION || in.readLong() != csv.length() || in.readLong() != csv.lastModified()) {
+				in.close();
+				return null;
+			}
+		} catch (IOException e) {
+			in.close();
+			log.error("Invalid CSV spill of " + file, e);
+			return null;
+		}
+		return new Rows() {
+			private boolean end = false;
+
+			@Override
+			public String[] readNext() throws IOException {
+				if (end) {
+					return null;
+				}
+				final int length = in.readInt();
+				if (length == END) {
+					end = true;
+					return null;
+				}
+				final String[] row = new String[length];
+				for (int i = 0; i < length; i++) {
+					final byte[] b = new byte[in.readInt()];
+					in.readFully(b);
+					row[i] = new String(b, StandardCharsets.UTF_8);
+				}
+				return row;
+			}
+
+			@Override
+			public void close() throws IOException {
+				in.close();
+			}
+		};
+	}
+
+	static Rows rows(final CSVReader reader) {
+		return new Rows() {
+			@Override
+			public String[] readNext() throws IOException {
+				return reader.readNext();
+			}
+
+			@Override
+			public void close() throws IOException {
+				reader.close();
+			}
+		};
+	}
+
+}
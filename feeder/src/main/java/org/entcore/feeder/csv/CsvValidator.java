@@ -65,6 +65,8 @@ public class CsvValidator extends CsvReport implements ImportValidator {
 	public static final Map<String, Validator> profiles;
 	private final Map<String, String> studentExternalIdMapping = new HashMap<>();
 	private final long defaultStudentSeed;
+	private boolean spillRows = false;
+	private final List<String> spilledFiles = new ArrayList<>();
 
 	static {
 		Map<String, Validator> p = new HashMap<>();
@@ -433,12 +435,19 @@ public class CsvValidator extends CsvReport implements ImportValidator {
 		final AtomicInteger filterExternalId = new AtomicInteger(-1);
 		final Map<String, Integer> externalIds = new HashMap<String,Integer>();
 		CSVReader csvParser = null;
+		CsvSpill.Writer spill = null;
 		try {
 			csvParser = getCsvReader(path, charset);
+			if (spillRows) {
+				spill = CsvSpill.create(path);
+			}
 
 			String[] strings;
 			int i = 0;
 			while ((strings = csvParser.readNext()) != null) {
+				if (spill != null) {
+					spill.write(strings);
+				}
 				if (i == 0) {
 					List<String> stringsHeader = new ArrayList<>(Arrays.asList(strings));
 					if (stringsHeader.contains("R1_NOM")) {
@@ -481,12 +490,19 @@ public class CsvValidator extends CsvReport implements ImportValidator {
 				}
 				i++;
 			}
+			if (spill != null) {
+				spill.commit();
+				spilledFiles.add(path);
+			}
 		} catch (Exception e) {
 			addError(profile, "csv.exception");
 			log.error("csv.exception", e);
 			handler.handle(result);
 			return;
 		} finally {
+			if (spill != null) {
+				spill.abort();
+			}
 			if(csvParser!=null) {
 				try {
 					csvParser.close();
@@ -641,10 +657,11 @@ public class CsvValidator extends CsvReport implements ImportValidator {
 				}
 				final JsonObject checkChildExists = new JsonObject();
 //				setStructureExternalIdIfAbsent(structure.getExternalId());
-				CSVReader csvParser = null;
+				CsvSpill.Rows csvParser = null;
 				try {
 					final JsonObject classMapping = getClassesMapping(profile);
-					csvParser = getCsvReader(path, charset, 1);
+					// the rows spilled by checkFile are read instead of parsing the file again
+					csvParser = CsvSpill.open(path, charset, 1);
 					final int nbColumns = columns.size();
 					String[] strings;
 					int i = 1;
@@ -1110,4 +1127,22 @@ public class CsvValidator extends CsvReport implements ImportValidator {
 		return columnsMapper;
 	}
 
+	/**
+	 * @param spillRows true to keep the rows of the files parsed by the validation for the import which follows it,
+	 *                  see {@link CsvSpill}
+	 */
+	public void setSpillRows(boolean spillRows) {
+		this.spillRows = spillRows;
+	}
+
+	/**
+	 * Deletes the rows kept for an import which won't be done.
+	 */
+	public void deleteSpills() {
+		for (String file : spilledFiles) {
+			CsvSpill.delete(file);
+		}
+		spilledFiles.clear();
+	}
+
 }
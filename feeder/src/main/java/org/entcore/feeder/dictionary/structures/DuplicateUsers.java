@@ -24,6 +24,7 @@ import io.vertx.core.AsyncResult;
 
 import io.vertx.core.Future;
 import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
 import org.apache.commons.lang3.StringUtils;
 import org.entcore.common.events.EventStore;
 import org.entcore.common.events.EventStoreFactory;
@@ -97,11 +98,12 @@ public class DuplicateUsers {
 					"WHERE NOT(HAS(u1.IDPN)) AND NOT(IDPN IS NULL) " +
 					"SET u1.IDPN = IDPN " +
 					"RETURN DISTINCT oldId, u1.id as id, HEAD(u1.profiles) as profile ";
-	private static final List<String> notDeduplicateSource = Arrays.asList("AAF", "AAF1D");
+	static final List<String> notDeduplicateSource = Arrays.asList("AAF", "AAF1D");
 	private final Map<String, Integer> sourcePriority = new HashMap<>();
 	private final boolean updateCourses;
 	private final boolean autoMergeOnlyInSameStructure;
 	private final EventBus eb;
+	private boolean blockingDetection = true;
 	private EventStore eventStore = EventStoreFactory.getFactory().getEventStore(Feeder.class.getSimpleName());
 	public static final JsonArray defaultSourcesOrder = new JsonArray()
 			.add("AAF").add("AAF1D").add("CSV").add("EDT").add("UDT").add("SSO").add("MANUAL");
@@ -172,7 +174,11 @@ public class DuplicateUsers {
 						handlers[i] = new Handler<Void>() {
 							@Override
 							public void handle(Void v) {
-								searchDuplicatesByProfile(last, profiles[j], handlers[j + 1]);
+								if (blockingDetection) {
+									detectDuplicatesByProfile(last, profiles[j], handlers[j + 1]);
+								} else {
+									searchDuplicatesByProfile(last, profiles[j], handlers[j + 1]);
+								}
 							}
 						};
 					}
@@ -735,6 +741,10 @@ public class DuplicateUsers {
 		TransactionManager.getNeo4jHelper().execute(query, params, handler);
 	}
 
+	public void setBlockingDetection(boolean blockingDetection) {
+		this.blockingDetection = blockingDetection;
+	}
+
 	private int prioritySource(String source) {
 		Integer priority = sourcePriority.get(source);
 		return (priority != null) ? priority : 0;
@@ -764,6 +774,119 @@ public class DuplicateUsers {
 		});
 	}
 
+	private static final String DUPLICATES_CANDIDATES_RETURN =
+			"RETURN u.id as id, u.firstName as firstName, u.lastName as lastName, " +
+			"u.birthDate as birthDate, u.email as email, u.source as source, u.disappearanceDate as disappearanceDate, " +
+			"u.lastNameSearchField as lastNameSearchField, u.firstNameSearchField as firstNameSearchField, " +
+			"coalesce(u.modified > {lastSearchDuplicate}, false) as modified";
+	// a duplicate pair has two equal attributes among last name, first name, birth date and email,
+	// so the other user shares the last name, the first name or the birth date of the modified one
+	private static final String[] DUPLICATES_BLOCKING_FIELDS = {"lastNameSearchField", "firstNameSearchField", "birthDate"};
+	private static final int DUPLICATES_CANDIDATES_CHUNK = 1000;
+
+	private void detectDuplicatesByProfile(String last, final String profile, final Handler<Void> handler) {
+		final DuplicatesDetector detector = new DuplicatesDetector();
+		final Set<String> loaded = new HashSet<>();
+		final String query =
+				"MATCH (u:User) WHERE u.modified > {lastSearchDuplicate} AND HEAD(u.profiles) = {profile} " +
+				"AND NOT(HAS(u.deleteDate)) " + DUPLICATES_CANDIDATES_RETURN;
+		final JsonObject params = new JsonObject().put("profile", profile).put("lastSearchDuplicate", last);
+		loadDuplicatesCandidates(query, params, detector, loaded).compose(modified -> {
+			if (modified.isEmpty()) {
+				return Future.succeededFuture();
+			}
+			Future<Void> f = Future.succeededFuture();
+			for (String field : DUPLICATES_BLOCKING_FIELDS) {
+				final List<String> values = modified.stream().map(u -> u.getString(field))
+						.filter(v -> v != null && !v.isEmpty()).distinct().collect(Collectors.toList());
+				for (int i = 0; i < values.size(); i += DUPLICATES_CANDIDATES_CHUNK) {
+					final JsonArray chunk = new JsonArray(values.subList(i, Math.min(values.size(), i + DUPLICATES_CANDIDATES_CHUNK)));
+					final String q =
+							"MATCH (u:User) WHERE u." + field + " IN {values} AND HEAD(u.profiles) = {profile} " +
+							"AND NOT(HAS(u.deleteDate)) " + DUPLICATES_CANDIDATES_RETURN;
+					f = f.compose(v -> loadDuplicatesCandidates(q, params.copy().put("values", chunk), detector, loaded)
+							.mapEmpty());
+				}
+			}
+			return f;
+		}).onComplete(ar -> {
+			if (ar.failed()) {
+				log.error("Error loading users for search duplicates : " + ar.cause().getMessage());
+				handler.handle(null);
+				return;
+			}
+			if (detector.size() == 0) {
+				log.info("No users findings for search duplicates");
+				handler.handle(null);
+				return;
+			}
+			final long start = System.currentTimeMillis();
+			Vertx.currentContext().owner().<List<JsonObject>>executeBlocking(p -> p.complete(detector.detect()), false, res -> {
+				if (res.failed()) {
+					log.error("Error detecting duplicates in profile " + profile, res.cause());
+					handler.handle(null);
+					return;
+				}
+				log.info("Detect " + res.result().size() + " duplicates among " + detector.size() + " users of profile " +
+						profile + " - elapsed time " + (System.currentTimeMillis() - start) + " ms.");
+				storeDuplicates(profile, res.result(), handler);
+			});
+		});
+	}
+
+	private Future<List<JsonObject>> loadDuplicatesCandidates(String query, JsonObject params, DuplicatesDetector detector,
+			Set<String> loaded) {
+		final Promise<List<JsonObject>> promise = Promise.promise();
+		TransactionManager.getNeo4jHelper().execute(query, params, event -> {
+			final JsonArray res = event.body().getJsonArray("result");
+			if ("ok".equals(event.body().getString("status")) && res != null) {
+				final List<JsonObject> users = new ArrayList<>();
+				for (Object o : res) {
+					if (!(o instanceof JsonObject) || !loaded.add(((JsonObject) o).getString("id"))) continue;
+					detector.add((JsonObject) o);
+					users.add((JsonObject) o);
+				}
+				promise.complete(users);
+			} else {
+				promise.fail(event.body().getString("message"));
+			}
+		});
+		return promise.future();
+	}
+
+	private void storeDuplicates(final String profile, final List<JsonObject> duplicates, final Handler<Void> handler) {
+		if (duplicates.isEmpty()) {
+			log.info("No duplicate user with score > 3 found in profile " + profile);
+			handler.handle(null);
+			return;
+		}
+		final String query =
+				"MATCH (u:User {id : row.sId}), (d:User {id : row.dId}) " +
+				"WHERE NOT(row.dId IN coalesce(u.ignoreDuplicates, [])) AND NOT(row.sId IN coalesce(d.ignoreDuplicates, [])) " +
+				"AND (has(u.activationCode) OR has(d.activationCode)) " +
+				"MERGE u-[:DUPLICATE {score:row.score}]-d ";
+		final TransactionHelper tx;
+		try {
+			tx = TransactionManager.getTransaction();
+			tx.setAutoSend(false);
+		} catch (TransactionException e) {
+			log.error("Error when score duplicate users.", e);
+			handler.handle(null);
+			return;
+		}
+		for (JsonObject duplicate : duplicates) {
+			tx.addBatch(query, duplicate.getString("sId"), duplicate);
+		}
+		tx.commit(event -> {
+			if ("ok".equals(event.body().getString("status"))) {
+				log.info("Mark duplicates " + profile + " finished.");
+			} else {
+				log.error("Error marking duplicates : " + event.body().getString("message"));
+			}
+			handler.handle(null);
+		});
+	}
+
 	private void scoreDuplicates(final String profile, final JsonArray search, final Handler<Void> handler) {
 		final String query =
 				"START u=node:node_auto_index({luceneQuery}) " +
@@ -0,0 +1,227 @@
+/* Copyright © "Open Digital Education", 2014
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ *
+ */
+
+package org.entcore.feeder.dictionary.structures;
+
+import io.vertx.core.json.JsonObject;
+import org.entcore.feeder.utils.Validator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Finds the duplicate users of a profile in memory, without a fuzzy index query per modified user.
+ * <p>
+ *     A pair of users is scored 2 + the number of equal attributes among lastName, firstName, birthDate and email
+ *     (without accents, spaces and case) and is a duplicate with a score greater than 3, so the users of a duplicate
+ *     pair share at least one couple of equal attributes. The users are grouped by these couples (the blocking keys)
+ *     and only the pairs of a same group with at least one modified user are scored, in parallel.
+ *     As with the index query, a word of the first name and a word of the last name of the modified user must be
+ *     close (at most 2 edits, 40% of the word) to the names of the other user.
+ * </p>
+ */
+public class DuplicatesDetector {
+
+	private static final String[][] BLOCKING_KEYS = {
+			{"lastName", "firstName"}, {"lastName", "birthDate"}, {"lastName", "email"},
+			{"firstName", "birthDate"}, {"firstName", "email"}, {"birthDate", "email"}
+	};
+	private final List<Candidate> users = new ArrayList<>();
+
+	static final class Candidate {
+		private final String id;
+		private final Map<String, String> attributes = new HashMap<>();
+		private final List<String> lastNameWords;
+		private final List<String> firstNameWords;
+		private final String source;
+		private final boolean disappearing;
+		private final boolean modified;
+
+		Candidate(JsonObject user) {
+			this.id = user.getString("id");
+			for (String[] key : BLOCKING_KEYS) {
+				for (String attr : key) {
+					attributes.put(attr, cleanAttribute(user.getString(attr)));
+				}
+			}
+			this.lastNameWords = words(user.getString("lastName"));
+			this.firstNameWords = words(user.getString("firstName"));
+			this.source = user.getString("source");
+			this.disappearing = user.getValue("disappearanceDate") != null;
+			this.modified = Boolean.TRUE.equals(user.getBoolean("modified"));
+		}
+
+		private List<String> keys() {
+			final List<String> keys = new ArrayList<>(BLOCKING_KEYS.length);
+			for (int i = 0; i < BLOCKING_KEYS.length; i++) {
+				final String v0 = attributes.get(BLOCKING_KEYS[i][0]);
+				final String v1 = attributes.get(BLOCKING_KEYS[i][1]);
+				if (v0 != null && v1 != null) {
+					keys.add(i + "|" + v0 + "|" + v1);
+				}
+			}
+			return keys;
+		}
+	}
+
+	/**
+	 * @param user id, firstName, lastName, birthDate, email, source, disappearanceDate of the user and
+	 *             modified, true if the user is modified since the last search
+	 */
+	public void add(JsonObject user) {
+		if (user != null && user.getString("id") != null) {
+			users.add(new Candidate(user));
+		}
+	}
+
+	public int size() {
+		return users.size();
+	}
+
+	/**
+	 * @return a row (sId, dId, score) by duplicate pair, sId being a modified user
+	 */
+	public List<JsonObject> detect() {
+		final Map<String, List<Candidate>> blocks = new HashMap<>();
+		for (Candidate c : users) {
+			if (c.modified) {
+				for (String key : c.keys()) {
+					blocks.computeIfAbsent(key, k -> new ArrayList<>()).add(c);
+				}
+			}
+		}
+		for (Candidate c : users) {
+			if (!c.modified) {
+				for (String key : c.keys()) {
+					final List<Candidate> block = blocks.get(key);
+					if (block != null) {
+						block.add(c);
+					}
+				}
+			}
+		}
+		final Set<String> pairs = ConcurrentHashMap.newKeySet();
+		return blocks.values().parallelStream().filter(b -> b.size() > 1).flatMap(block -> {
+			final List<JsonObject> rows = new ArrayList<>();
+			for (int i = 0; i < block.size(); i++) {
+				final Candidate c0 = block.get(i);
+				if (!c0.modified) {
+					break; // the modified users are at the beginning of the block
+				}
+				for (int j = i + 1; j < block.size(); j++) {
+					final Candidate c1 = block.get(j);
+					final int score = score(c0, c1);
+					if (score > 3 && (isDuplicate(c0, c1) || (c1.modified && isDuplicate(c1, c0))) &&
+							pairs.add(c0.id.compareTo(c1.id) < 0 ? c0.id + "|" + c1.id : c1.id + "|" + c0.id)) {
+						rows.add(new JsonObject().put("sId", c0.id).put("dId", c1.id).put("score", score));
+					}
+				}
+			}
+			return rows.stream();
+		}).collect(Collectors.toList());
+	}
+
+	static int score(Candidate c0, Candidate c1) {
+		int score = 2;
+		score += exactMatch(c0.attributes.get("lastName"), c1.attributes.get("lastName"));
+		score += exactMatch(c0.attributes.get("firstName"), c1.attributes.get("firstName"));
+		score += exactMatch(c0.attributes.get("birthDate"), c1.attributes.get("birthDate"));
+		score += exactMatch(c0.attributes.get("email"), c1.attributes.get("email"));
+		return score;
+	}
+
+	static boolean isDuplicate(Candidate searched, Candidate found) {
+		if (searched.source == null || !closeWords(searched.lastNameWords, found.lastNameWords) ||
+				!closeWords(searched.firstNameWords, found.firstNameWords)) {
+			return false;
+		}
+		final boolean isSameSource = searched.source.equals(found.source);
+		final boolean compatibleSources = DuplicateUsers.notDeduplicateSource.contains(searched.source) ^
+				DuplicateUsers.notDeduplicateSource.contains(found.source);
+		return searched.disappearing || found.disappearing || (!isSameSource && compatibleSources);
+	}
+
+	private static int exactMatch(String attribute0, String attribute1) {
+		return (attribute0 == null || attribute1 == null || !attribute0.equals(attribute1)) ? 0 : 1;
+	}
+
+	private static String cleanAttribute(String attribute) {
+		if (attribute == null || attribute.trim().isEmpty()) {
+			return null;
+		}
+		return Validator.removeAccents(attribute).replaceAll("\\s+", "").toLowerCase();
+	}
+
+	private static List<String> words(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return Collections.emptyList();
+		}
+		final String[] values = Validator.removeAccents(value).toLowerCase().split("\\s+");
+		final List<String> words = new ArrayList<>(values.length);
+		for (String v : values) {
+			v = v.replaceFirst("^-+", "").replaceAll("\\W+", "");
+			if (v.isEmpty() || (v.length() < 4 && values.length > 1)) continue;
+			words.add(v);
+		}
+		return words;
+	}
+
+	private static boolean closeWords(List<String> searched, List<String> found) {
+		for (String s : searched) {
+			final int maxEdits = Math.min(2, (int) (s.length() * 0.4));
+			for (String f : found) {
+				if (Math.abs(s.length() - f.length()) <= maxEdits && editDistance(s, f, maxEdits) <= maxEdits) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static int editDistance(String s0, String s1, int max) {
+		int[] previous = new int[s1.length() + 1];
+		int[] current = new int[s1.length() + 1];
+		for (int j = 0; j <= s1.length(); j++) {
+			previous[j] = j;
+		}
+		for (int i = 1; i <= s0.length(); i++) {
+			current[0] = i;
+			int min = current[0];
+			for (int j = 1; j <= s1.length(); j++) {
+				final int cost = s0.charAt(i - 1) == s1.charAt(j - 1) ? 0 : 1;
+				current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				min = Math.min(min, current[j]);
+			}
+			if (min > max) {
+				return min;
+			}
+			final int[] tmp = previous;
+			previous = current;
+			current = tmp;
+		}
+		return previous[s1.length()];
+	}
+
+}
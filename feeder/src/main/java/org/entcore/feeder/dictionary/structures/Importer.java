@@ -64,6 +64,8 @@ public class Importer {
 	private Set<String> userImportedExternalId = new HashSet<>();
 	private Set<String> structuresImportedExternalId = new HashSet<>();
 	private TransactionHelper transactionHelper;
+	private TransactionHelper mainTransaction;
+	private final Map<String, TransactionHelper> partitions = new LinkedHashMap<>();
 	private final Validator structureValidator;
 	private final Validator profileValidator;
 	private final Validator studyValidator;
@@ -85,6 +87,7 @@ public class Importer {
 	private Set<String> blockedIne;
 	private Report report;
 	private JsonArray importsPrefixList;
+	private ImportFingerprints fingerprints = ImportFingerprints.DISABLED;
 
 	private enum CheckRelationshipsTypes { STRUCTURES, CLASSES, FOS, GROUPS, MODULES }
 
@@ -123,6 +126,7 @@ public class Importer {
 				externalIdMapping = GraphData.getExternalIdMapping();
 				profiles = GraphData.getProfiles();
 				persEducNat = new PersEducNat(transactionHelper, externalIdMapping, userImportedExternalId, report, currentSource);
+				persEducNat.setFingerprints(fingerprints);
 
 				Handler<Void> handlerCaller = new Handler<Void>()
 				{
@@ -148,6 +152,7 @@ public class Importer {
 
 				if ("ok".equals(event.body().getString("status"))) {
 					final List<Future> futures = new ArrayList<>();
+					futures.add(fingerprints.load());
 					if ("CSV".equals(source)) {
 						futures.add(loadFieldOfStudy());
 					}
@@ -301,7 +306,68 @@ public class Importer {
 	}
 
 	public TransactionHelper getTransaction() {
-		return transactionHelper;
+		return mainTransaction != null ? mainTransaction : transactionHelper;
+	}
+
+	/**
+	 * Sends the statements of the next users to the transaction of a partition, committed by
+	 * {@link #persistPartitions()} concurrently with the other partitions. The structures, classes, groups and profiles
+	 * are still written in the main transaction ({@link #getTransaction()}), persisted before the partitions.
+	 * @param key Key of the partition, {@code null} to go back to the main transaction
+	 */
+	public void partition(String key) {
+		if (key == null) {
+			if (mainTransaction != null) {
+				transactionHelper = mainTransaction;
+				mainTransaction = null;
+			}
+		} else {
+			if (mainTransaction == null) {
+				mainTransaction = transactionHelper;
+			}
+			transactionHelper = partitions.computeIfAbsent(key, k -> new TransactionHelper(neo4j, this.source, 1000));
+		}
+		if (persEducNat != null) {
+			persEducNat.setTransactionHelper(transactionHelper);
+		}
+	}
+
+	/**
+	 * Commits the transactions of the partitions concurrently, once the main transaction is persisted.
+	 * @return the error messages of the partitions which failed, by key
+	 */
+	public Future<Map<String, String>> persistPartitions() {
+		partition(null);
+		final Map<String, String> failed = new ConcurrentHashMap<>();
+		final List<Future> futures = new ArrayList<>(partitions.size());
+		for (Map.Entry<String, TransactionHelper> e : partitions.entrySet()) {
+			final Promise<Void> promise = Promise.promise();
+			futures.add(promise.future());
+			try {
+				e.getValue().commit(message -> {
+					if (message != null && !"ok".equals(message.body().getString("status"))) {
+						failed.put(e.getKey(), message.body().getString("message", ""));
+					}
+					promise.complete();
+				});
+			} catch (IllegalStateException ex) {
+				failed.put(e.getKey(), String.valueOf(ex.getMessage()));
+				promise.complete();
+			}
+		}
+		partitions.clear();
+		return CompositeFuture.join(futures).map(v -> failed);
+	}
+
+	/**
+	 * Rolls back the transactions of the partitions, e.g. when the main transaction they depend on failed.
+	 */
+	public void rollbackPartitions() {
+		partition(null);
+		for (TransactionHelper tx : partitions.values()) {
+			tx.rollback();
+		}
+		partitions.clear();
 	}
 
 	public void clear() {
@@ -310,7 +376,9 @@ public class Importer {
 		userImportedExternalId.clear();
 		structuresImportedExternalId.clear();
 		groupClasses.clear();
+		fingerprints = ImportFingerprints.DISABLED;
 		report = null;
+		rollbackPartitions();
 		transactionHelper = null;
 		this.isInUse.set(false);
 	}
@@ -320,6 +388,7 @@ public class Importer {
 	}
 
 	public void persist(final Handler<Message<JsonObject>> handler) {
+		partition(null);
 		if (transactionHelper != null) {
 			transactionHelper.commit(new Handler<Message<JsonObject>>() {
 				@Override
@@ -512,28 +581,40 @@ public class Importer {
 			org.entcore.common.schema.users.User relative = new Relative(new ExternalId<org.entcore.common.schema.users.User>(object.getString("externalId")));
 			object.put("source", currentSource);
 			userImportedExternalId.add(object.getString("externalId"));
-			String query =
-					"MERGE (u:User { externalId : {externalId}}) " +
-					"ON CREATE SET u.id = {id}, u.login = {login}, u.activationCode = {activationCode}, " +
-					"u.displayName = {displayName}, u.displayNameSearchField = {displayNameSearchField}, u.created = {created} " +
-					"WITH u " +
-					"WHERE u.checksum IS NULL OR u.checksum <> {checksum} " +
-					"SET " + Neo4jUtils.nodeSetPropertiesFromJson("u", object,
-							"id", "externalId", "login", "activationCode", "displayName", "displayNameSearchField", "email", "emailSearchField", "created");
-			transactionHelper.add(query, object);
-			checkUpdateEmail(object);
+			final ImportFingerprints.Entry fingerprint = fingerprints.entry(transactionHelper, "Relative", object, currentSource);
+			if (!fingerprint.unchanged()) {
+				String query =
+						"MERGE (u:User { externalId : row.externalId}) " +
+						"ON CREATE SET u.id = row.id, u.login = row.login, u.activationCode = row.activationCode, " +
+						"u.displayName = row.displayName, u.displayNameSearchField = row.displayNameSearchField, u.created = row.created " +
+						"WITH u, row " +
+						"WHERE u.checksum IS NULL OR u.checksum <> row.checksum " +
+						"SET " + Neo4jUtils.nodeSetPropertiesFromRow("u", object,
+								"id", "externalId", "login", "activationCode", "displayName", "displayNameSearchField", "email", "emailSearchField", "created");
+				transactionHelper.addBatch(query, object.getString("externalId"), object);
+				checkUpdateEmail(object);
+				fingerprint.written();
+			}
 			if (linkStudent != null && linkStudent.size() > 0) {
 				String query2 =
-						"START u0=node:node_auto_index(externalId={externalId}), " +
-						"s=node:node_auto_index({studentExternalIds}) " +
-						"MATCH u0-[:MERGED*0..1]->u " +
+						"MATCH (:User {externalId : row.externalId})-[:MERGED*0..1]->(u:User) " +
 						"WHERE NOT(HAS(u.mergedWith)) " +
+						"WITH u, row " +
+						"MATCH (s:User) " +
+						"WHERE s.externalId IN row.studentExternalIds " +
 						"MERGE u<-[:RELATED]-s ";
 				JsonObject p = new JsonObject()
 						.put("externalId", object.getString("externalId"))
-						.put("studentExternalIds",
-								"externalId:" + Joiner.on(" OR externalId:").join(linkStudent));
-				transactionHelper.add(query2, p);
+						.put("studentExternalIds", linkStudent);
+				// the row matches the students merged by their own rows : it must stay after them
+				final List<String> keys = new ArrayList<>(linkStudent.size() + 1);
+				keys.add(object.getString("externalId"));
+				for (Object s : linkStudent) {
+					if (s instanceof String) {
+						keys.add((String) s);
+					}
+				}
+				transactionHelper.addBatch(query2, keys, p);
 			} else if (linkRelativeWithoutChild) {
 				final String externalId = object.getString("externalId");
 				JsonArray structures = getMappingStructures(object.getJsonArray("structures"));
@@ -554,16 +635,16 @@ public class Importer {
 						groups.add(structGroup[1]);
 					}
 				}
-				String q2 = "MATCH (g:FunctionGroup), (u:User { externalId : {userExternalId}}) " +
-						"WHERE g.externalId IN {groups} " +
+				String q2 = "MATCH (g:FunctionGroup), (u:User { externalId : row.userExternalId}) " +
+						"WHERE g.externalId IN row.groups " +
 						"AND NOT(HAS(u.mergedWith)) " +
-						"AND g.source = {source} " +
+						"AND g.source = row.source " +
 						"MERGE u-[:IN]->g";
 				JsonObject p = new JsonObject()
 						.put("userExternalId", object.getString("externalId"))
 						.put("source", currentSource)
 						.put("groups", groups);
-				transactionHelper.add(q2, p);
+				transactionHelper.addBatch(q2, object.getString("externalId"), p);
 			}
 		}
 	}
@@ -578,16 +659,20 @@ public class Importer {
 			object.put("source", currentSource);
 			final String externalId = object.getString("externalId");
 			userImportedExternalId.add(externalId);
-			String query =
-					"MERGE (u:User { externalId : {externalId}}) " +
-					"ON CREATE SET u.id = {id}, u.login = {login}, u.activationCode = {activationCode}, " +
-					"u.displayName = {displayName}, u.displayNameSearchField = {displayNameSearchField}, u.created = {created} " +
-					"WITH u " +
-					"WHERE u.checksum IS NULL OR u.checksum <> {checksum} " +
-					"SET " + Neo4jUtils.nodeSetPropertiesFromJson("u", object,
-					"id", "externalId", "login", "activationCode", "displayName", "displayNameSearchField", "email", "emailSearchField", "created");
-			transactionHelper.add(query, object);
-			checkUpdateEmail(object);
+			final ImportFingerprints.Entry fingerprint = fingerprints.entry(transactionHelper, "Guest", object, currentSource);
+			if (!fingerprint.unchanged()) {
+				String query =
+						"MERGE (u:User { externalId : row.externalId}) " +
+						"ON CREATE SET u.id = row.id, u.login = row.login, u.activationCode = row.activationCode, " +
+						"u.displayName = row.displayName, u.displayNameSearchField = row.displayNameSearchField, u.created = row.created " +
+						"WITH u, row " +
+						"WHERE u.checksum IS NULL OR u.checksum <> row.checksum " +
+						"SET " + Neo4jUtils.nodeSetPropertiesFromRow("u", object,
+						"id", "externalId", "login", "activationCode", "displayName", "displayNameSearchField", "email", "emailSearchField", "created");
+				transactionHelper.addBatch(query, object.getString("externalId"), object);
+				checkUpdateEmail(object);
+				fingerprint.written();
+			}
 			JsonArray structures = getMappingStructures(object.getJsonArray("structures"));
 			if (externalId != null && structures != null && structures.size() > 0)
 			{
@@ -603,32 +688,30 @@ public class Importer {
 				for (String[] structClass : linkClasses) {
 					if (structClass != null && structClass[0] != null && structClass[1] != null) {
 						String q =
-								"MATCH (s:Structure)<-[:BELONGS]-(c:Class)<-[:DEPENDS]-(g:ProfileGroup)" +
-										"-[:DEPENDS]->(pg:ProfileGroup)-[:HAS_PROFILE]->(p:Profile), " +
-										"(:User { externalId : {userExternalId}})-[:MERGED*0..1]->(u:User) " +
-										"USING INDEX s:Structure(externalId) " +
-										"USING INDEX p:Profile(externalId) " +
-										"WHERE s.externalId = {structure} AND c.externalId = {class} " +
-										"AND p.externalId = {profileExternalId} AND NOT(HAS(u.mergedWith)) " +
+								"MATCH (s:Structure {externalId : row.structure})<-[:BELONGS]-(c:Class {externalId : row.class})" +
+										"<-[:DEPENDS]-(g:ProfileGroup)-[:DEPENDS]->(pg:ProfileGroup)" +
+										"-[:HAS_PROFILE]->(p:Profile {externalId : row.profileExternalId}), " +
+										"(:User { externalId : row.userExternalId})-[:MERGED*0..1]->(u:User) " +
+										"WHERE NOT(HAS(u.mergedWith)) " +
 										"MERGE u-[:IN]->g";
 						JsonObject p = new JsonObject()
 								.put("userExternalId", externalId)
 								.put("profileExternalId", DefaultProfiles.GUEST_PROFILE_EXTERNAL_ID)
 								.put("structure", structClass[0])
 								.put("class", structClass[1]);
-						transactionHelper.add(q, p);
+						transactionHelper.addBatch(q, externalId, p);
 						classes.add(structClass[1]);
 					}
 				}
 				String q =
-						"MATCH (u:User {externalId : {userExternalId}})-[r:IN]-(g:Group)-[:DEPENDS]->(c:Class) " +
-						"WHERE NOT(c.externalId IN {classes}) AND (NOT(HAS(r.source)) OR r.source = {source}) " +
+						"MATCH (u:User {externalId : row.userExternalId})-[r:IN]-(g:Group)-[:DEPENDS]->(c:Class) " +
+						"WHERE NOT(c.externalId IN row.classes) AND (NOT(HAS(r.source)) OR r.source = row.source) " +
 						"DELETE r ";
 				JsonObject p = new JsonObject()
 						.put("userExternalId", externalId)
 						.put("source", currentSource)
 						.put("classes", classes);
-				transactionHelper.add(q, p);
+				transactionHelper.addBatch(q, externalId, p);
 			}
 		}
 	}
@@ -665,16 +748,21 @@ public class Importer {
 			if (nodeQueries) {
 				object.put("source", currentSource);
 				userImportedExternalId.add(object.getString("externalId"));
-				String query =
-					"MERGE (u:`User` { externalId : {externalId}}) " +
-					"ON CREATE SET u.id = {id}, u.login = {login}, u.activationCode = {activationCode}, " +
-					"u.displayName = {displayName}, u.displayNameSearchField = {displayNameSearchField}, u.created = {created} " +
-					"WITH u " +
-					"WHERE u.checksum IS NULL OR u.checksum <> {checksum} " +
-					"SET " + Neo4jUtils.nodeSetPropertiesFromJson("u", object,
-							"id", "externalId", "login", "activationCode", "displayName", "displayNameSearchField", "email", "emailSearchField", "created");
-				transactionHelper.add(query, object);
-				checkUpdateEmail(object);
+				final ImportFingerprints.Entry fingerprint = fingerprints.entry(transactionHelper, "Student", object,
+						currentSource);
+				if (!fingerprint.unchanged()) {
+					String query =
+						"MERGE (u:`User` { externalId : row.externalId}) " +
+						"ON CREATE SET u.id = row.id, u.login = row.login, u.activationCode = row.activationCode, " +
+						"u.displayName = row.displayName, u.displayNameSearchField = row.displayNameSearchField, u.created = row.created " +
+						"WITH u, row " +
+						"WHERE u.checksum IS NULL OR u.checksum <> row.checksum " +
+						"SET " + Neo4jUtils.nodeSetPropertiesFromRow("u", object,
+								"id", "externalId", "login", "activationCode", "displayName", "displayNameSearchField", "email", "emailSearchField", "created");
+					transactionHelper.addBatch(query, object.getString("externalId"), object);
+					checkUpdateEmail(object);
+					fingerprint.written();
+				}
 			}
 			if (relationshipQueries) {
 				final String externalId = object.getString("externalId");
@@ -711,10 +799,10 @@ public class Importer {
 							.put("source", currentSource)
 							.put("structures", structures);
 					final String daa =
-							"MATCH (u:User {externalId : {userExternalId}})-[r:ADMINISTRATIVE_ATTACHMENT]->(s:Structure) " +
-							"WHERE NOT(s.externalId IN {structures}) AND (NOT(HAS(r.source)) OR r.source = {source}) " +
+							"MATCH (u:User {externalId : row.userExternalId})-[r:ADMINISTRATIVE_ATTACHMENT]->(s:Structure) " +
+							"WHERE NOT(s.externalId IN row.structures) AND (NOT(HAS(r.source)) OR r.source = row.source) " +
 							"DELETE r";
-					transactionHelper.add(daa, ps);
+					transactionHelper.addBatch(daa, externalId, ps);
 				}
 				JsonArray classes = new fr.wseduc.webutils.collections.JsonArray();
 				if (externalId != null && linkClasses != null) {
@@ -726,27 +814,27 @@ public class Importer {
 					if (studentsRelationshipsNotExists(externalId, CheckRelationshipsTypes.CLASSES, classes)) {
 						String query =
 								"MATCH (c:Class)<-[:DEPENDS]-(g:ProfileGroup)" +
-								"-[:DEPENDS]->(:ProfileGroup)-[:HAS_PROFILE]->(:Profile {externalId : {profileExternalId}}), " +
-								"(u:User { externalId : {userExternalId}}) " +
-								"WHERE c.externalId IN {classes} AND NOT(HAS(u.mergedWith))  " +
+								"-[:DEPENDS]->(:ProfileGroup)-[:HAS_PROFILE]->(:Profile {externalId : row.profileExternalId}), " +
+								"(u:User { externalId : row.userExternalId}) " +
+								"WHERE c.externalId IN row.classes AND NOT(HAS(u.mergedWith))  " +
 								"MERGE u-[:IN]->g";
 						JsonObject p0 = new JsonObject()
 								.put("userExternalId", externalId)
 								.put("profileExternalId", profileExternalId)
 								.put("classes", classes);
-						transactionHelper.add(query, p0);
+						transactionHelper.addBatch(query, externalId, p0);
 					}
 				}
 				if (externalId != null) {
 					String q =
-							"MATCH (u:User {externalId : {userExternalId}})-[r:IN]-(g:Group)-[:DEPENDS]->(c:Class) " +
-							"WHERE NOT(c.externalId IN {classes}) AND (NOT(HAS(r.source)) OR r.source = {source}) " +
+							"MATCH (u:User {externalId : row.userExternalId})-[r:IN]-(g:Group)-[:DEPENDS]->(c:Class) " +
+							"WHERE NOT(c.externalId IN row.classes) AND (NOT(HAS(r.source)) OR r.source = row.source) " +
 							"DELETE r ";
 					JsonObject p = new JsonObject()
 							.put("userExternalId", externalId)
 							.put("source", currentSource)
 							.put("classes", classes);
-					transactionHelper.add(q, p);
+					transactionHelper.addBatch(q, externalId, p);
 				}
 				final JsonArray groups = new fr.wseduc.webutils.collections.JsonArray();
 				if (externalId != null && linkGroups != null) {
@@ -757,78 +845,79 @@ public class Importer {
 					}
 					// if (studentsRelationshipsNotExists(externalId, CheckRelationshipsTypes.GROUPS, groups)) {
 						String query =
-								"MATCH (u:User { externalId: {userExternalId}}) " +
+								"MATCH (u:User { externalId: row.userExternalId}) " +
 								"WHERE NOT(HAS(u.mergedWith)) " +
-								"WITH u " +
+								"WITH u, row " +
 								"MATCH (g:Group) " +
-								"WHERE (g:FunctionalGroup OR g:FunctionGroup) AND g.externalId IN {groups} AND g.source = {source} " +
+								"WHERE (g:FunctionalGroup OR g:FunctionGroup) AND g.externalId IN row.groups AND g.source = row.source " +
 								"MERGE (u)-[:IN]->(g) ";
 						JsonObject p = new JsonObject()
 								.put("userExternalId", externalId)
 								.put("source", currentSource)
 								.put("groups", groups);
-						transactionHelper.add(query, p);
+						transactionHelper.addBatch(query, externalId, p);
 					// }
 				}
 				if (externalId != null) {
 					final String qdfg =
-							"MATCH (u:User {externalId : {userExternalId}})-[r:IN]-(g:FunctionalGroup) " +
-							"WHERE (NOT(HAS(r.source)) OR r.source = {source}) " +
-							"AND (NOT(g.externalId IN {groups}) OR (g.source <> {source})) " +
+							"MATCH (u:User {externalId : row.userExternalId})-[r:IN]-(g:FunctionalGroup) " +
+							"WHERE (NOT(HAS(r.source)) OR r.source = row.source) " +
+							"AND (NOT(g.externalId IN row.groups) OR (g.source <> row.source)) " +
 							"DELETE r ";
 					final JsonObject pdfg = new JsonObject()
 							.put("userExternalId", externalId)
 							.put("source", currentSource)
 							.put("groups", groups);
-					transactionHelper.add(qdfg, pdfg);
+					transactionHelper.addBatch(qdfg, externalId, pdfg);
 				}
 
 				if (externalId != null && module != null &&
 						studentsRelationshipsNotExists(externalId, CheckRelationshipsTypes.MODULES, new JsonArray().add(module))) {
 					String query =
-							"MATCH (u:User {externalId:{userExternalId}}), " +
-							"(m:Module {externalId:{moduleStudent}}) " +
+							"MATCH (u:User {externalId:row.userExternalId}), " +
+							"(m:Module {externalId:row.moduleStudent}) " +
 							"MERGE u-[:FOLLOW]->m";
 					JsonObject p = new JsonObject()
 							.put("userExternalId", externalId)
 							.put("moduleStudent", module);
-					transactionHelper.add(query, p);
+					transactionHelper.addBatch(query, externalId, p);
 				}
 				if (externalId != null && fieldOfStudy != null && fieldOfStudy.size() > 0 &&
 						studentsRelationshipsNotExists(externalId, CheckRelationshipsTypes.FOS, fieldOfStudy)) {
 					String query =
-								"MATCH (u:User {externalId:{userExternalId}}), (f:FieldOfStudy) " +
-								"WHERE f.externalId IN {fieldOfStudyStudent} " +
+								"MATCH (u:User {externalId:row.userExternalId}), (f:FieldOfStudy) " +
+								"WHERE f.externalId IN row.fieldOfStudyStudent " +
 								"MERGE u-[:COURSE]->f";
 					JsonObject p = new JsonObject()
 								.put("userExternalId", externalId)
 								.put("fieldOfStudyStudent", fieldOfStudy);
-					transactionHelper.add(query, p);
+					transactionHelper.addBatch(query, externalId, p);
 				}
 				if (externalId != null && relative != null && relative.size() > 0) {
 					String query2 =
-							"MATCH (:User {externalId:{userExternalId}})-[r:RELATED|COMMUNIQUE_DIRECT]-(p:User) " +
-							"WHERE NOT(p.externalId IN {relatives}) AND (NOT(HAS(r.source)) OR r.source = {source}) " +
+							"MATCH (:User {externalId:row.userExternalId})-[r:RELATED|COMMUNIQUE_DIRECT]-(p:User) " +
+							"WHERE NOT(p.externalId IN row.relatives) AND (NOT(HAS(r.source)) OR r.source = row.source) " +
 							"DELETE r ";
 					JsonObject p2 = new JsonObject()
 							.put("userExternalId", externalId)
 							.put("source", currentSource)
 							.put("relatives", relative);
-					transactionHelper.add(query2, p2);
+					transactionHelper.addBatch(query2, externalId, p2);
 					for (Object o : relative) {
 						if (!(o instanceof String)) continue;
 						String query =
-								"MATCH (u:User {externalId:{userExternalId}}), " +
-								"(:User {externalId:{user}})-[:MERGED*0..1]->(r:User) " +
+								"MATCH (u:User {externalId:row.userExternalId}), " +
+								"(:User {externalId:row.user})-[:MERGED*0..1]->(r:User) " +
 								"WHERE NOT(HAS(r.mergedWith)) " +
 								"MERGE u-[:RELATED]->r " +
-								"WITH r, u " +
-								"WHERE {user} <> r.externalId AND LENGTH(FILTER(eId IN u.relative WHERE eId STARTS WITH r.externalId)) = 0 " +
+								"WITH r, u, row " +
+								"WHERE row.user <> r.externalId AND LENGTH(FILTER(eId IN u.relative WHERE eId STARTS WITH r.externalId)) = 0 " +
 								"SET u.relative = coalesce(u.relative, []) + (r.externalId + '$10$1$1$0$0') ";
 						JsonObject p = new JsonObject()
 								.put("userExternalId", externalId)
 								.put("user", (String) o);
-						transactionHelper.add(query, p);
+						// keyed on both users to stay after the row merging the relative
+						transactionHelper.addBatch(query, Arrays.asList(externalId, (String) o), p);
 					}
 				}
 			}
@@ -1220,6 +1309,14 @@ public class Importer {
 		return report;
 	}
 
+	public ImportFingerprints getFingerprints() {
+		return fingerprints;
+	}
+
+	public void setFingerprints(ImportFingerprints fingerprints) {
+		this.fingerprints = fingerprints;
+	}
+
 	public Set<String> getUserImportedExternalId() {
 		return userImportedExternalId;
 	}
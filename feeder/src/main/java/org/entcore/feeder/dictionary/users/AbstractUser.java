@@ -20,6 +20,7 @@
 package org.entcore.feeder.dictionary.users;
 
 import org.entcore.feeder.exceptions.ValidationException;
+import org.entcore.feeder.utils.ImportFingerprints;
 import org.entcore.feeder.utils.JsonUtil;
 import org.entcore.feeder.utils.Report;
 import org.entcore.common.neo4j.TransactionHelper;
@@ -42,6 +43,7 @@ public abstract class AbstractUser {
 	protected final Report report;
 	protected final String currentSource;
 	private JsonObject mapping;
+	protected ImportFingerprints fingerprints = ImportFingerprints.DISABLED;
 
 	protected AbstractUser(TransactionHelper transactionHelper, Report report, String currentSource) {
 		this(transactionHelper, null, null, report, currentSource);
@@ -55,6 +57,10 @@ public abstract class AbstractUser {
 		this.currentSource = currentSource;
 	}
 
+	public void setFingerprints(ImportFingerprints fingerprints) {
+		this.fingerprints = fingerprints;
+	}
+
 	public void checkUpdateEmail(JsonObject object) {
 		checkUpdateEmail(object, transactionHelper);
 	}
@@ -62,10 +68,13 @@ public abstract class AbstractUser {
 	public static void checkUpdateEmail(JsonObject object, TransactionHelper transactionHelper) {
 		if (object.containsKey("email")) {
 			final String queryUpdateEmail =
-					"MATCH (u:User {externalId: {externalId}}) " +
-					"WHERE NOT(HAS(u.email)) OR (HAS(u.activationCode) AND u.email <> {email}) " +
-					"SET u.email = {email}, u.emailSearchField = {emailSearchField}";
-			transactionHelper.add(queryUpdateEmail, object);
+					"MATCH (u:User {externalId: row.externalId}) " +
+					"WHERE NOT(HAS(u.email)) OR (HAS(u.activationCode) AND u.email <> row.email) " +
+					"SET u.email = row.email, u.emailSearchField = row.emailSearchField";
+			transactionHelper.addBatch(queryUpdateEmail, object.getString("externalId"), new JsonObject()
+					.put("externalId", object.getString("externalId"))
+					.put("email", object.getValue("email"))
+					.put("emailSearchField", object.getValue("emailSearchField")));
 		}
 	}
 
@@ -21,6 +21,7 @@ package org.entcore.feeder.dictionary.users;
 
 import org.entcore.common.neo4j.Neo4jUtils;
 import org.entcore.feeder.timetable.edt.EDTImporter;
+import org.entcore.feeder.utils.ImportFingerprints;
 import org.entcore.feeder.utils.Report;
 import org.entcore.common.neo4j.TransactionHelper;
 import org.entcore.feeder.utils.Validator;
@@ -71,7 +72,6 @@ public class PersEducNat extends AbstractUser {
 			}
 			log.warn(error);
 		} else {
-
 			User user;
 			if(DefaultProfiles.TEACHER_PROFILE_EXTERNAL_ID.equals(profileExternalId))
 				user = new Teacher(new ExternalId<User>(object.getString("externalId")));
@@ -83,41 +83,50 @@ public class PersEducNat extends AbstractUser {
 				if (userImportedExternalId != null) {
 					userImportedExternalId.add(object.getString("externalId"));
 				}
-				StringBuilder sb = new StringBuilder();
-				JsonObject params;
-				sb.append("MERGE (u:`User` { externalId : {externalId}}) ");
-				sb.append("ON CREATE SET u.id = {id}, u.login = {login}, u.activationCode = {activationCode}, ");
-				sb.append("u.displayName = {displayName}, u.displayNameSearchField = {displayNameSearchField}, u.created = {created} ");
-				sb.append("WITH u ");
-				if (!EDTImporter.EDT.equals(currentSource)) {
-					sb.append("WHERE u.checksum IS NULL OR u.checksum <> {checksum} ");
-				}
+				final ImportFingerprints.Entry fingerprint = fingerprints.entry(transactionHelper, "Personnel", object,
+						currentSource, isMultiEtab);
+				// the timetable import reads the ids returned by the node statement
+				if (EDTImporter.EDT.equals(currentSource) || !fingerprint.unchanged()) {
+					StringBuilder sb = new StringBuilder();
+					JsonObject params;
+					sb.append("MERGE (u:`User` { externalId : {externalId}}) ");
+					sb.append("ON CREATE SET u.id = {id}, u.login = {login}, u.activationCode = {activationCode}, ");
+					sb.append("u.displayName = {displayName}, u.displayNameSearchField = {displayNameSearchField}, u.created = {created} ");
+					sb.append(EDTImporter.EDT.equals(currentSource) ? "WITH u " : "WITH u, row ");
+					if (!EDTImporter.EDT.equals(currentSource)) {
+						sb.append("WHERE u.checksum IS NULL OR u.checksum <> {checksum} ");
+					}
 
-				if (Boolean.TRUE.equals(isMultiEtab)) {
+					if (Boolean.TRUE.equals(isMultiEtab)) {
 
-					sb.append("SET ").append(Neo4jUtils.nodeSetPropertiesFromJson("u", object,
-							"id", "externalId", "login", "activationCode", "displayName",
-							"displayNameSearchField", "email", "emailSearchField", "created", "structures", "functions"));
+						sb.append("SET ").append(Neo4jUtils.nodeSetPropertiesFromJson("u", object,
+								"id", "externalId", "login", "activationCode", "displayName",
+								"displayNameSearchField", "email", "emailSearchField", "created", "structures", "functions"));
 
-					if (object.getJsonArray("structures") != null && object.getJsonArray("structures").size() > 0) {
-						sb.append(", u.structures = FILTER (s IN coalesce(u.structures, []) WHERE NOT s IN {structures}) + {structures}");
-					}
-					if (object.getJsonArray("functions") != null && object.getJsonArray("functions").size() > 0) {
-						sb.append(", u.functions = FILTER (f IN coalesce(u.functions, []) WHERE NOT f IN {functions}) + {functions}");
-					}
+						if (object.getJsonArray("structures") != null && object.getJsonArray("structures").size() > 0) {
+							sb.append(", u.structures = FILTER (s IN coalesce(u.structures, []) WHERE NOT s IN {structures}) + {structures}");
+						}
+						if (object.getJsonArray("functions") != null && object.getJsonArray("functions").size() > 0) {
+							sb.append(", u.functions = FILTER (f IN coalesce(u.functions, []) WHERE NOT f IN {functions}) + {functions}");
+						}
 
-				} else {
-					sb.append("SET ").append(Neo4jUtils.nodeSetPropertiesFromJson("u", object,
-							"id", "externalId", "login", "activationCode", "displayName",
-							"displayNameSearchField", "email", "emailSearchField", "created"));
-				}
+					} else {
+						sb.append("SET ").append(Neo4jUtils.nodeSetPropertiesFromJson("u", object,
+								"id", "externalId", "login", "activationCode", "displayName",
+								"displayNameSearchField", "email", "emailSearchField", "created"));
+					}
 
-				if (EDTImporter.EDT.equals(currentSource)) {
-					sb.append("RETURN u.id as id, u.IDPN as IDPN, head(u.profiles) as profile");
+					if (EDTImporter.EDT.equals(currentSource)) {
+						// the timetable import reads the returned ids, so its users are not batched
+						sb.append("RETURN u.id as id, u.IDPN as IDPN, head(u.profiles) as profile");
+						params = object;
+						transactionHelper.add(sb.toString(), params);
+					} else {
+						transactionHelper.addBatch(Neo4jUtils.toRowParameters(sb.toString()), object.getString("externalId"), object);
+					}
+					checkUpdateEmail(object);
+					fingerprint.written();
 				}
-				params = object;
-				transactionHelper.add(sb.toString(), params);
-				checkUpdateEmail(object);
 			}
 			if (relationshipQueries) {
 				final String externalId = object.getString("externalId");
@@ -0,0 +1,267 @@
+/* Copyright © "Open Digital Education", 2014
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ *
+ */
+
+package org.entcore.feeder.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.Promise;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.common.neo4j.TransactionHelper;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fingerprints of the users written by the last successful import of a source, used to skip the statements writing
+ * the user nodes whose validated attributes (see the checksum of {@link Validator}) are unchanged before they are
+ * generated. The skipped users are still reported as imported, so the disappearances are detected as before.
+ * <p>
+ *     Only the node statements are skipped : the relationship statements match nodes written by other imports
+ *     (structures, classes, groups, other users) and silently do nothing when these nodes are missing, so they are
+ *     always sent again.
+ * </p>
+ * <p>
+ *     The fingerprints are saved in {@code path} only when the import succeeds. Every user is written again when
+ *     the saved fingerprints are older than {@code full-import-delay} milliseconds (a week by default) or when a
+ *     full import is forced, so that manual changes of the links are eventually overwritten.
+ * </p>
+ */
+public class ImportFingerprints {
+
+	public static final ImportFingerprints DISABLED = new ImportFingerprints();
+	private static final Logger log = LoggerFactory.getLogger(ImportFingerprints.class);
+	private final Vertx vertx;
+	private final Path path;
+	private final long fullImportDelay;
+	private volatile boolean full;
+	private volatile long lastFullImport;
+	private final Map<String, Fingerprint> previous = new ConcurrentHashMap<>();
+	private final Map<String, Fingerprint> current = new ConcurrentHashMap<>();
+	private final AtomicLong skipped = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private final AtomicLong statementsAvoided = new AtomicLong();
+	private final AtomicLong bytesAvoided = new AtomicLong();
+
+	private static final class Fingerprint {
+		private final String hash;
+		private final long statements;
+		private final long bytes;
+
+		private Fingerprint(String hash, long statements, long bytes) {
+			this.hash = hash;
+			this.statements = statements;
+			this.bytes = bytes;
+		}
+	}
+
+	private ImportFingerprints() {
+		this.vertx = null;
+		this.path = null;
+		this.fullImportDelay = 0;
+		this.full = true;
+	}
+
+	public ImportFingerprints(Vertx vertx, JsonObject config, String scope, boolean full) {
+		this.vertx = vertx;
+		this.path = Paths.get(config.getString("path"), scope.replaceAll("[^A-Za-z0-9_-]", "_") + ".fingerprints");
+		this.fullImportDelay = config.getLong("full-import-delay", 7 * 24 * 3600 * 1000L);
+		this.full = full;
+	}
+
+	public Future<Void> load() {
+		final Promise<Void> promise = Promise.promise();
+		if (path == null || full) {
+			promise.complete();
+			return promise.future();
+		}
+		vertx.<Void>executeBlocking(p -> {
+			if (!Files.exists(path)) {
+				log.info("No import fingerprints in " + path + ", full import.");
+				full = true;
+				p.complete();
+				return;
+			}
+			try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+				lastFullImport = Long.parseLong(reader.readLine());
+				if (System.currentTimeMillis() - lastFullImport > fullImportDelay) {
+					log.info("Import fingerprints of " + path + " are too old, full import.");
+					full = true;
+					p.complete();
+					return;
+				}
+				String line;
+				while ((line = reader.readLine()) != null) {
+					final String[] f = line.split("\t");
+					if (f.length == 4) {
+						previous.put(f[0], new Fingerprint(f[1], Long.parseLong(f[2]), Long.parseLong(f[3])));
+					}
+				}
+				log.info("Loaded " + previous.size() + " import fingerprints from " + path);
+			} catch (Exception e) {
+				log.error("Error loading import fingerprints " + path + ", full import.", e);
+				previous.clear();
+				full = true;
+			}
+			p.complete();
+		}, false, promise);
+		return promise.future();
+	}
+
+	/**
+	 * Starts counting the payload of the transaction to measure the size of the node statements of the user.
+	 * @param transactionHelper Transaction receiving the node statements of the user
+	 * @param kind Kind of import of the user (profile)
+	 * @param object User validated by a {@link Validator}
+	 * @param links Other parameters of the node statements of the user
+	 */
+	public Entry entry(TransactionHelper transactionHelper, String kind, JsonObject object, Object... links) {
+		if (path == null || object.getString("externalId") == null || object.getString("checksum") == null) {
+			return new Entry(null, null, null);
+		}
+		transactionHelper.setPayloadCounted(true);
+		final StringBuilder sb = new StringBuilder(object.getString("checksum"));
+		for (Object o : links) {
+			sb.append('|').append(o instanceof Object[] ? Arrays.deepToString((Object[]) o) : String.valueOf(o));
+		}
+		try {
+			return new Entry(transactionHelper, kind + ":" + object.getString("externalId"),
+					Hash.sha1(sb.toString().getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			log.error("Error generating import fingerprint", e);
+			return new Entry(null, null, null);
+		}
+	}
+
+	public class Entry {
+		private final TransactionHelper transactionHelper;
+		private final String key;
+		private final String hash;
+		private final long statementsBefore;
+		private final long bytesBefore;
+
+		private Entry(TransactionHelper transactionHelper, String key, String hash) {
+			this.transactionHelper = transactionHelper;
+			this.key = key;
+			this.hash = hash;
+			this.statementsBefore = transactionHelper != null ? transactionHelper.getStatementsCount() : 0;
+			this.bytesBefore = transactionHelper != null ? transactionHelper.getPayloadSize() : 0;
+		}
+
+		/**
+		 * @return true if the user was imported with the same fingerprint by the last import, its node statements
+		 * can be skipped
+		 */
+		public boolean unchanged() {
+			if (key == null || full || current.containsKey(key)) {
+				return false;
+			}
+			final Fingerprint f = previous.get(key);
+			if (f == null || !f.hash.equals(hash)) {
+				return false;
+			}
+			current.put(key, f);
+			skipped.incrementAndGet();
+			statementsAvoided.addAndGet(f.statements);
+			bytesAvoided.addAndGet(f.bytes);
+			return true;
+		}
+
+		/**
+		 * Records the fingerprint of the user once its node statements are added to the transaction, before its
+		 * relationship statements.
+		 */
+		public void written() {
+			if (key == null) {
+				return;
+			}
+			final long statements = transactionHelper.getStatementsCount() - statementsBefore;
+			final long bytes = transactionHelper.getPayloadSize() - bytesBefore;
+			// a user imported several times (e.g. in several structures) is always written again
+			current.merge(key, new Fingerprint(hash, statements, bytes),
+					(f1, f2) -> new Fingerprint("", f1.statements + f2.statements, f1.bytes + f2.bytes));
+			written.incrementAndGet();
+		}
+	}
+
+	public boolean isEnabled() {
+		return path != null;
+	}
+
+	public JsonObject getStats() {
+		return new JsonObject()
+				.put("full", full)
+				.put("written", written.get())
+				.put("skipped", skipped.get())
+				.put("statementsAvoided", statementsAvoided.get())
+				.put("bytesAvoided", bytesAvoided.get());
+	}
+
+	/**
+	 * Saves the fingerprints of the users of this import, the users which disappeared are forgotten.
+	 * The date of the last full import is kept to force the next one.
+	 */
+	public Future<Void> save() {
+		final Promise<Void> promise = Promise.promise();
+		if (path == null) {
+			promise.complete();
+			return promise.future();
+		}
+		vertx.<Void>executeBlocking(p -> {
+			try {
+				Files.createDirectories(path.getParent());
+				final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+				try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+					writer.write(Long.toString(full ? System.currentTimeMillis() : lastFullImport));
+					writer.newLine();
+					for (Map.Entry<String, Fingerprint> e : current.entrySet()) {
+						writer.write(e.getKey() + "\t" + e.getValue().hash + "\t" + e.getValue().statements + "\t" +
+								e.getValue().bytes);
+						writer.newLine();
+					}
+				}
+				Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+				p.complete();
+			} catch (Exception e) {
+				p.fail(e);
+			}
+		}, false, ar -> {
+			if (ar.succeeded()) {
+				log.info("Saved " + current.size() + " import fingerprints in " + path + " : " + getStats().encode());
+			} else {
+				log.error("Error saving import fingerprints " + path, ar.cause());
+			}
+			promise.handle(ar);
+		});
+		return promise.future();
+	}
+
+}
@@ -63,6 +63,9 @@ public class Report {
 	private long startTime;
 	private Set<String> loadedFiles = new HashSet<>();
 	private boolean notReverseFilesOrder = false;
+	private boolean externalIdsChecked = false;
+	private boolean keepUsers = true;
+	private final List<String> usersExternalIds = new ArrayList<>();
 
 	public enum State {
 		NEW, UPDATED, DELETED
@@ -160,6 +163,13 @@ public class Report {
 	}
 
 	public void addUser(String file, JsonObject props) {
+		if (!keepUsers) {
+			final String externalId = props.getString("externalId");
+			if (externalId != null) {
+				usersExternalIds.add(externalId);
+			}
+			return;
+		}
 		JsonArray f = result.getJsonObject(FILES).getJsonArray(file);
 		if (f == null) {
 			f = new fr.wseduc.webutils.collections.JsonArray();
@@ -198,8 +208,12 @@ public class Report {
 		result.put("usersExternalIds", usersExternalIds);
 	}
 
+	public void setFingerprints(JsonObject fingerprints) {
+		result.put("fingerprints", fingerprints);
+	}
+
 	public JsonArray getUsersExternalId() {
-		final JsonArray res = new fr.wseduc.webutils.collections.JsonArray();
+		final JsonArray res = new fr.wseduc.webutils.collections.JsonArray(new ArrayList<>(usersExternalIds));
 		for (String f : result.getJsonObject(FILES).fieldNames()) {
 			JsonArray a = result.getJsonObject(FILES).getJsonArray(f);
 			if (a != null) {
@@ -494,4 +508,23 @@ public class Report {
 		this.notReverseFilesOrder = notReverseFilesOrder;
 	}
 
+	public boolean isExternalIdsChecked() {
+		return externalIdsChecked;
+	}
+
+	/**
+	 * @param externalIdsChecked true when the externalIds of the files were already checked by their validation
+	 */
+	public void setExternalIdsChecked(boolean externalIdsChecked) {
+		this.externalIdsChecked = externalIdsChecked;
+	}
+
+	/**
+	 * @param keepUsers false to only keep the externalIds of the users added to a report which is neither
+	 *                  displayed nor persisted (e.g. the validation done before an import)
+	 */
+	public void setKeepUsers(boolean keepUsers) {
+		this.keepUsers = keepUsers;
+	}
+
 }
@@ -0,0 +1,169 @@
+package org.entcore.feeder.aaf;
+
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.feeder.utils.ResultMessage;
+import org.entcore.test.TestHelper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+@RunWith(VertxUnitRunner.class)
+public class BaseImportProcessingTest {
+    private static final TestHelper test = TestHelper.helper();
+
+    private static class RecordingProcessing extends BaseImportProcessing {
+        private final List<String> events = new ArrayList<>();
+        private final LinkedList<Map<String, String>> persistResults = new LinkedList<>();
+        private String partition;
+
+        private RecordingProcessing(String path, Vertx vertx, int chunkSize, int writePartitions) {
+            super(path, vertx, chunkSize, writePartitions);
+        }
+
+        @Override
+        public void start(Handler<Message<JsonObject>> handler) {
+            parse(handler, null);
+        }
+
+        @Override
+        public String getMappingResource() {
+            return "dictionary/mapping/aaf/Eleve.json";
+        }
+
+        @Override
+        public void process(JsonObject object) {
+            events.add(partition + ":" + object.getString("externalId"));
+        }
+
+        @Override
+        protected String getPartitionStructure(JsonObject object) {
+            return object.getJsonArray("structures").getString(0);
+        }
+
+        @Override
+        protected String getFileRegex() {
+            return ".*\\.xml";
+        }
+
+        @Override
+        protected void loadedFile(String file) {
+            events.add("file:" + Paths.get(file).getFileName());
+        }
+
+        @Override
+        protected void partition(String key) {
+            partition = key;
+        }
+
+        @Override
+        protected Future<Map<String, String>> persistTransactions() {
+            events.add("persist");
+            return Future.succeededFuture(persistResults.isEmpty() ?
+                    Collections.<String, String>emptyMap() : persistResults.removeFirst());
+        }
+
+        @Override
+        protected void next(Handler<Message<JsonObject>> handler, ImportProcessing importProcessing) {
+            handler.handle(new ResultMessage());
+        }
+    }
+
+    private static Path directory(String... files) throws IOException {
+        final Path dir = Files.createTempDirectory("aaf");
+        for (int i = 0; i < files.length; i += 2) {
+            Files.write(dir.resolve(files[i]), ("<ficAlimMENESR>" + files[i + 1] + "</ficAlimMENESR>")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+        return dir;
+    }
+
+    private static String record(String externalId, String structure) {
+        return "<addRequest><identifier><id>" + externalId + "</id></identifier><attributes>" +
+                "<attr name=\"ENTPersonStructRattach\"><value>" + structure + "</value></attr>" +
+                "</attributes></addRequest>";
+    }
+
+    @Test
+    public void testChunksArePersistedInOrder(TestContext context) throws Exception {
+        final Async async = context.async();
+        final Path dir = directory(
+                "b.xml", record("u4", "s1") + record("u5", "s1"),
+                "a.xml", record("u1", "s1") + record("u2", "s1") + record("u3", "s1"),
+                "c.xml", "");
+        final RecordingProcessing processing = new RecordingProcessing(dir.toString(), test.vertx(), 2, 1);
+        processing.start(res -> {
+            context.assertEquals("ok", res.body().getString("status"));
+            context.assertEquals(Arrays.asList("file:a.xml", "null:u1", "null:u2", "persist", "null:u3", "persist",
+                    "file:b.xml", "null:u4", "null:u5", "persist", "file:c.xml", "persist"), processing.events);
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testDeadlockedPartitionIsRetriedBeforeNextChunk(TestContext context) throws Exception {
+        final Async async = context.async();
+        // "s1" goes to the partition 0 and "s2" to the partition 1
+        final Path dir = directory("a.xml", record("u1", "s1") + record("u2", "s2") + record("u3", "s2"));
+        final RecordingProcessing processing = new RecordingProcessing(dir.toString(), test.vertx(), 2, 2);
+        processing.persistResults.add(Collections.singletonMap("1", "Neo.TransientError.Transaction.DeadlockDetected"));
+        processing.start(res -> {
+            context.assertEquals("ok", res.body().getString("status"));
+            context.assertEquals(Arrays.asList("file:a.xml", "0:u1", "1:u2", "persist", "null:u2", "persist",
+                    "1:u3", "persist"), processing.events);
+            async.complete();
+        });
+    }
+
+    @Test
+    public void testFailureStopsTheImport(TestContext context) throws Exception {
+        final Async async = context.async();
+        final Path dir = directory("a.xml", record("u1", "s1") + record("u2", "s1") + record("u3", "s1"),
+                "b.xml", record("u4", "s1"));
+        final RecordingProcessing processing = new RecordingProcessing(dir.toString(), test.vertx(), 2, 1);
+        processing.persistResults.add(Collections.singletonMap(BaseImportProcessing.MAIN_TRANSACTION,
+                "Neo.TransientError.Transaction.DeadlockDetected"));
+        processing.persistResults.add(Collections.singletonMap(BaseImportProcessing.MAIN_TRANSACTION,
+                "Neo.ClientError.Statement.SyntaxError"));
+        processing.start(res -> {
+            context.assertEquals("error", res.body().getString("status"));
+            context.assertEquals("Neo.ClientError.Statement.SyntaxError", res.body().getString("message"));
+            test.vertx().setTimer(200, t -> {
+                context.assertEquals(Arrays.asList("file:a.xml", "null:u1", "null:u2", "persist",
+                        "null:u1", "null:u2", "persist"), processing.events);
+                async.complete();
+            });
+        });
+    }
+
+    @Test
+    public void testParsingErrorStopsTheImport(TestContext context) throws Exception {
+        final Async async = context.async();
+        final Path dir = directory("a.xml", record("u1", "s1") + record("u2", "s1"),
+                "b.xml", "<addRequest><attributes><attr name=\"unknown\"><value>v</value></attr></attributes></addRequest>");
+        final RecordingProcessing processing = new RecordingProcessing(dir.toString(), test.vertx(), 10, 1);
+        processing.start(res -> {
+            context.assertNull(res, "a parsing error is reported without message");
+            context.assertEquals(Arrays.asList("file:a.xml", "null:u1", "null:u2", "persist"), processing.events);
+            async.complete();
+        });
+    }
+
+}
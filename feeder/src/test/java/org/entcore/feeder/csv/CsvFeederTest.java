@@ -0,0 +1,111 @@
+package org.entcore.feeder.csv;
+
+import io.vertx.core.CompositeFuture;
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.common.neo4j.Neo4j;
+import org.entcore.feeder.dictionary.structures.Importer;
+import org.entcore.feeder.utils.TransactionManager;
+import org.entcore.feeder.utils.Validator;
+import org.entcore.test.TestHelper;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.Neo4jContainer;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+@RunWith(VertxUnitRunner.class)
+public class CsvFeederTest {
+    private static final TestHelper test = TestHelper.helper();
+    private static final String STRUCTURE = "csv-feeder-test";
+    @ClassRule
+    public static Neo4jContainer<?> neo4jContainer = test.database().createNeo4jContainer();
+
+    @BeforeClass
+    public static void setUp(TestContext context) throws Exception {
+        test.database().initNeo4j(context, neo4jContainer);
+        final String base = neo4jContainer.getHttpUrl() + "/db/data/";
+        final JsonObject neo4jConfig = new JsonObject()
+                .put("server-uri", base).put("poolSize", 1);
+        final Neo4j neo4j = Neo4j.getInstance();
+        neo4j.init(test.vertx(), neo4jConfig
+                .put("server-uri", base)
+                .put("ignore-empty-statements-error", false));
+        Validator.initLogin(neo4j, test.vertx());
+        TransactionManager.getInstance().setNeo4j(neo4j);
+    }
+
+    private static Path importDirectory() throws IOException {
+        final Path dir = Files.createTempDirectory("csv");
+        final Path structure = Files.createDirectory(dir.resolve("Ecole@" + STRUCTURE + "_0000001A"));
+        // with chunks of 2 lines : the header and s1, then an empty line starting a chunk,
+        // an empty line ending a chunk and the last chunk ending with the file
+        Files.write(structure.resolve("Student.csv"), Arrays.asList(
+                "Id;Nom;Prenom;Date de naissance;Classe",
+                "s1;Martin;Louise;01/02/2010;CM1",
+                "",
+                "s2;Bernard;Hugo;02/03/2010;CM1",
+                "s3;Thomas;Jade;03/04/2010;CM1",
+                ";;;;",
+                "s4;Petit;Lucas;04/05/2010;CM2",
+                "s5;Robert;Emma;05/06/2010;CM2"), StandardCharsets.UTF_8);
+        Files.write(structure.resolve("Relative.csv"), Arrays.asList(
+                "Id;Nom;Prenom;Id enfant",
+                "r1;Martin;Paul;s1",
+                "",
+                "r2;Robert;Julie;s5"), StandardCharsets.UTF_8);
+        return dir;
+    }
+
+    private static Future<Integer> count(String query) {
+        return test.database().executeNeo4jWithUniqueResult(query, new JsonObject().put("structure", STRUCTURE))
+                .map(r -> r.getInteger("nb"));
+    }
+
+    @Test
+    public void testShouldImportByChunksWithEmptyLinesAtChunkBoundaries(TestContext context) throws Exception {
+        final Async async = context.async();
+        final String path = importDirectory().toString();
+        final CsvFeeder feeder = new CsvFeeder(test.vertx(), 2);
+        final Importer importer = Importer.getInstance();
+        importer.init(Neo4j.getInstance(), test.vertx(), "CSV", "fr", false, false, false, resInit -> {
+            context.assertEquals("ok", resInit.body().getString("status"));
+            try {
+                feeder.launch(importer, path, null, res -> {
+                    context.assertEquals("ok", res.body().getString("status"));
+                    CompositeFuture.all(
+                            count("MATCH (:Structure {externalId : {structure}})<-[:DEPENDS]-(:ProfileGroup)<-[:IN]-(u:User) " +
+                                    "WHERE HEAD(u.profiles) = 'Student' RETURN COUNT(DISTINCT u) as nb"),
+                            // end of the Relative file : linkRelativeToStructure
+                            count("MATCH (:Structure {externalId : {structure}})<-[:DEPENDS]-(:ProfileGroup)<-[:IN]-(u:User) " +
+                                    "WHERE HEAD(u.profiles) = 'Relative' RETURN COUNT(DISTINCT u) as nb"),
+                            // linkRelativeToClass
+                            count("MATCH (:Structure {externalId : {structure}})<-[:BELONGS]-(:Class)<-[:DEPENDS]-(:ProfileGroup)" +
+                                    "<-[:IN]-(u:User) WHERE HEAD(u.profiles) = 'Relative' RETURN COUNT(DISTINCT u) as nb"),
+                            // addRelativeProperties
+                            count("MATCH (u:User {source : 'CSV'})-[:RELATED]->(:User) " +
+                                    "WHERE HEAD(u.profiles) = 'Student' AND HAS(u.relative) RETURN COUNT(DISTINCT u) as nb")
+                    ).setHandler(context.asyncAssertSuccess(counts -> {
+                        context.assertEquals(5, counts.<Integer>resultAt(0), "students lost at a chunk boundary");
+                        context.assertEquals(2, counts.<Integer>resultAt(1));
+                        context.assertEquals(2, counts.<Integer>resultAt(2));
+                        context.assertEquals(2, counts.<Integer>resultAt(3));
+                        async.complete();
+                    }));
+                });
+            } catch (Exception e) {
+                context.fail(e);
+                async.complete();
+            }
+        });
+    }
+}
@@ -0,0 +1,88 @@
+package org.entcore.feeder.csv;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class CsvSpillTest {
+
+    private static Path csv(String... lines) throws IOException {
+        final Path file = Files.createTempFile("spill", ".csv");
+        Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+
+    private static List<List<String>> read(String file, int skipLines) throws IOException {
+        final List<List<String>> rows = new ArrayList<>();
+        try (CsvSpill.Rows r = CsvSpill.open(file, "UTF-8", skipLines)) {
+            String[] row;
+            while ((row = r.readNext()) != null) {
+                rows.add(Arrays.asList(row));
+            }
+        }
+        return rows;
+    }
+
+    private static void spill(String file, String[]... rows) throws IOException {
+        final CsvSpill.Writer writer = CsvSpill.create(file);
+        Assert.assertNotNull(writer);
+        try {
+            for (String[] row : rows) {
+                writer.write(row);
+            }
+            writer.commit();
+        } finally {
+            writer.abort();
+        }
+    }
+
+    @Test
+    public void testSpilledRowsAreReadInsteadOfTheCsv() throws Exception {
+        final String file = csv("Nom;Prenom", "Martin;Louise").toString();
+        try {
+            // different from the CSV to make sure the spill is read
+            spill(file, new String[]{"Nom", "Prénom"}, new String[]{"Martin", null}, new String[]{""});
+            Assert.assertTrue(CsvSpill.exists(file));
+            Assert.assertEquals(Arrays.asList(Arrays.asList("Nom", "Prénom"), Arrays.asList("Martin", ""),
+                    Arrays.asList("")), read(file, 0));
+            Assert.assertEquals(Arrays.asList(Arrays.asList("Martin", ""), Arrays.asList("")), read(file, 1));
+        } finally {
+            CsvSpill.delete(file);
+        }
+        Assert.assertFalse(CsvSpill.exists(file));
+        Assert.assertEquals(Arrays.asList(Arrays.asList("Nom", "Prenom"), Arrays.asList("Martin", "Louise")),
+                read(file, 0));
+    }
+
+    @Test
+    public void testModifiedFileIsParsedAgain() throws Exception {
+        final Path path = csv("Nom;Prenom", "Martin;Louise");
+        final String file = path.toString();
+        try {
+            spill(file, new String[]{"Nom", "Prenom"});
+            Files.write(path, Arrays.asList("Nom;Prenom", "Martin;Louise", "Petit;Lucas"), StandardCharsets.UTF_8);
+            Assert.assertFalse(CsvSpill.exists(file));
+            Assert.assertEquals(3, read(file, 0).size());
+        } finally {
+            CsvSpill.delete(file);
+        }
+    }
+
+    @Test
+    public void testAbortedSpillIsNotRead() throws Exception {
+        final String file = csv("Nom;Prenom", "Martin;Louise").toString();
+        final CsvSpill.Writer writer = CsvSpill.create(file);
+        Assert.assertNotNull(writer);
+        writer.write(new String[]{"Nom", "Prenom"});
+        writer.abort();
+        Assert.assertFalse(CsvSpill.exists(file));
+    }
+
+}
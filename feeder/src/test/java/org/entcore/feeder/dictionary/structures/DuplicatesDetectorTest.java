@@ -0,0 +1,131 @@
+package org.entcore.feeder.dictionary.structures;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+@RunWith(VertxUnitRunner.class)
+public class DuplicatesDetectorTest {
+
+    private static final String[] FIRST_NAMES = {"Marie", "Jean", "Anaïs", "Léa", "Hugo", "Jean Pierre", "Chloé",
+            "Lucas", "Inès", "Mathéo", "Noémie", "Gabriel"};
+    private static final String[] LAST_NAMES = {"Martin", "Bernard", "Dubois", "Thomas", "Robert", "Petit",
+            "Durand", "Lefèvre", "Moreau", "Le Gall", "Girard", "Mercier"};
+    private static final String[] SOURCES = {"AAF", "AAF1D", "CSV", "MANUAL"};
+
+    private static JsonObject user(String id, String firstName, String lastName, String birthDate, String source,
+            boolean modified) {
+        return new JsonObject().put("id", id).put("firstName", firstName).put("lastName", lastName)
+                .put("birthDate", birthDate).put("source", source).put("modified", modified);
+    }
+
+    private static Set<String> pairs(List<JsonObject> rows) {
+        final Set<String> pairs = new HashSet<>();
+        for (JsonObject row : rows) {
+            final String s = row.getString("sId");
+            final String d = row.getString("dId");
+            pairs.add(s.compareTo(d) < 0 ? s + "|" + d : d + "|" + s);
+        }
+        return pairs;
+    }
+
+    @Test
+    public void testDetectDuplicates(final TestContext context) {
+        final DuplicatesDetector detector = new DuplicatesDetector();
+        detector.add(user("u1", "Anaïs", "Lefèvre", "2010-05-01", "AAF", true));
+        detector.add(user("u2", "anais", "LEFEVRE", "2010-05-01", "CSV", false));
+        detector.add(user("u3", "Anaïs", "Lefèvre", "2010-05-01", "AAF1D", false));
+        detector.add(user("u4", "Anaïs", "Lefèvre", "2011-05-01", "CSV", false));
+        detector.add(user("u5", "Hugo", "Petit", "2009-01-01", "AAF", false));
+        detector.add(user("u6", "Hugo", "Petit", "2009-01-01", "CSV", false));
+        final List<JsonObject> rows = detector.detect();
+        context.assertEquals(2, rows.size(), "Found " + rows);
+        final Set<String> pairs = pairs(rows);
+        context.assertTrue(pairs.contains("u1|u2"), "accents and case should be ignored");
+        context.assertTrue(pairs.contains("u1|u4"), "names are enough without the birth date");
+        context.assertFalse(pairs.contains("u1|u3"), "AAF and AAF1D users are not deduplicated");
+        context.assertFalse(pairs.contains("u5|u6"), "users not modified since the last search are not compared");
+        for (JsonObject row : rows) {
+            context.assertEquals("u1", row.getString("sId"));
+            context.assertTrue(row.getInteger("score") > 3);
+        }
+    }
+
+    @Test
+    public void testDisappearingUserOfSameSource(final TestContext context) {
+        final DuplicatesDetector detector = new DuplicatesDetector();
+        detector.add(user("u1", "Marie", "Durand", "2008-03-12", "CSV", true));
+        detector.add(user("u2", "Marie", "Durand", "2008-03-12", "CSV", false).put("disappearanceDate", 1L));
+        detector.add(user("u3", "Marie", "Durand", "2008-03-12", "CSV", false));
+        context.assertEquals(Collections.singleton("u1|u2"), pairs(detector.detect()));
+    }
+
+    @Test
+    public void testSameResultsAsExhaustiveScoring(final TestContext context) {
+        final Random random = new Random(42);
+        final List<JsonObject> users = new ArrayList<>();
+        for (int i = 0; i < 4000; i++) {
+            String firstName = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            if (random.nextInt(10) == 0) {
+                lastName = lastName.substring(0, lastName.length() - 1); // typo
+            } else if (random.nextInt(10) == 0) {
+                lastName = lastName.toUpperCase();
+            }
+            final String birthDate = random.nextInt(20) == 0 ? null :
+                    (2005 + random.nextInt(4)) + "-0" + (1 + random.nextInt(9)) + "-1" + random.nextInt(10);
+            final JsonObject u = user("u" + i, firstName, lastName, birthDate,
+                    SOURCES[random.nextInt(SOURCES.length)], random.nextInt(4) == 0);
+            if (random.nextInt(5) == 0) {
+                u.put("email", firstName.toLowerCase().replace(' ', '.') + "@example.com");
+            }
+            if (random.nextInt(30) == 0) {
+                u.put("disappearanceDate", 1L);
+            }
+            users.add(u);
+        }
+
+        final DuplicatesDetector detector = new DuplicatesDetector();
+        final List<DuplicatesDetector.Candidate> candidates = new ArrayList<>();
+        for (JsonObject u : users) {
+            detector.add(u);
+            candidates.add(new DuplicatesDetector.Candidate(u));
+        }
+        final Set<String> detected = pairs(detector.detect());
+
+        final Set<String> expected = new HashSet<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            final DuplicatesDetector.Candidate c0 = candidates.get(i);
+            for (int j = i + 1; j < candidates.size(); j++) {
+                final DuplicatesDetector.Candidate c1 = candidates.get(j);
+                final JsonObject u0 = users.get(i);
+                final JsonObject u1 = users.get(j);
+                if (!u0.getBoolean("modified") && !u1.getBoolean("modified")) continue;
+                final boolean duplicate = (u0.getBoolean("modified") && DuplicatesDetector.isDuplicate(c0, c1)) ||
+                        (u1.getBoolean("modified") && DuplicatesDetector.isDuplicate(c1, c0));
+                if (DuplicatesDetector.score(c0, c1) > 3 && duplicate) {
+                    expected.add(u0.getString("id").compareTo(u1.getString("id")) < 0 ?
+                            u0.getString("id") + "|" + u1.getString("id") : u1.getString("id") + "|" + u0.getString("id"));
+                }
+            }
+        }
+
+        final Set<String> truePositives = new HashSet<>(detected);
+        truePositives.retainAll(expected);
+        final double precision = detected.isEmpty() ? 1 : (double) truePositives.size() / detected.size();
+        final double recall = expected.isEmpty() ? 1 : (double) truePositives.size() / expected.size();
+        context.assertTrue(expected.size() > 0);
+        context.assertEquals(1.0, precision, "precision");
+        context.assertEquals(1.0, recall, "recall");
+    }
+
+}
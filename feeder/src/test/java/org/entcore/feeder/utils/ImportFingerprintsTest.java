@@ -0,0 +1,172 @@
+package org.entcore.feeder.utils;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.common.neo4j.Neo4j;
+import org.entcore.common.neo4j.TransactionHelper;
+import org.entcore.common.schema.Source;
+import org.entcore.test.TestHelper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+@RunWith(VertxUnitRunner.class)
+public class ImportFingerprintsTest {
+    private static final TestHelper test = TestHelper.helper();
+    private static final String NODE = "MERGE (u:User {externalId : row.externalId}) SET u.checksum = row.checksum";
+    private static final long NODE_QUERY_BYTES = "UNWIND {rows} AS row ".length() + NODE.length();
+    private static final String LINK = "MATCH (u:User {externalId : row.externalId}), (c:Class) MERGE u-[:IN]->c";
+
+    private static JsonObject config() throws IOException {
+        return new JsonObject().put("path", Files.createTempDirectory("fingerprints").toString());
+    }
+
+    private static Path file(JsonObject config) {
+        return Paths.get(config.getString("path"), "AAF.fingerprints");
+    }
+
+    private static JsonObject user(String externalId, String checksum) {
+        return new JsonObject().put("externalId", externalId).put("checksum", checksum);
+    }
+
+    private static TransactionHelper transaction() {
+        // with a transaction id and less rows than statementNumber, nothing is sent
+        return new TransactionHelper(Neo4j.getSpecificInstance(), Source.AAF, 1000, 1);
+    }
+
+    private static Future<ImportFingerprints> load(JsonObject config) {
+        final ImportFingerprints fingerprints = new ImportFingerprints(test.vertx(), config, "AAF", false);
+        return fingerprints.load().map(v -> fingerprints);
+    }
+
+    /**
+     * Writes the node row of the user, then a relationship row which is not part of its fingerprint.
+     */
+    private static boolean importUser(ImportFingerprints fingerprints, TransactionHelper tx, JsonObject user) {
+        final ImportFingerprints.Entry entry = fingerprints.entry(tx, "Student", user, "AAF");
+        final boolean unchanged = entry.unchanged();
+        if (!unchanged) {
+            tx.addBatch(NODE, user.getString("externalId"), user);
+            entry.written();
+        }
+        tx.addBatch(LINK, user.getString("externalId"), new JsonObject().put("externalId", user.getString("externalId")));
+        return unchanged;
+    }
+
+    @Test
+    public void testUnchangedUserIsSkippedAfterSave(TestContext context) throws Exception {
+        final Async async = context.async();
+        final JsonObject config = config();
+        final JsonObject u1 = user("u1", "c1");
+        // the first row of a batch carries the query, all characters are ASCII
+        final long nodeBytes = NODE_QUERY_BYTES + u1.encode().length();
+        load(config).compose(run1 -> {
+            context.assertTrue(run1.getStats().getBoolean("full"), "no fingerprints : full import");
+            context.assertFalse(importUser(run1, transaction(), u1));
+            context.assertFalse(importUser(run1, transaction(), user("u2", "c2")));
+            return run1.save();
+        }).compose(v -> load(config)).compose(run2 -> {
+            final TransactionHelper tx = transaction();
+            context.assertTrue(importUser(run2, tx, u1.copy()));
+            context.assertFalse(importUser(run2, tx, user("u2", "changed")));
+            // only the relationship rows of u1 are replayed
+            context.assertEquals(3L, tx.getStatementsCount());
+            final JsonObject stats = run2.getStats();
+            context.assertFalse(stats.getBoolean("full"));
+            context.assertEquals(1L, stats.getLong("skipped"));
+            context.assertEquals(1L, stats.getLong("written"));
+            context.assertEquals(1L, stats.getLong("statementsAvoided"));
+            context.assertEquals(nodeBytes, stats.getLong("bytesAvoided"));
+            return run2.save();
+        }).compose(v -> load(config)).setHandler(context.asyncAssertSuccess(run3 -> {
+            // u1 keeps the fingerprint of its last write, u2 the one of its change
+            context.assertTrue(importUser(run3, transaction(), u1));
+            context.assertTrue(importUser(run3, transaction(), user("u2", "changed")));
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void testFingerprintsExpireAfterFullImportDelay(TestContext context) throws Exception {
+        final Async async = context.async();
+        final JsonObject config = config().put("full-import-delay", 3600 * 1000L);
+        final JsonObject u1 = user("u1", "c1");
+        final String[] lastFullImport = new String[1];
+        load(config).compose(run1 -> {
+            importUser(run1, transaction(), u1);
+            return run1.save();
+        }).compose(v -> {
+            try {
+                lastFullImport[0] = Files.readAllLines(file(config), StandardCharsets.UTF_8).get(0);
+            } catch (IOException e) {
+                return Future.failedFuture(e);
+            }
+            return load(config);
+        }).compose(run2 -> {
+            context.assertTrue(importUser(run2, transaction(), u1));
+            return run2.save();
+        }).compose(v -> {
+            final List<String> lines;
+            try {
+                lines = Files.readAllLines(file(config), StandardCharsets.UTF_8);
+                context.assertEquals(lastFullImport[0], lines.get(0), "a partial import keeps the date of the full import");
+                lines.set(0, Long.toString(Long.parseLong(lines.get(0)) - 2 * 3600 * 1000L));
+                Files.write(file(config), lines, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                return Future.failedFuture(e);
+            }
+            return load(config);
+        }).compose(run3 -> {
+            context.assertTrue(run3.getStats().getBoolean("full"), "fingerprints too old : full import");
+            context.assertFalse(importUser(run3, transaction(), u1));
+            return run3.save();
+        }).compose(v -> load(config)).setHandler(context.asyncAssertSuccess(run4 -> {
+            // the full import resets the date
+            context.assertFalse(run4.getStats().getBoolean("full"));
+            context.assertTrue(importUser(run4, transaction(), u1));
+            async.complete();
+        }));
+    }
+
+    @Test
+    public void testUserWrittenTwiceIsAlwaysWritten(TestContext context) throws Exception {
+        final Async async = context.async();
+        final JsonObject config = config();
+        final JsonObject u1 = user("u1", "c1");
+        load(config).compose(run1 -> {
+            final TransactionHelper tx = transaction();
+            context.assertFalse(importUser(run1, tx, u1));
+            // e.g. a user imported in two structures
+            context.assertFalse(importUser(run1, tx, u1.copy()));
+            return run1.save();
+        }).compose(v -> {
+            try {
+                // the second node row starts a new batch after the relationship row of u1
+                context.assertTrue(Files.readAllLines(file(config), StandardCharsets.UTF_8).contains("Student:u1\t\t2\t" +
+                        2 * (NODE_QUERY_BYTES + u1.encode().length())));
+            } catch (IOException e) {
+                return Future.failedFuture(e);
+            }
+            return load(config);
+        }).compose(run2 -> {
+            final TransactionHelper tx = transaction();
+            context.assertFalse(importUser(run2, tx, u1));
+            context.assertFalse(importUser(run2, tx, u1.copy()));
+            context.assertEquals(0L, run2.getStats().getLong("skipped"));
+            return run2.save();
+        }).compose(v -> load(config)).setHandler(context.asyncAssertSuccess(run3 -> {
+            context.assertFalse(importUser(run3, transaction(), u1));
+            async.complete();
+        }));
+    }
+
+}
@@ -0,0 +1,4 @@
+// Indexes of the timeline mail digests (mail-digest option), read by date for the recipients and by user for the counters
+db.timeline.digests.createIndex({"userId": 1, "date": 1}, {background: true});
+// Expire the digests after 30 days, the weekly mails only read the last 7 days
+db.timeline.digests.createIndex({"date": 1}, {expireAfterSeconds: 2592000, background: true});
@@ -0,0 +1,136 @@
+/* Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ */
+
+package org.entcore.session;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.VertxOptions;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link MapSessionStore} and {@link BinarySessionStore} for get, put and drop with 100k stored sessions.
+ * <p>
+ *     The hazelcast mode starts a clustered Vert.x with a single Hazelcast member, so the maps serialize their
+ *     entries as they do in production. The local maps of {@link MapSessionStore} are not thread-safe : run the
+ *     local mode with one thread ({@code -t 1}).
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class BinarySessionStoreBenchmark {
+
+	@Param({"map", "binary"})
+	public String store;
+
+	@Param({"local", "hazelcast"})
+	public String mode;
+
+	@Param({"100000"})
+	public int sessionsNumber;
+
+	private Vertx vertx;
+	private SessionStore sessionStore;
+	private String[] sessionIds;
+	private String[] userIds;
+
+	@Setup(Level.Trial)
+	public void setUp() throws Exception {
+		final boolean cluster = "hazelcast".equals(mode);
+		if (cluster) {
+			final CompletableFuture<Vertx> future = new CompletableFuture<>();
+			Vertx.clusteredVertx(new VertxOptions().setClusterManager(new HazelcastClusterManager()), ar -> {
+				if (ar.succeeded()) {
+					future.complete(ar.result());
+				} else {
+					future.completeExceptionally(ar.cause());
+				}
+			});
+			vertx = future.get(60, TimeUnit.SECONDS);
+		} else {
+			vertx = Vertx.vertx();
+		}
+		final JsonObject config = new JsonObject();
+		sessionStore = "binary".equals(store) ? new BinarySessionStore(vertx, cluster, config) :
+				new MapSessionStore(vertx, cluster, config);
+		sessionIds = new String[sessionsNumber];
+		userIds = new String[sessionsNumber];
+		for (int i = 0; i < sessionsNumber; i++) {
+			userIds[i] = UUID.randomUUID().toString();
+			sessionIds[i] = UUID.randomUUID().toString();
+			sessionStore.putSession(userIds[i], sessionIds[i], session(userIds[i]), false, ar -> {});
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		final CompletableFuture<Void> future = new CompletableFuture<>();
+		vertx.close(ar -> future.complete(null));
+		future.get(60, TimeUnit.SECONDS);
+	}
+
+	private static JsonObject session(String userId) {
+		return new JsonObject().put("userId", userId).put("login", "login." + userId.substring(0, 8))
+				.put("username", "Firstname Lastname").put("type", "Student")
+				.put("structures", new JsonArray().add(UUID.randomUUID().toString()))
+				.put("classes", new JsonArray().add(UUID.randomUUID().toString()))
+				.put("groupsIds", new JsonArray().add(UUID.randomUUID().toString()).add(UUID.randomUUID().toString()))
+				.put("authorizedActions", new JsonArray().add(new JsonObject().put("name", "action")
+						.put("displayName", "app.action").put("type", "SECURED_ACTION_WORKFLOW")))
+				.put("apps", new JsonArray()).put("cache", new JsonObject());
+	}
+
+	@Benchmark
+	public void getSession(Blackhole bh) {
+		final String sessionId = sessionIds[ThreadLocalRandom.current().nextInt(sessionsNumber)];
+		sessionStore.getSession(sessionId, ar -> bh.consume(ar.result()));
+	}
+
+	@Benchmark
+	public void putAndDropSession(Blackhole bh) {
+		final String userId = userIds[ThreadLocalRandom.current().nextInt(sessionsNumber)];
+		final String sessionId = UUID.randomUUID().toString();
+		sessionStore.putSession(userId, sessionId, session(userId), false, ar -> bh.consume(ar.succeeded()));
+		sessionStore.dropSession(sessionId, ar -> bh.consume(ar.result()));
+	}
+
+}
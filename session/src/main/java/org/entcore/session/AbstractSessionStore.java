@@ -20,9 +20,16 @@ package org.entcore.session;
 
 import fr.wseduc.mongodb.MongoDb;
 import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonArray;
 import io.vertx.core.json.JsonObject;
 import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
+import org.entcore.common.session.SessionNearCache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public abstract class AbstractSessionStore implements SessionStore {
 
@@ -31,6 +38,8 @@ public abstract class AbstractSessionStore implements SessionStore {
     protected final long prolongedSessionTimeout;
     protected final Vertx vertx;
     protected ActivityManager inactivity;
+    protected final SessionExpiryScheduler expiry;
+    private final int expiryBatchSize;
 
     public AbstractSessionStore(Vertx vertx, JsonObject config, Boolean cluster) {
         this.vertx = vertx;
@@ -59,9 +68,12 @@ public abstract class AbstractSessionStore implements SessionStore {
 		} else {
 			this.prolongedSessionTimeout = 20 * DEFAULT_SESSION_TIMEOUT;
 		}
+        this.expiry = new SessionExpiryScheduler(config.getLong("session-expiry-sweep-period", 10000L));
+        this.expiryBatchSize = config.getInteger("session-expiry-batch-size", 1000);
+        vertx.setPeriodic(expiry.getTick(), timerId -> sweepExpiredSessions());
     }
 
-    protected long setTimer(final String userId, final String sessionId, final boolean secureLocation) {
+    protected void scheduleExpiry(final String userId, final String sessionId, final boolean secureLocation) {
         if (inactivityEnabled()) {
             inactivity.updateLastActivity(sessionId, userId, secureLocation, ar -> {
                 if (ar.failed()) {
@@ -69,41 +81,73 @@ public abstract class AbstractSessionStore implements SessionStore {
                 }
             });
         }
-        return setTimer(userId, sessionId, sessionTimeout, secureLocation);
+        expiry.schedule(sessionId, userId, secureLocation, System.currentTimeMillis() + sessionTimeout);
     }
 
-    protected long setTimer(final String userId, final String sessionId, final long sessionTimeout,
-            final boolean secureLocation) {
-        return vertx.setTimer(sessionTimeout, timerId -> {
-            if (inactivityEnabled()) {
-                inactivity.getLastActivity(sessionId, secureLocation, ar -> {
-                    if (ar.succeeded()) {
-                        final Long lastActivity = ar.result();
-                        if (lastActivity != null) {
-                            final long timeoutTimestamp = lastActivity
-                                    + (secureLocation ? prolongedSessionTimeout : sessionTimeout);
-                            final long now = System.currentTimeMillis();
-                            if (timeoutTimestamp > now) {
-                                final long tId = setTimer(userId, sessionId, (timeoutTimestamp - now), secureLocation);
-                                updateTimerId(userId, sessionId, tId);
-                            } else {
-                                dropSession(sessionId, null);
-                            }
-                        } else {
-                            logger.warn("Null last activity with session " + sessionId);
-                            dropSession(sessionId, null);
-                        }
+    /**
+     * Expires in batch the sessions whose deadline is reached. When inactivity is enabled, the sessions still
+     * active are rescheduled at their last activity plus the timeout.
+     */
+    protected void sweepExpiredSessions() {
+        final long start = System.currentTimeMillis();
+        final List<SessionExpiryScheduler.ScheduledSession> expired = expiry.pollExpired(start);
+        if (expired.isEmpty()) {
+            return;
+        }
+        if (!inactivityEnabled()) {
+            for (SessionExpiryScheduler.ScheduledSession s : expired) {
+                removeCacheSession(s.userId, s.sessionId);
+                SessionNearCache.publishInvalidation(vertx.eventBus(), s.sessionId, s.userId);
+            }
+            expiry.recordSweep(expired.size(), System.currentTimeMillis() - start);
+            return;
+        }
+        final List<String> sessionIds = expired.stream().map(s -> s.sessionId).collect(Collectors.toList());
+        inactivity.getLastActivities(sessionIds, ar -> {
+            final List<String> toDrop = new ArrayList<>();
+            if (ar.succeeded()) {
+                final Map<String, Long> lastActivities = ar.result();
+                final long now = System.currentTimeMillis();
+                for (SessionExpiryScheduler.ScheduledSession s : expired) {
+                    final Long lastActivity = lastActivities.get(s.sessionId);
+                    if (lastActivity == null) {
+                        logger.warn("Null last activity with session " + s.sessionId);
+                        toDrop.add(s.sessionId);
+                        continue;
+                    }
+                    final long timeoutTimestamp = lastActivity
+                            + (s.secureLocation ? prolongedSessionTimeout : sessionTimeout);
+                    if (timeoutTimestamp > now) {
+                        expiry.reschedule(s, timeoutTimestamp);
                     } else {
-                        logger.error("Error getting last activity with session " + sessionId, ar.cause());
-                        dropSession(sessionId, null);
+                        toDrop.add(s.sessionId);
                     }
-                });
+                }
             } else {
-                removeCacheSession(userId, sessionId);
+                logger.error("Error getting last activities of " + sessionIds.size() + " sessions", ar.cause());
+                toDrop.addAll(sessionIds);
             }
+            expireSessions(toDrop);
+            expiry.recordSweep(toDrop.size(), System.currentTimeMillis() - start);
         });
     }
 
+    private void expireSessions(final List<String> sessionIds) {
+        for (int i = 0; i < sessionIds.size(); i += expiryBatchSize) {
+            final List<String> batch = sessionIds.subList(i, Math.min(i + expiryBatchSize, sessionIds.size()));
+            for (String sessionId : batch) {
+                removeStoredSession(sessionId);
+                SessionNearCache.publishInvalidation(vertx.eventBus(), sessionId, null);
+            }
+            inactivity.removeLastActivities(batch, ar -> {
+                if (ar.failed()) {
+                    logger.error("Error when removing last activity of " + batch.size() + " sessions", ar.cause());
+                }
+            });
+            dropMongoDbSessions(batch);
+        }
+    }
+
     @Override
     public boolean inactivityEnabled() {
         return inactivity != null && inactivity.isEnabled();
@@ -111,10 +155,20 @@ public abstract class AbstractSessionStore implements SessionStore {
 
     protected abstract void removeCacheSession(String userId, String sessionId);
 
-    protected abstract void updateTimerId(String userId, String sessionId, long timerId);
+    /**
+     * Removes a session from the store, its user index and the expiry scheduler, without touching the
+     * last activity nor the Mongo session.
+     * @return the removed session or {@code null} if it was not found
+     */
+    protected abstract JsonObject removeStoredSession(String sessionId);
 
     protected void dropMongoDbSession(String sessionId) {
         MongoDb.getInstance().delete(AuthManager.SESSIONS_COLLECTION, new JsonObject().put("_id", sessionId));
     }
 
+    protected void dropMongoDbSessions(List<String> sessionIds) {
+        MongoDb.getInstance().delete(AuthManager.SESSIONS_COLLECTION, new JsonObject().put("_id",
+                new JsonObject().put("$in", new JsonArray(new ArrayList<>(sessionIds)))));
+    }
+
 }
@@ -3,6 +3,9 @@ package org.entcore.session;
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Handler;
 
+import java.util.Collection;
+import java.util.Map;
+
 public interface ActivityManager {
 
     long LAST_ACTIVITY_DELAY = 3 * 60000l;
@@ -13,6 +16,10 @@ public interface ActivityManager {
 
     void removeLastActivity(String sessionId, Handler<AsyncResult<Void>> handler);
 
+    void getLastActivities(Collection<String> sessionIds, Handler<AsyncResult<Map<String, Long>>> handler);
+
+    void removeLastActivities(Collection<String> sessionIds, Handler<AsyncResult<Void>> handler);
+
     boolean isEnabled();
 
 }
@@ -35,12 +35,15 @@ import io.vertx.core.shareddata.LocalMap;
 import org.apache.commons.lang3.tuple.Pair;
 import org.entcore.common.cache.CacheService;
 import org.entcore.common.neo4j.Neo4j;
+import org.entcore.common.neo4j.Neo4jResultCache;
 import org.entcore.common.redis.Redis;
+import org.entcore.common.session.SessionNearCache;
 import org.entcore.common.session.SessionRecreationRequest;
 import org.entcore.common.utils.StringUtils;
 import org.vertx.java.busmods.BusModBase;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -53,10 +56,12 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 	public static final String OAUTH_AUTH_INFO_COLLECTION = "authorizations";
 	public static final String OAUTH_ACCESS_TOKEN_COLLECTION = "tokens";
 	public static final String CAS_COLLECTION = "authcas";
+	public static final String SESSION_RIGHTS_CACHE = "session.rights";
 
 	protected MongoDb mongo;
 	protected Neo4j neo4j;
 	protected SessionStore sessionStore;
+	protected StructureMappingIndex structureMappingIndex;
 	protected CacheService OAuthCacheService;
 	protected Boolean cluster;
 	protected boolean xsrfOnAuth;
@@ -74,7 +79,13 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		mongo = MongoDb.getInstance();
 		mongo.init(vertx.eventBus(), node + config.getString("mongo-address", "wse.mongodb.persistor"));
 
-		sessionStore = new MapSessionStore(vertx, cluster, config);
+		if ("binary".equals(config.getString("session-store"))) {
+			sessionStore = new BinarySessionStore(vertx, cluster, config);
+		} else {
+			sessionStore = new MapSessionStore(vertx, cluster, config);
+		}
+		structureMappingIndex = new StructureMappingIndex(vertx, neo4j,
+				config.getJsonObject("structure-mapping-index", new JsonObject()));
 
 		this.xsrfOnAuth = config.getBoolean("xsrfOnAuth", true);
 
@@ -231,6 +242,8 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 
 		Handler<Either<String, Void>> finalHandler = event ->
 		{
+			// permanent sessions and tokens of the user may be served by the near-caches
+			SessionNearCache.publishInvalidation(eb, null, userId);
 			if (event.isRight()) {
 				sendOK(message);
 			} else {
@@ -338,6 +351,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 										continue;
 									}
 
+									SessionNearCache.publishInvalidation(eb, tokenId, null);
 									if(OAuthCacheService != null)
 									{
 										String tokenKey = "AppOAuthResourceProvider:token:" + tokenId;
@@ -527,6 +541,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 				// TODO update metrics
 				if(sessionId != null && !request.isRefreshOnly()) {
 					sessionStore.dropSession(sessionId, dropSessionResult -> {
+						SessionNearCache.publishInvalidation(eb, sessionId, null);
 						if(dropSessionResult.succeeded()) {
 							logger.debug("Successfully deleted " + userId+ "'s old session");
 						} else {
@@ -750,6 +765,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 
 	private void dropSession(Message<JsonObject> message, String sessionId, JsonObject meta) {
 		sessionStore.dropSession(sessionId, ar -> {
+			SessionNearCache.publishInvalidation(eb, sessionId, null);
 			if (ar.succeeded()) {
 				if (getOrElse(config.getBoolean("slo"), false)) {
 					final String userId = ar.result().getString("userId");
@@ -802,6 +818,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 
 		sessionStore.addCacheAttribute(sessionId, key, value, ar -> {
 			if (ar.succeeded()) {
+				SessionNearCache.publishInvalidation(eb, sessionId, null);
 				sendOK(message);
 			} else {
 				logger.error("Error adding cache attribute in session", ar.cause());
@@ -830,6 +847,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 
 		sessionStore.addCacheAttributeByUserId(userId, key, value, ar -> {
 			if (ar.succeeded()) {
+				SessionNearCache.publishInvalidation(eb, null, userId);
 				sendOK(message);
 			} else {
 				logger.error("Error adding cache attribute in session", ar.cause());
@@ -853,6 +871,7 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 
 		sessionStore.dropCacheAttributeByUserId(userId, key, ar -> {
 			if (ar.succeeded()) {
+				SessionNearCache.publishInvalidation(eb, null, userId);
 				sendOK(message);
 			} else {
 				logger.error("Error dropping cache attribute in session", ar.cause());
@@ -880,15 +899,12 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 				"COLLECT(distinct gp.id) as groupsIds, n.federatedIDP as federatedIDP, n.functions as aafFunctions, " +
 				"REDUCE(acc=[], pRed IN COLLECT(COALESCE(s.optionEnabled, [])) | pRed+acc ) as optionEnabled";
 		final String query2 =
-				"MATCH (n:User {id : {id}})-[:IN]->()-[:AUTHORIZED]->(:Role)-[:AUTHORIZE]->(a:Action)" +
-				"<-[:PROVIDE]-(app:Application) " +
-				"WHERE HAS(n.login) " +
+				"MATCH (g)-[:AUTHORIZED]->(:Role)-[:AUTHORIZE]->(a:Action)<-[:PROVIDE]-(app:Application) " +
 				"RETURN DISTINCT COLLECT(distinct [a.name,a.displayName,a.type]) as authorizedActions, " +
 				"COLLECT(distinct [app.name,app.address,app.icon,app.target,app.displayName,app.display,app.prefix,app.casType,app.scope,app:External]) as apps";
 		final String query3 =
-				"MATCH (u:User {id: {id}})-[:IN]->(g:Group)-[auth:AUTHORIZED]->(w:Widget) " +
-				"WHERE HAS(u.login) " +
-				"AND ( NOT(w<-[:HAS_WIDGET]-(:Application)-[:PROVIDE]->(:WorkflowAction)) " +
+				"MATCH (g)-[auth:AUTHORIZED]->(w:Widget) " +
+				"WHERE ( NOT(w<-[:HAS_WIDGET]-(:Application)-[:PROVIDE]->(:WorkflowAction)) " +
 				"XOR w<-[:HAS_WIDGET]-(:Application)-[:PROVIDE]->(:WorkflowAction)<-[:AUTHORIZE]-(:Role)<-[:AUTHORIZED]-g )  " +
 				"OPTIONAL MATCH (w)<-[:HAS_WIDGET]-(app:Application) " +
 				"WITH w, app, collect(auth) as authorizations " +
@@ -900,182 +916,60 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 					"application: app.name, " +
 					"mandatory: ANY(a IN authorizations WHERE HAS(a.mandatory) AND a.mandatory = true)"+
 				"}) as widgets";
-		final String query4 = "MATCH (s:Structure) return s.id as id, s.externalId as externalId";
-		final String query5 = "MATCH (u:User {id: {id}})-[:PREFERS]->(uac:UserAppConf) RETURN uac AS preferences";
+		final String query4 = "MATCH (u:User {id: {id}})-[:PREFERS]->(uac:UserAppConf) RETURN uac AS preferences";
 		JsonObject params = new JsonObject();
 		params.put("id", userId);
+		if (neo4j.isResultCacheEnabled(SESSION_RIGHTS_CACHE)) {
+			// actions and widgets only depend on the groups of the user, so they are shared by the users of the same groups
+			JsonArray statements = new fr.wseduc.webutils.collections.JsonArray()
+					.add(new JsonObject().put("statement", query).put("parameters", params))
+					.add(new JsonObject().put("statement", query4).put("parameters", params));
+			neo4j.executeTransaction(statements, null, true, false, true, message -> {
+				final JsonArray results = message.body().getJsonArray("results");
+				if (!"ok".equals(message.body().getString("status")) || results == null || results.size() != 2 ||
+						results.getJsonArray(0).size() == 0) {
+					handler.handle(null);
+					return;
+				}
+				final JsonArray groupIds = new fr.wseduc.webutils.collections.JsonArray(
+						getOrElse(results.getJsonArray(0).getJsonObject(0).getJsonArray("groupsIds"),
+								new fr.wseduc.webutils.collections.JsonArray()).stream()
+						.filter(g -> g != null).map(Object::toString).sorted().distinct().collect(Collectors.toList()));
+				final JsonObject groupParams = new JsonObject().put("groupIds", groupIds);
+				final String groups = "MATCH (g:Group) WHERE g.id IN {groupIds} WITH g ";
+				final JsonArray rightsStatements = new fr.wseduc.webutils.collections.JsonArray()
+						.add(new JsonObject().put("statement", groups + query2).put("parameters", groupParams))
+						.add(new JsonObject().put("statement", groups + query3).put("parameters", groupParams));
+				neo4j.executeTransactionCached(SESSION_RIGHTS_CACHE, Collections.singletonList(Neo4jResultCache.TAG_ACTIONS),
+						rightsStatements, rightsMessage -> {
+					final JsonArray rights = rightsMessage.body().getJsonArray("results");
+					if ("ok".equals(rightsMessage.body().getString("status")) && rights != null && rights.size() == 2) {
+						sessionInfos(userId, new fr.wseduc.webutils.collections.JsonArray()
+								.add(results.getJsonArray(0))
+								.add(rights.getJsonArray(0))
+								.add(rights.getJsonArray(1))
+								.add(results.getJsonArray(1)), handler);
+					} else {
+						handler.handle(null);
+					}
+				});
+			});
+			return;
+		}
+		final String userGroups = "MATCH (n:User {id : {id}})-[:IN]->(g:Group) WHERE HAS(n.login) WITH DISTINCT g ";
 		JsonArray statements = new fr.wseduc.webutils.collections.JsonArray()
 				.add(new JsonObject().put("statement", query).put("parameters", params))
-				.add(new JsonObject().put("statement", query2).put("parameters", params))
-				.add(new JsonObject().put("statement", query3).put("parameters", params))
-				.add(new JsonObject().put("statement", query4))
-				.add(new JsonObject().put("statement", query5).put("parameters", params));
+				.add(new JsonObject().put("statement", userGroups + query2).put("parameters", params))
+				.add(new JsonObject().put("statement", userGroups + query3).put("parameters", params))
+				.add(new JsonObject().put("statement", query4).put("parameters", params));
 		neo4j.executeTransaction(statements, null, true, false, true,
 				new Handler<Message<JsonObject>>() {
 
 			@Override
 			public void handle(Message<JsonObject> message) {
 				JsonArray results = message.body().getJsonArray("results");
-				if ("ok".equals(message.body().getString("status")) && results != null && results.size() == 5 &&
-						results.getJsonArray(0).size() > 0 && results.getJsonArray(1).size() > 0) {
-					JsonObject j = results.getJsonArray(0).getJsonObject(0);
-					JsonObject j2 = results.getJsonArray(1).getJsonObject(0);
-					JsonObject j3 = results.getJsonArray(2).getJsonObject(0);
-					JsonObject structureMapping = new JsonObject();
-					for (Object o : results.getJsonArray(3)) {
-						if (!(o instanceof JsonObject)) continue;
-						JsonObject jsonObject = (JsonObject) o;
-						structureMapping.put(jsonObject.getString("externalId"), jsonObject.getString("id"));
-					}
-					j.put("userId", userId);
-					JsonObject functions = new JsonObject();
-					JsonArray actions = new fr.wseduc.webutils.collections.JsonArray();
-					JsonArray apps = new fr.wseduc.webutils.collections.JsonArray();
-					for (Object o : getOrElse(j2.getJsonArray("authorizedActions"), new fr.wseduc.webutils.collections.JsonArray())) {
-						if (!(o instanceof JsonArray)) continue;
-						JsonArray a = (JsonArray) o;
-						actions.add(new JsonObject()
-								.put("name", a.getString(0))
-								.put("displayName", a.getString(1))
-								.put("type", a.getString(2)));
-					}
-					for (Object o : getOrElse(j2.getJsonArray("apps"), new fr.wseduc.webutils.collections.JsonArray())) {
-						if (!(o instanceof JsonArray)) continue;
-						JsonArray a = (JsonArray) o;
-						apps.add(new JsonObject()
-										.put("name", (String) a.getString(0))
-										.put("address", (String) a.getString(1))
-										.put("icon", (String) a.getString(2))
-										.put("target", (String) a.getString(3))
-										.put("displayName", (String) a.getString(4))
-										.put("display", ((a.getValue(5) == null) || a.getBoolean(5)))
-										.put("prefix", (String) a.getString(6))
-										.put("casType", (String) a.getString(7))
-										.put("scope", (JsonArray) a.getJsonArray(8))
-										.put("isExternal", a.getBoolean(9))
-						);
-					}
-					for (Object o : getOrElse(j.getJsonArray("aafFunctions"), new fr.wseduc.webutils.collections.JsonArray())) {
-						if (o == null) continue;
-						String [] sf = o.toString().split("\\$");
-						if (sf.length == 5) {
-							JsonObject jo = functions.getJsonObject(sf[1]);
-							if (jo == null) {
-								jo = new JsonObject().put("code", sf[1])
-										.put("functionName", sf[2])
-										.put("scope", new fr.wseduc.webutils.collections.JsonArray())
-										.put("structureExternalIds", new fr.wseduc.webutils.collections.JsonArray())
-										.put("subjects", new JsonObject());
-								functions.put(sf[1], jo);
-							}
-							JsonObject subject = jo.getJsonObject("subjects").getJsonObject(sf[3]);
-							if (subject == null) {
-								subject = new JsonObject()
-										.put("subjectCode", sf[3])
-										.put("subjectName", sf[4])
-										.put("scope", new fr.wseduc.webutils.collections.JsonArray())
-										.put("structureExternalIds", new fr.wseduc.webutils.collections.JsonArray());
-								jo.getJsonObject("subjects").put(sf[3], subject);
-							}
-							jo.getJsonArray("structureExternalIds").add(sf[0]);
-							subject.getJsonArray("structureExternalIds").add(sf[0]);
-							String sid = structureMapping.getString(sf[0]);
-							if (sid != null) {
-								jo.getJsonArray("scope").add(sid);
-								subject.getJsonArray("scope").add(sid);
-							}
-						}
-					}
-					j.remove("aafFunctions");
-					for (Object o : getOrElse(j.getJsonArray("functions"), new fr.wseduc.webutils.collections.JsonArray())) {
-						if (!(o instanceof JsonArray)) continue;
-						JsonArray a = (JsonArray) o;
-						String code = a.getString(0);
-						if (code != null) {
-							functions.put(code, new JsonObject()
-									.put("code", code)
-									.put("scope", a.getJsonArray(1))
-							);
-						}
-					}
-					final JsonObject children = new JsonObject();
-					final List<String> childrenIds = new ArrayList<String>();
-					for (Object o : getOrElse(j.getJsonArray("childrenInfo"), new fr.wseduc.webutils.collections.JsonArray())) {
-						if (!(o instanceof JsonArray)) continue;
-						final JsonArray a = (JsonArray) o;
-						final String childId = a.getString(0);
-						if (childId != null) {
-							childrenIds.add(childId);
-							JsonObject jo = children.getJsonObject(childId);
-							if (jo == null) {
-								jo = new JsonObject()
-										.put("lastName", a.getString(1))
-										.put("firstName", a.getString(2));
-								children.put(childId, jo);
-							}
-						}
-					}
-					j.remove("childrenInfo");
-					final List<String> classesIds = new ArrayList<String>();
-					final List<String> classesNames = new ArrayList<String>() ;
-					for (Object o : getOrElse(j.getJsonArray("classes"), new fr.wseduc.webutils.collections.JsonArray())) {
-						if (!(o instanceof JsonArray)) continue;
-						final JsonArray c = (JsonArray) o;
-						if (c.getString(0) != null) {
-							classesIds.add(c.getString(0));
-							classesNames.add(c.getString(1));
-						}
-					}
-					j.remove("classes");
-					final List<String> structureIds = new ArrayList<>();
-					final List<String> structureNames = new ArrayList<>();
-					final Set<String> uai = new HashSet<>();
-					boolean hasApp = false;
-					boolean attachedToOneStructure = false;
-					boolean allAttachedStructuresIgnoreMFA = true;
-					for (Object o : getOrElse(j.getJsonArray("structures"), new fr.wseduc.webutils.collections.JsonArray())) {
-						if (!(o instanceof JsonArray)) continue;
-						final JsonArray s = (JsonArray) o;
-						if (s.getString(0) != null) {
-							structureIds.add(s.getString(0));
-							structureNames.add(StringUtils.trimToBlank(s.getString(1)));
-							if (!StringUtils.isEmpty(s.getString(2))) {
-								uai.add(s.getString(2));
-							}
-							if(!hasApp && getOrElse(s.getBoolean(3), false)) {
-								hasApp = true;
-							}
-							if(allAttachedStructuresIgnoreMFA && Boolean.FALSE.equals(getOrElse(s.getBoolean(4), false))) {
-								// This structure does not ignore MFA, so...
-								allAttachedStructuresIgnoreMFA = false;
-							}
-							attachedToOneStructure = true;
-						}
-					}
-					// ignoreMFA is true iif 
-					boolean ignoreMFA = attachedToOneStructure && allAttachedStructuresIgnoreMFA;
-					j.remove("structures");
-					j.put("structures", new fr.wseduc.webutils.collections.JsonArray(structureIds));
-					j.put("structureNames", new fr.wseduc.webutils.collections.JsonArray(structureNames));
-					j.put("uai", new fr.wseduc.webutils.collections.JsonArray(new ArrayList<>(uai)));
-					j.put("hasApp", hasApp);
-					j.put("ignoreMFA", ignoreMFA);
-					j.put("classes", new fr.wseduc.webutils.collections.JsonArray(classesIds));
-					j.put("realClassesNames", new fr.wseduc.webutils.collections.JsonArray(classesNames));
-					j.put("functions", functions);
-					j.put("authorizedActions", actions);
-					j.put("apps", apps);
-					j.put("childrenIds", new fr.wseduc.webutils.collections.JsonArray(childrenIds));
-					j.put("children", children);
-					final JsonObject cache = (results.getJsonArray(4) != null && results.getJsonArray(4).size() > 0 &&
-							results.getJsonArray(4).getJsonObject(0) != null) ? results.getJsonArray(4).getJsonObject(0) : new JsonObject();
-					j.put("cache", cache);
-					j.put("widgets", getOrElse(j3.getJsonArray("widgets"), new fr.wseduc.webutils.collections.JsonArray()));
-					//return unique options
-					Set<String> uniquOption = new HashSet<>(j.getJsonArray("optionEnabled", new JsonArray()).getList());
-					j.put("optionEnabled", new JsonArray(new ArrayList(uniquOption)));
-					//
-					handler.handle(j);
+				if ("ok".equals(message.body().getString("status")) && results != null && results.size() == 4) {
+					sessionInfos(userId, results, handler);
 				} else {
 					handler.handle(null);
 				}
@@ -1083,4 +977,177 @@ public class AuthManager extends BusModBase implements Handler<Message<JsonObjec
 		});
 	}
 
+	private void sessionInfos(String userId, JsonArray results, Handler<JsonObject> handler) {
+		if (results.getJsonArray(0).size() > 0 && results.getJsonArray(1).size() > 0) {
+			final Set<String> structureExternalIds = new HashSet<>();
+			for (Object o : getOrElse(results.getJsonArray(0).getJsonObject(0).getJsonArray("aafFunctions"),
+					new fr.wseduc.webutils.collections.JsonArray())) {
+				if (o == null) continue;
+				String [] sf = o.toString().split("\\$");
+				if (sf.length == 5) {
+					structureExternalIds.add(sf[0]);
+				}
+			}
+			structureMappingIndex.resolve(structureExternalIds,
+					structureMapping -> handler.handle(formatSessionInfos(userId, results, structureMapping)));
+		} else {
+			handler.handle(null);
+		}
+	}
+
+	private JsonObject formatSessionInfos(String userId, JsonArray results, JsonObject structureMapping) {
+		JsonObject j = results.getJsonArray(0).getJsonObject(0);
+		JsonObject j2 = results.getJsonArray(1).getJsonObject(0);
+		JsonObject j3 = results.getJsonArray(2).getJsonObject(0);
+		j.put("userId", userId);
+		JsonObject functions = new JsonObject();
+		JsonArray actions = new fr.wseduc.webutils.collections.JsonArray();
+		JsonArray apps = new fr.wseduc.webutils.collections.JsonArray();
+		for (Object o : getOrElse(j2.getJsonArray("authorizedActions"), new fr.wseduc.webutils.collections.JsonArray())) {
+			if (!(o instanceof JsonArray)) continue;
+			JsonArray a = (JsonArray) o;
+			actions.add(new JsonObject()
+					.put("name", a.getString(0))
+					.put("displayName", a.getString(1))
+					.put("type", a.getString(2)));
+		}
+		for (Object o : getOrElse(j2.getJsonArray("apps"), new fr.wseduc.webutils.collections.JsonArray())) {
+			if (!(o instanceof JsonArray)) continue;
+			JsonArray a = (JsonArray) o;
+			apps.add(new JsonObject()
+							.put("name", (String) a.getString(0))
+							.put("address", (String) a.getString(1))
+							.put("icon", (String) a.getString(2))
+							.put("target", (String) a.getString(3))
+							.put("displayName", (String) a.getString(4))
+							.put("display", ((a.getValue(5) == null) || a.getBoolean(5)))
+							.put("prefix", (String) a.getString(6))
+							.put("casType", (String) a.getString(7))
+							.put("scope", (JsonArray) a.getJsonArray(8))
+							.put("isExternal", a.getBoolean(9))
+			);
+		}
+		for (Object o : getOrElse(j.getJsonArray("aafFunctions"), new fr.wseduc.webutils.collections.JsonArray())) {
+			if (o == null) continue;
+			String [] sf = o.toString().split("\\$");
+			if (sf.length == 5) {
+				JsonObject jo = functions.getJsonObject(sf[1]);
+				if (jo == null) {
+					jo = new JsonObject().put("code", sf[1])
+							.put("functionName", sf[2])
+							.put("scope", new fr.wseduc.webutils.collections.JsonArray())
+							.put("structureExternalIds", new fr.wseduc.webutils.collections.JsonArray())
+							.put("subjects", new JsonObject());
+					functions.put(sf[1], jo);
+				}
+				JsonObject subject = jo.getJsonObject("subjects").getJsonObject(sf[3]);
+				if (subject == null) {
+					subject = new JsonObject()
+							.put("subjectCode", sf[3])
+							.put("subjectName", sf[4])
+							.put("scope", new fr.wseduc.webutils.collections.JsonArray())
+							.put("structureExternalIds", new fr.wseduc.webutils.collections.JsonArray());
+					jo.getJsonObject("subjects").put(sf[3], subject);
+				}
+				jo.getJsonArray("structureExternalIds").add(sf[0]);
+				subject.getJsonArray("structureExternalIds").add(sf[0]);
+				String sid = structureMapping.getString(sf[0]);
+				if (sid != null) {
+					jo.getJsonArray("scope").add(sid);
+					subject.getJsonArray("scope").add(sid);
+				}
+			}
+		}
+		j.remove("aafFunctions");
+		for (Object o : getOrElse(j.getJsonArray("functions"), new fr.wseduc.webutils.collections.JsonArray())) {
+			if (!(o instanceof JsonArray)) continue;
+			JsonArray a = (JsonArray) o;
+			String code = a.getString(0);
+			if (code != null) {
+				functions.put(code, new JsonObject()
+						.put("code", code)
+						.put("scope", a.getJsonArray(1))
+				);
+			}
+		}
+		final JsonObject children = new JsonObject();
+		final List<String> childrenIds = new ArrayList<String>();
+		for (Object o : getOrElse(j.getJsonArray("childrenInfo"), new fr.wseduc.webutils.collections.JsonArray())) {
+			if (!(o instanceof JsonArray)) continue;
+			final JsonArray a = (JsonArray) o;
+			final String childId = a.getString(0);
+			if (childId != null) {
+				childrenIds.add(childId);
+				JsonObject jo = children.getJsonObject(childId);
+				if (jo == null) {
+					jo = new JsonObject()
+							.put("lastName", a.getString(1))
+							.put("firstName", a.getString(2));
+					children.put(childId, jo);
+				}
+			}
+		}
+		j.remove("childrenInfo");
+		final List<String> classesIds = new ArrayList<String>();
+		final List<String> classesNames = new ArrayList<String>() ;
+		for (Object o : getOrElse(j.getJsonArray("classes"), new fr.wseduc.webutils.collections.JsonArray())) {
+			if (!(o instanceof JsonArray)) continue;
+			final JsonArray c = (JsonArray) o;
+			if (c.getString(0) != null) {
+				classesIds.add(c.getString(0));
+				classesNames.add(c.getString(1));
+			}
+		}
+		j.remove("classes");
+		final List<String> structureIds = new ArrayList<>();
+		final List<String> structureNames = new ArrayList<>();
+		final Set<String> uai = new HashSet<>();
+		boolean hasApp = false;
+		boolean attachedToOneStructure = false;
+		boolean allAttachedStructuresIgnoreMFA = true;
+		for (Object o : getOrElse(j.getJsonArray("structures"), new fr.wseduc.webutils.collections.JsonArray())) {
+			if (!(o instanceof JsonArray)) continue;
+			final JsonArray s = (JsonArray) o;
+			if (s.getString(0) != null) {
+				structureIds.add(s.getString(0));
+				structureNames.add(StringUtils.trimToBlank(s.getString(1)));
+				if (!StringUtils.isEmpty(s.getString(2))) {
+					uai.add(s.getString(2));
+				}
+				if(!hasApp && getOrElse(s.getBoolean(3), false)) {
+					hasApp = true;
+				}
+				if(allAttachedStructuresIgnoreMFA && Boolean.FALSE.equals(getOrElse(s.getBoolean(4), false))) {
+					// This structure does not ignore MFA, so...
+					allAttachedStructuresIgnoreMFA = false;
+				}
+				attachedToOneStructure = true;
+			}
+		}
+		// ignoreMFA is true iif 
+		boolean ignoreMFA = attachedToOneStructure && allAttachedStructuresIgnoreMFA;
+		j.remove("structures");
+		j.put("structures", new fr.wseduc.webutils.collections.JsonArray(structureIds));
+		j.put("structureNames", new fr.wseduc.webutils.collections.JsonArray(structureNames));
+		j.put("uai", new fr.wseduc.webutils.collections.JsonArray(new ArrayList<>(uai)));
+		j.put("hasApp", hasApp);
+		j.put("ignoreMFA", ignoreMFA);
+		j.put("classes", new fr.wseduc.webutils.collections.JsonArray(classesIds));
+		j.put("realClassesNames", new fr.wseduc.webutils.collections.JsonArray(classesNames));
+		j.put("functions", functions);
+		j.put("authorizedActions", actions);
+		j.put("apps", apps);
+		j.put("childrenIds", new fr.wseduc.webutils.collections.JsonArray(childrenIds));
+		j.put("children", children);
+		final JsonObject cache = (results.getJsonArray(3) != null && results.getJsonArray(3).size() > 0 &&
+				results.getJsonArray(3).getJsonObject(0) != null) ? results.getJsonArray(3).getJsonObject(0) : new JsonObject();
+		j.put("cache", cache);
+		j.put("widgets", getOrElse(j3.getJsonArray("widgets"), new fr.wseduc.webutils.collections.JsonArray()));
+		//return unique options
+		Set<String> uniquOption = new HashSet<>(j.getJsonArray("optionEnabled", new JsonArray()).getList());
+		j.put("optionEnabled", new JsonArray(new ArrayList(uniquOption)));
+		//
+		return j;
+	}
+
 }
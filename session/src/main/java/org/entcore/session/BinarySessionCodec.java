@@ -0,0 +1,154 @@
+/* Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ */
+
+package org.entcore.session;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>Binary layout of the sessions stored by {@link BinarySessionStore} :</p>
+ * <pre>
+ * | format (1) | flags (1) | version (8) | userId length (2) | userId | body length (4) | body |
+ * </pre>
+ * <p>
+ *     The header can be read without touching the body, so that the store can check the version of the session
+ *     against its local decoded copy, and get the user and the secure location flag without parsing any JSON.
+ *     The body is the encoded session, deflated when it is larger than {@code compressionThreshold} bytes.
+ * </p>
+ */
+final class BinarySessionCodec {
+
+	static final byte FORMAT = 1;
+	private static final byte FLAG_SECURE_LOCATION = 1;
+	private static final byte FLAG_DEFLATED = 2;
+	private static final int VERSION_OFFSET = 2;
+	private static final int USER_ID_OFFSET = 10;
+
+	private final int compressionThreshold;
+
+	BinarySessionCodec(int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	byte[] encode(JsonObject session, long version) {
+		final String userId = session.getString("userId", "");
+		final JsonObject metadata = session.getJsonObject("sessionMetadata");
+		final boolean secureLocation = metadata != null && metadata.getBoolean("secureLocation", false);
+		byte[] body = session.encode().getBytes(StandardCharsets.UTF_8);
+		byte flags = secureLocation ? FLAG_SECURE_LOCATION : 0;
+		if (compressionThreshold >= 0 && body.length > compressionThreshold) {
+			body = deflate(body);
+			flags |= FLAG_DEFLATED;
+		}
+		final byte[] user = userId.getBytes(StandardCharsets.UTF_8);
+		return Buffer.buffer(USER_ID_OFFSET + 2 + user.length + 4 + body.length)
+				.appendByte(FORMAT)
+				.appendByte(flags)
+				.appendLong(version)
+				.appendShort((short) user.length)
+				.appendBytes(user)
+				.appendInt(body.length)
+				.appendBytes(body)
+				.getBytes();
+	}
+
+	JsonObject decode(byte[] data) {
+		if (data == null) {
+			return null;
+		}
+		final Buffer buffer = Buffer.buffer(data);
+		checkFormat(buffer);
+		final int bodyOffset = USER_ID_OFFSET + 2 + buffer.getShort(USER_ID_OFFSET);
+		final int bodyLength = buffer.getInt(bodyOffset);
+		byte[] body = buffer.getBytes(bodyOffset + 4, bodyOffset + 4 + bodyLength);
+		if ((buffer.getByte(1) & FLAG_DEFLATED) != 0) {
+			body = inflate(body);
+		}
+		return new JsonObject(Buffer.buffer(body));
+	}
+
+	long version(byte[] data) {
+		final Buffer buffer = Buffer.buffer(data);
+		checkFormat(buffer);
+		return buffer.getLong(VERSION_OFFSET);
+	}
+
+	String userId(byte[] data) {
+		final Buffer buffer = Buffer.buffer(data);
+		checkFormat(buffer);
+		final int length = buffer.getShort(USER_ID_OFFSET);
+		return length > 0 ? buffer.getString(USER_ID_OFFSET + 2, USER_ID_OFFSET + 2 + length, "UTF-8") : null;
+	}
+
+	boolean secureLocation(byte[] data) {
+		final Buffer buffer = Buffer.buffer(data);
+		checkFormat(buffer);
+		return (buffer.getByte(1) & FLAG_SECURE_LOCATION) != 0;
+	}
+
+	private void checkFormat(Buffer buffer) {
+		if (buffer.length() < USER_ID_OFFSET + 2 || buffer.getByte(0) != FORMAT) {
+			throw new IllegalArgumentException("Invalid binary session format");
+		}
+	}
+
+	private static byte[] deflate(byte[] data) {
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(data);
+			deflater.finish();
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2);
+			final byte[] chunk = new byte[4096];
+			while (!deflater.finished()) {
+				out.write(chunk, 0, deflater.deflate(chunk));
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
+	}
+
+	private static byte[] inflate(byte[] data) {
+		final Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(data);
+			final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length * 3);
+			final byte[] chunk = new byte[4096];
+			while (!inflater.finished()) {
+				final int n = inflater.inflate(chunk);
+				if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					throw new IllegalArgumentException("Truncated binary session body");
+				}
+				out.write(chunk, 0, n);
+			}
+			return out.toByteArray();
+		} catch (DataFormatException e) {
+			throw new IllegalArgumentException("Invalid binary session body", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+}
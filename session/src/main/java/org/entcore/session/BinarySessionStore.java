@@ -0,0 +1,444 @@
+/* Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ */
+
+package org.entcore.session;
+
+import com.hazelcast.core.IMap;
+import com.hazelcast.map.AbstractEntryProcessor;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.impl.VertxInternal;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.spi.cluster.ClusterManager;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.UnaryOperator;
+
+/**
+ * <p>Session store keeping sessions in a compact binary form (see {@link BinarySessionCodec}).</p>
+ * <ul>
+ *     <li>the cluster map {@code binary-sessions} holds sessionId -> encoded session. Each node keeps a bounded
+ *     decoded copy of the sessions it served, reused as long as the version of the stored session is unchanged ;</li>
+ *     <li>the cluster map {@code binary-logins} holds userId -> space separated session ids. It is updated with
+ *     compare-and-set operations so that a login or a logout only sends a few bytes instead of rewriting a
+ *     serialized list of objects ;</li>
+ *     <li>expiry is handled by the node-local {@link SessionExpiryScheduler}.</li>
+ * </ul>
+ * It is enabled with {@code "session-store": "binary"} in the configuration of the session module.
+ * <p>
+ *     With Hazelcast, {@code "logins-entry-processor": true} in {@code binary-session-store} sends the login and
+ *     logout updates as entry processors run by the owner of the user entry : one round trip, without the retries of
+ *     the compare-and-set loop under contention. It is disabled by default because the members must be able to load
+ *     {@link LoginsUpdate} (session module on the classpath of every member, or Hazelcast user code deployment).
+ *     Sessions are already stored as byte arrays, so the default BINARY in-memory format of the maps keeps them as
+ *     is ; the off-heap NATIVE format is only available with Hazelcast Enterprise and is not used.
+ * </p>
+ * <p>{@code BinarySessionStoreBenchmark} (session/src/jmh, {@code gradle :session:jmh}) compares it with
+ * {@link MapSessionStore}.</p>
+ */
+public class BinarySessionStore extends AbstractSessionStore {
+
+	private static final String SEPARATOR = " ";
+
+	protected final Map<String, byte[]> sessions;
+	protected final Map<String, String> logins;
+	private final Map<String, DecodedSession> decoded;
+	private final BinarySessionCodec codec;
+	private IMap<String, String> loginsProcessorMap;
+
+	private static final class DecodedSession {
+		private final long version;
+		private final JsonObject session;
+
+		private DecodedSession(long version, JsonObject session) {
+			this.version = version;
+			this.session = session;
+		}
+	}
+
+	public BinarySessionStore(final Vertx vertx, final Boolean cluster, JsonObject config) {
+		super(vertx, config, cluster);
+		inactivity = new MapActivityManager(vertx, config, cluster);
+		final JsonObject conf = config.getJsonObject("binary-session-store", new JsonObject());
+		this.codec = new BinarySessionCodec(conf.getInteger("compression-threshold", 2048));
+		final int maxDecoded = conf.getInteger("max-decoded-sessions", 20000);
+		this.decoded = new LinkedHashMap<String, DecodedSession>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, DecodedSession> eldest) {
+				return size() > maxDecoded;
+			}
+		};
+		if (Boolean.TRUE.equals(cluster)) {
+			final ClusterManager cm = ((VertxInternal) vertx).getClusterManager();
+			sessions = cm.getSyncMap("binary-sessions");
+			logins = cm.getSyncMap("binary-logins");
+			if (conf.getBoolean("logins-entry-processor", false) && cm instanceof HazelcastClusterManager) {
+				loginsProcessorMap = ((HazelcastClusterManager) cm).getHazelcastInstance().getMap("binary-logins");
+			}
+			logger.info("Initialize binary session cluster maps" +
+					(loginsProcessorMap != null ? " with logins entry processor." : "."));
+		} else {
+			sessions = new ConcurrentHashMap<>();
+			logins = new ConcurrentHashMap<>();
+			logger.info("Initialize binary session hash maps.");
+		}
+	}
+
+	@Override
+	public void getSession(final String sessionId, final Handler<AsyncResult<JsonObject>> handler) {
+		final byte[] data;
+		final JsonObject session;
+		try {
+			data = sessions.get(sessionId);
+			session = unmarshal(sessionId, data);
+		} catch (Exception e) {
+			logger.warn("Error in deserializing binary session " + sessionId, e);
+			removeSession(sessionId);
+			handler.handle(Future.failedFuture(new SessionException("Session not found")));
+			return;
+		}
+		if (session != null) {
+			final String userId = codec.userId(data);
+			if (inactivityEnabled() && userId != null) {
+				inactivity.updateLastActivity(sessionId, userId, codec.secureLocation(data), ar -> {
+					if (ar.failed()) {
+						logger.error("Error when update last activity with session " + sessionId, ar.cause());
+					}
+				});
+			}
+			handler.handle(Future.succeededFuture(session));
+		} else {
+			handler.handle(Future.failedFuture(new SessionException("Session not found")));
+		}
+	}
+
+	@Override
+	public void listSessionsIds(String userId, Handler<AsyncResult<JsonArray>> handler) {
+		final List<String> ids = getSessionIds(userId);
+		if (!ids.isEmpty()) {
+			handler.handle(Future.succeededFuture(new JsonArray(new ArrayList<>(ids))));
+		} else {
+			handler.handle(Future.failedFuture(new SessionException("Login not found")));
+		}
+	}
+
+	@Override
+	public void getSessionByUserId(String userId, Handler<AsyncResult<JsonObject>> handler) {
+		final List<String> ids = getSessionIds(userId);
+		if (ids.isEmpty()) {
+			handler.handle(Future.failedFuture(new SessionException("User not found in session")));
+			return;
+		}
+		final JsonObject session = getSessionBySessionId(ids.get(ids.size() - 1));
+		if (session == null) {
+			handler.handle(Future.failedFuture(new SessionException("Session not found")));
+		} else {
+			handler.handle(Future.succeededFuture(session));
+		}
+	}
+
+	@Override
+	public void putSession(String userId, String sessionId, JsonObject infos, boolean secureLocation,
+			Handler<AsyncResult<Void>> handler) {
+		scheduleExpiry(userId, sessionId, secureLocation);
+		try {
+			store(sessionId, infos);
+			addLogin(userId, sessionId);
+			handler.handle(Future.succeededFuture());
+		} catch (Exception e) {
+			logger.error("Error putting session in binary session map", e);
+			handler.handle(Future.failedFuture(new SessionException("Error putting session in binary session map")));
+		}
+	}
+
+	@Override
+	protected JsonObject removeStoredSession(String sessionId) {
+		expiry.cancel(sessionId);
+		JsonObject session = null;
+		try {
+			session = unmarshal(sessionId, sessions.remove(sessionId));
+		} catch (Exception e) {
+			logger.error("In doDrop - Error deserializing binary session " + sessionId, e);
+		}
+		synchronized (decoded) {
+			decoded.remove(sessionId);
+		}
+		if (session != null) {
+			removeLogin(session.getString("userId"), sessionId);
+		}
+		return session;
+	}
+
+	@Override
+	public void dropSession(String sessionId, Handler<AsyncResult<JsonObject>> handler) {
+		final JsonObject session = removeStoredSession(sessionId);
+		if (handler != null) {
+			if (session != null) {
+				handler.handle(Future.succeededFuture(session));
+			} else {
+				handler.handle(Future.failedFuture(new SessionException("Session not found when drop")));
+			}
+		}
+		if (inactivityEnabled()) {
+			inactivity.removeLastActivity(sessionId, ar -> {
+				if (ar.failed()) {
+					logger.error("Error when update last activity with session " + sessionId, ar.cause());
+				}
+			});
+			dropMongoDbSession(sessionId);
+		}
+	}
+
+	@Override
+	public void addCacheAttribute(String sessionId, String key, Object value, Handler<AsyncResult<Void>> handler) {
+		if (updateCache(sessionId, cache -> cache.put(key, value))) {
+			handler.handle(Future.succeededFuture());
+		} else {
+			handler.handle(Future.failedFuture(new SessionException("Session not found when add attribute : " + sessionId)));
+		}
+	}
+
+	@Override
+	public void dropCacheAttribute(String sessionId, String key, Handler<AsyncResult<Void>> handler) {
+		if (updateCache(sessionId, cache -> { cache.remove(key); return cache; })) {
+			handler.handle(Future.succeededFuture());
+		} else {
+			handler.handle(Future.failedFuture(new SessionException("Session not found when drop attribute : " + sessionId)));
+		}
+	}
+
+	@Override
+	public void addCacheAttributeByUserId(String userId, String key, Object value, Handler<AsyncResult<Void>> handler) {
+		if (updateCacheByUserId(userId, cache -> cache.put(key, value))) {
+			handler.handle(Future.succeededFuture());
+		} else {
+			handler.handle(Future.failedFuture(new SessionException("Session not found when add attribute : " + userId)));
+		}
+	}
+
+	@Override
+	public void dropCacheAttributeByUserId(String userId, String key, Handler<AsyncResult<Void>> handler) {
+		if (updateCacheByUserId(userId, cache -> { cache.remove(key); return cache; })) {
+			handler.handle(Future.succeededFuture());
+		} else {
+			handler.handle(Future.failedFuture(new SessionException("Session not found when drop attribute : " + userId)));
+		}
+	}
+
+	@Override
+	public void getSessionsNumber(Handler<AsyncResult<Long>> handler) {
+		handler.handle(Future.succeededFuture((long) sessions.size()));
+	}
+
+	@Override
+	protected void removeCacheSession(String userId, String sessionId) {
+		removeSession(sessionId);
+		removeLogin(userId, sessionId);
+	}
+
+	private boolean updateCacheByUserId(String userId, UnaryOperator<JsonObject> update) {
+		boolean updated = false;
+		for (String sessionId : getSessionIds(userId)) {
+			updated |= updateCache(sessionId, update);
+		}
+		return updated;
+	}
+
+	private boolean updateCache(String sessionId, UnaryOperator<JsonObject> update) {
+		final JsonObject session = getSessionBySessionId(sessionId);
+		if (session == null) {
+			return false;
+		}
+		JsonObject cache = session.getJsonObject("cache");
+		if (cache == null) {
+			cache = new JsonObject();
+		}
+		session.put("cache", update.apply(cache));
+		try {
+			store(sessionId, session);
+			return true;
+		} catch (Exception e) {
+			logger.error("Error putting session in binary session map : " + sessionId, e);
+			return false;
+		}
+	}
+
+	private void store(String sessionId, JsonObject session) {
+		final long version = ThreadLocalRandom.current().nextLong();
+		sessions.put(sessionId, codec.encode(session, version));
+		synchronized (decoded) {
+			decoded.put(sessionId, new DecodedSession(version, session.copy()));
+		}
+	}
+
+	private void removeSession(String sessionId) {
+		try {
+			sessions.remove(sessionId);
+		} catch (Exception e) {
+			logger.warn("Error removing binary session " + sessionId, e);
+		}
+		synchronized (decoded) {
+			decoded.remove(sessionId);
+		}
+	}
+
+	private JsonObject getSessionBySessionId(String sessionId) {
+		try {
+			return unmarshal(sessionId, sessions.get(sessionId));
+		} catch (Exception e) {
+			logger.error("Error in deserializing binary session " + sessionId, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns a copy of the session, decoding the stored bytes only when the local decoded copy is missing or
+	 * outdated.
+	 */
+	private JsonObject unmarshal(String sessionId, byte[] data) {
+		if (data == null) {
+			return null;
+		}
+		final long version = codec.version(data);
+		synchronized (decoded) {
+			final DecodedSession d = decoded.get(sessionId);
+			if (d != null && d.version == version) {
+				return d.session.copy();
+			}
+		}
+		final JsonObject session = codec.decode(data);
+		synchronized (decoded) {
+			decoded.put(sessionId, new DecodedSession(version, session));
+		}
+		return session.copy();
+	}
+
+	private List<String> getSessionIds(String userId) {
+		final String ids = logins.get(userId);
+		if (ids == null || ids.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return new ArrayList<>(Arrays.asList(ids.split(SEPARATOR)));
+	}
+
+	private static String removeId(String ids, String sessionId) {
+		if (ids == null) {
+			return null;
+		}
+		final StringBuilder sb = new StringBuilder();
+		for (String id : ids.split(SEPARATOR)) {
+			if (!id.equals(sessionId)) {
+				if (sb.length() > 0) {
+					sb.append(SEPARATOR);
+				}
+				sb.append(id);
+			}
+		}
+		return sb.length() > 0 ? sb.toString() : null;
+	}
+
+	private void addLogin(String userId, String sessionId) {
+		if (loginsProcessorMap != null && userId != null) {
+			loginsProcessorMap.executeOnKey(userId, new LoginsUpdate(sessionId, true));
+		} else {
+			updateLogins(userId, ids -> addId(ids, sessionId));
+		}
+	}
+
+	private void removeLogin(String userId, String sessionId) {
+		if (loginsProcessorMap != null && userId != null) {
+			loginsProcessorMap.executeOnKey(userId, new LoginsUpdate(sessionId, false));
+		} else {
+			updateLogins(userId, ids -> removeId(ids, sessionId));
+		}
+	}
+
+	private static String addId(String ids, String sessionId) {
+		return ids == null ? sessionId : ids + SEPARATOR + sessionId;
+	}
+
+	/**
+	 * Adds or removes a session id in the ids of a user, on the member owning the entry.
+	 */
+	static final class LoginsUpdate extends AbstractEntryProcessor<String, String> {
+		private static final long serialVersionUID = 1L;
+		private final String sessionId;
+		private final boolean add;
+
+		LoginsUpdate(String sessionId, boolean add) {
+			this.sessionId = sessionId;
+			this.add = add;
+		}
+
+		@Override
+		public Object process(Map.Entry<String, String> entry) {
+			entry.setValue(add ? addId(entry.getValue(), sessionId) : removeId(entry.getValue(), sessionId));
+			return null;
+		}
+	}
+
+	/**
+	 * Atomically updates the session ids of a user. With a concurrent (or cluster) map, the update is a
+	 * compare-and-set loop : only the small ids string of the user goes through the network.
+	 * @param update receives the current ids ({@code null} if none) and returns the new ones ({@code null} to remove)
+	 */
+	private void updateLogins(String userId, UnaryOperator<String> update) {
+		if (userId == null) {
+			return;
+		}
+		if (logins instanceof ConcurrentMap) {
+			final ConcurrentMap<String, String> m = (ConcurrentMap<String, String>) logins;
+			for (;;) {
+				final String current = m.get(userId);
+				final String next = update.apply(current);
+				final boolean done;
+				if (current == null) {
+					done = next == null || m.putIfAbsent(userId, next) == null;
+				} else if (next == null) {
+					done = m.remove(userId, current);
+				} else {
+					done = m.replace(userId, current, next);
+				}
+				if (done) {
+					return;
+				}
+			}
+		} else {
+			synchronized (logins) {
+				final String next = update.apply(logins.get(userId));
+				if (next == null) {
+					logins.remove(userId);
+				} else {
+					logins.put(userId, next);
+				}
+			}
+		}
+	}
+
+}
@@ -1,8 +1,14 @@
 package org.entcore.session;
 
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 
+import com.hazelcast.core.IMap;
+import com.hazelcast.query.Predicates;
+import com.hazelcast.query.QueryConstants;
+
 import io.vertx.core.AsyncResult;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
@@ -12,6 +18,7 @@ import io.vertx.core.logging.Logger;
 import io.vertx.core.logging.LoggerFactory;
 import io.vertx.core.spi.cluster.ClusterManager;
 import io.vertx.core.impl.VertxInternal;
+import io.vertx.spi.cluster.hazelcast.HazelcastClusterManager;
 
 import static fr.wseduc.webutils.Utils.getOrElse;
 
@@ -19,12 +26,19 @@ public class MapActivityManager implements ActivityManager {
 
     protected static final Logger logger = LoggerFactory.getLogger(MapActivityManager.class);
     private Map<String, Long> activity = null;
+    private boolean hazelcastMap = false;
 
     public MapActivityManager(Vertx vertx, JsonObject config, Boolean cluster) {
         if (Boolean.TRUE.equals(cluster)) {
             final ClusterManager cm = ((VertxInternal) vertx).getClusterManager();
             if (getOrElse(config.getBoolean("inactivity"), false)) {
-                activity = cm.getSyncMap("inactivity");
+                if (vertx.isClustered() && cm instanceof HazelcastClusterManager) {
+                    activity = ((HazelcastClusterManager) cm).getHazelcastInstance().getMap("inactivity");
+                    hazelcastMap = true;
+                } else {
+                    activity = cm.getSyncMap("inactivity");
+                    hazelcastMap = activity instanceof IMap;
+                }
                 logger.info("inactivity ha map : " + activity.getClass().getName());
             }
         } else {
@@ -55,6 +69,39 @@ public class MapActivityManager implements ActivityManager {
         handler.handle(Future.succeededFuture());
     }
 
+    @Override
+    public void getLastActivities(Collection<String> sessionIds, Handler<AsyncResult<Map<String, Long>>> handler) {
+        final Map<String, Long> lastActivities;
+        if (hazelcastMap) {
+            // one call by partition owner instead of one remote get by session
+            lastActivities = ((IMap<String, Long>) activity).getAll(new HashSet<>(sessionIds));
+        } else {
+            lastActivities = new HashMap<>();
+            for (String sessionId : sessionIds) {
+                final Long lastActivity = activity.get(sessionId);
+                if (lastActivity != null) {
+                    lastActivities.put(sessionId, lastActivity);
+                }
+            }
+        }
+        handler.handle(Future.succeededFuture(lastActivities));
+    }
+
+    @Override
+    public void removeLastActivities(Collection<String> sessionIds, Handler<AsyncResult<Void>> handler) {
+        if (sessionIds.isEmpty()) {
+            handler.handle(Future.succeededFuture());
+            return;
+        }
+        if (hazelcastMap) {
+            ((IMap<String, Long>) activity).removeAll(Predicates.in(QueryConstants.KEY_ATTRIBUTE_NAME.value(),
+                    sessionIds.toArray(new String[sessionIds.size()])));
+        } else {
+            activity.keySet().removeAll(sessionIds);
+        }
+        handler.handle(Future.succeededFuture());
+    }
+
     @Override
     public boolean isEnabled() {
         return activity != null;
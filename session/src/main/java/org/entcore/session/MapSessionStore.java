@@ -39,11 +39,13 @@ public class MapSessionStore extends AbstractSessionStore {
     protected Map<String, List<LoginInfo>> logins;
 
     private static final class LoginInfo implements Serializable {
+        // computed value of the previous versions, the entries are shared with them during a rolling upgrade
+        private static final long serialVersionUID = -3288494639779643429L;
+        // no longer used, kept so that the previous versions can still read the entries
         long timerId;
         final String sessionId;
 
-        private LoginInfo(long timerId, String sessionId) {
-            this.timerId = timerId;
+        private LoginInfo(String sessionId) {
             this.sessionId = sessionId;
         }
     }
@@ -136,19 +138,6 @@ public class MapSessionStore extends AbstractSessionStore {
         return null;
     }
 
-    private LoginInfo getLoginInfo(String sessionId, String userId) {
-        List<LoginInfo> loginInfos = logins.get(userId);
-        LoginInfo loginInfo = null;
-        if (loginInfos != null && sessionId != null) {
-            for (LoginInfo i : loginInfos) {
-                if (sessionId.equals(i.sessionId)) {
-                    return loginInfo;
-                }
-            }
-        }
-        return null;
-    }
-
     private JsonObject unmarshal(String s) {
         if (s != null) {
             return new JsonObject(s);
@@ -156,23 +145,23 @@ public class MapSessionStore extends AbstractSessionStore {
         return null;
     }
 
-    private void addLoginInfo(String userId, long timerId, String sessionId) {
+    private void addLoginInfo(String userId, String sessionId) {
         List<LoginInfo> loginInfos = logins.get(userId);
         if (loginInfos == null) {
             loginInfos = new ArrayList<>();
         }
-        loginInfos.add(new LoginInfo(timerId, sessionId));
+        loginInfos.add(new LoginInfo(sessionId));
         logins.put(userId, loginInfos);
     }
 
     @Override
     public void putSession(String userId, String sessionId, JsonObject infos, boolean secureLocation,
             Handler<AsyncResult<Void>> handler) {
-        long timerId = setTimer(userId, sessionId, secureLocation);
+        scheduleExpiry(userId, sessionId, secureLocation);
 
         try {
             sessions.put(sessionId, infos.encode());
-            addLoginInfo(userId, timerId, sessionId);
+            addLoginInfo(userId, sessionId);
             handler.handle(Future.succeededFuture());
         } catch (Exception e) {
             logger.error("Error putting session in hazelcast map");
@@ -206,35 +195,27 @@ public class MapSessionStore extends AbstractSessionStore {
     }
 
     @Override
-    public void dropSession(String sessionId, Handler<AsyncResult<JsonObject>> handler) {
+    protected JsonObject removeStoredSession(String sessionId) {
+        expiry.cancel(sessionId);
         JsonObject session = null;
         try {
-            session = unmarshal(sessions.get(sessionId));
+            session = unmarshal(sessions.remove(sessionId));
         } catch (Exception e) {
-            try {
-                sessions.remove(sessionId);
-            } catch (Exception e1) {
-                logger.error("In doDrop - Error getting object after removing hazelcast session " + sessionId, e);
-            }
+            logger.error("In doDrop - Error getting object after removing hazelcast session " + sessionId, e);
         }
         if (session != null) {
-            JsonObject s = unmarshal(sessions.remove(sessionId));
-            if (s != null) {
-                final String userId = s.getString("userId");
-                LoginInfo info = removeLoginInfo(sessionId, userId);
-                if (info != null) {
-                    vertx.cancelTimer(info.timerId);
-                }
-                if (handler != null) {
-                    handler.handle(Future.succeededFuture(s));
-                }
+            removeLoginInfo(sessionId, session.getString("userId"));
+        }
+        return session;
+    }
+
+    @Override
+    public void dropSession(String sessionId, Handler<AsyncResult<JsonObject>> handler) {
+        final JsonObject session = removeStoredSession(sessionId);
+        if (handler != null) {
+            if (session != null) {
+                handler.handle(Future.succeededFuture(session));
             } else {
-                if (handler != null) {
-                    handler.handle(Future.succeededFuture(session));
-                }
-            }
-        } else {
-            if (handler != null) {
                 handler.handle(Future.failedFuture(new SessionException("Session not found when drop")));
             }
         }
@@ -386,12 +367,4 @@ public class MapSessionStore extends AbstractSessionStore {
         handler.handle(Future.succeededFuture(0L));
     }
 
-    @Override
-    protected void updateTimerId(String userId, String sessionId, long timerId) {
-        final LoginInfo loginInfo = getLoginInfo(sessionId, userId);
-        if (loginInfo != null) {
-            loginInfo.timerId = timerId;
-        }
-    }
-
 }
@@ -0,0 +1,153 @@
+/* Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ */
+
+package org.entcore.session;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.vertx.micrometer.backends.BackendRegistries;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ *     Sorted-bucket expiry scheduler replacing the Vert.x timer that was armed for every live session.
+ *     Deadlines are rounded up to the next {@code tick} and sessions sharing a bucket are expired together by a
+ *     single periodic sweep, so the event loop only carries one timer whatever the number of sessions.
+ * </p>
+ * <p>A session can be scheduled at most once : scheduling it again moves it to its new bucket.</p>
+ */
+public class SessionExpiryScheduler {
+
+	public static final class ScheduledSession {
+		final String sessionId;
+		final String userId;
+		final boolean secureLocation;
+		long bucket;
+
+		private ScheduledSession(String sessionId, String userId, boolean secureLocation) {
+			this.sessionId = sessionId;
+			this.userId = userId;
+			this.secureLocation = secureLocation;
+		}
+	}
+
+	private final long tick;
+	private final TreeMap<Long, Map<String, ScheduledSession>> buckets = new TreeMap<>();
+	private final Map<String, ScheduledSession> scheduled = new HashMap<>();
+	private Counter expiredCounter;
+	private DistributionSummary expiredPerSweep;
+	private Timer sweepDuration;
+
+	public SessionExpiryScheduler(long tick) {
+		this.tick = Math.max(1L, tick);
+		final MeterRegistry registry = BackendRegistries.getDefaultNow();
+		if (registry != null) {
+			expiredCounter = Counter.builder("session.expiry.expired")
+					.description("number of sessions expired by the sweeps")
+					.register(registry);
+			expiredPerSweep = DistributionSummary.builder("session.expiry.sweep.expired")
+					.description("number of sessions expired per sweep")
+					.register(registry);
+			sweepDuration = Timer.builder("session.expiry.sweep.duration")
+					.description("time spent expiring a batch of sessions")
+					.register(registry);
+			Gauge.builder("session.expiry.scheduled", this, SessionExpiryScheduler::size)
+					.description("number of sessions waiting for expiry")
+					.register(registry);
+		}
+	}
+
+	public long getTick() {
+		return tick;
+	}
+
+	public synchronized void schedule(String sessionId, String userId, boolean secureLocation, long deadline) {
+		ScheduledSession s = scheduled.get(sessionId);
+		if (s == null) {
+			s = new ScheduledSession(sessionId, userId, secureLocation);
+			scheduled.put(sessionId, s);
+		} else {
+			unlink(s);
+		}
+		s.bucket = ((deadline + tick - 1) / tick) * tick;
+		buckets.computeIfAbsent(s.bucket, k -> new LinkedHashMap<>()).put(sessionId, s);
+	}
+
+	public synchronized void reschedule(ScheduledSession s, long deadline) {
+		schedule(s.sessionId, s.userId, s.secureLocation, deadline);
+	}
+
+	public synchronized void cancel(String sessionId) {
+		final ScheduledSession s = scheduled.remove(sessionId);
+		if (s != null) {
+			unlink(s);
+		}
+	}
+
+	/**
+	 * Removes and returns the sessions whose deadline is reached.
+	 * @param now Current timestamp
+	 * @return expired sessions ordered by deadline
+	 */
+	public synchronized List<ScheduledSession> pollExpired(long now) {
+		final List<ScheduledSession> expired = new ArrayList<>();
+		final Iterator<Map.Entry<Long, Map<String, ScheduledSession>>> it = buckets.headMap(now, true).entrySet().iterator();
+		while (it.hasNext()) {
+			for (ScheduledSession s : it.next().getValue().values()) {
+				scheduled.remove(s.sessionId);
+				expired.add(s);
+			}
+			it.remove();
+		}
+		return expired;
+	}
+
+	public synchronized int size() {
+		return scheduled.size();
+	}
+
+	public void recordSweep(int expired, long durationMs) {
+		if (sweepDuration != null) {
+			expiredCounter.increment(expired);
+			expiredPerSweep.record(expired);
+			sweepDuration.record(durationMs, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void unlink(ScheduledSession s) {
+		final Map<String, ScheduledSession> bucket = buckets.get(s.bucket);
+		if (bucket != null) {
+			bucket.remove(s.sessionId);
+			if (bucket.isEmpty()) {
+				buckets.remove(s.bucket);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,205 @@
+/* Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ */
+
+package org.entcore.session;
+
+import fr.wseduc.webutils.Either;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.eventbus.Message;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.common.neo4j.Neo4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.entcore.common.appregistry.AppRegistryEvents.APP_REGISTRY_PUBLISH_ADDRESS;
+import static org.entcore.common.appregistry.AppRegistryEvents.IMPORT_SUCCEEDED;
+import static org.entcore.common.appregistry.AppRegistryEvents.STRUCTURES_UPDATED;
+import static org.entcore.common.neo4j.Neo4jResult.validResult;
+
+/**
+ * In-memory index of structures externalId -> id used to resolve the scope of AAF functions when building sessions.
+ * It is loaded once at startup, reloaded after each feeder import and completed incrementally with the structures
+ * published by the manual feeder. Unknown externalIds are resolved on demand and added to the index.
+ * The externalIds which are still unknown are kept in a bounded negative cache for {@code negative-ttl} milliseconds,
+ * so that stale AAF functions don't query the database on each login. This cache is cleared by the same events.
+ */
+public class StructureMappingIndex {
+
+	private static final Logger log = LoggerFactory.getLogger(StructureMappingIndex.class);
+	private static final String LOAD_QUERY = "MATCH (s:Structure) RETURN s.id as id, s.externalId as externalId";
+	private static final String RESOLVE_QUERY =
+			"MATCH (s:Structure) WHERE s.externalId IN {externalIds} RETURN s.id as id, s.externalId as externalId";
+
+	private static final int DEFAULT_NEGATIVE_MAX_SIZE = 10000;
+	private static final long DEFAULT_NEGATIVE_TTL = 60000L;
+
+	private final Neo4j neo4j;
+	private volatile Map<String, String> idsByExternalId = new ConcurrentHashMap<>();
+	private final long negativeTtl;
+	private final Map<String, Long> unknownExternalIds;
+
+	public StructureMappingIndex(Vertx vertx, Neo4j neo4j) {
+		this(vertx, neo4j, new JsonObject());
+	}
+
+	public StructureMappingIndex(Vertx vertx, Neo4j neo4j, JsonObject config) {
+		this.neo4j = neo4j;
+		this.negativeTtl = config.getLong("negative-ttl", DEFAULT_NEGATIVE_TTL);
+		final int negativeMaxSize = config.getInteger("negative-max-size", DEFAULT_NEGATIVE_MAX_SIZE);
+		this.unknownExternalIds = new LinkedHashMap<String, Long>(16, 0.75f, false) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+				return size() > negativeMaxSize;
+			}
+		};
+		vertx.eventBus().<JsonObject>consumer(APP_REGISTRY_PUBLISH_ADDRESS, message -> {
+			final String type = message.body().getString("type");
+			if (IMPORT_SUCCEEDED.equals(type)) {
+				clearUnknown();
+				load();
+			} else if (STRUCTURES_UPDATED.equals(type)) {
+				final JsonArray structures = message.body().getJsonArray("structures");
+				index(structures, idsByExternalId);
+				forgetUnknown(structures);
+			}
+		});
+		load();
+	}
+
+	/**
+	 * Reloads the whole mapping in one query.
+	 */
+	public void load() {
+		neo4j.execute(LOAD_QUERY, new JsonObject(), (Message<JsonObject> message) -> {
+			final Either<String, JsonArray> r = validResult(message);
+			if (r.isRight()) {
+				final Map<String, String> m = new ConcurrentHashMap<>();
+				index(r.right().getValue(), m);
+				idsByExternalId = m;
+				log.info("Structure mapping index loaded with " + m.size() + " structures.");
+			} else {
+				log.error("Error loading structure mapping index : " + r.left().getValue());
+			}
+		});
+	}
+
+	/**
+	 * Resolves the ids of the supplied structures externalIds. The externalIds missing from the index are fetched
+	 * with a single query.
+	 * @param externalIds Structures externalIds to resolve
+	 * @param handler Receives the mapping externalId -> id of the resolved structures
+	 */
+	public void resolve(Collection<String> externalIds, Handler<JsonObject> handler) {
+		final JsonObject mapping = new JsonObject();
+		final Set<String> missing = new HashSet<>();
+		final long now = System.currentTimeMillis();
+		for (String externalId : externalIds) {
+			if (externalId == null) continue;
+			final String id = idsByExternalId.get(externalId);
+			if (id != null) {
+				mapping.put(externalId, id);
+			} else if (!isKnownAsUnknown(externalId, now)) {
+				missing.add(externalId);
+			}
+		}
+		if (missing.isEmpty()) {
+			handler.handle(mapping);
+			return;
+		}
+		neo4j.execute(RESOLVE_QUERY, new JsonObject().put("externalIds", new JsonArray(new ArrayList<>(missing))),
+				(Message<JsonObject> message) -> {
+			final Either<String, JsonArray> r = validResult(message);
+			if (r.isRight()) {
+				index(r.right().getValue(), idsByExternalId);
+				final long expireAt = System.currentTimeMillis() + negativeTtl;
+				for (String externalId : missing) {
+					final String id = idsByExternalId.get(externalId);
+					if (id != null) {
+						mapping.put(externalId, id);
+					} else {
+						synchronized (unknownExternalIds) {
+							unknownExternalIds.put(externalId, expireAt);
+						}
+					}
+				}
+			} else {
+				log.error("Error resolving structures externalIds : " + r.left().getValue());
+			}
+			handler.handle(mapping);
+		});
+	}
+
+	public int size() {
+		return idsByExternalId.size();
+	}
+
+	private boolean isKnownAsUnknown(String externalId, long now) {
+		synchronized (unknownExternalIds) {
+			final Long expireAt = unknownExternalIds.get(externalId);
+			if (expireAt == null) {
+				return false;
+			}
+			if (expireAt <= now) {
+				unknownExternalIds.remove(externalId);
+				return false;
+			}
+			return true;
+		}
+	}
+
+	private void clearUnknown() {
+		synchronized (unknownExternalIds) {
+			unknownExternalIds.clear();
+		}
+	}
+
+	private void forgetUnknown(JsonArray structures) {
+		if (structures == null) return;
+		synchronized (unknownExternalIds) {
+			for (Object o : structures) {
+				if (o instanceof JsonObject && ((JsonObject) o).getString("externalId") != null) {
+					unknownExternalIds.remove(((JsonObject) o).getString("externalId"));
+				}
+			}
+		}
+	}
+
+	private static void index(JsonArray structures, Map<String, String> m) {
+		if (structures == null) return;
+		for (Object o : structures) {
+			if (!(o instanceof JsonObject)) continue;
+			final JsonObject s = (JsonObject) o;
+			final String externalId = s.getString("externalId");
+			final String id = s.getString("id");
+			if (externalId != null && id != null) {
+				m.put(externalId, id);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,52 @@
+package org.entcore.session;
+
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+@RunWith(VertxUnitRunner.class)
+public class BinarySessionCodecTest {
+
+    private static JsonObject session(int apps) {
+        final JsonArray a = new JsonArray();
+        for (int i = 0; i < apps; i++) {
+            a.add(new JsonObject().put("name", "app" + i).put("address", "/app" + i));
+        }
+        return new JsonObject()
+                .put("userId", "7b6f3d5e-8f22-4c1a-a3c1-4f2b8a6c0d11")
+                .put("username", "Rémi Dupont")
+                .put("apps", a)
+                .put("cache", new JsonObject())
+                .put("sessionMetadata", new JsonObject().put("_id", "s1").put("secureLocation", true));
+    }
+
+    @Test
+    public void testRoundTrip(final TestContext context) {
+        final BinarySessionCodec codec = new BinarySessionCodec(2048);
+        final JsonObject session = session(2);
+        final byte[] data = codec.encode(session, 42L);
+        context.assertEquals(session, codec.decode(data));
+        context.assertEquals(42L, codec.version(data));
+        context.assertEquals("7b6f3d5e-8f22-4c1a-a3c1-4f2b8a6c0d11", codec.userId(data));
+        context.assertTrue(codec.secureLocation(data));
+    }
+
+    @Test
+    public void testCompressedRoundTrip(final TestContext context) {
+        final BinarySessionCodec codec = new BinarySessionCodec(512);
+        final JsonObject session = session(200);
+        final byte[] data = codec.encode(session, -1L);
+        context.assertTrue(data.length < session.encode().length() / 2, "large sessions should be deflated");
+        context.assertEquals(session, codec.decode(data));
+        context.assertEquals(-1L, codec.version(data));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidFormat() {
+        new BinarySessionCodec(2048).decode("{\"userId\":\"u\"}".getBytes());
+    }
+
+}
@@ -0,0 +1,44 @@
+package org.entcore.session;
+
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.List;
+
+@RunWith(VertxUnitRunner.class)
+public class SessionExpirySchedulerTest {
+
+    @Test
+    public void testPollExpiredByBucket(final TestContext context) {
+        final SessionExpiryScheduler scheduler = new SessionExpiryScheduler(1000L);
+        scheduler.schedule("s1", "u1", false, 1500L);
+        scheduler.schedule("s2", "u2", true, 1999L);
+        scheduler.schedule("s3", "u3", false, 2001L);
+        context.assertTrue(scheduler.pollExpired(1999L).isEmpty(), "deadlines are rounded up to the next tick");
+        final List<SessionExpiryScheduler.ScheduledSession> expired = scheduler.pollExpired(2000L);
+        context.assertEquals(2, expired.size());
+        context.assertEquals("s1", expired.get(0).sessionId);
+        context.assertTrue(expired.get(1).secureLocation);
+        context.assertEquals(1, scheduler.size());
+        context.assertEquals("s3", scheduler.pollExpired(3000L).get(0).sessionId);
+        context.assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testRescheduleAndCancel(final TestContext context) {
+        final SessionExpiryScheduler scheduler = new SessionExpiryScheduler(1000L);
+        scheduler.schedule("s1", "u1", false, 1000L);
+        scheduler.schedule("s2", "u2", false, 1000L);
+        scheduler.schedule("s1", "u1", false, 5000L);
+        scheduler.cancel("s2");
+        context.assertTrue(scheduler.pollExpired(4000L).isEmpty());
+        final List<SessionExpiryScheduler.ScheduledSession> expired = scheduler.pollExpired(5000L);
+        context.assertEquals(1, expired.size());
+        scheduler.reschedule(expired.get(0), 7000L);
+        context.assertEquals(1, scheduler.size());
+        context.assertEquals("u1", scheduler.pollExpired(7000L).get(0).userId);
+    }
+
+}
@@ -0,0 +1,135 @@
+/* Copyright © "Open Digital Education", 2019
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ */
+
+package org.entcore.timeline.events;
+
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import org.entcore.common.cache.CacheService;
+import org.entcore.common.user.UserInfos;
+import org.entcore.timeline.services.TimelineConfigService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link CachedTimelineEventStore#get} on a cached list of {@code entriesNumber} notifications, written as
+ * plain json or with the {@link TimelineCacheEntry} header, with and without a type filter.
+ * <p>
+ *     The cache and the wrapped store answer synchronously, so only the filtering and the decoding are measured.
+ * </p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CachedTimelineEventStoreBenchmark {
+
+	private static final String[] TYPES = { "BLOG", "NEWS", "WORKSPACE", "MESSAGERIE", "SCHOOLBOOK",
+			"ACTUALITES", "CALENDAR", "FORUM", "WIKI", "POLL" };
+
+	@Param({"json", "header"})
+	public String format;
+
+	@Param({"1000"})
+	public int entriesNumber;
+
+	private CachedTimelineEventStore store;
+	private UserInfos user;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		final List<String> entries = new ArrayList<>(entriesNumber);
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < entriesNumber; i++) {
+			final JsonObject notification = new JsonObject()
+					.put("_id", "notification-" + i)
+					.put("type", TYPES[i % TYPES.length])
+					.put("event-type", "CREATE")
+					.put("sender", "sender-" + (i % 50))
+					.put("date", new JsonObject().put("$date", now - i * 1000L))
+					.put("message", "<a href=\"/userbook/annuaire#sender\">Firstname Lastname</a> a publié un " +
+							"nouveau billet <a href=\"/blog#/view/resource\">Title " + i + "</a>.")
+					.put("params", new JsonObject().put("uri", "/userbook/annuaire#sender")
+							.put("username", "Firstname Lastname").put("resourceUri", "/blog#/view/resource"))
+					.put("resource", "resource-" + i);
+			entries.add("header".equals(format) ? TimelineCacheEntry.encode(notification) : notification.encode());
+		}
+		final List<String> cached = Collections.unmodifiableList(entries);
+		final CacheService cacheService = (CacheService) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { CacheService.class }, (proxy, method, args) -> {
+					if ("getList".equals(method.getName())) {
+						((Handler<AsyncResult<List<String>>>) args[1])
+								.handle(Future.succeededFuture(cached));
+					}
+					return null;
+				});
+		final TimelineEventStore original = (TimelineEventStore) Proxy.newProxyInstance(getClass().getClassLoader(),
+				new Class<?>[] { TimelineEventStore.class }, (proxy, method, args) -> {
+					if ("get".equals(method.getName())) {
+						((Handler<JsonObject>) args[args.length - 1]).handle(new JsonObject()
+								.put("status", "ok").put("results", new JsonArray()));
+					}
+					return null;
+				});
+		final TimelineConfigService configService = (TimelineConfigService) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { TimelineConfigService.class }, (proxy, method, args) -> null);
+		store = new CachedTimelineEventStore(original, cacheService, entriesNumber, configService, new HashMap<>(),
+				"header".equals(format));
+		user = new UserInfos();
+		user.setUserId("user");
+	}
+
+	@Benchmark
+	public void firstPage(Blackhole bh) {
+		store.get(user, null, 0, 25, null, false, false, null, bh::consume);
+	}
+
+	@Benchmark
+	public void firstPageFiltered(Blackhole bh) {
+		store.get(user, Collections.singletonList("BLOG"), 0, 25, null, false, false, null, bh::consume);
+	}
+
+	@Benchmark
+	public void nextPageFiltered(Blackhole bh) {
+		store.get(user, Collections.singletonList("BLOG"), 25, 25, null, false, false, null, bh::consume);
+	}
+
+}
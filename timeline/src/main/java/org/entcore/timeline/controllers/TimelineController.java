@@ -59,6 +59,7 @@ import org.entcore.common.utils.StringUtils;
 import org.entcore.timeline.controllers.helper.NotificationHelper;
 import org.entcore.timeline.events.CachedTimelineEventStore;
 import org.entcore.timeline.events.DefaultTimelineEventStore;
+import org.entcore.timeline.events.DigestTimelineEventStore;
 import org.entcore.timeline.events.MobileTimelineEventStore;
 import org.entcore.timeline.events.SplitTimelineEventStore;
 import org.entcore.timeline.events.TimelineEventStore;
@@ -120,6 +121,9 @@ public class TimelineController extends BaseController {
 		if(maxRecipientLength != null){
 			store = new SplitTimelineEventStore(store, maxRecipientLength);
 		}
+		if(config.getBoolean("mail-digest", false)){
+			store = new DigestTimelineEventStore(store);
+		}
 		timelineHelper = new TimelineHelper(vertx, eb, config);
 		muteHelper = new MuteHelper(vertx);
 		antiFlood = new TTLSet<>(config.getLong("antiFloodDelay", 3000l),
@@ -128,7 +132,8 @@ public class TimelineController extends BaseController {
 		if(config.getBoolean("cache", false)){
 			final CacheService cacheService = CacheService.create(vertx, config);
 			final Integer cacheLen = config.getInteger("cache-size", PAGELIMIT);
-			store = new CachedTimelineEventStore(store, cacheService, cacheLen, configService, registeredNotifications);
+			store = new CachedTimelineEventStore(store, cacheService, cacheLen, configService, registeredNotifications,
+					config.getBoolean("cache-header-format", false));
 		}
 
 		// TEMPORARY to handle both timeline and timeline2 view
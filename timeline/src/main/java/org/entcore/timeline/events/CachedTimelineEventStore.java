@@ -3,7 +3,6 @@ package org.entcore.timeline.events;
 import fr.wseduc.mongodb.MongoDb;
 import fr.wseduc.mongodb.MongoQueryBuilder;
 import fr.wseduc.webutils.Either;
-import io.vertx.core.CompositeFuture;
 import io.vertx.core.Future;
 import io.vertx.core.Handler;
 import io.vertx.core.json.JsonArray;
@@ -27,6 +26,7 @@ public class CachedTimelineEventStore implements TimelineEventStore {
     private final TimelineEventStore original;
     private final CacheService cacheService;
     private final int pageSize;
+    private final boolean headerFormat;
     private JsonObject externalNotificationsCache;
     protected MongoDb mongo = MongoDb.getInstance();
 
@@ -34,7 +34,17 @@ public class CachedTimelineEventStore implements TimelineEventStore {
         return "timeline:" + userId;
     }
     public CachedTimelineEventStore(TimelineEventStore original, CacheService cacheService, int pageSize, TimelineConfigService configService, Map<String, String> registeredNotifications) {
+        this(original, cacheService, pageSize, configService, registeredNotifications, false);
+    }
+
+    /**
+     * @param headerFormat write the entries with the {@link TimelineCacheEntry} header. Both formats are always read :
+     *                     enable it once every instance reads the header, otherwise the entries written by the
+     *                     upgraded instances can not be read by the others during a rolling upgrade.
+     */
+    public CachedTimelineEventStore(TimelineEventStore original, CacheService cacheService, int pageSize, TimelineConfigService configService, Map<String, String> registeredNotifications, boolean headerFormat) {
         this.original = original;
+        this.headerFormat = headerFormat;
         this.pageSize = pageSize;
         this.cacheService = cacheService;
         this.configService = configService;
@@ -108,38 +118,19 @@ public class CachedTimelineEventStore implements TimelineEventStore {
             copy.put("created", copy.getJsonObject("date"));
             copy.put("_id", resOriginal.getString("_id", ""));
             shouldAddToCache(copy).setHandler(resShouldAdd -> {
-                final List<Future> futures = new ArrayList<>();
                 if(resShouldAdd.succeeded() && resShouldAdd.result()){
+                    final List<String> keys = new ArrayList<>(recipients.size());
                     for (Object recipient : recipients) {
-                        final JsonObject recipientJson = (JsonObject) recipient;
-                        final Future<Void> future = Future.future();
-                        futures.add(future);
-                        final String key = getKey(recipientJson.getString("userId"));
-                        cacheService.prependToList(key, copy.encode(), res -> {
-                            if (res.succeeded()) {
-                                if (res.result().intValue() > this.pageSize) {
-                                    cacheService.removeLastFromList(key, resRemove -> {
-                                        if (resRemove.succeeded()) {
-                                            future.complete(null);
-                                        } else {
-                                            future.fail(resRemove.cause());
-                                        }
-                                    });
-                                } else {
-                                    future.complete(null);
-                                }
-                            } else {
-                                future.fail(res.cause());
-                            }
-                        });
+                        keys.add(getKey(((JsonObject) recipient).getString("userId")));
                     }
+                    //encode once and push to every recipient list
+                    final String value = headerFormat ? TimelineCacheEntry.encode(copy) : copy.encode();
+                    cacheService.prependToLists(keys, value, this.pageSize, res -> {
+                        if (!res.succeeded()) {
+                            logger.error("Failed to add event:", res.cause());
+                        }
+                    });
                 }
-                //call original store
-                CompositeFuture.all(futures).setHandler(res -> {
-                    if (!res.succeeded()) {
-                        logger.error("Failed to add event:", res.cause());
-                    }
-                });
             });
         });
     }
@@ -149,32 +140,30 @@ public class CachedTimelineEventStore implements TimelineEventStore {
         original.delete(resource, result);
     }
 
-    private Future<List<JsonObject>> getListFiltered(String userId, List<String> types){
-        Future<List<JsonObject>> future = Future.future();
+    private Future<List<TimelineCacheEntry>> getListFiltered(String userId, List<String> types){
+        Future<List<TimelineCacheEntry>> future = Future.future();
         cacheService.getList(getKey(userId), res -> {
             if (res.succeeded()) {
                 final List<String> all = res.result();
                 final Set<String> uniqIds = new HashSet<>();
                 final long now = System.currentTimeMillis();
-                final List<JsonObject> allJson = all.stream().map(json -> new JsonObject(json)).filter(json -> {
-                    final String id = json.getString("_id");
-                    final boolean alreadyAdded = uniqIds.contains(id);
-                    if(alreadyAdded) return false;
-                    uniqIds.add(id);
+                final List<TimelineCacheEntry> entries = new ArrayList<>();
+                for (String raw : all) {
+                    //only the header is read to filter, the json is decoded by the caller for the returned entries
+                    final TimelineCacheEntry entry = TimelineCacheEntry.parse(raw, now);
+                    if (!uniqIds.add(entry.getId())) {
+                        continue;
+                    }
                     //date filter
-                    final long date = json.getJsonObject("date", new JsonObject()).getLong("$date", now);
-                    if(date > now){
-                        return false;
+                    if (entry.getDate() > now) {
+                        continue;
                     }
-                    //
-                    if (types != null && types.size() > 0) {
-                        final String type = json.getString("type", "");
-                        return types.contains(type);
-                    } else {
-                        return true;
+                    if (types != null && types.size() > 0 && !types.contains(entry.getType())) {
+                        continue;
                     }
-                }).collect(Collectors.toList());
-                future.complete(allJson);
+                    entries.add(entry);
+                }
+                future.complete(entries);
             } else {
                 future.fail(res.cause());
             }
@@ -182,14 +171,14 @@ public class CachedTimelineEventStore implements TimelineEventStore {
         return future;
     }
 
-    private Future<List<JsonObject>> getListUnfiltered(String userId){
-        Future<List<JsonObject>> future = Future.future();
+    private Future<List<TimelineCacheEntry>> getListUnfiltered(String userId){
+        Future<List<TimelineCacheEntry>> future = Future.future();
         cacheService.getList(getKey(userId), res -> {
             if (res.succeeded()) {
-                final List<String> all = res.result();
-                final Set<String> uniqIds = new HashSet<>();
-                final List<JsonObject> allJson = all.stream().map(json -> new JsonObject(json)).collect(Collectors.toList());
-                future.complete(allJson);
+                final long now = System.currentTimeMillis();
+                final List<TimelineCacheEntry> entries = res.result().stream()
+                        .map(raw -> TimelineCacheEntry.parse(raw, now)).collect(Collectors.toList());
+                future.complete(entries);
             } else {
                 future.fail(res.cause());
             }
@@ -206,7 +195,8 @@ public class CachedTimelineEventStore implements TimelineEventStore {
             if(offset == 0){
                 getListFiltered(userId, types).setHandler(resJson ->{
                     if(resJson.succeeded()){
-                        final List<JsonObject> allJson = resJson.result();
+                        final List<JsonObject> allJson = resJson.result().stream()
+                                .map(TimelineCacheEntry::toJson).collect(Collectors.toList());
                         final JsonObject payload = new JsonObject();
                         payload.put("number", allJson.size());
                         payload.put("results", new JsonArray(allJson));
@@ -278,11 +268,9 @@ public class CachedTimelineEventStore implements TimelineEventStore {
     protected void removeFromCache(String recipient, String id){
         getListUnfiltered(recipient).setHandler(res->{
             if(res.succeeded()){
-                final List<JsonObject> jsons = res.result();
-                for(int i = 0 ; i < jsons.size(); i ++){
-                    final JsonObject current = jsons.get(i);
-                    if(id.equals(current.getString("_id"))){
-                        cacheService.removeFromList(getKey(recipient), current.encode(), resR->{});
+                for(final TimelineCacheEntry current : res.result()){
+                    if(id.equals(current.getId())){
+                        cacheService.removeFromList(getKey(recipient), current.getRaw(), resR->{});
                     }
                 }
             }
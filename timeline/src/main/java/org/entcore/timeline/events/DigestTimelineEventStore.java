@@ -0,0 +1,267 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+package org.entcore.timeline.events;
+
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.webutils.Either;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+import org.entcore.common.user.UserInfos;
+
+/**
+ * Maintains the daily notification counters of each user (by type and event-type) while the notifications are stored,
+ * so that the weekly mails read them instead of aggregating the timeline collection user by user.
+ * <p>
+ *     A digest document {@code {userId, date, type, event-type, count}} exists for each user, day and kind of
+ *     notification. The notifications are read before being deleted or discarded, and the counters of their
+ *     recipients are decremented once the removal succeeded.
+ * </p>
+ */
+public class DigestTimelineEventStore implements TimelineEventStore {
+    public static final String DIGEST_COLLECTION = "timeline.digests";
+    private static final Logger log = LoggerFactory.getLogger(DigestTimelineEventStore.class);
+    private static final int BULK_SIZE = 1000;
+    private final TimelineEventStore original;
+    protected MongoDb mongo = MongoDb.getInstance();
+
+    public DigestTimelineEventStore(TimelineEventStore original) {
+        this.original = original;
+    }
+
+    public static String digestId(String userId, long day, String type, String eventType) {
+        return userId + "|" + day + "|" + type + "|" + eventType;
+    }
+
+    public static long dayOf(long time) {
+        final Calendar day = Calendar.getInstance();
+        day.setTimeInMillis(time);
+        day.set(Calendar.HOUR_OF_DAY, 0);
+        day.set(Calendar.MINUTE, 0);
+        day.set(Calendar.SECOND, 0);
+        day.set(Calendar.MILLISECOND, 0);
+        return day.getTimeInMillis();
+    }
+
+    @Override
+    public void add(JsonObject event, Handler<JsonObject> result) {
+        // the digest day and the stored notification must have the same date
+        if (!event.containsKey("date")) {
+            event.put("date", MongoDb.now());
+        }
+        // the split store may answer once per chunk
+        final AtomicBoolean accumulated = new AtomicBoolean(false);
+        original.add(event, res -> {
+            if (succeeded(res) && accumulated.compareAndSet(false, true)) {
+                accumulate(event);
+            }
+            result.handle(res);
+        });
+    }
+
+    protected void accumulate(JsonObject event) {
+        final JsonArray recipients = event.getJsonArray("recipients", new JsonArray());
+        final JsonObject date = event.getJsonObject("date");
+        final long day = dayOf(date != null ? date.getLong("$date", System.currentTimeMillis()) : System.currentTimeMillis());
+        final String type = event.getString("type", "");
+        final String eventType = event.getString("event-type", "");
+        JsonArray operations = new JsonArray();
+        for (Object recipient : recipients) {
+            if (!(recipient instanceof JsonObject)) continue;
+            final String userId = ((JsonObject) recipient).getString("userId");
+            if (userId == null) continue;
+            operations.add(new JsonObject()
+                    .put("operation", "upsert")
+                    .put("criteria", new JsonObject().put("_id", digestId(userId, day, type, eventType)))
+                    .put("document", new JsonObject()
+                            .put("$inc", new JsonObject().put("count", 1))
+                            .put("$setOnInsert", new JsonObject()
+                                    .put("userId", userId)
+                                    .put("date", new JsonObject().put("$date", day))
+                                    .put("type", type)
+                                    .put("event-type", eventType))));
+            if (operations.size() == BULK_SIZE) {
+                persist(operations);
+                operations = new JsonArray();
+            }
+        }
+        if (operations.size() > 0) {
+            persist(operations);
+        }
+    }
+
+    private void persist(JsonArray operations) {
+        mongo.bulk(DIGEST_COLLECTION, operations, message -> {
+            if (!"ok".equals(message.body().getString("status"))) {
+                log.error("Error updating timeline digests : " + message.body().getString("message"));
+            }
+        });
+    }
+
+    /**
+     * Reads the notifications matching {@code matcher} then runs the removal, and decrements the counters of their
+     * recipients when it succeeded.
+     * @param recipient when not null, only the counters of this recipient are decremented
+     */
+    private void removing(JsonObject matcher, String recipient, Handler<Handler<Boolean>> removal) {
+        final JsonObject keys = new JsonObject().put("type", 1).put("event-type", 1).put("date", 1)
+                .put("recipients.userId", 1);
+        mongo.find(DefaultTimelineEventStore.TIMELINE_COLLECTION, matcher, null, keys, message -> {
+            final JsonArray notifications = "ok".equals(message.body().getString("status")) ?
+                    message.body().getJsonArray("results", new JsonArray()) : new JsonArray();
+            removal.handle(removed -> {
+                if (removed) {
+                    decrement(notifications, recipient);
+                }
+            });
+        });
+    }
+
+    protected void decrement(JsonArray notifications, String recipient) {
+        JsonArray operations = new JsonArray();
+        for (Object o : notifications) {
+            if (!(o instanceof JsonObject)) continue;
+            final JsonObject notification = (JsonObject) o;
+            final JsonObject date = notification.getJsonObject("date");
+            if (date == null || date.getLong("$date") == null) continue;
+            final long day = dayOf(date.getLong("$date"));
+            final String type = notification.getString("type", "");
+            final String eventType = notification.getString("event-type", "");
+            for (Object r : notification.getJsonArray("recipients", new JsonArray())) {
+                if (!(r instanceof JsonObject)) continue;
+                final String userId = ((JsonObject) r).getString("userId");
+                if (userId == null || (recipient != null && !recipient.equals(userId))) continue;
+                operations.add(new JsonObject()
+                        .put("operation", "update")
+                        .put("criteria", new JsonObject()
+                                .put("_id", digestId(userId, day, type, eventType))
+                                .put("count", new JsonObject().put("$gt", 0)))
+                        .put("document", new JsonObject().put("$inc", new JsonObject().put("count", -1))));
+                if (operations.size() == BULK_SIZE) {
+                    persist(operations);
+                    operations = new JsonArray();
+                }
+            }
+        }
+        if (operations.size() > 0) {
+            persist(operations);
+        }
+    }
+
+    private static boolean succeeded(JsonObject res) {
+        return res != null && "ok".equals(res.getString("status"));
+    }
+
+    @Override
+    public void delete(String resource, Handler<JsonObject> result) {
+        if (resource == null || resource.trim().isEmpty()) {
+            original.delete(resource, result);
+            return;
+        }
+        removing(new JsonObject().put("resource", resource), null, removed ->
+                original.delete(resource, res -> {
+                    removed.handle(succeeded(res));
+                    result.handle(res);
+                }));
+    }
+
+    @Override
+    public void get(UserInfos recipient, List<String> types, int offset, int limit, JsonObject restrictionFilter,
+            boolean mine, boolean both, String version, Handler<JsonObject> result) {
+        original.get(recipient, types, offset, limit, restrictionFilter, mine, both, version, result);
+    }
+
+    @Override
+    public void deleteSubResource(String resource, Handler<JsonObject> result) {
+        if (resource == null || resource.trim().isEmpty()) {
+            original.deleteSubResource(resource, result);
+            return;
+        }
+        removing(new JsonObject().put("sub-resource", resource), null, removed ->
+                original.deleteSubResource(resource, res -> {
+                    removed.handle(succeeded(res));
+                    result.handle(res);
+                }));
+    }
+
+    @Override
+    public void listTypes(Handler<JsonArray> result) {
+        original.listTypes(result);
+    }
+
+    @Override
+    public void delete(String id, String sender, Handler<Either<String, JsonObject>> result) {
+        removing(new JsonObject().put("_id", id).put("sender", sender), null, removed ->
+                original.delete(id, sender, res -> {
+                    removed.handle(res.isRight());
+                    result.handle(res);
+                }));
+    }
+
+    @Override
+    public void discard(String id, String recipient, Handler<Either<String, JsonObject>> result) {
+        removing(new JsonObject().put("_id", id).put("recipients.userId", recipient), recipient, removed ->
+                original.discard(id, recipient, res -> {
+                    removed.handle(res.isRight());
+                    result.handle(res);
+                }));
+    }
+
+    @Override
+    public void report(String id, UserInfos user, Handler<Either<String, JsonObject>> result) {
+        original.report(id, user, result);
+    }
+
+    @Override
+    public void listReported(String structure, boolean pending, int offset, int limit,
+            Handler<Either<String, JsonArray>> result) {
+        original.listReported(structure, pending, offset, limit, result);
+    }
+
+    @Override
+    public void performAdminAction(String id, String structureId, UserInfos user, AdminAction action,
+            Handler<Either<String, JsonObject>> result) {
+        if (action != AdminAction.DELETE) {
+            original.performAdminAction(id, structureId, user, action, result);
+            return;
+        }
+        removing(new JsonObject().put("_id", id).put("reportedStructures", structureId)
+                .put("reportAction", new JsonObject().put("$ne", AdminAction.DELETE.name())), null, removed ->
+                original.performAdminAction(id, structureId, user, action, res -> {
+                    removed.handle(res.isRight());
+                    result.handle(res);
+                }));
+    }
+
+    @Override
+    public void deleteReportNotification(String resourceId, Handler<Either<String, JsonObject>> result) {
+        removing(new JsonObject().put("type", "TIMELINE").put("event-type", "NOTIFY-REPORT")
+                .put("resource", resourceId), null, removed ->
+                original.deleteReportNotification(resourceId, res -> {
+                    removed.handle(res.isRight());
+                    result.handle(res);
+                }));
+    }
+}
@@ -0,0 +1,95 @@
+package org.entcore.timeline.events;
+
+import io.vertx.core.json.JsonObject;
+
+/**
+ * Entry of the cached timeline lists.
+ * <p>
+ *     The notification is stored as {@code RS id US date US type US json}, where RS and US are the record and unit
+ *     separators control characters (always escaped in an encoded json). The id, date and type used to filter the
+ *     list are read from the header, the json is only parsed for the entries that are returned.
+ *     Entries cached before this format (plain json) are still read.
+ * </p>
+ */
+public class TimelineCacheEntry {
+
+    private static final char RECORD = '\u001e';
+    private static final char UNIT = '\u001f';
+
+    private final String raw;
+    private final String id;
+    private final long date;
+    private final String type;
+    private final int payloadStart;
+    private JsonObject json;
+
+    private TimelineCacheEntry(String raw, String id, long date, String type, int payloadStart, JsonObject json) {
+        this.raw = raw;
+        this.id = id;
+        this.date = date;
+        this.type = type;
+        this.payloadStart = payloadStart;
+        this.json = json;
+    }
+
+    public static String encode(JsonObject notification) {
+        final String id = notification.getString("_id", "");
+        final JsonObject date = notification.getJsonObject("date");
+        final Long time = date != null ? date.getLong("$date") : null;
+        final String type = notification.getString("type", "");
+        final String json = notification.encode();
+        return new StringBuilder(json.length() + id.length() + type.length() + 20)
+                .append(RECORD).append(id)
+                .append(UNIT).append(time != null ? time.toString() : "")
+                .append(UNIT).append(type)
+                .append(UNIT).append(json).toString();
+    }
+
+    /**
+     * @param defaultDate date of the entries without date
+     */
+    public static TimelineCacheEntry parse(String raw, long defaultDate) {
+        if (raw.isEmpty() || raw.charAt(0) != RECORD) {
+            final JsonObject json = new JsonObject(raw);
+            final JsonObject date = json.getJsonObject("date", new JsonObject());
+            return new TimelineCacheEntry(raw, json.getString("_id"), date.getLong("$date", defaultDate),
+                    json.getString("type", ""), 0, json);
+        }
+        final int idEnd = raw.indexOf(UNIT, 1);
+        final int dateEnd = raw.indexOf(UNIT, idEnd + 1);
+        final int typeEnd = raw.indexOf(UNIT, dateEnd + 1);
+        if (idEnd < 0 || dateEnd < 0 || typeEnd < 0) {
+            throw new IllegalArgumentException("Invalid timeline cache entry");
+        }
+        final long date = dateEnd > idEnd + 1 ? Long.parseLong(raw.substring(idEnd + 1, dateEnd)) : defaultDate;
+        return new TimelineCacheEntry(raw, raw.substring(1, idEnd), date, raw.substring(dateEnd + 1, typeEnd),
+                typeEnd + 1, null);
+    }
+
+    /**
+     * @return the value stored in the list, used to remove the entry
+     */
+    public String getRaw() {
+        return raw;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getDate() {
+        return date;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public JsonObject toJson() {
+        if (json == null) {
+            json = new JsonObject(raw.substring(payloadStart));
+        }
+        return json;
+    }
+
+}
@@ -38,6 +38,8 @@ import org.entcore.common.notification.NotificationUtils;
 import org.entcore.common.notification.TimelineNotificationsLoader;
 import org.entcore.common.utils.StringUtils;
 import org.entcore.timeline.controllers.TimelineLambda;
+import org.entcore.timeline.events.DefaultTimelineEventStore;
+import org.entcore.timeline.events.DigestTimelineEventStore;
 import org.entcore.timeline.services.TimelineConfigService;
 import org.entcore.timeline.services.TimelineMailerService;
 import io.vertx.core.Handler;
@@ -71,6 +73,8 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 	private final EmailSender emailSender;
 	private final int USERS_LIMIT;
 	private final long QUERY_TIMEOUT;
+	private final int MAIL_WORKERS;
+	private final boolean MAIL_DIGEST;
 	private final MongoDb mongo = MongoDb.getInstance();
 	private final Neo4j neo4j = Neo4j.getInstance();
 
@@ -81,6 +85,8 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 		emailSender = emailFactory.getSenderWithPriority(EmailFactory.PRIORITY_VERY_LOW);
 		USERS_LIMIT = config.getInteger("users-loop-limit", 25);
 		QUERY_TIMEOUT = config.getLong("query-timeout", 300000L);
+		MAIL_WORKERS = config.getInteger("mail-workers", 1);
+		MAIL_DIGEST = config.getBoolean("mail-digest", false);
 		super.init(vertx, config);
 	}
 
@@ -271,7 +277,6 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 
 	protected void sendDailyMails(Optional<Date> forDate, int dayDelta, final Handler<Either<String, JsonObject>> handler){
 		final HttpServerRequest request = new JsonHttpServerRequest(new JsonObject());
-		final AtomicInteger userPagination = new AtomicInteger(0);
 		final AtomicInteger endPage = new AtomicInteger(0);
 		final Calendar dayDate = Calendar.getInstance();
 		if(forDate.isPresent()) dayDate.setTime(forDate.get());
@@ -295,151 +300,20 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 		final JsonObject notificationsDefaults = new JsonObject();
 		final List<String> notifiedUsers = new ArrayList<>();
 
-		final Handler<Boolean> userContinuationHandler = new Handler<Boolean>() {
-
-			private final Handler<Boolean> continuation = this;
-			private final Handler<JsonArray> usersHandler = new Handler<JsonArray>() {
-				public void handle(final JsonArray users) {
-					final int nbUsers = users.size();
-					if(nbUsers == 0){
-						log.info("[DailyMails] Page0 : " + userPagination.get() + "/" + endPage.get());
-						continuation.handle(userPagination.get() != endPage.get());
-						return;
-					}
-					final AtomicInteger usersCountdown = new AtomicInteger(nbUsers);
-
-					final Handler<Void> usersEndHandler = new Handler<Void>() {
-						public void handle(Void v) {
-							if(usersCountdown.decrementAndGet() <= 0){
-								log.info("[DailyMails] Page : " + userPagination.get() + "/" + endPage.get());
-								continuation.handle(userPagination.get() != endPage.get());
-							}
-						}
-					};
-
-					final JsonArray userIds = new fr.wseduc.webutils.collections.JsonArray();
-					for(Object userObj : users)
-						userIds.add(((JsonObject) userObj).getString("id", ""));
-					NotificationUtils.getUsersPreferences(eb, userIds, "language: uac.language, displayName: u.displayName", new Handler<JsonArray>(){
-						public void handle(JsonArray preferences) {
-							for(Object userObj : preferences){
-								final JsonObject userPrefs = (JsonObject) userObj;
-								final String userDomain = userPrefs.getString("lastDomain", I18n.DEFAULT_DOMAIN);
-								final String userScheme = userPrefs.getString("lastScheme", "http");
-								String mutableUserLanguage = "fr";
-								try {
-									mutableUserLanguage = getOrElse(new JsonObject(getOrElse(userPrefs.getString("language"), "{}", false)).getString("default-domain"), "fr", false);
-								} catch(Exception e) {
-									log.error("UserId [" + userPrefs.getString("userId", "") + "] - Bad language preferences format");
-								}
-								final String userLanguage = mutableUserLanguage;
-								final String userDisplayName = getOrElse(userPrefs.getString("displayName"), "", true);
-
-								getUserNotifications(userPrefs.getString("userId", ""), dayDate.getTime(), weekEndDate.getTime(), new Handler<JsonArray>(){
-									public void handle(JsonArray notifications) {
-										if(notifications.size() == 0){
-											usersEndHandler.handle(null);
-											return;
-										}
-
-										SimpleDateFormat formatter = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss", Locale.forLanguageTag(userLanguage));
-										final JsonArray dates = new fr.wseduc.webutils.collections.JsonArray();
-										final JsonArray templates = new fr.wseduc.webutils.collections.JsonArray();
-
-										for(Object notificationObj : notifications){
-											JsonObject notification = (JsonObject) notificationObj;
-											final String notificationName =
-													notification.getString("type","").toLowerCase() + "." +
-															notification.getString("event-type", "").toLowerCase();
-											if(notificationsDefaults.getJsonObject(notificationName) == null)
-												continue;
-
-											JsonObject notificationPreference = userPrefs
-													.getJsonObject("preferences", new JsonObject())
-													.getJsonObject("config", new JsonObject())
-													.getJsonObject(notificationName, new JsonObject());
-											if(TimelineNotificationsLoader.Frequencies.DAILY.name().equals(
-													notificationPrefsMixin("defaultFrequency", notificationPreference, notificationsDefaults.getJsonObject(notificationName))) &&
-													!TimelineNotificationsLoader.Restrictions.INTERNAL.name().equals(
-															notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getJsonObject(notificationName))) &&
-													!TimelineNotificationsLoader.Restrictions.HIDDEN.name().equals(
-															notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getJsonObject(notificationName)))){
-												templates.add(new JsonObject()
-														.put("template", notificationsDefaults.getJsonObject(notificationName, new JsonObject()).getString("template", ""))
-														.put("params", notification.getJsonObject("params", new JsonObject())));
-												dates.add(formatter.format(MongoDb.parseIsoDate(notification.getJsonObject("date"))));
-											}
-										}
-										if(templates.size() > 0){
-
-											JsonObject templateParams = new JsonObject()
-													.put("nestedTemplatesArray", templates)
-													.put("notificationDates", dates)
-													.put("displayName", userDisplayName);
-
-											processTimelineTemplate(templateParams, "", "notifications/daily-mail.html",
-													userDomain, userScheme, userLanguage, false, new Handler<String>() {
-														public void handle(final String processedTemplate) {
-															//On completion : log
-															final Handler<AsyncResult<Message<JsonObject>>> completionHandler = event -> {
-																if(event.failed() || "error".equals(event.result().body().getString("status", "error"))){
-																	log.error("[Timeline daily emails] Error while sending mail : ", event.cause());
-																	results.put("users.ko", results.getInteger("users.ko") + 1);
-																} else {
-																	results.put("mails.sent", results.getInteger("mails.sent") + 1);
-																}
-																usersEndHandler.handle(null);
-															};
-
-															//Translate mail title
-															JsonArray keys = new fr.wseduc.webutils.collections.JsonArray()
-																	.add("timeline.daily.mail.subject.header");
-															translateTimeline(keys, userDomain, userLanguage, new Handler<JsonArray>() {
-																public void handle(JsonArray translations) {
-																	//Send mail containing the "daily" notifications
-																	emailSender.sendEmail(request,
-																			userPrefs.getString("userMail", ""),
-																			null,
-																			null,
-																			translations.getString(0),
-																			processedTemplate,
-																			null,
-																			false,
-																			completionHandler);
-																}
-															});
-														}
-													});
-										} else {
-											usersEndHandler.handle(null);
-										}
-
-									}
-								});
-							}
-						}
-					});
-				}
-			};
-
-			public void handle(Boolean continuation) {
-				if(continuation){
-					getImpactedUsers(notifiedUsers, userPagination.getAndIncrement(), new Handler<Either<String,JsonArray>>() {
-						public void handle(Either<String, JsonArray> event) {
-							if(event.isLeft()){
-								log.error("[sendDailyMails] Error while retrieving impacted users : " + event.left().getValue());
-								handler.handle(new Either.Left<String, JsonObject>(event.left().getValue()));
-							} else {
-								JsonArray users = event.right().getValue();
-								usersHandler.handle(users);
-							}
+		final MailingJob.PageProcessor pageProcessor = (users, pageEnd) ->
+				getImpactedUsers(users, new Handler<Either<String,JsonArray>>() {
+					public void handle(Either<String, JsonArray> event) {
+						if(event.isLeft()){
+							log.error("[sendDailyMails] Error while retrieving impacted users : " + event.left().getValue());
+							pageEnd.handle(new Either.Left<String, Void>(event.left().getValue()));
+						} else {
+							sendDailyPage(request, event.right().getValue(), dayDate.getTime(), weekEndDate.getTime(),
+									notificationsDefaults, results, v -> {
+										pageEnd.handle(new Either.Right<String, Void>(null));
+									});
 						}
-					});
-				} else {
-					handler.handle(new Either.Right<String, JsonObject>(results));
-				}
-			}
-		};
+					}
+				});
 
 		getRecipientsUsers(dayDate.getTime(), weekEndDate.getTime(), new Handler<JsonArray>() {
 			@Override
@@ -464,7 +338,7 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 								final JsonObject notif = (JsonObject) notifObj;
 								notificationsDefaults.put(notif.getString("key", ""), notif);
 							}
-							userContinuationHandler.handle(true);
+							startMailing("daily", dayDate.getTime(), notifiedUsers, pageProcessor, results, handler);
 						}
 					}
 				});
@@ -472,6 +346,133 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 		});
 	}
 
+	private void sendDailyPage(final HttpServerRequest request, final JsonArray users, final Date from, final Date to,
+			final JsonObject notificationsDefaults, final JsonObject results, final Handler<Void> pageEnd) {
+		final int nbUsers = users.size();
+		if(nbUsers == 0){
+			pageEnd.handle(null);
+			return;
+		}
+		final AtomicInteger usersCountdown = new AtomicInteger(nbUsers);
+
+		final Handler<Void> usersEndHandler = new Handler<Void>() {
+			public void handle(Void v) {
+				if(usersCountdown.decrementAndGet() <= 0){
+					pageEnd.handle(null);
+				}
+			}
+		};
+
+		final JsonArray userIds = new fr.wseduc.webutils.collections.JsonArray();
+		for(Object userObj : users)
+			userIds.add(((JsonObject) userObj).getString("id", ""));
+		NotificationUtils.getUsersPreferences(eb, userIds, "language: uac.language, displayName: u.displayName", new Handler<JsonArray>(){
+			public void handle(final JsonArray preferences) {
+				getUsersNotifications(userIds, from, to, new Handler<Map<String, JsonArray>>() {
+					public void handle(Map<String, JsonArray> usersNotifications) {
+						for(Object userObj : preferences){
+							final JsonObject userPrefs = (JsonObject) userObj;
+							final JsonArray notifications = usersNotifications.get(userPrefs.getString("userId", ""));
+							sendDailyMail(request, userPrefs, notifications != null ? notifications : new fr.wseduc.webutils.collections.JsonArray(),
+									notificationsDefaults, results, usersEndHandler);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	private void sendDailyMail(final HttpServerRequest request, final JsonObject userPrefs, final JsonArray notifications,
+			final JsonObject notificationsDefaults, final JsonObject results, final Handler<Void> usersEndHandler) {
+		final String userDomain = userPrefs.getString("lastDomain", I18n.DEFAULT_DOMAIN);
+		final String userScheme = userPrefs.getString("lastScheme", "http");
+		String mutableUserLanguage = "fr";
+		try {
+			mutableUserLanguage = getOrElse(new JsonObject(getOrElse(userPrefs.getString("language"), "{}", false)).getString("default-domain"), "fr", false);
+		} catch(Exception e) {
+			log.error("UserId [" + userPrefs.getString("userId", "") + "] - Bad language preferences format");
+		}
+		final String userLanguage = mutableUserLanguage;
+		final String userDisplayName = getOrElse(userPrefs.getString("displayName"), "", true);
+
+		if(notifications.size() == 0){
+			usersEndHandler.handle(null);
+			return;
+		}
+
+		SimpleDateFormat formatter = new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss", Locale.forLanguageTag(userLanguage));
+		final JsonArray dates = new fr.wseduc.webutils.collections.JsonArray();
+		final JsonArray templates = new fr.wseduc.webutils.collections.JsonArray();
+
+		for(Object notificationObj : notifications){
+			JsonObject notification = (JsonObject) notificationObj;
+			final String notificationName =
+					notification.getString("type","").toLowerCase() + "." +
+							notification.getString("event-type", "").toLowerCase();
+			if(notificationsDefaults.getJsonObject(notificationName) == null)
+				continue;
+
+			JsonObject notificationPreference = userPrefs
+					.getJsonObject("preferences", new JsonObject())
+					.getJsonObject("config", new JsonObject())
+					.getJsonObject(notificationName, new JsonObject());
+			if(TimelineNotificationsLoader.Frequencies.DAILY.name().equals(
+					notificationPrefsMixin("defaultFrequency", notificationPreference, notificationsDefaults.getJsonObject(notificationName))) &&
+					!TimelineNotificationsLoader.Restrictions.INTERNAL.name().equals(
+							notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getJsonObject(notificationName))) &&
+					!TimelineNotificationsLoader.Restrictions.HIDDEN.name().equals(
+							notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getJsonObject(notificationName)))){
+				templates.add(new JsonObject()
+						.put("template", notificationsDefaults.getJsonObject(notificationName, new JsonObject()).getString("template", ""))
+						.put("params", notification.getJsonObject("params", new JsonObject())));
+				dates.add(formatter.format(MongoDb.parseIsoDate(notification.getJsonObject("date"))));
+			}
+		}
+		if(templates.size() > 0){
+
+			JsonObject templateParams = new JsonObject()
+					.put("nestedTemplatesArray", templates)
+					.put("notificationDates", dates)
+					.put("displayName", userDisplayName);
+
+			processTimelineTemplate(templateParams, "", "notifications/daily-mail.html",
+					userDomain, userScheme, userLanguage, false, new Handler<String>() {
+						public void handle(final String processedTemplate) {
+							//On completion : log
+							final Handler<AsyncResult<Message<JsonObject>>> completionHandler = event -> {
+								if(event.failed() || "error".equals(event.result().body().getString("status", "error"))){
+									log.error("[Timeline daily emails] Error while sending mail : ", event.cause());
+									results.put("users.ko", results.getInteger("users.ko") + 1);
+								} else {
+									results.put("mails.sent", results.getInteger("mails.sent") + 1);
+								}
+								usersEndHandler.handle(null);
+							};
+
+							//Translate mail title
+							JsonArray keys = new fr.wseduc.webutils.collections.JsonArray()
+									.add("timeline.daily.mail.subject.header");
+							translateTimeline(keys, userDomain, userLanguage, new Handler<JsonArray>() {
+								public void handle(JsonArray translations) {
+									//Send mail containing the "daily" notifications
+									emailSender.sendEmail(request,
+											userPrefs.getString("userMail", ""),
+											null,
+											null,
+											translations.getString(0),
+											processedTemplate,
+											null,
+											false,
+											completionHandler);
+								}
+							});
+						}
+					});
+		} else {
+			usersEndHandler.handle(null);
+		}
+	}
+
 	@Override
 	public void sendWeeklyMails(Date date, int dayDelta, Handler<Either<String, JsonObject>> handler) {
 		sendWeeklyMails(Optional.ofNullable(date), dayDelta, handler);
@@ -484,7 +485,6 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 
 	protected void sendWeeklyMails(Optional<Date> forDate, int dayDelta, final Handler<Either<String, JsonObject>> handler) {
 		final HttpServerRequest request = new JsonHttpServerRequest(new JsonObject());
-		final AtomicInteger userPagination = new AtomicInteger(0);
 		final AtomicInteger endPage = new AtomicInteger(0);
 		final Calendar weekDate = Calendar.getInstance();
 		if(forDate.isPresent()) weekDate.setTime(forDate.get());
@@ -508,168 +508,21 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 		final JsonObject notificationsDefaults = new JsonObject();
 		final List<String> notifiedUsers = new ArrayList<>();
 
-		final Handler<Boolean> userContinuationHandler = new Handler<Boolean>() {
-
-			private final Handler<Boolean> continuation = this;
-			private final Handler<JsonArray> usersHandler = new Handler<JsonArray>() {
-				public void handle(final JsonArray users) {
-					final int nbUsers = users.size();
-					if (nbUsers == 0) {
-						log.info("[WeeklyMails] Page0 : " + userPagination.get() + "/" + endPage.get());
-						continuation.handle(userPagination.get() != endPage.get());
-						return;
-					}
-					final AtomicInteger usersCountdown = new AtomicInteger(nbUsers);
-
-					final Handler<Void> usersEndHandler = new Handler<Void>() {
-						public void handle(Void v) {
-							if (usersCountdown.decrementAndGet() <= 0) {
-								log.info("[WeeklyMails] Page : " + userPagination.get() + "/" + endPage.get());
-								continuation.handle(userPagination.get() != endPage.get());
-							}
+		final MailingJob.PageProcessor pageProcessor = (users, pageEnd) ->
+				getImpactedUsers(users, new Handler<Either<String, JsonArray>>() {
+					public void handle(Either<String, JsonArray> event) {
+						if (event.isLeft()) {
+							log.error("[sendWeeklyMails] Error while retrieving impacted users : " + event.left().getValue());
+							pageEnd.handle(new Either.Left<String, Void>(event.left().getValue()));
+						} else {
+							sendWeeklyPage(request, event.right().getValue(), weekDate.getTime(), weekEndDate.getTime(),
+									notificationsDefaults, results, v -> {
+										pageEnd.handle(new Either.Right<String, Void>(null));
+									});
 						}
-					};
-
-					final JsonArray userIds = new fr.wseduc.webutils.collections.JsonArray();
-					for (Object userObj : users)
-						userIds.add(((JsonObject) userObj).getString("id", ""));
-					NotificationUtils.getUsersPreferences(eb, userIds, "language: uac.language, displayName: u.displayName", new Handler<JsonArray>() {
-						public void handle(JsonArray preferences) {
-							for (Object userObj : preferences) {
-								final JsonObject userPrefs = (JsonObject) userObj;
-								final String userDomain = userPrefs.getString("lastDomain", I18n.DEFAULT_DOMAIN);
-								final String userScheme = userPrefs.getString("lastScheme", "http");
-								String mutableUserLanguage = "fr";
-								try {
-									mutableUserLanguage = getOrElse(new JsonObject(getOrElse(userPrefs.getString("language"), "{}", false)).getString("default-domain"), "fr", false);
-								} catch (Exception e) {
-									log.error("UserId [" + userPrefs.getString("userId", "") + "] - Bad language preferences format");
-								}
-								final String userLanguage = mutableUserLanguage;
-								final String userDisplayName = getOrElse(userPrefs.getString("displayName"), "", true);
-
-								getAggregatedUserNotifications(userPrefs.getString("userId", ""), weekDate.getTime(), weekEndDate.getTime(), new Handler<JsonArray>() {
-									public void handle(JsonArray notifications) {
-										if (notifications.size() == 0) {
-											usersEndHandler.handle(null);
-											return;
-										}
-
-										final JsonArray weeklyNotifications = new fr.wseduc.webutils.collections.JsonArray();
-
-										for (Object notificationObj : notifications) {
-											JsonObject notification = (JsonObject) notificationObj;
-											final String notificationName =
-													notification.getString("type", "").toLowerCase() + "." +
-															notification.getString("event-type", "").toLowerCase();
-											if (notificationsDefaults.getJsonObject(notificationName) == null)
-												continue;
-
-											JsonObject notificationPreference = userPrefs
-													.getJsonObject("preferences", new JsonObject())
-													.getJsonObject("config", new JsonObject())
-													.getJsonObject(notificationName, new JsonObject());
-											if (TimelineNotificationsLoader.Frequencies.WEEKLY.name().equals(
-													notificationPrefsMixin("defaultFrequency", notificationPreference, notificationsDefaults.getJsonObject(notificationName))) &&
-													!TimelineNotificationsLoader.Restrictions.INTERNAL.name().equals(
-															notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getJsonObject(notificationName))) &&
-													!TimelineNotificationsLoader.Restrictions.HIDDEN.name().equals(
-															notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getJsonObject(notificationName)))) {
-												notification.put("notificationName", notificationName);
-												weeklyNotifications.add(notification);
-											}
-										}
-
-										final JsonObject weeklyNotificationsObj = new JsonObject();
-										final JsonArray weeklyNotificationsGroupedArray = new fr.wseduc.webutils.collections.JsonArray();
-										for (Object notif : weeklyNotifications) {
-											JsonObject notification = (JsonObject) notif;
-											if (!weeklyNotificationsObj.containsKey(notification.getString("type").toLowerCase()))
-												weeklyNotificationsObj.put(notification.getString("type").toLowerCase(), new JsonObject()
-														.put("link", notificationsDefaults
-																.getJsonObject(notification.getString("notificationName")).getString("app-address", ""))
-														.put("event-types", new fr.wseduc.webutils.collections.JsonArray()));
-											weeklyNotificationsObj
-													.getJsonObject(notification.getString("type").toLowerCase())
-													.getJsonArray(("event-types"), new fr.wseduc.webutils.collections.JsonArray())
-													.add(notification);
-										}
-
-										for (String key : weeklyNotificationsObj.getMap().keySet()) {
-											weeklyNotificationsGroupedArray.add(new JsonObject()
-													.put("type", key)
-													.put("link", weeklyNotificationsObj.getJsonObject(key).getString("link", ""))
-													.put("event-types", weeklyNotificationsObj.getJsonObject(key).getJsonArray("event-types")));
-										}
-
-										if (weeklyNotifications.size() > 0) {
-
-											JsonObject templateParams = new JsonObject().put("notifications", weeklyNotificationsGroupedArray);
-											templateParams.put("displayName", userDisplayName);
-
-											processTimelineTemplate(templateParams, "", "notifications/weekly-mail.html",
-													userDomain, userScheme, userLanguage, false, new Handler<String>() {
-														public void handle(final String processedTemplate) {
-															//On completion : log
-															final Handler<AsyncResult<Message<JsonObject>>> completionHandler = event -> {
-																if (event.failed() || "error".equals(event.result().body().getString("status", "error"))) {
-																	log.error("[Timeline weekly emails] Error while sending mail : ", event.cause());
-																	results.put("users.ko", results.getInteger("users.ko") + 1);
-																} else {
-																	results.put("mails.sent", results.getInteger("mails.sent") + 1);
-																}
-																usersEndHandler.handle(null);
-															};
-
-															//Translate mail title
-															JsonArray keys = new fr.wseduc.webutils.collections.JsonArray()
-																	.add("timeline.weekly.mail.subject.header");
-															translateTimeline(keys, userDomain, userLanguage, new Handler<JsonArray>() {
-																public void handle(JsonArray translations) {
-																	//Send mail containing the "weekly" notifications
-																	emailSender.sendEmail(request,
-																			userPrefs.getString("userMail", ""),
-																			null,
-																			null,
-																			translations.getString(0),
-																			processedTemplate,
-																			null,
-																			false,
-																			completionHandler);
-																}
-															});
-														}
-													});
-										} else {
-											usersEndHandler.handle(null);
-										}
+					}
+				});
 
-									}
-								});
-							}
-						}
-					});
-				}
-			};
-
-			public void handle(Boolean continuation) {
-				if (continuation) {
-					getImpactedUsers(notifiedUsers, userPagination.getAndIncrement(), new Handler<Either<String, JsonArray>>() {
-						public void handle(Either<String, JsonArray> event) {
-							if (event.isLeft()) {
-								log.error("[sendWeeklyMails] Error while retrieving impacted users : " + event.left().getValue());
-								handler.handle(new Either.Left<String, JsonObject>(event.left().getValue()));
-							} else {
-								JsonArray users = event.right().getValue();
-								usersHandler.handle(users);
-							}
-						}
-					});
-				} else {
-					handler.handle(new Either.Right<String, JsonObject>(results));
-				}
-			}
-		};
 		getRecipientsUsers(weekDate.getTime(), weekEndDate.getTime(), new Handler<JsonArray>() {
 			@Override
 			public void handle(JsonArray event) {
@@ -693,7 +546,7 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 								final JsonObject notif = (JsonObject) notifObj;
 								notificationsDefaults.put(notif.getString("key", ""), notif);
 							}
-							userContinuationHandler.handle(true);
+							startMailing("weekly", weekDate.getTime(), notifiedUsers, pageProcessor, results, handler);
 						}
 					}
 				});
@@ -702,6 +555,162 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 		});
 	}
 
+	private void sendWeeklyPage(final HttpServerRequest request, final JsonArray users, final Date from, final Date to,
+			final JsonObject notificationsDefaults, final JsonObject results, final Handler<Void> pageEnd) {
+		final int nbUsers = users.size();
+		if (nbUsers == 0) {
+			pageEnd.handle(null);
+			return;
+		}
+		final AtomicInteger usersCountdown = new AtomicInteger(nbUsers);
+
+		final Handler<Void> usersEndHandler = new Handler<Void>() {
+			public void handle(Void v) {
+				if (usersCountdown.decrementAndGet() <= 0) {
+					pageEnd.handle(null);
+				}
+			}
+		};
+
+		final JsonArray userIds = new fr.wseduc.webutils.collections.JsonArray();
+		for (Object userObj : users)
+			userIds.add(((JsonObject) userObj).getString("id", ""));
+		NotificationUtils.getUsersPreferences(eb, userIds, "language: uac.language, displayName: u.displayName", new Handler<JsonArray>() {
+			public void handle(final JsonArray preferences) {
+				getAggregatedUsersNotifications(userIds, from, to, new Handler<Map<String, JsonArray>>() {
+					public void handle(Map<String, JsonArray> usersNotifications) {
+						for (Object userObj : preferences) {
+							final JsonObject userPrefs = (JsonObject) userObj;
+							final JsonArray notifications = usersNotifications.get(userPrefs.getString("userId", ""));
+							sendWeeklyMail(request, userPrefs, notifications != null ? notifications : new fr.wseduc.webutils.collections.JsonArray(),
+									notificationsDefaults, results, usersEndHandler);
+						}
+					}
+				});
+			}
+		});
+	}
+
+	private void sendWeeklyMail(final HttpServerRequest request, final JsonObject userPrefs, final JsonArray notifications,
+			final JsonObject notificationsDefaults, final JsonObject results, final Handler<Void> usersEndHandler) {
+		final String userDomain = userPrefs.getString("lastDomain", I18n.DEFAULT_DOMAIN);
+		final String userScheme = userPrefs.getString("lastScheme", "http");
+		String mutableUserLanguage = "fr";
+		try {
+			mutableUserLanguage = getOrElse(new JsonObject(getOrElse(userPrefs.getString("language"), "{}", false)).getString("default-domain"), "fr", false);
+		} catch (Exception e) {
+			log.error("UserId [" + userPrefs.getString("userId", "") + "] - Bad language preferences format");
+		}
+		final String userLanguage = mutableUserLanguage;
+		final String userDisplayName = getOrElse(userPrefs.getString("displayName"), "", true);
+
+		if (notifications.size() == 0) {
+			usersEndHandler.handle(null);
+			return;
+		}
+
+		final JsonArray weeklyNotifications = new fr.wseduc.webutils.collections.JsonArray();
+
+		for (Object notificationObj : notifications) {
+			JsonObject notification = (JsonObject) notificationObj;
+			final String notificationName =
+					notification.getString("type", "").toLowerCase() + "." +
+							notification.getString("event-type", "").toLowerCase();
+			if (notificationsDefaults.getJsonObject(notificationName) == null)
+				continue;
+
+			JsonObject notificationPreference = userPrefs
+					.getJsonObject("preferences", new JsonObject())
+					.getJsonObject("config", new JsonObject())
+					.getJsonObject(notificationName, new JsonObject());
+			if (TimelineNotificationsLoader.Frequencies.WEEKLY.name().equals(
+					notificationPrefsMixin("defaultFrequency", notificationPreference, notificationsDefaults.getJsonObject(notificationName))) &&
+					!TimelineNotificationsLoader.Restrictions.INTERNAL.name().equals(
+							notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getJsonObject(notificationName))) &&
+					!TimelineNotificationsLoader.Restrictions.HIDDEN.name().equals(
+							notificationPrefsMixin("restriction", notificationPreference, notificationsDefaults.getJsonObject(notificationName)))) {
+				notification.put("notificationName", notificationName);
+				weeklyNotifications.add(notification);
+			}
+		}
+
+		final JsonObject weeklyNotificationsObj = new JsonObject();
+		final JsonArray weeklyNotificationsGroupedArray = new fr.wseduc.webutils.collections.JsonArray();
+		for (Object notif : weeklyNotifications) {
+			JsonObject notification = (JsonObject) notif;
+			if (!weeklyNotificationsObj.containsKey(notification.getString("type").toLowerCase()))
+				weeklyNotificationsObj.put(notification.getString("type").toLowerCase(), new JsonObject()
+						.put("link", notificationsDefaults
+								.getJsonObject(notification.getString("notificationName")).getString("app-address", ""))
+						.put("event-types", new fr.wseduc.webutils.collections.JsonArray()));
+			weeklyNotificationsObj
+					.getJsonObject(notification.getString("type").toLowerCase())
+					.getJsonArray(("event-types"), new fr.wseduc.webutils.collections.JsonArray())
+					.add(notification);
+		}
+
+		for (String key : weeklyNotificationsObj.getMap().keySet()) {
+			weeklyNotificationsGroupedArray.add(new JsonObject()
+					.put("type", key)
+					.put("link", weeklyNotificationsObj.getJsonObject(key).getString("link", ""))
+					.put("event-types", weeklyNotificationsObj.getJsonObject(key).getJsonArray("event-types")));
+		}
+
+		if (weeklyNotifications.size() > 0) {
+
+			JsonObject templateParams = new JsonObject().put("notifications", weeklyNotificationsGroupedArray);
+			templateParams.put("displayName", userDisplayName);
+
+			processTimelineTemplate(templateParams, "", "notifications/weekly-mail.html",
+					userDomain, userScheme, userLanguage, false, new Handler<String>() {
+						public void handle(final String processedTemplate) {
+							//On completion : log
+							final Handler<AsyncResult<Message<JsonObject>>> completionHandler = event -> {
+								if (event.failed() || "error".equals(event.result().body().getString("status", "error"))) {
+									log.error("[Timeline weekly emails] Error while sending mail : ", event.cause());
+									results.put("users.ko", results.getInteger("users.ko") + 1);
+								} else {
+									results.put("mails.sent", results.getInteger("mails.sent") + 1);
+								}
+								usersEndHandler.handle(null);
+							};
+
+							//Translate mail title
+							JsonArray keys = new fr.wseduc.webutils.collections.JsonArray()
+									.add("timeline.weekly.mail.subject.header");
+							translateTimeline(keys, userDomain, userLanguage, new Handler<JsonArray>() {
+								public void handle(JsonArray translations) {
+									//Send mail containing the "weekly" notifications
+									emailSender.sendEmail(request,
+											userPrefs.getString("userMail", ""),
+											null,
+											null,
+											translations.getString(0),
+											processedTemplate,
+											null,
+											false,
+											completionHandler);
+								}
+							});
+						}
+					});
+		} else {
+			usersEndHandler.handle(null);
+		}
+	}
+
+	private void startMailing(String name, Date from, List<String> recipients, MailingJob.PageProcessor pageProcessor,
+			final JsonObject results, final Handler<Either<String, JsonObject>> handler) {
+		new MailingJob(name, from, recipients, USERS_LIMIT, MAIL_WORKERS).start(pageProcessor, event -> {
+			if (event.isLeft()) {
+				handler.handle(new Either.Left<String, JsonObject>(event.left().getValue()));
+			} else {
+				results.put("users.resumed", event.right().getValue());
+				handler.handle(new Either.Right<String, JsonObject>(results));
+			}
+		});
+	}
+
 		@Override
 	public void getNotificationsDefaults(final Handler<JsonArray> handler) {
 		configService.list(new Handler<Either<String, JsonArray>>() {
@@ -734,32 +743,58 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 	}
 
 	/**
-	 * Retrieves all timeline notifications from mongodb for a single user, from a specific date in the past.
+	 * Retrieves the timeline notifications of several users from mongodb, between two dates.
 	 *
-	 * @param userId : Userid
+	 * @param userIds : Userids
 	 * @param from : The starting date
-	 * @param handler : Handles the notifications
+	 * @param to : End date used to filter notifications
+	 * @param handler : Handles the notifications by userId
 	 */
-	private void getUserNotifications(String userId, Date from, Date to, final Handler<JsonArray> handler){
-		JsonObject matcher = MongoQueryBuilder.build(
-				QueryBuilder
-						.start("recipients").elemMatch(QueryBuilder.start("userId").is(userId).get())
-						.and("date").greaterThanEquals(from).lessThan(to));
-
-		JsonObject keys = new JsonObject()
+	private void getUsersNotifications(JsonArray userIds, Date from, Date to, final Handler<Map<String, JsonArray>> handler){
+		final JsonObject matcher = MongoQueryBuilder.build(QueryBuilder.start("date").greaterThanEquals(from).lessThan(to))
+				.put("recipients.userId", new JsonObject().put("$in", userIds));
+		final JsonObject keys = new JsonObject()
 				.put("_id", 0)
+				.put("userId", "$recipients.userId")
 				.put("type", 1)
 				.put("event-type", 1)
 				.put("params", 1)
 				.put("date", 1);
-		mongo.find("timeline", matcher, null, keys, new Handler<Message<JsonObject>>() {
-			public void handle(Message<JsonObject> event) {
-				if("error".equals(event.body().getString("status", "error"))){
-					handler.handle(new fr.wseduc.webutils.collections.JsonArray());
-				} else {
-					handler.handle(event.body().getJsonArray("results"));
+
+		final JsonArray pipeline = new fr.wseduc.webutils.collections.JsonArray()
+				.add(new JsonObject().put("$match", matcher))
+				.add(new JsonObject().put("$project", new JsonObject()
+						.put("type", 1).put("event-type", 1).put("params", 1).put("date", 1).put("recipients.userId", 1)))
+				.add(new JsonObject().put("$unwind", "$recipients"))
+				.add(new JsonObject().put("$match", new JsonObject().put("recipients.userId", new JsonObject().put("$in", userIds))))
+				.add(new JsonObject().put("$project", keys));
+		aggregateByUser(DefaultTimelineEventStore.TIMELINE_COLLECTION, pipeline, handler);
+	}
+
+	/**
+	 * Runs an aggregation returning a userId field and groups the results by user.
+	 */
+	private void aggregateByUser(String collection, JsonArray pipeline, final Handler<Map<String, JsonArray>> handler) {
+		final JsonObject aggregation = new JsonObject()
+				.put("aggregate", collection)
+				.put("allowDiskUse", true)
+				.put("pipeline", pipeline)
+				.put("cursor", new JsonObject().put("batchSize", Integer.MAX_VALUE));
+		mongo.command(aggregation.encode(), new DeliveryOptions().setSendTimeout(QUERY_TIMEOUT), event -> {
+			final Map<String, JsonArray> byUser = new HashMap<>();
+			if ("error".equals(event.body().getString("status", "error"))) {
+				log.error("Timeline mails aggregation failed: " + event.body().encode());
+			} else {
+				final JsonArray r = event.body().getJsonObject("result", new JsonObject())
+						.getJsonObject("cursor", new JsonObject())
+						.getJsonArray("firstBatch", new fr.wseduc.webutils.collections.JsonArray());
+				for (Object o : r) {
+					final JsonObject notification = (JsonObject) o;
+					final String userId = (String) notification.remove("userId");
+					byUser.computeIfAbsent(userId, k -> new fr.wseduc.webutils.collections.JsonArray()).add(notification);
 				}
 			}
+			handler.handle(byUser);
 		});
 	}
 
@@ -775,20 +810,31 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 		return userPrefs.getString(field, defaultPrefs.getString(field, ""));
 	}
 
+	/**
+	 * Retrieves the recipients of the notifications between two dates, sorted so that the pages of a mailing
+	 * are the same when it is resumed.
+	 */
 	private void getRecipientsUsers(Date from, Date to, final Handler<JsonArray> handler) {
 		final JsonObject aggregation = new JsonObject();
 		JsonArray pipeline = new fr.wseduc.webutils.collections.JsonArray();
 		aggregation
-				.put("aggregate", "timeline")
+				.put("aggregate", MAIL_DIGEST ? DigestTimelineEventStore.DIGEST_COLLECTION : DefaultTimelineEventStore.TIMELINE_COLLECTION)
 				.put("allowDiskUse", true)
 				.put("pipeline", pipeline)
 				.put("cursor", new JsonObject().put("batchSize", Integer.MAX_VALUE));
 
 		JsonObject matcher = MongoQueryBuilder.build(QueryBuilder.start("date").greaterThanEquals(from).lessThan(to));
 
-		pipeline.add(new JsonObject().put("$match", matcher));
-		pipeline.add(new JsonObject().put("$unwind", "$recipients"));
-		pipeline.add(new JsonObject().put("$group", new JsonObject().put("_id", "$recipients.userId")));
+		if (MAIL_DIGEST) {
+			// the counters of removed notifications are decremented down to 0
+			matcher.put("count", new JsonObject().put("$gt", 0));
+			pipeline.add(new JsonObject().put("$match", matcher));
+			pipeline.add(new JsonObject().put("$group", new JsonObject().put("_id", "$userId")));
+		} else {
+			pipeline.add(new JsonObject().put("$match", matcher));
+			pipeline.add(new JsonObject().put("$unwind", "$recipients"));
+			pipeline.add(new JsonObject().put("$group", new JsonObject().put("_id", "$recipients.userId")));
+		}
 		//
 		mongo.command(aggregation.encode(), new DeliveryOptions().setSendTimeout(QUERY_TIMEOUT), event -> {
 			if ("error".equals(event.body().getString("status", "error"))) {
@@ -798,7 +844,7 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 				JsonArray r = event.body().getJsonObject("result", new JsonObject())
 						.getJsonObject("cursor", new JsonObject()).getJsonArray("firstBatch");
 				if (r != null && r.size() > 0) {
-					final List<String> userIds = r.stream().map(e -> ((JsonObject)e).getString("_id")).filter(e -> !StringUtils.isEmpty(e)).collect(Collectors.toList());
+					final List<String> userIds = r.stream().map(e -> ((JsonObject)e).getString("_id")).filter(e -> !StringUtils.isEmpty(e)).sorted().collect(Collectors.toList());
 					handler.handle(new JsonArray(userIds));
 				} else {
 					handler.handle(new fr.wseduc.webutils.collections.JsonArray());
@@ -808,74 +854,55 @@ public class DefaultTimelineMailerService extends Renders implements TimelineMai
 	}
 
 	/**
-	 * Retrieves users having an email address, paginated.
+	 * Retrieves the users having an email address among a page of recipients.
 	 *
-	 * @param page : Page number
+	 * @param recipients : Recipients of the page
 	 * @param handler : Handles the users
 	 */
-	private void getImpactedUsers(List<String> recipients, int page, final Handler<Either<String, JsonArray>> handler){
-		int fromIdx = page * USERS_LIMIT;
-		int toIdx = page * USERS_LIMIT + USERS_LIMIT;
-		if (fromIdx >= recipients.size()) {
-			handler.handle(new Either.Right<String, JsonArray>(new fr.wseduc.webutils.collections.JsonArray()));
-			return;
-		}
-		if (toIdx > recipients.size()) {
-			toIdx = recipients.size();
-		}
+	private void getImpactedUsers(List<String> recipients, final Handler<Either<String, JsonArray>> handler){
 		final String query =
 				"MATCH (u:User)-[:IN]->(g:Group)-[:AUTHORIZED]->(r:Role)-[:AUTHORIZE]->(act:WorkflowAction) " +
 				"WHERE u.id IN {notifiedUsers} AND u.activationCode IS NULL AND u.email IS NOT NULL AND length(u.email) > 0 " +
 				"AND act.name = \"org.entcore.timeline.controllers.TimelineController|mixinConfig\"" +
 				"RETURN DISTINCT u.email as mail, u.id as id ";
 		JsonObject params = new JsonObject()
-				.put("notifiedUsers", new fr.wseduc.webutils.collections.JsonArray(recipients.subList(fromIdx, toIdx)));
+				.put("notifiedUsers", new fr.wseduc.webutils.collections.JsonArray(new ArrayList<>(recipients)));
 		neo4j.execute(query, params, Neo4jResult.validResultHandler(handler));
 	}
 
 	/**
-	 * Retrieves an aggregated list of notifications from mongodb for a single user.
+	 * Retrieves an aggregated list of notifications from mongodb for several users.
+	 * The counters are read from the digests when they are maintained by the event store.
 	 *
 	 *  Notifications are grouped by type & event-type.
-	 * @param userId : Userid
+	 * @param userIds : Userids
 	 * @param from : Starting date in the past
 	 * @param to : End date used to filter notifications
-	 * @param handler: Handles the notifications
+	 * @param handler: Handles the notifications by userId
 	 */
-	private void getAggregatedUserNotifications(String userId, Date from, Date to, final Handler<JsonArray> handler){
-		final JsonObject aggregation = new JsonObject();
-		JsonArray pipeline = new fr.wseduc.webutils.collections.JsonArray();
-		aggregation
-				.put("aggregate", "timeline")
-				.put("allowDiskUse", true)
-				.put("pipeline", pipeline)
-				.put("cursor", new JsonObject().put("batchSize", Integer.MAX_VALUE));
-
-		JsonObject matcher = MongoQueryBuilder.build(
-				QueryBuilder
-						.start("recipients").elemMatch(QueryBuilder.start("userId").is(userId).get())
-						.and("date").greaterThanEquals(from).lessThan(to));
-		JsonObject grouper = new JsonObject("{ \"_id\" : { \"type\": \"$type\", \"event-type\": \"$event-type\"}, \"count\": { \"$sum\": 1 } }");
-		JsonObject transformer = new JsonObject("{ \"type\": \"$_id.type\", \"event-type\": \"$_id.event-type\", \"count\": 1, \"_id\": 0 }");
-
-		pipeline.add(new JsonObject().put("$match", matcher));
+	private void getAggregatedUsersNotifications(JsonArray userIds, Date from, Date to, final Handler<Map<String, JsonArray>> handler){
+		final JsonObject matcher = MongoQueryBuilder.build(QueryBuilder.start("date").greaterThanEquals(from).lessThan(to));
+		final JsonArray pipeline = new fr.wseduc.webutils.collections.JsonArray();
+		final JsonObject grouper;
+		if (MAIL_DIGEST) {
+			matcher.put("userId", new JsonObject().put("$in", userIds)).put("count", new JsonObject().put("$gt", 0));
+			pipeline.add(new JsonObject().put("$match", matcher));
+			grouper = new JsonObject("{ \"_id\" : { \"userId\": \"$userId\", \"type\": \"$type\", \"event-type\": \"$event-type\"}, \"count\": { \"$sum\": \"$count\" } }");
+		} else {
+			matcher.put("recipients.userId", new JsonObject().put("$in", userIds));
+			pipeline.add(new JsonObject().put("$match", matcher));
+			pipeline.add(new JsonObject().put("$project", new JsonObject()
+					.put("type", 1).put("event-type", 1).put("recipients.userId", 1)));
+			pipeline.add(new JsonObject().put("$unwind", "$recipients"));
+			pipeline.add(new JsonObject().put("$match", new JsonObject().put("recipients.userId", new JsonObject().put("$in", userIds))));
+			grouper = new JsonObject("{ \"_id\" : { \"userId\": \"$recipients.userId\", \"type\": \"$type\", \"event-type\": \"$event-type\"}, \"count\": { \"$sum\": 1 } }");
+		}
+		final JsonObject transformer = new JsonObject("{ \"userId\": \"$_id.userId\", \"type\": \"$_id.type\", \"event-type\": \"$_id.event-type\", \"count\": 1, \"_id\": 0 }");
 		pipeline.add(new JsonObject().put("$group", grouper));
 		pipeline.add(new JsonObject().put("$project", transformer));
 
-		mongo.command(aggregation.toString(), new Handler<Message<JsonObject>>() {
-			@Override
-			public void handle(Message<JsonObject> event) {
-				if("error".equals(event.body().getString("status", "error"))){
-					handler.handle(new fr.wseduc.webutils.collections.JsonArray());
-				} else {
-					handler.handle(
-							event.body().getJsonObject("result", new JsonObject())
-									.getJsonObject("cursor", new JsonObject())
-									.getJsonArray("firstBatch", new fr.wseduc.webutils.collections.JsonArray()));
-				}
-			}
-
-		});
+		aggregateByUser(MAIL_DIGEST ? DigestTimelineEventStore.DIGEST_COLLECTION : DefaultTimelineEventStore.TIMELINE_COLLECTION,
+				pipeline, handler);
 	}
 
 	public void setConfigService(TimelineConfigService configService) {
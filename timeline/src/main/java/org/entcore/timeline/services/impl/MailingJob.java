@@ -0,0 +1,155 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+
+ */
+
+package org.entcore.timeline.services.impl;
+
+import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.webutils.Either;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonObject;
+import io.vertx.core.logging.Logger;
+import io.vertx.core.logging.LoggerFactory;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the pages of a mailing with several workers and persists a checkpoint : the last recipient of the pages
+ * completed without gap. The recipients are sorted, so a job started again for the same period skips the recipients
+ * up to its checkpoint, even when the recipients changed meanwhile. The checkpoint is removed once every page is done.
+ */
+public class MailingJob {
+
+	public static final String CHECKPOINT_COLLECTION = "timeline.mailing.checkpoints";
+	private static final Logger log = LoggerFactory.getLogger(MailingJob.class);
+	private final MongoDb mongo = MongoDb.getInstance();
+	private final String id;
+	private final List<String> recipients;
+	private final int pageSize;
+	private final int workers;
+	private final AtomicInteger nextPage = new AtomicInteger(0);
+	private final AtomicInteger runningWorkers = new AtomicInteger(0);
+	private final Set<Integer> donePages = new HashSet<>();
+	private List<String> remaining;
+	private int pages;
+	private int checkpoint;
+	private String error;
+
+	public interface PageProcessor {
+		void process(List<String> recipients, Handler<Either<String, Void>> pageEnd);
+	}
+
+	/**
+	 * @param recipients : Recipients of the mailing, sorted
+	 */
+	public MailingJob(String name, Date periodStart, List<String> recipients, int pageSize, int workers) {
+		this.id = name + "-" + new SimpleDateFormat("yyyy-MM-dd").format(periodStart);
+		this.recipients = recipients;
+		this.pageSize = Math.max(1, pageSize);
+		this.workers = Math.max(1, workers);
+	}
+
+	/**
+	 * @param handler : Handles the number of recipients skipped (greater than 0 when the job is resumed)
+	 */
+	public void start(final PageProcessor processor, final Handler<Either<String, Integer>> handler) {
+		mongo.findOne(CHECKPOINT_COLLECTION, new JsonObject().put("_id", id), message -> {
+			final JsonObject result = message.body().getJsonObject("result");
+			final String lastRecipient = "ok".equals(message.body().getString("status")) && result != null ?
+					result.getString("userId") : null;
+			final int skipped = lastRecipient != null ? skipped(recipients, lastRecipient) : 0;
+			if (skipped > 0) {
+				log.info("[" + id + "] Resuming after " + skipped + "/" + recipients.size() + " recipients");
+			}
+			remaining = recipients.subList(skipped, recipients.size());
+			pages = (remaining.size() + pageSize - 1) / pageSize;
+			final int nbWorkers = Math.min(workers, pages);
+			if (nbWorkers <= 0) {
+				end(skipped, handler);
+				return;
+			}
+			runningWorkers.set(nbWorkers);
+			for (int i = 0; i < nbWorkers; i++) {
+				next(processor, skipped, handler);
+			}
+		});
+	}
+
+	/**
+	 * @return the number of recipients up to {@code lastRecipient} included
+	 */
+	static int skipped(List<String> recipients, String lastRecipient) {
+		final int idx = Collections.binarySearch(recipients, lastRecipient);
+		return idx >= 0 ? idx + 1 : -(idx + 1);
+	}
+
+	private List<String> page(int page) {
+		return remaining.subList(page * pageSize, Math.min((page + 1) * pageSize, remaining.size()));
+	}
+
+	private void next(final PageProcessor processor, final int skipped, final Handler<Either<String, Integer>> handler) {
+		final int page = nextPage.getAndIncrement();
+		if (error != null || page >= pages) {
+			if (runningWorkers.decrementAndGet() == 0) {
+				end(skipped, handler);
+			}
+			return;
+		}
+		processor.process(page(page), res -> {
+			if (res.isLeft()) {
+				error = res.left().getValue();
+			} else {
+				log.info("[" + id + "] Page : " + (page + 1) + "/" + pages);
+				pageDone(page);
+			}
+			next(processor, skipped, handler);
+		});
+	}
+
+	private void pageDone(int page) {
+		donePages.add(page);
+		final int previous = checkpoint;
+		while (donePages.remove(checkpoint)) {
+			checkpoint++;
+		}
+		if (checkpoint > previous && checkpoint < pages) {
+			final List<String> lastPage = page(checkpoint - 1);
+			mongo.update(CHECKPOINT_COLLECTION, new JsonObject().put("_id", id),
+					new JsonObject().put("$set", new JsonObject().put("userId", lastPage.get(lastPage.size() - 1))
+							.put("modified", MongoDb.now())),
+					true, false);
+		}
+	}
+
+	private void end(int skipped, Handler<Either<String, Integer>> handler) {
+		if (error != null) {
+			// the checkpoint is kept to resume the job
+			handler.handle(new Either.Left<>(error));
+			return;
+		}
+		mongo.delete(CHECKPOINT_COLLECTION, new JsonObject().put("_id", id));
+		handler.handle(new Either.Right<>(skipped));
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.entcore.timeline;
+
+import fr.wseduc.webutils.Either;
+import io.vertx.core.AsyncResult;
+import io.vertx.core.Future;
+import io.vertx.core.Handler;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+import org.entcore.common.cache.CacheService;
+import org.entcore.common.user.UserInfos;
+import org.entcore.timeline.events.CachedTimelineEventStore;
+import org.entcore.timeline.events.TimelineEventStore;
+import org.entcore.timeline.services.TimelineConfigService;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+@RunWith(VertxUnitRunner.class)
+public class CachedTimelineEventStoreTest {
+
+    private final List<String> cached = new ArrayList<>();
+    private final List<JsonObject> originalGets = new ArrayList<>();
+
+    private CachedTimelineEventStore store(boolean headerFormat) {
+        final CacheService cacheService = (CacheService) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { CacheService.class }, (proxy, method, args) -> {
+                    if ("getList".equals(method.getName())) {
+                        ((Handler<AsyncResult<List<String>>>) args[1]).handle(Future.succeededFuture(cached));
+                    } else if ("prependToLists".equals(method.getName())) {
+                        cached.add(0, (String) args[1]);
+                        ((Handler<AsyncResult<Void>>) args[3]).handle(Future.succeededFuture());
+                    }
+                    return null;
+                });
+        final TimelineEventStore original = (TimelineEventStore) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { TimelineEventStore.class }, (proxy, method, args) -> {
+                    if ("add".equals(method.getName())) {
+                        ((Handler<JsonObject>) args[1]).handle(new JsonObject().put("status", "ok")
+                                .put("_id", ((JsonObject) args[0]).getString("type").toLowerCase() + cached.size()));
+                    } else if ("get".equals(method.getName())) {
+                        originalGets.add(new JsonObject().put("offset", (int) args[2]).put("limit", (int) args[3]));
+                        ((Handler<JsonObject>) args[args.length - 1]).handle(new JsonObject().put("status", "ok")
+                                .put("results", new JsonArray()));
+                    }
+                    return null;
+                });
+        final TimelineConfigService configService = (TimelineConfigService) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] { TimelineConfigService.class }, (proxy, method, args) -> {
+                    if ("list".equals(method.getName())) {
+                        ((Handler<Either<String, JsonArray>>) args[0]).handle(new Either.Right<>(new JsonArray()));
+                    }
+                    return null;
+                });
+        return new CachedTimelineEventStore(original, cacheService, 10, configService, new HashMap<>(), headerFormat);
+    }
+
+    private JsonObject event(String type) {
+        return new JsonObject().put("type", type).put("event-type", "CREATE")
+                .put("date", new JsonObject().put("$date", 1000L))
+                .put("recipients", new JsonArray().add(new JsonObject().put("userId", "user")));
+    }
+
+    private UserInfos user() {
+        final UserInfos user = new UserInfos();
+        user.setUserId("user");
+        return user;
+    }
+
+    @Test
+    public void testLegacyFormatUntilEnabled(TestContext context) {
+        final CachedTimelineEventStore store = store(false);
+        store.add(event("BLOG"), res -> {});
+        context.assertEquals(1, cached.size());
+        context.assertEquals("blog0", new JsonObject(cached.get(0)).getString("_id"));
+    }
+
+    @Test
+    public void testGetFromHeaderFormat(TestContext context) {
+        final CachedTimelineEventStore store = store(true);
+        store.add(event("BLOG"), res -> {});
+        store.add(event("NEWS"), res -> {});
+        context.assertTrue(cached.get(0).charAt(0) == '\u001e');
+        // entries written by an instance not upgraded yet
+        cached.add(new JsonObject().put("_id", "legacy").put("type", "BLOG")
+                .put("date", new JsonObject().put("$date", 500L)).encode());
+        store.get(user(), Arrays.asList("BLOG"), 0, 25, null, false, false, null, res -> {
+            final JsonArray results = res.getJsonArray("results");
+            context.assertEquals(2, res.getInteger("number"));
+            context.assertEquals("blog0", results.getJsonObject(0).getString("_id"));
+            context.assertEquals("legacy", results.getJsonObject(1).getString("_id"));
+        });
+        context.assertTrue(originalGets.isEmpty());
+    }
+
+    @Test
+    public void testNextPageCompletesFromOriginal(TestContext context) {
+        final CachedTimelineEventStore store = store(true);
+        store.add(event("BLOG"), res -> {});
+        store.add(event("NEWS"), res -> {});
+        store.add(event("BLOG"), res -> {});
+        store.get(user(), Arrays.asList("BLOG"), 5, 5, null, false, false, null, res -> {});
+        context.assertEquals(1, originalGets.size());
+        // the 2 cached entries matching the filter are skipped in the original store
+        context.assertEquals(2, originalGets.get(0).getInteger("offset"));
+        context.assertEquals(13, originalGets.get(0).getInteger("limit"));
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.entcore.timeline;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import fr.wseduc.mongodb.MongoDb;
+import fr.wseduc.webutils.Either;
+import org.entcore.test.TestHelper;
+import org.entcore.timeline.events.DefaultTimelineEventStore;
+import org.entcore.timeline.events.DigestTimelineEventStore;
+import org.entcore.timeline.services.impl.MailingJob;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.testcontainers.containers.MongoDBContainer;
+
+import io.vertx.core.Future;
+import io.vertx.core.json.JsonArray;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.Async;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class DigestTimelineEventStoreTest {
+    private static final TestHelper test = TestHelper.helper();
+    @ClassRule
+    public static MongoDBContainer mongoContainer = test.database().createMongoContainer();
+    static DigestTimelineEventStore store;
+
+    @BeforeClass
+    public static void setUp(TestContext context) throws Exception {
+        test.database().initMongo(context, mongoContainer);
+        store = new DigestTimelineEventStore(new DefaultTimelineEventStore());
+    }
+
+    private JsonObject event(String resource, String type, String... userIds) {
+        final JsonArray recipients = new JsonArray();
+        for (String userId : userIds) {
+            recipients.add(new JsonObject().put("userId", userId).put("unread", 1));
+        }
+        return new JsonObject().put("type", type).put("event-type", "CREATE").put("resource", resource)
+                .put("recipients", recipients).put("params", new JsonObject());
+    }
+
+    private Future<Integer> count(String userId, JsonObject event) {
+        final long day = DigestTimelineEventStore.dayOf(event.getJsonObject("date").getLong("$date"));
+        final String id = DigestTimelineEventStore.digestId(userId, day, event.getString("type"),
+                event.getString("event-type"));
+        return test.database().executeMongoWithUniqueResultById(DigestTimelineEventStore.DIGEST_COLLECTION, id)
+                .map(digest -> digest.getInteger("count", 0));
+    }
+
+    @Test
+    public void testAddShouldIncrementCounters(TestContext context) {
+        final Async async = context.async();
+        final JsonObject event = event("r1", "BLOG", "add1", "add2");
+        final JsonObject event2 = event("r2", "BLOG", "add1");
+        store.add(event, res -> store.add(event2, res2 -> {
+            context.assertEquals("ok", res2.getString("status"));
+            count("add1", event).setHandler(c1 -> {
+                context.assertEquals(2, c1.result());
+                count("add2", event).setHandler(c2 -> {
+                    context.assertEquals(1, c2.result());
+                    async.complete();
+                });
+            });
+        }));
+    }
+
+    @Test
+    public void testDeleteShouldDecrementCounters(TestContext context) {
+        final Async async = context.async();
+        final JsonObject event = event("deleted", "NEWS", "del1", "del2");
+        store.add(event, res -> store.delete("deleted", res2 -> {
+            context.assertEquals("ok", res2.getString("status"));
+            count("del1", event).setHandler(c1 -> {
+                context.assertEquals(0, c1.result());
+                count("del2", event).setHandler(c2 -> {
+                    context.assertEquals(0, c2.result());
+                    async.complete();
+                });
+            });
+        }));
+    }
+
+    @Test
+    public void testDiscardShouldDecrementRecipientCounter(TestContext context) {
+        final Async async = context.async();
+        final JsonObject event = event("discarded", "WORKSPACE", "dis1", "dis2");
+        store.add(event, res -> store.discard(res.getString("_id"), "dis1", res2 -> {
+            context.assertTrue(res2.isRight());
+            count("dis1", event).setHandler(c1 -> {
+                context.assertEquals(0, c1.result());
+                count("dis2", event).setHandler(c2 -> {
+                    context.assertEquals(1, c2.result());
+                    // discarding twice must not decrement the counter again
+                    store.discard(res.getString("_id"), "dis1", res3 -> count("dis2", event).setHandler(c3 -> {
+                        context.assertEquals(1, c3.result());
+                        async.complete();
+                    }));
+                });
+            });
+        }));
+    }
+
+    @Test
+    public void testMailingJobShouldResumeAfterCheckpoint(TestContext context) {
+        final Async async = context.async();
+        final List<String> processed = new ArrayList<>();
+        final List<String> recipients = Arrays.asList("u0", "u1", "u2", "u4", "u5", "u6");
+        final Date period = new Date();
+        final String checkpointId = "resume-" + new SimpleDateFormat("yyyy-MM-dd").format(period);
+        MongoDb.getInstance().save(MailingJob.CHECKPOINT_COLLECTION, new JsonObject()
+                .put("_id", checkpointId).put("userId", "u3"), saved -> {
+            new MailingJob("resume", period, recipients, 2, 2).start((users, pageEnd) -> {
+                processed.addAll(users);
+                pageEnd.handle(new Either.Right<>(null));
+            }, res -> {
+                context.assertTrue(res.isRight());
+                context.assertEquals(3, res.right().getValue());
+                context.assertEquals(Arrays.asList("u4", "u5", "u6"), processed);
+                test.database().executeMongoWithUniqueResultById(MailingJob.CHECKPOINT_COLLECTION, checkpointId)
+                        .setHandler(checkpoint -> {
+                    context.assertTrue(checkpoint.failed() || !checkpoint.result().containsKey("userId"));
+                    async.complete();
+                });
+            });
+        });
+    }
+
+    @Test
+    public void testMailingJobShouldKeepCheckpointOnError(TestContext context) {
+        final Async async = context.async();
+        final List<String> recipients = Arrays.asList("u0", "u1", "u2", "u3", "u4");
+        final Date period = new Date();
+        final String checkpointId = "error-" + new SimpleDateFormat("yyyy-MM-dd").format(period);
+        new MailingJob("error", period, recipients, 2, 1).start((users, pageEnd) -> {
+            if (users.contains("u2")) {
+                pageEnd.handle(new Either.Left<>("error"));
+            } else {
+                pageEnd.handle(new Either.Right<>(null));
+            }
+        }, res -> {
+            context.assertTrue(res.isLeft());
+            test.database().executeMongoWithUniqueResultById(MailingJob.CHECKPOINT_COLLECTION, checkpointId)
+                    .setHandler(checkpoint -> {
+                context.assertEquals("u1", checkpoint.result().getString("userId"));
+                async.complete();
+            });
+        });
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © "Open Digital Education", 2020
+ *
+ * This program is published by "Open Digital Education".
+ * You must indicate the name of the software and the company in any production /contribution
+ * using the software and indicate on the home page of the software industry in question,
+ * "powered by Open Digital Education" with a reference to the website: https://opendigitaleducation.com/.
+ *
+ * This program is free software, licensed under the terms of the GNU Affero General Public License
+ * as published by the Free Software Foundation, version 3 of the License.
+ *
+ * You can redistribute this application and/or modify it since you respect the terms of the GNU Affero General Public License.
+ * If you modify the source code and then use this modified source code in your creation, you must make available the source code of your modifications.
+ *
+ * You should have received a copy of the GNU Affero General Public License along with the software.
+ * If not, please see : <http://www.gnu.org/licenses/>. Full compliance requires reading the terms of this license and following its directives.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ */
+package org.entcore.timeline;
+
+import org.entcore.timeline.events.TimelineCacheEntry;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.unit.TestContext;
+import io.vertx.ext.unit.junit.VertxUnitRunner;
+
+@RunWith(VertxUnitRunner.class)
+public class TimelineCacheEntryTest {
+
+    private JsonObject notification(String id, long date, String type) {
+        return new JsonObject().put("_id", id).put("type", type)
+                .put("date", new JsonObject().put("$date", date))
+                .put("params", new JsonObject().put("message", "a\u001fb\nc"));
+    }
+
+    @Test
+    public void testEncodeAndParse(TestContext context) {
+        final JsonObject notification = notification("n1", 1000L, "BLOG");
+        final TimelineCacheEntry entry = TimelineCacheEntry.parse(TimelineCacheEntry.encode(notification), 0L);
+        context.assertEquals("n1", entry.getId());
+        context.assertEquals(1000L, entry.getDate());
+        context.assertEquals("BLOG", entry.getType());
+        context.assertEquals(notification, entry.toJson());
+    }
+
+    @Test
+    public void testMissingDateAndLegacyEntry(TestContext context) {
+        final JsonObject notification = new JsonObject().put("_id", "n2").put("type", "NEWS");
+        final TimelineCacheEntry entry = TimelineCacheEntry.parse(TimelineCacheEntry.encode(notification), 42L);
+        context.assertEquals(42L, entry.getDate());
+        context.assertEquals(notification, entry.toJson());
+        final String legacy = notification("n3", 7L, "WORKSPACE").encode();
+        final TimelineCacheEntry legacyEntry = TimelineCacheEntry.parse(legacy, 0L);
+        context.assertEquals("n3", legacyEntry.getId());
+        context.assertEquals(7L, legacyEntry.getDate());
+        context.assertEquals("WORKSPACE", legacyEntry.getType());
+        context.assertEquals(legacy, legacyEntry.getRaw());
+    }
+
+}